@@ -65,6 +65,74 @@ public class ListenerConfig extends ConfigFoundation {
         return Math.toIntExact(getLongProperty("threadKeepAliveTime", 60L));
     }
 
+    /**
+     * Gets execution mode.
+     * <p>One of <i>platform</i> for a bounded thread pool, <i>virtual</i> for a virtual thread per connection
+     * or <i>nio</i> for non-blocking event loops with virtual thread workers.
+     *
+     * @return Execution mode string.
+     */
+    public String getExecutionMode() {
+        return getStringProperty("executionMode", "platform").toLowerCase();
+    }
+
+    /**
+     * Is virtual thread execution mode.
+     *
+     * @return Boolean.
+     */
+    public boolean isVirtualThreads() {
+        return getExecutionMode().equals("virtual");
+    }
+
+    /**
+     * Is non-blocking event loop execution mode.
+     *
+     * @return Boolean.
+     */
+    public boolean isNio() {
+        return getExecutionMode().equals("nio");
+    }
+
+    /**
+     * Gets number of event loop threads for nio execution mode.
+     *
+     * @return Event loop threads.
+     */
+    public int getEventLoopThreads() {
+        return Math.toIntExact(getLongProperty("eventLoopThreads", (long) Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Gets maximum concurrent connections.
+     * <p>This is the semaphore ceiling used in virtual and nio execution modes in place of a pool size.
+     *
+     * @return Maximum concurrent connections.
+     */
+    public int getMaxConnections() {
+        return Math.toIntExact(getLongProperty("maxConnections", 10000L));
+    }
+
+    /**
+     * Gets admission queue size.
+     * <p>Number of accepted connections allowed to wait for a free worker before new ones are turned away with a 421.
+     *
+     * @return Queue size.
+     */
+    public int getQueueSize() {
+        return Math.toIntExact(getLongProperty("queueSize", 100L));
+    }
+
+    /**
+     * Gets maximum admission queue time.
+     * <p>Queued connections still waiting for a worker after this time are shed with a 421.
+     *
+     * @return Time in seconds.
+     */
+    public int getMaxQueueTime() {
+        return Math.toIntExact(getLongProperty("maxQueueTime", 30L));
+    }
+
     /**
      * Gets transactions limit.
      * <p>This defines how many commands will be processed before breaking receipt loop.
@@ -0,0 +1,71 @@
+package com.mimecast.robin.config.server;
+
+import com.mimecast.robin.config.ConfigFoundation;
+
+import java.util.Map;
+
+/**
+ * Post-acceptance pipeline configuration.
+ *
+ * <p>This class provides type safe access to the mode, executor and journal settings
+ * of the work done after a message is stored.
+ */
+public class PipelineConfig extends ConfigFoundation {
+
+    /**
+     * Constructs a new PipelineConfig instance.
+     */
+    public PipelineConfig() {
+        super();
+    }
+
+    /**
+     * Constructs a new PipelineConfig instance with configuration map.
+     *
+     * @param map Configuration map.
+     */
+    public PipelineConfig(Map<String, Object> map) {
+        super();
+        this.map = map;
+    }
+
+    /**
+     * Is async mode.
+     * <p>In async mode the message is journaled and accepted before delivery and webhooks run.
+     * <p>In sync mode they run before the reply is sent.
+     *
+     * @return Boolean.
+     */
+    public boolean isAsync() {
+        return getStringProperty("mode", "sync").equalsIgnoreCase("async");
+    }
+
+    /**
+     * Gets number of pipeline threads.
+     *
+     * @return Thread count.
+     */
+    public int getThreads() {
+        return Math.toIntExact(Math.max(1L, getLongProperty("threads", 4L)));
+    }
+
+    /**
+     * Gets queue size.
+     * <p>Messages waiting for a pipeline thread, more run inline on the connection thread.
+     *
+     * @return Maximum number of queued messages.
+     */
+    public int getQueueSize() {
+        return Math.toIntExact(Math.max(1L, getLongProperty("queueSize", 1024L)));
+    }
+
+    /**
+     * Gets journal file path.
+     * <p>Accepted messages stay in the journal until all stages ran and are replayed on startup.
+     *
+     * @return Path string.
+     */
+    public String getJournal() {
+        return getStringProperty("journal", "/tmp/robinPipeline.db");
+    }
+}
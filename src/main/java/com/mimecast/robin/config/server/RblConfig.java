@@ -61,4 +61,70 @@ public class RblConfig {
         return map.containsKey("timeoutSeconds") ?
             ((Number) map.get("timeoutSeconds")).intValue() : 5;
     }
+
+    /**
+     * Get the maximum number of cached (IP, provider) results.
+     *
+     * @return Cache size.
+     */
+    public int getCacheSize() {
+        return map.containsKey("cacheSize") ?
+            ((Number) map.get("cacheSize")).intValue() : 10000;
+    }
+
+    /**
+     * Get the maximum time in seconds to cache a listing regardless of its DNS TTL.
+     *
+     * @return Maximum TTL in seconds.
+     */
+    public int getMaxTtl() {
+        return map.containsKey("maxTtl") ?
+            ((Number) map.get("maxTtl")).intValue() : 3600;
+    }
+
+    /**
+     * Get the time in seconds to cache a not listed result when the provider gives no SOA minimum.
+     *
+     * @return Negative TTL in seconds.
+     */
+    public int getNegativeTtl() {
+        return map.containsKey("negativeTtl") ?
+            ((Number) map.get("negativeTtl")).intValue() : 300;
+    }
+
+    /**
+     * Get the maximum number of RBL queries in flight across all connections.
+     *
+     * @return Maximum concurrent queries.
+     */
+    public int getMaxConcurrentQueries() {
+        return map.containsKey("maxConcurrentQueries") ?
+            ((Number) map.get("maxConcurrentQueries")).intValue() : 64;
+    }
+
+    /**
+     * Get the trusted networks that skip RBL checks.
+     *
+     * @return List of CIDR prefixes.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getTrustedNetworks() {
+        if (map.containsKey("trustedNetworks")) {
+            return (List<String>) map.get("trustedNetworks");
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the denied networks that are rejected without RBL checks.
+     *
+     * @return List of CIDR prefixes.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getDeniedNetworks() {
+        if (map.containsKey("deniedNetworks")) {
+            return (List<String>) map.get("deniedNetworks");
+        }
+        return Collections.emptyList();
+    }
 }
@@ -0,0 +1,161 @@
+package com.mimecast.robin.config.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled scenario RCPT matcher.
+ *
+ * <p>Scenario RCPT entries are regular expressions matched against the whole address in order, first match wins.
+ * <p>Entries without any regex operators, like <i>jane@example\\.com</i>, are unescaped into an exact match hash.
+ * <p>The others are compiled once into an ordered list of {@link Pattern} instances.
+ * <p>Matching looks up the exact hash first then only tries patterns defined before the exact hit, preserving order.
+ * <p>Invalid expressions are logged and never match.
+ * <p>Instances are immutable and shared read-only across connections.
+ *
+ * @see ScenarioConfig#getRcptMatcher()
+ */
+public class RcptMatcher {
+    private static final Logger log = LogManager.getLogger(RcptMatcher.class);
+
+    /**
+     * Characters that are regex operators when not escaped.
+     */
+    private static final String OPERATORS = ".[]{}()*+?^$|";
+
+    /**
+     * Empty matcher.
+     */
+    public static final RcptMatcher EMPTY = new RcptMatcher(null);
+
+    /**
+     * Compiled pattern entry.
+     *
+     * @param order    Entry position.
+     * @param pattern  Pattern instance.
+     * @param response Response string.
+     */
+    private record Entry(int order, Pattern pattern, String response) {
+    }
+
+    /**
+     * Exact match entry.
+     *
+     * @param order    Entry position.
+     * @param response Response string.
+     */
+    private record Exact(int order, String response) {
+    }
+
+    /**
+     * Exact match hash.
+     */
+    private final Map<String, Exact> exact = new HashMap<>();
+
+    /**
+     * Ordered pattern entries.
+     */
+    private final Entry[] patterns;
+
+    /**
+     * Constructs a new RcptMatcher instance.
+     *
+     * @param rcpt Scenario RCPT list or null.
+     */
+    public RcptMatcher(List<Map<String, String>> rcpt) {
+        List<Entry> entries = new ArrayList<>();
+
+        if (rcpt != null) {
+            for (int i = 0; i < rcpt.size(); i++) {
+                String value = rcpt.get(i).get("value");
+                String response = rcpt.get(i).get("response");
+                if (value == null) {
+                    continue;
+                }
+
+                String literal = literal(value);
+                if (literal != null) {
+                    exact.putIfAbsent(literal, new Exact(i, response));
+                    continue;
+                }
+
+                try {
+                    entries.add(new Entry(i, Pattern.compile(value), response));
+                } catch (PatternSyntaxException e) {
+                    log.warn("Invalid scenario RCPT value {}: {}", value, e.getDescription());
+                }
+            }
+        }
+
+        this.patterns = entries.toArray(new Entry[0]);
+    }
+
+    /**
+     * Gets response for given address.
+     *
+     * @param address Address string.
+     * @return Response string or null if no entry matches.
+     */
+    public String match(String address) {
+        if (address == null) {
+            return null;
+        }
+
+        Exact hit = exact.get(address);
+        int limit = hit != null ? hit.order() : Integer.MAX_VALUE;
+
+        for (Entry entry : patterns) {
+            if (entry.order() > limit) {
+                break;
+            }
+            if (entry.pattern().matcher(address).matches()) {
+                return entry.response();
+            }
+        }
+
+        return hit != null ? hit.response() : null;
+    }
+
+    /**
+     * Is empty.
+     *
+     * @return Boolean.
+     */
+    public boolean isEmpty() {
+        return exact.isEmpty() && patterns.length == 0;
+    }
+
+    /**
+     * Unescapes regex into the literal it matches.
+     *
+     * @param regex Regex string.
+     * @return Literal string or null if regex has operators.
+     */
+    static String literal(String regex) {
+        StringBuilder sb = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i == regex.length()) {
+                    return null;
+                }
+                c = regex.charAt(i);
+                // Escaped letters and digits are classes or back references.
+                if (Character.isLetterOrDigit(c)) {
+                    return null;
+                }
+            } else if (OPERATORS.indexOf(c) != -1) {
+                return null;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.mimecast.robin.config.server;
+
+import com.mimecast.robin.config.ConfigFoundation;
+
+import java.util.Map;
+
+/**
+ * Reverse DNS configuration for inbound connections.
+ *
+ * <p>This class provides type safe access to reverse lookup and cache settings.
+ */
+public class RdnsConfig extends ConfigFoundation {
+
+    /**
+     * Constructs a new RdnsConfig instance.
+     */
+    public RdnsConfig() {
+        super();
+    }
+
+    /**
+     * Constructs a new RdnsConfig instance with configuration map.
+     *
+     * @param map Configuration map.
+     */
+    public RdnsConfig(Map<String, Object> map) {
+        super();
+        this.map = map;
+    }
+
+    /**
+     * Is reverse DNS lookup enabled.
+     * <p>When disabled sessions use the bare IP addresses.
+     *
+     * @return Boolean.
+     */
+    public boolean isEnabled() {
+        return getBooleanProperty("enabled", true);
+    }
+
+    /**
+     * Gets greeting budget.
+     * <p>How long the greeting waits for lookups before continuing with the bare IP.
+     *
+     * @return Time in milliseconds.
+     */
+    public long getGreetingBudget() {
+        return getLongProperty("greetingBudget", 500L);
+    }
+
+    /**
+     * Gets cache size.
+     *
+     * @return Maximum number of cached addresses.
+     */
+    public int getCacheSize() {
+        return Math.toIntExact(getLongProperty("cacheSize", 10000L));
+    }
+
+    /**
+     * Gets maximum positive cache time.
+     * <p>Record TTLs above this are capped.
+     *
+     * @return Time in seconds.
+     */
+    public long getMaxTtl() {
+        return getLongProperty("maxTtl", 3600L);
+    }
+
+    /**
+     * Gets negative cache time.
+     * <p>Addresses without a PTR record or with a failed lookup are cached this long.
+     *
+     * @return Time in seconds.
+     */
+    public long getNegativeTtl() {
+        return getLongProperty("negativeTtl", 300L);
+    }
+}
@@ -19,6 +19,11 @@ import java.util.Map;
 @SuppressWarnings("unchecked")
 public class ScenarioConfig extends ConfigFoundation {
 
+    /**
+     * Compiled RCPT matcher built on first use.
+     */
+    private volatile RcptMatcher rcptMatcher;
+
     /**
      * Constructs a new ScenarioConfig instance with given map.
      *
@@ -96,6 +101,21 @@ public class ScenarioConfig extends ConfigFoundation {
         return getListProperty("rcpt");
     }
 
+    /**
+     * Gets compiled RCPT matcher.
+     * <p>Compiled once from the RCPT list and shared by all connections using this scenario.
+     *
+     * @return RcptMatcher instance.
+     */
+    public RcptMatcher getRcptMatcher() {
+        RcptMatcher matcher = rcptMatcher;
+        if (matcher == null) {
+            List<Map<String, String>> rcpt = getRcpt();
+            matcher = rcptMatcher = rcpt != null && !rcpt.isEmpty() ? new RcptMatcher(rcpt) : RcptMatcher.EMPTY;
+        }
+        return matcher;
+    }
+
     /**
      * Gets DATA response.
      * <p>If none defined the server will 250.
@@ -105,4 +125,14 @@ public class ScenarioConfig extends ConfigFoundation {
     public String getData() {
         return getStringProperty("data");
     }
+
+    /**
+     * Is pipeline sync.
+     * <p>When true delivery and webhooks run before the DATA response even in async pipeline mode.
+     *
+     * @return Boolean.
+     */
+    public boolean isSync() {
+        return getBooleanProperty("sync", false);
+    }
 }
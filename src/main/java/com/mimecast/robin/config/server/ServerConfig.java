@@ -1,6 +1,7 @@
 package com.mimecast.robin.config.server;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.mimecast.robin.config.BasicConfig;
 import com.mimecast.robin.config.ConfigFoundation;
 import com.mimecast.robin.util.Magic;
@@ -16,6 +17,12 @@ import java.util.*;
  *
  * <p>This class provides type safe access to server configuration.
  * <p>It also maps authentication users and behaviour scenarios to corresponding objects.
+ * <p>An instance is an immutable snapshot of the configuration files it was loaded from.
+ * <p>Section wrappers, webhooks, scenarios and users are built once on first use and shared afterwards,
+ * so hot path getters do not rebuild them from the raw map.
+ * <p>Split files are still loaded on first use so magic variables like Vault secrets resolve once their providers are up.
+ * <p>The root map is synchronized as split files loaded on first use are added to it from any thread.
+ * <p>Reloading builds a new instance with {@link #preload()} that {@link com.mimecast.robin.main.Config} publishes atomically.
  *
  * @see UserConfig
  * @see ScenarioConfig
@@ -23,6 +30,11 @@ import java.util.*;
 @SuppressWarnings("unchecked")
 public class ServerConfig extends ConfigFoundation {
 
+    /**
+     * Configuration file path.
+     */
+    private String path;
+
     /**
      * Configuration directory.
      */
@@ -45,12 +57,34 @@ public class ServerConfig extends ConfigFoundation {
         CONFIG_FILENAMES.put("vault", "vault.json5");
     }
 
+    /**
+     * Compiled sections built on first use.
+     */
+    private volatile ListenerConfig smtpConfig;
+    private volatile ListenerConfig secureConfig;
+    private volatile ListenerConfig submissionConfig;
+    private volatile VaultConfig vaultConfig;
+    private volatile RblConfig rblConfig;
+    private volatile RdnsConfig rdnsConfig;
+    private volatile TranscriptConfig transcriptConfig;
+    private volatile PipelineConfig pipelineConfig;
+    private volatile Map<String, WebhookConfig> webhooks;
+    private volatile BasicConfig storage;
+    private volatile BasicConfig queue;
+    private volatile BasicConfig relay;
+    private volatile BasicConfig dovecot;
+    private volatile BasicConfig prometheus;
+    private volatile List<UserConfig> users;
+    private volatile Map<String, UserConfig> usersByName;
+    private volatile Map<String, ScenarioConfig> scenarios;
+
     /**
      * Constructs a new ServerConfig instance.
      */
     public ServerConfig() {
         super();
         this.configDir = null;
+        this.map = Collections.synchronizedMap(map);
     }
 
     /**
@@ -60,6 +94,7 @@ public class ServerConfig extends ConfigFoundation {
      */
     public ServerConfig(Map<String, Object> map) {
         super(map);
+        this.map = Collections.synchronizedMap(this.map);
     }
 
     /**
@@ -70,7 +105,76 @@ public class ServerConfig extends ConfigFoundation {
      */
     public ServerConfig(String path) throws IOException {
         super(path);
+        this.path = path;
         this.configDir = new File(path).getParent();
+        this.map = Collections.synchronizedMap(map);
+    }
+
+    /**
+     * Loads all split files and builds every section now.
+     * <p>Used on reload so a broken file fails before the config is published instead of on first use.
+     *
+     * @return Self.
+     * @throws IOException Unable to read or parse a file.
+     */
+    public ServerConfig preload() throws IOException {
+        for (String key : CONFIG_FILENAMES.keySet()) {
+            loadExternal(key, "users".equals(key) ? List.class : Map.class);
+        }
+
+        getSmtpConfig();
+        getSecureConfig();
+        getSubmissionConfig();
+        getVault();
+        getRblConfig();
+        getRdnsConfig();
+        getTranscriptConfig();
+        getPipelineConfig();
+        getWebhooks();
+        getStorage();
+        getQueue();
+        getRelay();
+        getDovecot();
+        getPrometheus();
+        getUsers();
+        getScenarios();
+        return this;
+    }
+
+    /**
+     * Gets configuration file path.
+     *
+     * @return Path or null if not loaded from file.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets configuration files.
+     * <p>The server file followed by the split files it may load, present or not.
+     *
+     * @return List of paths, empty if not loaded from file.
+     */
+    public List<String> getConfigFiles() {
+        List<String> files = new ArrayList<>();
+        if (path != null) {
+            files.add(path);
+            for (String filename : new TreeSet<>(CONFIG_FILENAMES.values())) {
+                files.add(configDir != null ? configDir + File.separator + filename : filename);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Gets configuration reload interval.
+     * <p>How often configuration files are checked for changes, 0 disables reloading.
+     *
+     * @return Time in seconds.
+     */
+    public long getConfigReloadInterval() {
+        return getLongProperty("configReloadInterval", 0L);
     }
 
     /**
@@ -124,11 +228,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return ListenerConfig instance.
      */
     public ListenerConfig getSmtpConfig() {
-        if (map.containsKey("smtpConfig")) {
-            return new ListenerConfig(getMapProperty("smtpConfig"));
+        ListenerConfig config = smtpConfig;
+        if (config == null) {
+            // Fallback to legacy flat config
+            config = smtpConfig = new ListenerConfig(map.containsKey("smtpConfig") ? getMapProperty("smtpConfig") : map);
         }
-        // Fallback to legacy flat config
-        return new ListenerConfig(map);
+        return config;
     }
 
     /**
@@ -137,11 +242,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return ListenerConfig instance.
      */
     public ListenerConfig getSecureConfig() {
-        if (map.containsKey("secureConfig")) {
-            return new ListenerConfig(getMapProperty("secureConfig"));
+        ListenerConfig config = secureConfig;
+        if (config == null) {
+            // Fallback to legacy flat config
+            config = secureConfig = new ListenerConfig(map.containsKey("secureConfig") ? getMapProperty("secureConfig") : map);
         }
-        // Fallback to legacy flat config
-        return new ListenerConfig(map);
+        return config;
     }
 
     /**
@@ -150,11 +256,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return ListenerConfig instance.
      */
     public ListenerConfig getSubmissionConfig() {
-        if (map.containsKey("submissionConfig")) {
-            return new ListenerConfig(getMapProperty("submissionConfig"));
+        ListenerConfig config = submissionConfig;
+        if (config == null) {
+            // Fallback to legacy flat config
+            config = submissionConfig = new ListenerConfig(map.containsKey("submissionConfig") ? getMapProperty("submissionConfig") : map);
         }
-        // Fallback to legacy flat config
-        return new ListenerConfig(map);
+        return config;
     }
 
     /**
@@ -270,6 +377,16 @@ public class ServerConfig extends ConfigFoundation {
         return getStringProperty("keystorepassword", "");
     }
 
+    /**
+     * Gets key store reload interval.
+     * <p>How often the key store file is checked for renewed certificates, 0 disables reloading.
+     *
+     * @return Time in seconds.
+     */
+    public long getKeyStoreReloadInterval() {
+        return getLongProperty("keystoreReloadInterval", 60L);
+    }
+
     /**
      * Gets trust store.
      *
@@ -348,12 +465,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return VaultConfig instance.
      */
     public VaultConfig getVault() {
-        loadExternalIfAbsent("vault", Map.class);
-
-        if (map.containsKey("vault")) {
-            return new VaultConfig(getMapProperty("vault"));
+        VaultConfig config = vaultConfig;
+        if (config == null) {
+            loadExternalIfAbsent("vault", Map.class);
+            config = vaultConfig = new VaultConfig(map.containsKey("vault") ? getMapProperty("vault") : new HashMap<>());
         }
-        return new VaultConfig(new HashMap<>());
+        return config;
     }
 
     /**
@@ -362,30 +479,77 @@ public class ServerConfig extends ConfigFoundation {
      * @return RblConfig instance.
      */
     public RblConfig getRblConfig() {
-        if (map.containsKey("rbl")) {
-            return new RblConfig(getMapProperty("rbl"));
+        RblConfig config = rblConfig;
+        if (config == null) {
+            // Default config if not defined.
+            config = rblConfig = new RblConfig(map.containsKey("rbl") ? getMapProperty("rbl") : null);
+        }
+        return config;
+    }
+
+    /**
+     * Gets reverse DNS configuration.
+     *
+     * @return RdnsConfig instance.
+     */
+    public RdnsConfig getRdnsConfig() {
+        RdnsConfig config = rdnsConfig;
+        if (config == null) {
+            // Default config if not defined.
+            config = rdnsConfig = new RdnsConfig(map.containsKey("rdns") ? getMapProperty("rdns") : new HashMap<>());
+        }
+        return config;
+    }
+
+    /**
+     * Gets session transcript configuration.
+     *
+     * @return TranscriptConfig instance.
+     */
+    public TranscriptConfig getTranscriptConfig() {
+        TranscriptConfig config = transcriptConfig;
+        if (config == null) {
+            // Default config if not defined.
+            config = transcriptConfig = new TranscriptConfig(map.containsKey("transcript") ? getMapProperty("transcript") : new HashMap<>());
         }
-        // Return default config if not defined.
-        return new RblConfig(null);
+        return config;
+    }
+
+    /**
+     * Gets post-acceptance pipeline configuration.
+     *
+     * @return PipelineConfig instance.
+     */
+    public PipelineConfig getPipelineConfig() {
+        PipelineConfig config = pipelineConfig;
+        if (config == null) {
+            // Default config if not defined.
+            config = pipelineConfig = new PipelineConfig(map.containsKey("pipeline") ? getMapProperty("pipeline") : new HashMap<>());
+        }
+        return config;
     }
 
     /**
      * Gets webhooks map.
      *
-     * @return Webhooks map indexed by extension name.
+     * @return Unmodifiable webhooks map indexed by extension name.
      */
     @SuppressWarnings("rawtypes")
     public Map<String, WebhookConfig> getWebhooks() {
-        loadExternalIfAbsent("webhooks", Map.class);
-
-        Map<String, WebhookConfig> webhooks = new HashMap<>();
-        if (map.containsKey("webhooks")) {
-            for (Object object : getMapProperty("webhooks").entrySet()) {
-                Map.Entry entry = (Map.Entry) object;
-                webhooks.put((String) entry.getKey(), new WebhookConfig((Map) entry.getValue()));
+        Map<String, WebhookConfig> compiled = webhooks;
+        if (compiled == null) {
+            loadExternalIfAbsent("webhooks", Map.class);
+
+            Map<String, WebhookConfig> built = new HashMap<>();
+            if (map.containsKey("webhooks")) {
+                for (Object object : getMapProperty("webhooks").entrySet()) {
+                    Map.Entry entry = (Map.Entry) object;
+                    built.put((String) entry.getKey(), new WebhookConfig((Map) entry.getValue()));
+                }
             }
+            compiled = webhooks = Collections.unmodifiableMap(built);
         }
-        return webhooks;
+        return compiled;
     }
 
     /**
@@ -394,8 +558,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return BasicConfig instance.
      */
     public BasicConfig getStorage() {
-        loadExternalIfAbsent("storage", Map.class);
-        return new BasicConfig(getMapProperty("storage"));
+        BasicConfig config = storage;
+        if (config == null) {
+            loadExternalIfAbsent("storage", Map.class);
+            config = storage = new BasicConfig(getMapProperty("storage"));
+        }
+        return config;
     }
 
     /**
@@ -404,8 +572,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return BasicConfig instance.
      */
     public BasicConfig getQueue() {
-        loadExternalIfAbsent("queue", Map.class);
-        return new BasicConfig(getMapProperty("queue"));
+        BasicConfig config = queue;
+        if (config == null) {
+            loadExternalIfAbsent("queue", Map.class);
+            config = queue = new BasicConfig(getMapProperty("queue"));
+        }
+        return config;
     }
 
     /**
@@ -414,8 +586,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return BasicConfig instance.
      */
     public BasicConfig getRelay() {
-        loadExternalIfAbsent("relay", Map.class);
-        return new BasicConfig(getMapProperty("relay"));
+        BasicConfig config = relay;
+        if (config == null) {
+            loadExternalIfAbsent("relay", Map.class);
+            config = relay = new BasicConfig(getMapProperty("relay"));
+        }
+        return config;
     }
 
     /**
@@ -424,8 +600,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return BasicConfig instance.
      */
     public BasicConfig getDovecot() {
-        loadExternalIfAbsent("dovecot", Map.class);
-        return new BasicConfig(getMapProperty("dovecot"));
+        BasicConfig config = dovecot;
+        if (config == null) {
+            loadExternalIfAbsent("dovecot", Map.class);
+            config = dovecot = new BasicConfig(getMapProperty("dovecot"));
+        }
+        return config;
     }
 
     /**
@@ -434,8 +614,12 @@ public class ServerConfig extends ConfigFoundation {
      * @return BasicConfig instance.
      */
     public BasicConfig getPrometheus() {
-        loadExternalIfAbsent("prometheus", Map.class);
-        return new BasicConfig(getMapProperty("prometheus"));
+        BasicConfig config = prometheus;
+        if (config == null) {
+            loadExternalIfAbsent("prometheus", Map.class);
+            config = prometheus = new BasicConfig(getMapProperty("prometheus"));
+        }
+        return config;
     }
 
     /**
@@ -451,16 +635,24 @@ public class ServerConfig extends ConfigFoundation {
     /**
      * Gets users list.
      *
-     * @return Users list.
+     * @return Unmodifiable users list.
      */
     public List<UserConfig> getUsers() {
-        loadExternalIfAbsent("users", List.class);
-
-        List<UserConfig> users = new ArrayList<>();
-        for (Map<String, String> user : (List<Map<String, String>>) getListProperty("users")) {
-            users.add(new UserConfig(user));
+        List<UserConfig> compiled = users;
+        if (compiled == null) {
+            loadExternalIfAbsent("users", List.class);
+
+            List<UserConfig> built = new ArrayList<>();
+            Map<String, UserConfig> byName = new HashMap<>();
+            for (Map<String, String> user : (List<Map<String, String>>) getListProperty("users")) {
+                UserConfig userConfig = new UserConfig(user);
+                built.add(userConfig);
+                byName.putIfAbsent(userConfig.getName(), userConfig);
+            }
+            usersByName = byName;
+            compiled = users = Collections.unmodifiableList(built);
         }
-        return users;
+        return compiled;
     }
 
     /**
@@ -470,51 +662,71 @@ public class ServerConfig extends ConfigFoundation {
      * @return Optional of UserConfig.
      */
     public Optional<UserConfig> getUser(String find) {
-        for (UserConfig user : getUsers()) {
-            if (user.getName().equals(find)) {
-                return Optional.of(user);
-            }
-        }
-        return Optional.empty();
+        getUsers();
+        return Optional.ofNullable(find != null ? usersByName.get(find) : null);
     }
 
     /**
      * Gets scenarios map.
      *
-     * @return Scenarios map.
+     * @return Unmodifiable scenarios map.
      */
     @SuppressWarnings("rawtypes")
     public Map<String, ScenarioConfig> getScenarios() {
-        loadExternalIfAbsent("scenarios", Map.class);
-
-        Map<String, ScenarioConfig> scenarios = new HashMap<>();
-        if (map.containsKey("scenarios")) {
-            for (Object object : getMapProperty("scenarios").entrySet()) {
-                Map.Entry entry = (Map.Entry) object;
-                scenarios.put((String) entry.getKey(), new ScenarioConfig((Map) entry.getValue()));
+        Map<String, ScenarioConfig> compiled = scenarios;
+        if (compiled == null) {
+            loadExternalIfAbsent("scenarios", Map.class);
+
+            Map<String, ScenarioConfig> built = new HashMap<>();
+            if (map.containsKey("scenarios")) {
+                for (Object object : getMapProperty("scenarios").entrySet()) {
+                    Map.Entry entry = (Map.Entry) object;
+                    built.put((String) entry.getKey(), new ScenarioConfig((Map) entry.getValue()));
+                }
             }
+            compiled = scenarios = Collections.unmodifiableMap(built);
         }
-        return scenarios;
+        return compiled;
     }
 
     /**
      * Helper to lazily load an external JSON5 file into the root config map under the given key
      * if the key is absent and a config directory is available.
+     * <p>Failures are logged and leave the key absent.
      *
      * @param key   Root key to populate in the map.
      * @param clazz Class to parse the JSON into (e.g., Map.class, List.class).
      */
     private void loadExternalIfAbsent(String key, Class<?> clazz) {
-        if (!map.containsKey(key) && configDir != null && CONFIG_FILENAMES.containsKey(key)) {
-            String filename = CONFIG_FILENAMES.get(key);
-            String path = configDir + File.separator + filename;
-            if (PathUtils.isFile(path)) {
+        try {
+            loadExternal(key, clazz);
+        } catch (IOException e) {
+            log.error("Failed to load " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Loads an external JSON5 file into the root config map under the given key
+     * if the key is absent and a config directory is available.
+     * <p>Loaded at most once per instance even when called from several threads.
+     *
+     * @param key   Root key to populate in the map.
+     * @param clazz Class to parse the JSON into (e.g., Map.class, List.class).
+     * @throws IOException Unable to read or parse file.
+     */
+    private void loadExternal(String key, Class<?> clazz) throws IOException {
+        if (configDir == null || !CONFIG_FILENAMES.containsKey(key)) {
+            return;
+        }
+
+        synchronized (map) {
+            String path = configDir + File.separator + CONFIG_FILENAMES.get(key);
+            if (!map.containsKey(key) && PathUtils.isFile(path)) {
                 try {
                     String content = Magic.streamMagicReplace(PathUtils.readFile(path, Charset.defaultCharset()));
-                    Object parsed = new Gson().fromJson(content, clazz);
-                    map.put(key, parsed);
-                } catch (IOException e) {
-                    log.error("Failed to load " + key + " from " + path, e);
+                    map.put(key, new Gson().fromJson(content, clazz));
+                } catch (JsonParseException e) {
+                    throw new IOException("Invalid JSON in " + path + ": " + e.getMessage(), e);
                 }
             }
         }
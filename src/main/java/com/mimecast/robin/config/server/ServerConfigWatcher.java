@@ -0,0 +1,120 @@
+package com.mimecast.robin.config.server;
+
+import com.mimecast.robin.main.Config;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server configuration watcher.
+ *
+ * <p>Polls <i>server.json5</i> and its split files for changes and reloads the server config without restarting listeners.
+ * <p>Sessions already running keep the config they started with and new ones pick up the reloaded one.
+ * <p>The new config loads every split file and builds every section before it is published.
+ * <p>A config that fails to load keeps the previous one in place and is tried again on the next check.
+ * <p>Listener sockets and thread pools are sized at startup and are not changed by a reload.
+ *
+ * @see ServerConfig#getConfigReloadInterval()
+ */
+public final class ServerConfigWatcher {
+    private static final Logger log = LogManager.getLogger(ServerConfigWatcher.class);
+
+    /**
+     * Config files watcher.
+     */
+    private static ScheduledExecutorService watcher;
+
+    /**
+     * Change stamp of loaded config files.
+     */
+    private static long stamp;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private ServerConfigWatcher() {
+    }
+
+    /**
+     * Starts watcher if enabled and not already running.
+     * <p>Polls every <i>configReloadInterval</i> seconds from server config, 0 disables it.
+     */
+    public static synchronized void start() {
+        ServerConfig config = Config.getServer();
+        if (watcher != null || config.getPath() == null) {
+            return;
+        }
+
+        long interval = config.getConfigReloadInterval();
+        if (interval <= 0) {
+            return;
+        }
+
+        stamp = stamp(config);
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "server-config-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(ServerConfigWatcher::checkForChanges, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checks config files and reloads if changed.
+     *
+     * @return True if reloaded.
+     */
+    static synchronized boolean checkForChanges() {
+        ServerConfig config = Config.getServer();
+        long current = stamp(config);
+        if (current == stamp) {
+            return false;
+        }
+
+        ServerConfig reloaded = reload(config);
+        if (reloaded == config) {
+            return false;
+        }
+
+        Config.setServer(reloaded);
+        stamp = current;
+        log.info("Reloaded server config: {}", config.getPath());
+        return true;
+    }
+
+    /**
+     * Loads config again from the same path.
+     *
+     * @param config Current ServerConfig instance.
+     * @return New ServerConfig instance or the current one if the new one fails to load.
+     */
+    static ServerConfig reload(ServerConfig config) {
+        try {
+            return new ServerConfig(config.getPath()).preload();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to reload server config {}: {}", config.getPath(), e.getMessage());
+            return config;
+        }
+    }
+
+    /**
+     * Gets config files change stamp.
+     *
+     * @param config ServerConfig instance.
+     * @return Stamp combining modification time and size of all files.
+     */
+    private static long stamp(ServerConfig config) {
+        long hash = 17;
+        for (String path : config.getConfigFiles()) {
+            File file = new File(path);
+            hash = hash * 31 + file.lastModified();
+            hash = hash * 31 + file.length();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mimecast.robin.config.server;
+
+import com.mimecast.robin.config.ConfigFoundation;
+
+import java.util.Map;
+
+/**
+ * Session transcript configuration for inbound connections.
+ *
+ * <p>This class provides type safe access to transcript sink, sampling and buffer settings.
+ */
+public class TranscriptConfig extends ConfigFoundation {
+
+    /**
+     * Constructs a new TranscriptConfig instance.
+     */
+    public TranscriptConfig() {
+        super();
+    }
+
+    /**
+     * Constructs a new TranscriptConfig instance with configuration map.
+     *
+     * @param map Configuration map.
+     */
+    public TranscriptConfig(Map<String, Object> map) {
+        super();
+        this.map = map;
+    }
+
+    /**
+     * Is transcript sink enabled.
+     * <p>When enabled command and reply lines go to the transcript file instead of the log.
+     *
+     * @return Boolean.
+     */
+    public boolean isEnabled() {
+        return getBooleanProperty("enabled", false);
+    }
+
+    /**
+     * Gets transcript file path.
+     *
+     * @return Path string.
+     */
+    public String getPath() {
+        return getStringProperty("path", "/var/log/robin-transcript.ndjson");
+    }
+
+    /**
+     * Gets sample rate.
+     * <p>Percentage of sessions recorded.
+     *
+     * @return Percentage between 0 and 100.
+     */
+    public int getSampleRate() {
+        return (int) Math.max(0L, Math.min(100L, getLongProperty("sampleRate", 100L)));
+    }
+
+    /**
+     * Is failed only policy.
+     * <p>When true only sessions with a 4xx or 5xx reply or an I/O error are written.
+     *
+     * @return Boolean.
+     */
+    public boolean isFailedOnly() {
+        return getStringProperty("policy", "all").equalsIgnoreCase("failed");
+    }
+
+    /**
+     * Gets ring buffer size.
+     * <p>Older lines are dropped once a session goes over it.
+     *
+     * @return Size in bytes per session.
+     */
+    public int getBufferSize() {
+        return Math.toIntExact(Math.max(1024L, getLongProperty("bufferSize", 16384L)));
+    }
+
+    /**
+     * Gets queue size.
+     * <p>Sessions waiting to be written, more are dropped and counted.
+     *
+     * @return Maximum number of queued sessions.
+     */
+    public int getQueueSize() {
+        return Math.toIntExact(Math.max(1L, getLongProperty("queueSize", 4096L)));
+    }
+}
@@ -70,17 +70,22 @@ public class RobinMetricsEndpoint extends MetricsEndpoint {
     private String getListenersJson() {
         List<SmtpListener> listeners = Server.getListeners();
         return listeners.stream()
-                .map(listener -> String.format("{\"port\":%d,\"threadPool\":{\"core\":%d,\"max\":%d,\"size\":%d,\"largest\":%d,\"active\":%d,\"queue\":%d,\"taskCount\":%d,\"completed\":%d,\"keepAliveSeconds\":%d}}",
+                .map(listener -> String.format("{\"port\":%d,\"executionMode\":\"%s\",\"threadPool\":{\"core\":%d,\"max\":%d,\"size\":%d,\"largest\":%d,\"active\":%d,\"available\":%d,\"queue\":%d,\"taskCount\":%d,\"completed\":%d,\"keepAliveSeconds\":%d},\"admission\":{\"queued\":%d,\"rejected\":%d,\"shed\":%d}}",
                         listener.getPort(),
+                        listener.getExecutionMode(),
                         listener.getCorePoolSize(),
                         listener.getMaximumPoolSize(),
                         listener.getPoolSize(),
                         listener.getLargestPoolSize(),
                         listener.getActiveThreads(),
+                        listener.getAvailablePermits(),
                         listener.getQueueSize(),
                         listener.getTaskCount(),
                         listener.getCompletedTaskCount(),
-                        listener.getKeepAliveSeconds()))
+                        listener.getKeepAliveSeconds(),
+                        listener.getQueuedCount(),
+                        listener.getRejectedCount(),
+                        listener.getShedCount()))
                 .collect(Collectors.joining(",", "[", "]"));
     }
 
@@ -5,6 +5,7 @@ import com.mimecast.robin.config.client.ClientConfig;
 import com.mimecast.robin.config.server.ServerConfig;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Master configuration initializer and container.
@@ -36,8 +37,9 @@ public class Config {
 
     /**
      * Server configuration.
+     * <p>Replaced as a whole on reload so readers always see one consistent snapshot.
      */
-    private static ServerConfig server = new ServerConfig();
+    private static final AtomicReference<ServerConfig> server = new AtomicReference<>(new ServerConfig());
 
     /**
      * Client default configuration.
@@ -69,17 +71,28 @@ public class Config {
      * @return ServerConfig.
      */
     public static ServerConfig getServer() {
-        return server;
+        return server.get();
     }
 
     /**
      * Init server config.
+     * <p>Also used to reload it as the new config is only published once fully read.
      *
      * @param path File path.
      * @throws IOException Unable to read file.
      */
     public static void initServer(String path) throws IOException {
-        server = new ServerConfig(path);
+        server.set(new ServerConfig(path));
+    }
+
+    /**
+     * Sets server config.
+     * <p>Used to publish a reloaded config.
+     *
+     * @param config ServerConfig instance.
+     */
+    public static void setServer(ServerConfig config) {
+        server.set(config);
     }
 
     /**
@@ -3,8 +3,10 @@ package com.mimecast.robin.main;
 import com.mimecast.robin.smtp.extension.Extension;
 import com.mimecast.robin.smtp.extension.client.*;
 import com.mimecast.robin.smtp.extension.server.*;
+import com.mimecast.robin.smtp.verb.Keyword;
 import com.mimecast.robin.smtp.verb.Verb;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -16,6 +18,8 @@ import java.util.Optional;
  * <p>Each extension has a server and a client implementation.
  * <p>The server will select the appropriate extension to the SMTP verb it receives.
  * <p>The client however has a behaviour which defines what command will be issued when.
+ * <p>Verbs with a built-in {@link Keyword} are dispatched through an array indexed by keyword.
+ * <p>Other verbs, like those added by plugins, are looked up by name.
  *
  * @see Verb
  * @see ClientProcessor
@@ -29,26 +33,32 @@ public class Extensions {
      */
     private static final Map<String, Extension> map = new HashMap<>();
 
+    /**
+     * Extensions by built-in keyword ordinal.
+     * <p>Kept in step with the map.
+     */
+    private static final Extension[] builtins = new Extension[Keyword.values().length];
+
     /*
       Default extensions.
      */
     static {
-        map.put("helo", new Extension(ServerEhlo::new, ClientEhlo::new));
-        map.put("lhlo", new Extension(ServerEhlo::new, ClientEhlo::new));
-        map.put("ehlo", new Extension(ServerEhlo::new, ClientEhlo::new));
+        addExtension("helo", new Extension(ServerEhlo::new, ClientEhlo::new));
+        addExtension("lhlo", new Extension(ServerEhlo::new, ClientEhlo::new));
+        addExtension("ehlo", new Extension(ServerEhlo::new, ClientEhlo::new));
 
-        map.put("starttls", new Extension(ServerStartTls::new, ClientStartTls::new));
-        map.put("auth", new Extension(ServerAuth::new, ClientAuth::new));
+        addExtension("starttls", new Extension(ServerStartTls::new, ClientStartTls::new));
+        addExtension("auth", new Extension(ServerAuth::new, ClientAuth::new));
 
-        map.put("mail", new Extension(ServerMail::new, ClientMail::new));
-        map.put("rcpt", new Extension(ServerRcpt::new, ClientRcpt::new));
+        addExtension("mail", new Extension(ServerMail::new, ClientMail::new));
+        addExtension("rcpt", new Extension(ServerRcpt::new, ClientRcpt::new));
 
-        map.put("data", new Extension(ServerData::new, ClientData::new));
-        map.put("bdat", new Extension(ServerData::new, ClientData::new));
+        addExtension("data", new Extension(ServerData::new, ClientData::new));
+        addExtension("bdat", new Extension(ServerData::new, ClientData::new));
 
-        map.put("rset", new Extension(ServerRset::new, ClientRset::new));
-        map.put("help", new Extension(ServerHelp::new, ClientHelp::new));
-        map.put("quit", new Extension(ServerQuit::new, ClientQuit::new));
+        addExtension("rset", new Extension(ServerRset::new, ClientRset::new));
+        addExtension("help", new Extension(ServerHelp::new, ClientHelp::new));
+        addExtension("quit", new Extension(ServerQuit::new, ClientQuit::new));
     }
 
     /**
@@ -60,11 +70,12 @@ public class Extensions {
 
     /**
      * Gets all extensions.
+     * <p>Use {@link #addExtension(String, Extension)} and {@link #removeExtension(String)} to make changes.
      *
-     * @return Extensions map.
+     * @return Unmodifiable extensions map.
      */
     public static Map<String, Extension> getExtensions() {
-        return map;
+        return Collections.unmodifiableMap(map);
     }
 
     /**
@@ -78,7 +89,7 @@ public class Extensions {
             throw new IllegalArgumentException("Verb cannot be null");
         }
 
-        return isExtension(verb.getKey());
+        return getExtension(verb).isPresent();
     }
 
     /**
@@ -106,7 +117,12 @@ public class Extensions {
             throw new IllegalArgumentException("Verb cannot be null");
         }
 
-        return getExtension(verb.getKey());
+        Keyword keyword = verb.getKeyword();
+        if (keyword != null) {
+            return Optional.ofNullable(builtins[keyword.ordinal()]);
+        }
+
+        return Optional.ofNullable(map.get(verb.getKey()));
     }
 
     /**
@@ -135,6 +151,11 @@ public class Extensions {
         }
 
         map.put(name.toLowerCase(), pair);
+
+        Keyword keyword = Keyword.of(name);
+        if (keyword != null) {
+            builtins[keyword.ordinal()] = pair;
+        }
     }
 
     /**
@@ -144,6 +165,11 @@ public class Extensions {
      */
     public static void removeExtension(String name) {
         map.remove(name.toLowerCase());
+
+        Keyword keyword = Keyword.of(name);
+        if (keyword != null) {
+            builtins[keyword.ordinal()] = null;
+        }
     }
 
     /**
@@ -1,15 +1,21 @@
 package com.mimecast.robin.main;
 
 import com.mimecast.robin.config.server.ServerConfig;
+import com.mimecast.robin.config.server.ServerConfigWatcher;
 import com.mimecast.robin.endpoints.ClientEndpoint;
 import com.mimecast.robin.endpoints.RobinMetricsEndpoint;
 import com.mimecast.robin.metrics.MetricsCron;
+import com.mimecast.robin.metrics.MetricsRegistry;
 import com.mimecast.robin.queue.RelayQueueCron;
 import com.mimecast.robin.smtp.SmtpListener;
+import com.mimecast.robin.smtp.connection.TranscriptSink;
 import com.mimecast.robin.smtp.metrics.SmtpMetrics;
 import com.mimecast.robin.smtp.session.Session;
+import com.mimecast.robin.storage.GroupCommit;
 import com.mimecast.robin.storage.StorageCleaner;
+import com.mimecast.robin.storage.StoragePipeline;
 import com.mimecast.robin.util.Magic;
+import com.mimecast.robin.util.MagicTemplate;
 import com.mimecast.robin.util.VaultClient;
 import com.mimecast.robin.util.VaultClientFactory;
 import com.mimecast.robin.util.VaultMagicProvider;
@@ -102,6 +108,7 @@ public class Server extends Foundation {
         }
 
         startup(); // Start prerequisite services.
+        ServerConfigWatcher.start(); // Reload config files on change.
 
         // Start listeners in the thread pool.
         if (!listeners.isEmpty()) {
@@ -126,6 +133,9 @@ public class Server extends Foundation {
         // Start the relay queue cron job for processing queued messages.
         RelayQueueCron.run();
 
+        // Replay accepted messages whose delivery did not finish before the last stop.
+        StoragePipeline.getInstance().recover();
+
         // Start the metrics endpoint for monitoring.
         try {
             new RobinMetricsEndpoint().start(
@@ -135,6 +145,10 @@ public class Server extends Foundation {
             );
             // Initialize SMTP metrics to ensure they appear with zero values at startup.
             SmtpMetrics.initialize();
+            MagicTemplate.registerMetrics(MetricsRegistry.getPrometheusRegistry());
+            MagicTemplate.registerMetrics(MetricsRegistry.getGraphiteRegistry());
+            StoragePipeline.registerMetrics(MetricsRegistry.getPrometheusRegistry());
+            StoragePipeline.registerMetrics(MetricsRegistry.getGraphiteRegistry());
         } catch (IOException e) {
             log.error("Unable to start monitoring endpoint: {}", e.getMessage());
         }
@@ -210,6 +224,15 @@ public class Server extends Foundation {
                 }
             }
 
+            // Finish post-acceptance work, anything left stays journaled.
+            StoragePipeline.drain(5000);
+
+            // Commit stored files still waiting for a batch.
+            GroupCommit.drain(2000);
+
+            // Write out transcripts of closed sessions.
+            TranscriptSink.drain(2000);
+
             log.info("Shutdown complete.");
         }));
     }
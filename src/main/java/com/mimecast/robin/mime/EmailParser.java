@@ -75,9 +75,9 @@ public class EmailParser {
     /**
      * Constructs a new EmailParser instance from a file path.
      * <p>
-     * Uses a default pushback buffer size of 1024 bytes, which is sufficient for most
-     * email messages. The pushback buffer is used for boundary detection and backtracking
-     * when reading multipart boundaries.
+     * Uses a default initial line buffer size of 1024 bytes, which is sufficient for most
+     * email messages. The same buffer holds bytes pushed back for boundary detection and
+     * backtracking when reading multipart boundaries.
      *
      * @param path Path to the email file (.eml format)
      * @throws FileNotFoundException If the email file does not exist or cannot be opened
@@ -90,12 +90,12 @@ public class EmailParser {
     /**
      * Constructs a new EmailParser instance from a file path with custom buffer size.
      * <p>
-     * Allows customization of the pushback buffer size. Use a larger buffer if parsing
-     * very complex multipart messages with large boundaries, or a smaller buffer for
-     * memory-constrained environments.
+     * Allows customization of the initial line buffer size. The buffer grows to fit
+     * longer lines and pushed back bytes, so a larger size mainly reduces read calls,
+     * while a smaller one suits memory-constrained environments.
      *
      * @param path Path to the email file (.eml format)
-     * @param size Pushback buffer size in bytes. Recommended minimum: 512, default: 1024
+     * @param size Initial line buffer size in bytes. Recommended minimum: 512, default: 1024
      * @throws FileNotFoundException If the email file does not exist or cannot be opened
      * @see #EmailParser(LineInputStream)
      */
@@ -0,0 +1,134 @@
+package com.mimecast.robin.mx.rbl;
+
+import com.mimecast.robin.config.server.RblConfig;
+import com.mimecast.robin.config.server.ServerConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.util.CidrTrie;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Trusted and denied network policy.
+ *
+ * <p>Classifies client addresses against the <i>trustedNetworks</i> and <i>deniedNetworks</i> CIDR lists in {@link RblConfig}.
+ * <p>Trusted clients skip RBL checks and denied clients are rejected, both without any DNS traffic.
+ * <p>The longest matching prefix decides and denied wins over trusted for the same prefix.
+ * <p>Prefixes are compiled into a {@link CidrTrie} published through a volatile field so lookups take no lock.
+ * <p>The trie is rebuilt when the server config is reloaded or on {@link #reload()}.
+ *
+ * @see CidrTrie
+ */
+public final class NetworkPolicy {
+    private static final Logger log = LogManager.getLogger(NetworkPolicy.class);
+
+    /**
+     * Network verdicts.
+     */
+    public enum Verdict {
+        TRUSTED, // Skip RBL checks.
+        DENIED, // Reject without RBL checks.
+        NONE // Check RBLs.
+    }
+
+    /**
+     * Compiled policy.
+     *
+     * @param source Server config it was built from.
+     * @param trie   Prefix trie.
+     */
+    private record Compiled(ServerConfig source, CidrTrie<Verdict> trie) {
+    }
+
+    /**
+     * Current policy.
+     */
+    private static volatile Compiled compiled = new Compiled(null, new CidrTrie<>());
+
+    /**
+     * Private constructor for utility class.
+     */
+    private NetworkPolicy() {
+    }
+
+    /**
+     * Classifies client address.
+     *
+     * @param ip IP address literal.
+     * @return Verdict, NONE if unmatched or invalid.
+     */
+    public static Verdict classify(String ip) {
+        Compiled current = compiled;
+        if (current.source() != Config.getServer()) {
+            current = refresh();
+        }
+
+        if (current.trie().isEmpty()) {
+            return Verdict.NONE;
+        }
+
+        Verdict verdict = current.trie().get(ip);
+        return verdict != null ? verdict : Verdict.NONE;
+    }
+
+    /**
+     * Rebuilds policy from the current server config.
+     */
+    public static synchronized void reload() {
+        compiled = compile(Config.getServer());
+    }
+
+    /**
+     * Rebuilds policy if the server config changed since.
+     *
+     * @return Compiled policy.
+     */
+    private static synchronized Compiled refresh() {
+        if (compiled.source() != Config.getServer()) {
+            compiled = compile(Config.getServer());
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles policy.
+     *
+     * @param server ServerConfig instance or null.
+     * @return Compiled policy.
+     */
+    private static Compiled compile(ServerConfig server) {
+        return new Compiled(server, build(server != null ? server.getRblConfig() : new RblConfig(null)));
+    }
+
+    /**
+     * Builds prefix trie from config.
+     * <p>Invalid prefixes are logged and skipped.
+     *
+     * @param config RblConfig instance.
+     * @return CidrTrie instance.
+     */
+    public static CidrTrie<Verdict> build(RblConfig config) {
+        CidrTrie<Verdict> trie = new CidrTrie<>();
+        add(trie, config.getTrustedNetworks(), Verdict.TRUSTED);
+        add(trie, config.getDeniedNetworks(), Verdict.DENIED);
+        return trie;
+    }
+
+    /**
+     * Adds prefixes to trie.
+     *
+     * @param trie     CidrTrie instance.
+     * @param prefixes List of CIDR prefixes.
+     * @param verdict  Verdict.
+     */
+    private static void add(CidrTrie<Verdict> trie, List<String> prefixes, Verdict verdict) {
+        for (String prefix : prefixes) {
+            try {
+                trie.put(prefix, verdict);
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping {} network: {}", verdict.name().toLowerCase(), e.getMessage());
+            }
+        }
+    }
+}
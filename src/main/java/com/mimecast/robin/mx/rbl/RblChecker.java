@@ -1,26 +1,17 @@
 package com.mimecast.robin.mx.rbl;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.xbill.DNS.Lookup;
-import org.xbill.DNS.Record;
-import org.xbill.DNS.TextParseException;
-import org.xbill.DNS.Type;
+import com.mimecast.robin.util.CidrTrie;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * RBL (Realtime Blackhole List) Checker.
  *
  * <p>This utility class provides methods to check if an IP address is listed in RBL services.
  * It supports checking against multiple RBL providers in parallel and provides timeout functionality.
+ * <p>Lookups run on the shared {@link RblEngine} so results are cached and deduplicated across callers.
  *
  * <p>Usage example:
  * <pre>
@@ -35,7 +26,6 @@ import java.util.stream.Collectors;
  * </pre>
  */
 public class RblChecker {
-    private static final Logger log = LogManager.getLogger(RblChecker.class);
     private static final int DEFAULT_TIMEOUT_SECONDS = 5;
 
     /**
@@ -62,38 +52,7 @@ public class RblChecker {
             return Collections.emptyList();
         }
 
-        // Create thread pool for parallel queries
-        ExecutorService executor = Executors.newFixedThreadPool(
-                Math.min(rblProviders.size(), 10) // Limit max threads
-        );
-
-        try {
-            // Create a future for each RBL check
-            List<CompletableFuture<RblResult>> futures = rblProviders.stream()
-                    .map(rbl -> CompletableFuture.supplyAsync(
-                            () -> checkIpAgainstRbl(ip, rbl),
-                            executor
-                    ))
-                    .collect(Collectors.toList());
-
-            // Combine all futures into a single future that completes when all checks complete
-            CompletableFuture<List<RblResult>> allFutures = CompletableFuture.allOf(
-                    futures.toArray(new CompletableFuture[0])
-            ).thenApply(v ->
-                    futures.stream()
-                            .map(CompletableFuture::join)
-                            .collect(Collectors.toList())
-            );
-
-            // Wait for completion with timeout
-            return allFutures.get(timeoutSeconds, TimeUnit.SECONDS);
-
-        } catch (Exception e) {
-            log.error("Error checking IP against RBLs: {}", e.getMessage());
-            return Collections.emptyList();
-        } finally {
-            executor.shutdown();
-        }
+        return RblEngine.getInstance().check(ip, rblProviders, timeoutSeconds).join();
     }
 
     /**
@@ -104,33 +63,9 @@ public class RblChecker {
      * @return RBL check result
      */
     public static RblResult checkIpAgainstRbl(String ip, String rblProvider) {
-        try {
-            String reversedIp = reverseIp(ip);
-            String lookupDomain = reversedIp + "." + rblProvider;
-
-            log.debug("Checking {} against RBL {}", ip, rblProvider);
-
-            Record[] records = new Lookup(lookupDomain, Type.A).run();
-
-            boolean isListed = (records != null && records.length > 0);
-            List<String> aRecords = new ArrayList<>();
-
-            if (isListed) {
-                for (Record record : records) {
-                    aRecords.add(record.rdataToString());
-                }
-                log.debug("{} is listed in {} with responses: {}", ip, rblProvider, aRecords);
-            }
-
-            return new RblResult(ip, rblProvider, isListed, aRecords);
-
-        } catch (TextParseException e) {
-            log.warn("Invalid lookup format for IP {} against {}: {}", ip, rblProvider, e.getMessage());
-            return new RblResult(ip, rblProvider, false, Collections.emptyList());
-        } catch (Exception e) {
-            log.error("Error checking {} against {}: {}", ip, rblProvider, e.getMessage());
-            return new RblResult(ip, rblProvider, false, Collections.emptyList());
-        }
+        return RblEngine.getInstance().check(ip, rblProvider)
+                .completeOnTimeout(new RblResult(ip, rblProvider, false, Collections.emptyList()), DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .join();
     }
 
     /**
@@ -171,6 +106,7 @@ public class RblChecker {
 
     /**
      * Check if an IP address is valid.
+     * <p>Only IPv4 addresses can be checked against RBLs.
      *
      * @param ip The IP address to validate
      * @return true if the IP address is valid, false otherwise
@@ -180,21 +116,6 @@ public class RblChecker {
             return false;
         }
 
-        // Regex for IPv4 format (doesn't validate octet values)
-        String ipv4Pattern = "^(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})$";
-        if (!ip.matches(ipv4Pattern)) {
-            return false;
-        }
-
-        // Validate each octet is between 0-255
-        String[] octets = ip.split("\\.");
-        for (String octet : octets) {
-            int value = Integer.parseInt(octet);
-            if (value < 0 || value > 255) {
-                return false;
-            }
-        }
-
-        return true;
+        return CidrTrie.parseIpv4(ip) != null;
     }
 }
@@ -0,0 +1,302 @@
+package com.mimecast.robin.mx.rbl;
+
+import com.mimecast.robin.config.server.RblConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.util.AsyncTtlCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xbill.DNS.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared RBL lookup engine.
+ *
+ * <p>Queries RBL zones with the dnsjava async resolver API so no thread waits on DNS.
+ * <p>Results are cached per (IP, provider) in a bounded cache shared by all connections.
+ * <p>Listings are cached for their A record TTL capped by {@link RblConfig#getMaxTtl()}.
+ * <p>Not listed results are cached for the SOA minimum of the zone or {@link RblConfig#getNegativeTtl()} if none.
+ * <p>Server failures and errors are not cached and count as not listed.
+ * <p>Concurrent checks of the same (IP, provider) share one query.
+ * <p>Queries in flight are capped by {@link RblConfig#getMaxConcurrentQueries()} and others wait in a queue.
+ *
+ * @see RblChecker
+ */
+public class RblEngine {
+    private static final Logger log = LogManager.getLogger(RblEngine.class);
+
+    /**
+     * Shared instance.
+     */
+    private static volatile RblEngine instance;
+
+    /**
+     * Cache of listing records by IP and provider.
+     * <p>An empty list means not listed.
+     */
+    private final AsyncTtlCache<String, List<String>> cache;
+
+    /**
+     * Query permits.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Queries waiting for a permit.
+     */
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Resolver or null for the dnsjava default resolver.
+     */
+    private final Resolver resolver;
+
+    private final long maxTtl;
+    private final long negativeTtl;
+
+    /**
+     * Gets shared instance.
+     * <p>Configured from the server config on first use.
+     *
+     * @return RblEngine instance.
+     */
+    public static RblEngine getInstance() {
+        if (instance == null) {
+            synchronized (RblEngine.class) {
+                if (instance == null) {
+                    instance = new RblEngine(Config.getServer() != null ? Config.getServer().getRblConfig() : new RblConfig(null));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Constructs a new RblEngine instance.
+     *
+     * @param config RblConfig instance.
+     */
+    public RblEngine(RblConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * Constructs a new RblEngine instance with given resolver.
+     *
+     * @param config   RblConfig instance.
+     * @param resolver Resolver instance or null for the dnsjava default resolver.
+     */
+    RblEngine(RblConfig config, Resolver resolver) {
+        this.resolver = resolver;
+        this.cache = new AsyncTtlCache<>(config.getCacheSize());
+        this.permits = new Semaphore(Math.max(1, config.getMaxConcurrentQueries()));
+        this.maxTtl = config.getMaxTtl() * 1000L;
+        this.negativeTtl = config.getNegativeTtl() * 1000L;
+    }
+
+    /**
+     * Checks an IP address against multiple RBL providers.
+     * <p>Providers not answering within the timeout count as not listed.
+     *
+     * @param ip             The IP address to check.
+     * @param rblProviders   List of RBL provider domains.
+     * @param timeoutSeconds Timeout in seconds.
+     * @return Future of results in provider order.
+     */
+    public CompletableFuture<List<RblResult>> check(String ip, List<String> rblProviders, int timeoutSeconds) {
+        if (ip == null || ip.isEmpty() || rblProviders == null || rblProviders.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        List<CompletableFuture<RblResult>> futures = new ArrayList<>(rblProviders.size());
+        for (String provider : rblProviders) {
+            futures.add(check(ip, provider)
+                    .completeOnTimeout(notListed(ip, provider), timeoutSeconds, TimeUnit.SECONDS));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Checks an IP address against a single RBL provider.
+     *
+     * @param ip          The IP address to check.
+     * @param rblProvider The RBL provider domain.
+     * @return Future of result, never exceptional.
+     */
+    public CompletableFuture<RblResult> check(String ip, String rblProvider) {
+        if (!RblChecker.isValidIp(ip)) {
+            log.warn("Invalid IP {} for RBL {}", ip, rblProvider);
+            return CompletableFuture.completedFuture(notListed(ip, rblProvider));
+        }
+
+        return cache.get(ip + "|" + rblProvider, key -> resolve(ip, rblProvider))
+                .handle((records, error) -> {
+                    if (error != null) {
+                        log.error("Error checking {} against {}: {}", ip, rblProvider, cause(error).getMessage());
+                        return notListed(ip, rblProvider);
+                    }
+                    if (!records.isEmpty()) {
+                        log.debug("{} is listed in {} with responses: {}", ip, rblProvider, records);
+                    }
+                    return new RblResult(ip, rblProvider, !records.isEmpty(), records);
+                });
+    }
+
+    /**
+     * Gets number of cached results.
+     *
+     * @return Cache size.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Gets number of checks served from cache or in-flight queries.
+     *
+     * @return Hits.
+     */
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Gets number of checks that sent a query.
+     *
+     * @return Misses.
+     */
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Resolves RBL zone A records.
+     *
+     * @param ip          The IP address to check.
+     * @param rblProvider The RBL provider domain.
+     * @return Future of listing records with TTL.
+     */
+    private CompletionStage<AsyncTtlCache.Timed<List<String>>> resolve(String ip, String rblProvider) {
+        log.debug("Checking {} against RBL {}", ip, rblProvider);
+
+        Message query;
+        try {
+            Name name = Name.fromString(RblChecker.reverseIp(ip) + "." + rblProvider, Name.root);
+            query = Message.newQuery(org.xbill.DNS.Record.newRecord(name, Type.A, DClass.IN));
+        } catch (TextParseException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return send(query).thenApply(response -> {
+            int rcode = response.getRcode();
+            if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN) {
+                throw new CompletionException(new IOException("RBL " + rblProvider + " answered " + Rcode.string(rcode)));
+            }
+
+            List<String> records = new ArrayList<>();
+            long ttl = maxTtl;
+            for (org.xbill.DNS.Record rec : response.getSection(Section.ANSWER)) {
+                if (rec instanceof ARecord) {
+                    records.add(rec.rdataToString());
+                    ttl = Math.min(ttl, rec.getTTL() * 1000L);
+                }
+            }
+
+            return new AsyncTtlCache.Timed<>(Collections.unmodifiableList(records), records.isEmpty() ? negativeTtl(response) : ttl);
+        });
+    }
+
+    /**
+     * Gets negative caching TTL.
+     * <p>Uses the SOA minimum from the authority section as per RFC 2308.
+     *
+     * @param response DNS response.
+     * @return TTL in milliseconds.
+     * @see <a href="https://tools.ietf.org/html/rfc2308#section-5">RFC 2308 #5</a>
+     */
+    private long negativeTtl(Message response) {
+        for (org.xbill.DNS.Record rec : response.getSection(Section.AUTHORITY)) {
+            if (rec instanceof SOARecord soa) {
+                return Math.min(Math.min(soa.getMinimum(), soa.getTTL()) * 1000L, maxTtl);
+            }
+        }
+        return negativeTtl;
+    }
+
+    /**
+     * Sends query once a permit is available.
+     *
+     * @param query DNS query.
+     * @return Future of DNS response.
+     */
+    private CompletableFuture<Message> send(Message query) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        pending.add(() -> {
+            CompletionStage<Message> stage;
+            try {
+                stage = (resolver != null ? resolver : Lookup.getDefaultResolver()).sendAsync(query);
+            } catch (RuntimeException e) {
+                stage = CompletableFuture.failedFuture(e);
+            }
+
+            stage.whenComplete((response, error) -> {
+                permits.release();
+                drain();
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(response);
+                }
+            });
+        });
+        drain();
+        return future;
+    }
+
+    /**
+     * Starts pending queries while permits are available.
+     */
+    private void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable task = pending.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * Builds not listed result.
+     *
+     * @param ip          The IP address.
+     * @param rblProvider The RBL provider domain.
+     * @return RblResult instance.
+     */
+    private static RblResult notListed(String ip, String rblProvider) {
+        return new RblResult(ip, rblProvider, false, Collections.emptyList());
+    }
+
+    /**
+     * Unwraps completion exception.
+     *
+     * @param error Throwable.
+     * @return Cause.
+     */
+    private static Throwable cause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
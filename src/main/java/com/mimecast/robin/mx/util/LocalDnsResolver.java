@@ -8,10 +8,11 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 
 /**
@@ -22,6 +23,8 @@ import java.util.concurrent.Executor;
  * <p>Strings should not exceed 255 bytes.
  * <p>A strings should be valid IPv4 addresses.
  * <p>NS, MX and PTR strings should not be empty.
+ * <p>An empty answer list is a local answer with no records.
+ * <p>Async queries without a local entry are sent to the wrapped resolver.
  *
  * @author "Vlad Marian" <vmarian@mimecast.com>
  * @link <a href="http://mimecast.com">Mimecast</a>
@@ -33,7 +36,28 @@ public class LocalDnsResolver implements Resolver {
     /**
      * Static database.
      */
-    private static final Map<String, Map<Integer, List<String>>> map = new HashMap<>();
+    private static final Map<String, Map<Integer, List<String>>> map = new ConcurrentHashMap<>();
+
+    /**
+     * Wrapped resolver for queries without a local entry.
+     */
+    private final Resolver resolver;
+
+    /**
+     * Constructs a new LocalDnsResolver instance wrapping the system resolver.
+     */
+    public LocalDnsResolver() {
+        this(new ExtendedResolver());
+    }
+
+    /**
+     * Constructs a new LocalDnsResolver instance.
+     *
+     * @param resolver Wrapped Resolver instance.
+     */
+    public LocalDnsResolver(Resolver resolver) {
+        this.resolver = resolver;
+    }
 
     /**
      * Put entries in database.
@@ -42,7 +66,18 @@ public class LocalDnsResolver implements Resolver {
      * @param answer Answer list of strings.
      */
     public static void put(String record, int type, List<String> answer) {
-        map.computeIfAbsent(record, k -> new HashMap<>()).put(type, answer);
+        map.computeIfAbsent(record, k -> new ConcurrentHashMap<>()).put(type, answer);
+    }
+
+    /**
+     * Checks for local entry.
+     *
+     * @param question Record question instance.
+     * @return Boolean.
+     */
+    private boolean has(org.xbill.DNS.Record question) {
+        Map<Integer, List<String>> answer = map.get(question.getName().toString(true));
+        return answer != null && answer.containsKey(question.getType());
     }
 
     /**
@@ -140,14 +175,35 @@ public class LocalDnsResolver implements Resolver {
         return answer;
     }
 
+    /**
+     * Resolves DNS queries from the static deque asynchronously.
+     * <p>Queries without a local entry are sent to the wrapped resolver.
+     *
+     * @param query Record question instance.
+     * @return Record answer instance.
+     */
     @Override
     public CompletionStage<Message> sendAsync(Message query) {
-        return new ExtendedResolver().sendAsync(query);
+        if (has(query.getQuestion())) {
+            return CompletableFuture.completedFuture(send(query));
+        }
+        return resolver.sendAsync(query);
     }
 
+    /**
+     * Resolves DNS queries from the static deque asynchronously.
+     * <p>Queries without a local entry are sent to the wrapped resolver.
+     *
+     * @param query    Record question instance.
+     * @param executor Executor for the wrapped resolver.
+     * @return Record answer instance.
+     */
     @Override
     public CompletionStage<Message> sendAsync(Message query, Executor executor) {
-        return new ExtendedResolver().sendAsync(query, executor);
+        if (has(query.getQuestion())) {
+            return CompletableFuture.completedFuture(send(query));
+        }
+        return resolver.sendAsync(query, executor);
     }
 
     /**
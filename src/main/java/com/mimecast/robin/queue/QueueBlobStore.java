@@ -0,0 +1,264 @@
+package com.mimecast.robin.queue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed queue blob store.
+ * <p>
+ * Stores each distinct message body once under the queue "blobs" folder keyed by its SHA-256.
+ * Envelopes reference a blob through their own hard link named after the hash,
+ * so the file system link count is the reference count and survives restarts.
+ * <p>
+ * Blobs are copied once under a temporary name and moved into place atomically.
+ * When the last envelope reference is released the blob is deleted.
+ * Blobs left without references by a crash between storing and linking are removed by {@link #sweep(Path)}.
+ * <p>
+ * Without hard link support or link counts each envelope gets its own plain copy and no blob is kept.
+ */
+public final class QueueBlobStore {
+    private static final Logger log = LogManager.getLogger(QueueBlobStore.class);
+
+    /**
+     * Reference file name prefix.
+     */
+    static final String PREFIX = "qeml-";
+
+    /**
+     * Reference file name pattern capturing the blob hash.
+     */
+    private static final Pattern REFERENCE = Pattern.compile("^" + PREFIX + "([0-9a-f]{64})-");
+
+    /**
+     * Guards blob creation against deletion of its last reference.
+     */
+    private static final Object lock = new Object();
+
+    private QueueBlobStore() {}
+
+    /**
+     * Adds envelope reference to blob of given file.
+     * <p>Stores the blob first if no other envelope holds the same content.
+     *
+     * @param queueDir Queue folder.
+     * @param src      Source message file.
+     * @param name     Reference name suffix, made unique if taken.
+     * @return Reference file path.
+     * @throws IOException Unable to read or write.
+     */
+    public static Path acquire(Path queueDir, Path src, String name) throws IOException {
+        Path blobs = queueDir.resolve("blobs");
+        Files.createDirectories(blobs);
+        if (!isLinkable(blobs)) {
+            return copy(queueDir, src, name);
+        }
+
+        String hash = hash(src);
+        Path blob = blobs.resolve(hash + ".eml");
+
+        synchronized (lock) {
+            boolean stored = false;
+            if (!Files.exists(blob)) {
+                store(src, blob);
+                stored = true;
+            }
+
+            Path reference = unique(queueDir, PREFIX + hash + "-" + name);
+            try {
+                Files.createLink(reference, blob);
+                log.debug("Queue blob {} referenced by {}", hash, reference.getFileName());
+                return reference;
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("Queue blob {} not linked: {}", hash, e.getMessage());
+                if (stored) {
+                    Files.deleteIfExists(blob);
+                }
+            }
+        }
+
+        // No hard link, fall back to a copy of its own.
+        return copy(queueDir, src, name);
+    }
+
+    /**
+     * Releases envelope reference.
+     * <p>Deletes the blob too once no other reference links to it.
+     * <p>Files not made by this store are just deleted.
+     *
+     * @param reference Reference file path.
+     * @throws IOException Unable to delete.
+     */
+    public static void release(Path reference) throws IOException {
+        Matcher matcher = REFERENCE.matcher(reference.getFileName().toString());
+        if (!matcher.find()) {
+            Files.deleteIfExists(reference);
+            return;
+        }
+
+        Path blob = reference.toAbsolutePath().getParent().resolve("blobs").resolve(matcher.group(1) + ".eml");
+        synchronized (lock) {
+            Files.deleteIfExists(reference);
+
+            // Only the blob name left.
+            if (getLinks(blob) == 1) {
+                Files.deleteIfExists(blob);
+                log.debug("Queue blob {} released", blob.getFileName());
+            }
+        }
+    }
+
+    /**
+     * Deletes blobs no envelope references and temporary files left by a crash.
+     * <p>Run at startup before any envelope is queued or released.
+     *
+     * @param queueDir Queue folder.
+     * @return Number of files deleted.
+     */
+    public static int sweep(Path queueDir) {
+        Path blobs = queueDir.resolve("blobs");
+        if (!Files.isDirectory(blobs) || !isLinkable(blobs)) {
+            return 0;
+        }
+
+        int deleted = 0;
+        synchronized (lock) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(blobs)) {
+                for (Path path : stream) {
+                    String filename = path.getFileName().toString();
+                    boolean orphan = filename.endsWith(".eml") && getLinks(path) == 1;
+                    if (orphan || (filename.startsWith("blob-") && filename.endsWith(".tmp"))) {
+                        Files.deleteIfExists(path);
+                        deleted++;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Queue blob sweep of {} failed: {}", blobs, e.getMessage());
+            }
+        }
+
+        if (deleted > 0) {
+            log.info("Queue blob sweep deleted {} unreferenced files from {}", deleted, blobs);
+        }
+        return deleted;
+    }
+
+    /**
+     * Gets number of hard links to file.
+     *
+     * @param path File path.
+     * @return Link count, 0 if missing or unknown.
+     */
+    static int getLinks(Path path) {
+        try {
+            return (Integer) Files.getAttribute(path, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            // Missing or can't tell, either way leave it.
+            return 0;
+        }
+    }
+
+    /**
+     * Checks folder file store reports link counts.
+     * <p>Without them references can't be counted and blobs would never be freed.
+     *
+     * @param dir Folder.
+     * @return Boolean.
+     */
+    static boolean isLinkable(Path dir) {
+        try {
+            return Files.getFileStore(dir).supportsFileAttributeView("unix");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies file into queue folder as a plain reference with no blob.
+     *
+     * @param queueDir Queue folder.
+     * @param src      Source message file.
+     * @param name     Reference name suffix, made unique if taken.
+     * @return Reference file path.
+     * @throws IOException Unable to copy.
+     */
+    private static Path copy(Path queueDir, Path src, String name) throws IOException {
+        synchronized (lock) {
+            Path reference = unique(queueDir, PREFIX + name);
+            Files.copy(src, reference);
+            log.debug("Queue file copied to {}", reference.getFileName());
+            return reference;
+        }
+    }
+
+    /**
+     * Stores blob by copying it under a temporary name and moving it in place.
+     * <p>Not linked to the source as storage links would count as references.
+     *
+     * @param src  Source message file.
+     * @param blob Blob path.
+     * @throws IOException Unable to write.
+     */
+    private static void store(Path src, Path blob) throws IOException {
+        Path temp = Files.createTempFile(blob.getParent(), "blob-", ".tmp");
+        try {
+            Files.copy(src, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Gets name not taken in folder.
+     *
+     * @param dir  Folder.
+     * @param name Preferred name.
+     * @return Path instance.
+     */
+    private static Path unique(Path dir, String name) {
+        Path candidate = dir.resolve(name);
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+
+        for (int i = 1; Files.exists(candidate); i++) {
+            candidate = dir.resolve(base + "-" + i + ext);
+        }
+        return candidate;
+    }
+
+    /**
+     * Hashes file content.
+     *
+     * @param path File path.
+     * @return Hex SHA-256.
+     * @throws IOException Unable to read.
+     */
+    static String hash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (InputStream input = new DigestInputStream(Files.newInputStream(path), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
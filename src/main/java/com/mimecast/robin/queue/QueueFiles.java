@@ -16,9 +16,11 @@ import java.util.List;
 /**
  * Queue file utilities.
  * <p>
- * Ensures that any files referenced by envelopes in a RelaySession are copied to a
+ * Ensures that any files referenced by envelopes in a RelaySession are referenced from a
  * persistent "queue" subfolder under the configured storage path. This prevents
  * them from being cleaned up on restart.
+ * <p>
+ * Content is kept once in the {@link QueueBlobStore} however many sessions relay it.
  */
 public final class QueueFiles {
     private static final Logger log = LogManager.getLogger(QueueFiles.class);
@@ -26,7 +28,7 @@ public final class QueueFiles {
     private QueueFiles() {}
 
     /**
-     * Move any envelope files into the storage/queue folder and update their paths.
+     * Reference any envelope files from the storage/queue folder and update their paths.
      * This is idempotent: if a file is already inside the queue folder, it is skipped.
      *
      * @param relaySession RelaySession containing a Session with envelopes.
@@ -53,7 +55,7 @@ public final class QueueFiles {
             }
 
             try {
-                if (filePath.contains("qeml-")) {
+                if (filePath.contains(QueueBlobStore.PREFIX)) {
                     log.debug("Envelope file already in queue, skipping move: {}", filePath);
                     continue;
                 }
@@ -64,24 +66,11 @@ public final class QueueFiles {
                     continue;
                 }
 
-                String fileName = "qeml-" + src.getFileName().toString();
-                Path target = queueDir.resolve(fileName);
-
-                // Ensure unique target if file exists.
-                if (Files.exists(target)) {
-                    String unique = uniqueName(queueDir, fileName, relaySession.getSession().getUID(), i);
-                    target = queueDir.resolve(unique);
-                }
-
-                // Try to copy
-                try {
-                    Files.copy(src, target);
-                } catch (IOException ex) {
-                    log.debug("Copy failed ({}),  {}", src, ex.getMessage());
-                }
+                String name = relaySession.getSession().getUID() + "." + i + ".eml";
+                Path target = QueueBlobStore.acquire(queueDir, src, name);
 
                 env.setFile(target.toString());
-                log.info("Copied envelope file to persistent queue: {} -> {}", src, target);
+                log.info("Referenced envelope file from persistent queue: {} -> {}", src, target);
             } catch (Exception ex) {
                 log.error("Failed copying envelope file to queue: {} ({}): {}", filePath, new File(filePath).exists(), ex.getMessage());
             }
@@ -89,27 +78,19 @@ public final class QueueFiles {
     }
 
     /**
-     * Generate a unique filename within the specified directory.
+     * Release envelope file once its envelope is done with.
+     * <p>Queue blobs are only deleted with their last reference.
      *
-     * @param dir       Target directory Path.
-     * @param original  Original filename.
-     * @param uid       Session UID for uniqueness.
-     * @param index     Envelope index for uniqueness.
-     * @return Unique filename as String.
+     * @param envelope MessageEnvelope instance.
      */
-    private static String uniqueName(Path dir, String original, String uid, int index) {
-        int dot = original.lastIndexOf('.');
-        String base = (dot > 0) ? original.substring(0, dot) : original;
-        String ext = (dot > 0) ? original.substring(dot) : "";
-
-        // Try with session UID and envelope index to avoid collision.
-        String candidate = base + "." + uid + "." + index + ext;
-        if (!Files.exists(dir.resolve(candidate))) return candidate;
+    public static void releaseEnvelopeFile(MessageEnvelope envelope) {
+        if (envelope == null || StringUtils.isBlank(envelope.getFile())) return;
 
-        int i = 1;
-        while (Files.exists(dir.resolve(base + "." + uid + "." + index + "-" + i + ext))) {
-            i++;
+        try {
+            QueueBlobStore.release(Paths.get(envelope.getFile()));
+            log.debug("Released envelope file: {}", envelope.getFile());
+        } catch (IOException e) {
+            log.error("Failed to release envelope file: {}, error={}", envelope.getFile(), e.getMessage());
         }
-        return base + "." + uid + "." + index + "-" + i + ext;
     }
 }
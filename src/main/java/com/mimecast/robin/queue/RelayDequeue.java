@@ -10,9 +10,6 @@ import com.mimecast.robin.smtp.transaction.EnvelopeTransactionList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -222,24 +219,14 @@ public class RelayDequeue {
     }
 
     /**
-     * Deletes the files associated with successful envelopes.
+     * Releases the files associated with successful envelopes.
+     * <p>Queue blobs shared with other sessions stay until their last reference is released.
      *
      * @param successfulEnvelopes the list of successfully delivered envelopes
      */
     void cleanupSuccessfulEnvelopes(List<MessageEnvelope> successfulEnvelopes) {
         for (MessageEnvelope envelope : successfulEnvelopes) {
-            if (envelope.getFile() != null) {
-                Path path = Path.of(envelope.getFile());
-                if (Files.exists(path)) {
-                    try {
-                        Files.delete(path);
-                        log.debug("Deleted envelope file: {}", envelope.getFile());
-                    } catch (IOException e) {
-                        log.error("Failed to delete envelope file: {}, error={}", 
-                                envelope.getFile(), e.getMessage());
-                    }
-                }
-            }
+            QueueFiles.releaseEnvelopeFile(envelope);
         }
     }
 
@@ -315,6 +302,11 @@ public class RelayDequeue {
 
         log.warn("Max retries reached: uid={}, generatedBounces={}", 
                 relaySession.getSession().getUID(), bounceCount);
+
+        // Bounced envelopes are done with their files too.
+        for (MessageEnvelope envelope : remainingEnvelopes) {
+            QueueFiles.releaseEnvelopeFile(envelope);
+        }
     }
 
     /**
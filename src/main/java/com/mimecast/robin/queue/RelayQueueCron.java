@@ -5,6 +5,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
@@ -53,6 +54,9 @@ public class RelayQueueCron {
         log.info("RelayQueueCron starting: queueFile={}, initialDelaySeconds={}, periodSeconds={}, initialQueueSize={}, maxDequeuePerTick={}",
                 QUEUE_FILE.getAbsolutePath(), INITIAL_DELAY_SECONDS, PERIOD_SECONDS, initialQueueSize, MAX_DEQUEUE_PER_TICK);
 
+        // Blobs orphaned by a crash.
+        QueueBlobStore.sweep(Paths.get(Config.getServer().getStorage().getStringProperty("path", "/tmp/store"), "queue"));
+
         scheduler = Executors.newScheduledThreadPool(1);
 
         Runnable task = () -> {
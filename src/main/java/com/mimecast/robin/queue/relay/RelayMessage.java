@@ -5,6 +5,7 @@ import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Factories;
 import com.mimecast.robin.mime.EmailParser;
 import com.mimecast.robin.mime.headers.MimeHeader;
+import com.mimecast.robin.mime.headers.MimeHeaders;
 import com.mimecast.robin.mx.MXResolver;
 import com.mimecast.robin.mx.MXRoute;
 import com.mimecast.robin.queue.PersistentQueue;
@@ -29,7 +30,7 @@ public class RelayMessage {
     private static final Logger log = LogManager.getLogger(RelayMessage.class);
 
     private final Connection connection;
-    private final EmailParser parser;
+    private final MimeHeaders headers;
 
     /**
      * Constructs a RelayMessage with the given connection and optional parser.
@@ -37,7 +38,7 @@ public class RelayMessage {
      * @param connection Connection instance.
      */
     public RelayMessage(Connection connection) {
-        this(connection, null);
+        this(connection, (MimeHeaders) null);
     }
 
     /**
@@ -47,12 +48,22 @@ public class RelayMessage {
      * @param parser     EmailParser instance.
      */
     public RelayMessage(Connection connection, EmailParser parser) {
+        this(connection, parser != null ? parser.getHeaders() : null);
+    }
+
+    /**
+     * Constructs a RelayMessage with the given connection and message headers.
+     *
+     * @param connection Connection instance.
+     * @param headers    MimeHeaders instance.
+     */
+    public RelayMessage(Connection connection, MimeHeaders headers) {
         this.connection = connection;
-        this.parser = parser;
+        this.headers = headers;
     }
 
     /**
-     * Relay the message based on the connection and parser.
+     * Relay the message based on the connection and headers.
      *
      * @return List of Session instances created for relay.
      */
@@ -62,9 +73,9 @@ public class RelayMessage {
         // Sessions for relay.
         final List<Session> sessions = new ArrayList<>();
 
-        // Check if parser given and relay header if not disabled.
-        if (parser != null) {
-            Optional<MimeHeader> optional = parser.getHeaders().get("x-robin-relay");
+        // Check if headers given and relay header if not disabled.
+        if (headers != null) {
+            Optional<MimeHeader> optional = headers.get("x-robin-relay");
             if (!relayConfig.getBooleanProperty("disableRelayHeader")) {
                 optional.ifPresent(header -> sessions.add(getRelaySession(header, connection.getSession().getEnvelopes().getLast())));
             }
@@ -161,6 +172,7 @@ public class RelayMessage {
 
     /**
      * Gets a new relay session from the relay header.
+     * <p>The session gets its own copy of the envelope so it holds its own queue file reference.
      *
      * @param header   Relay header.
      * @param envelope MessageEnvelope instance.
@@ -168,7 +180,7 @@ public class RelayMessage {
      */
     protected Session getRelaySession(MimeHeader header, MessageEnvelope envelope) {
         Session session = Factories.getSession()
-                .addEnvelope(envelope);
+                .addEnvelope(envelope.clone());
 
         if (header.getValue().contains(":")) {
             String[] splits = header.getValue().split(":");
@@ -186,9 +198,11 @@ public class RelayMessage {
     }
 
     /**
-     * Gets a new relay session from the relay header.
+     * Gets a new relay session from the relay config.
+     * <p>The session gets its own copy of the envelope so it holds its own queue file reference.
      *
      * @param relayConfig Relay configuration.
+     * @param envelope    MessageEnvelope instance.
      * @return Session instance.
      */
     protected Session getRelaySession(BasicConfig relayConfig, MessageEnvelope envelope) {
@@ -197,7 +211,7 @@ public class RelayMessage {
                 .setMx(Collections.singletonList(relayConfig.getStringProperty("host")))
                 .setPort(Math.toIntExact(relayConfig.getLongProperty("port")))
                 .setTls(relayConfig.getBooleanProperty("tls"))
-                .addEnvelope(envelope);
+                .addEnvelope(envelope.clone());
 
         if (relayConfig.getStringProperty("protocol").equalsIgnoreCase("smtp")) {
             session.setHelo(Config.getServer().getHostname());
@@ -0,0 +1,161 @@
+package com.mimecast.robin.smtp;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection admission controller.
+ *
+ * <p>Bounds the number of concurrently served connections with a fair {@link Semaphore} of worker slots.
+ * <p>Connections that find no free slot wait in a bounded queue for up to the maximum queue time.
+ * <p>Connections that find the queue full are rejected straight away so the accept loop never blocks.
+ * <p>Queued connections are served in arrival order and new arrivals do not overtake them.
+ *
+ * @see SmtpListener
+ */
+public class AdmissionController {
+
+    /**
+     * Admission decisions.
+     */
+    public enum Decision {
+        ADMITTED, // Slot acquired, serve now.
+        QUEUED, // Wait for a slot with {@link #await()}.
+        REJECTED // Queue full, turn away.
+    }
+
+    /**
+     * Worker slots.
+     */
+    private final Semaphore slots;
+
+    /**
+     * Maximum number of waiting connections.
+     */
+    private final int queueSize;
+
+    /**
+     * Maximum queue time in milliseconds.
+     */
+    private final long maxQueueTime;
+
+    /**
+     * Number of connections currently waiting.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Admission stats.
+     */
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong shedCount = new AtomicLong();
+
+    /**
+     * Constructs a new AdmissionController instance.
+     *
+     * @param slots        Number of worker slots.
+     * @param queueSize    Maximum number of waiting connections.
+     * @param maxQueueTime Maximum queue time in milliseconds.
+     */
+    public AdmissionController(int slots, int queueSize, long maxQueueTime) {
+        this.slots = new Semaphore(slots, true);
+        this.queueSize = Math.max(0, queueSize);
+        this.maxQueueTime = maxQueueTime;
+    }
+
+    /**
+     * Attempts to admit a connection without blocking.
+     * <p>A {@link Decision#QUEUED} result must be followed by a call to {@link #await()}.
+     *
+     * @return Decision.
+     */
+    public Decision tryAdmit() {
+        if (waiting.get() == 0 && slots.tryAcquire()) {
+            return Decision.ADMITTED;
+        }
+
+        if (waiting.incrementAndGet() <= queueSize) {
+            queuedCount.incrementAndGet();
+            return Decision.QUEUED;
+        }
+
+        waiting.decrementAndGet();
+        rejectedCount.incrementAndGet();
+        return Decision.REJECTED;
+    }
+
+    /**
+     * Waits for a slot for a queued connection.
+     * <p>Leaves the queue either way and counts the connection as shed if no slot was acquired in time.
+     *
+     * @return Boolean.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean await() throws InterruptedException {
+        boolean admitted = false;
+        try {
+            admitted = slots.tryAcquire(maxQueueTime, TimeUnit.MILLISECONDS);
+            return admitted;
+        } finally {
+            waiting.decrementAndGet();
+            if (!admitted) {
+                shedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Releases a slot once an admitted connection is done.
+     */
+    public void release() {
+        slots.release();
+    }
+
+    /**
+     * Gets number of free slots.
+     *
+     * @return Free slots.
+     */
+    public int getAvailableSlots() {
+        return slots.availablePermits();
+    }
+
+    /**
+     * Gets number of connections currently waiting.
+     *
+     * @return Waiting connections.
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Gets total number of queued connections.
+     *
+     * @return Queued count.
+     */
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * Gets total number of connections rejected with a full queue.
+     *
+     * @return Rejected count.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Gets total number of queued connections shed after the maximum queue time.
+     *
+     * @return Shed count.
+     */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+}
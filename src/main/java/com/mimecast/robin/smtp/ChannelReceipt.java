@@ -0,0 +1,216 @@
+package com.mimecast.robin.smtp;
+
+import com.mimecast.robin.smtp.connection.Connection;
+import com.mimecast.robin.smtp.io.ChannelInputStream;
+import com.mimecast.robin.smtp.io.ChannelOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Email receipt over a socket channel.
+ *
+ * <p>Holds the per connection state for the {@link SmtpEventLoop}.
+ * <p>Commands are extracted from the channel buffer and handed to the wrapped {@link EmailReceipt}.
+ *
+ * @see SmtpEventLoop
+ */
+public class ChannelReceipt {
+
+    /**
+     * Initial read buffer size.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Socket channel instance.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Channel input stream.
+     */
+    private final ChannelInputStream input;
+
+    /**
+     * Channel output stream.
+     */
+    private final ChannelOutputStream output;
+
+    /**
+     * Email receipt instance.
+     */
+    private final EmailReceipt receipt;
+
+    /**
+     * Callback to run once closed.
+     */
+    private final Runnable onClose;
+
+    /**
+     * Closed flag.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Command awaiting a worker.
+     */
+    private String pending;
+
+    /**
+     * Last activity time in milliseconds.
+     */
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * Constructs a new ChannelReceipt instance.
+     * <p>This will do a reverse DNS lookup and TLS handshake for secure listeners so should be called from a worker.
+     *
+     * @param channel    SocketChannel instance in blocking mode.
+     * @param secure     Secure (TLS) listener.
+     * @param submission Submission (MSA) listener.
+     * @param onClose    Callback to run once closed.
+     * @throws IOException Unable to communicate.
+     */
+    public ChannelReceipt(SocketChannel channel, boolean secure, boolean submission, Runnable onClose) throws IOException {
+        this.channel = channel;
+        this.onClose = onClose;
+        this.input = new ChannelInputStream(channel, BUFFER_SIZE);
+        this.output = new ChannelOutputStream(channel);
+        this.receipt = new EmailReceipt(new Connection(channel.socket(), input, output), secure, submission);
+    }
+
+    /**
+     * Gets channel.
+     *
+     * @return SocketChannel instance.
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets input stream.
+     *
+     * @return ChannelInputStream instance.
+     */
+    public ChannelInputStream getInput() {
+        return input;
+    }
+
+    /**
+     * Gets output stream.
+     *
+     * @return ChannelOutputStream instance.
+     */
+    public ChannelOutputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * Gets email receipt.
+     *
+     * @return EmailReceipt instance.
+     */
+    public EmailReceipt getReceipt() {
+        return receipt;
+    }
+
+    /**
+     * Gets connection.
+     *
+     * @return Connection instance.
+     */
+    public Connection getConnection() {
+        return receipt.getConnection();
+    }
+
+    /**
+     * Extracts the next complete command line from the buffer.
+     * <p>A full buffer with no line feed is returned whole.
+     *
+     * @return Trimmed line string or null if no complete line is buffered.
+     */
+    public String nextLine() {
+        ByteBuffer buffer = input.getBuffer();
+        int end = -1;
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end == -1) {
+            if (!input.isFull()) {
+                return null;
+            }
+            end = buffer.limit();
+        }
+
+        byte[] line = new byte[end - buffer.position()];
+        buffer.get(line);
+
+        getConnection().logRead(line);
+        touch();
+
+        return new String(line, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Sets command awaiting a worker.
+     *
+     * @param pending Command string.
+     */
+    public void setPending(String pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * Takes command awaiting a worker.
+     *
+     * @return Command string.
+     */
+    public String takePending() {
+        String command = pending;
+        pending = null;
+        return command;
+    }
+
+    /**
+     * Moves any bytes buffered by the connection line reader back to the channel buffer.
+     * <p>Must be called before returning the channel to the event loop.
+     */
+    public void reclaim() {
+        input.unread(getConnection().getInputStream().drainBuffered());
+    }
+
+    /**
+     * Records activity.
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Is idle for longer than the session timeout.
+     *
+     * @param now Current time in milliseconds.
+     * @return Boolean.
+     */
+    public boolean isIdle(long now) {
+        return now - lastActivity > getConnection().getSession().getTimeout();
+    }
+
+    /**
+     * Closes the connection and runs the close callback once.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            getConnection().close();
+            onClose.run();
+        }
+    }
+}
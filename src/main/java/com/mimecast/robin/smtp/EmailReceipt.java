@@ -1,14 +1,17 @@
 package com.mimecast.robin.smtp;
 
+import com.mimecast.robin.config.server.RblConfig;
 import com.mimecast.robin.config.server.WebhookConfig;
 import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Extensions;
-import com.mimecast.robin.mx.rbl.RblChecker;
+import com.mimecast.robin.mx.rbl.NetworkPolicy;
+import com.mimecast.robin.mx.rbl.RblEngine;
 import com.mimecast.robin.mx.rbl.RblResult;
 import com.mimecast.robin.smtp.connection.Connection;
 import com.mimecast.robin.smtp.extension.Extension;
 import com.mimecast.robin.smtp.metrics.SmtpMetrics;
 import com.mimecast.robin.smtp.session.Session;
+import com.mimecast.robin.smtp.verb.Keyword;
 import com.mimecast.robin.smtp.verb.Verb;
 import com.mimecast.robin.smtp.webhook.WebhookCaller;
 import org.apache.logging.log4j.LogManager;
@@ -18,7 +21,9 @@ import java.io.IOException;
 import java.net.Socket;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Email receipt runnable.
@@ -47,6 +52,21 @@ public class EmailReceipt implements Runnable {
      */
     private int errorLimit = Config.getServer().getErrorLimit();
 
+    /**
+     * Number of commands processed.
+     */
+    private int transactions = 0;
+
+    /**
+     * RBL check started at accept time.
+     */
+    private CompletableFuture<List<RblResult>> rblCheck;
+
+    /**
+     * IP address the RBL check is for.
+     */
+    private String rblIp;
+
     /**
      * Constructs a new EmailReceipt instance with given Connection instance.
      * <p>For testing purposes only.
@@ -67,23 +87,80 @@ public class EmailReceipt implements Runnable {
     public EmailReceipt(Socket socket, boolean secure, boolean submission) {
         try {
             connection = new Connection(socket);
-
-            // Enable TLS handling if secure listener.
-            if (secure) {
-                connection.startTLS(false);
-                connection.getSession().setStartTls(true);
-                connection.buildStreams();
-                connection.getSession().setTls(true);
-                connection.getSession().setSecurePort(true);
-            }
-
-            // Set session direction depending on if submission port or not.
-            connection.getSession().setDirection(submission ? Session.Direction.OUTBOUND : Session.Direction.INBOUND);
+            startRblCheck(submission);
+            setup(secure, submission);
         } catch (IOException e) {
             log.info("Error initializing streams: {}", e.getMessage());
         }
     }
 
+    /**
+     * Constructs a new EmailReceipt instance with given server Connection instance.
+     *
+     * @param connection Connection instance.
+     * @param secure     Secure (TLS) listener.
+     * @param submission Submission (MSA) listener.
+     * @throws IOException Unable to communicate.
+     */
+    public EmailReceipt(Connection connection, boolean secure, boolean submission) throws IOException {
+        this.connection = connection;
+        startRblCheck(submission);
+        setup(secure, submission);
+    }
+
+    /**
+     * Starts RBL check of inbound client.
+     * <p>Trusted and denied networks are not checked.
+     * <p>Runs while the TLS handshake, reverse lookups and EHLO proceed and is awaited at the decision point.
+     *
+     * @param submission Submission (MSA) listener.
+     */
+    private void startRblCheck(boolean submission) {
+        if (!submission && Config.getServer().getRblConfig().isEnabled() &&
+                NetworkPolicy.classify(connection.getSession().getFriendAddr()) == NetworkPolicy.Verdict.NONE) {
+            checkRbl();
+        }
+    }
+
+    /**
+     * Starts RBL check of the current client IP.
+     */
+    private void checkRbl() {
+        RblConfig rblConfig = Config.getServer().getRblConfig();
+        rblIp = connection.getSession().getFriendAddr();
+        rblCheck = RblEngine.getInstance().check(rblIp, rblConfig.getProviders(), rblConfig.getTimeoutSeconds());
+    }
+
+    /**
+     * Setup connection security and direction.
+     *
+     * @param secure     Secure (TLS) listener.
+     * @param submission Submission (MSA) listener.
+     * @throws IOException Unable to communicate.
+     */
+    private void setup(boolean secure, boolean submission) throws IOException {
+        // Enable TLS handling if secure listener.
+        if (secure) {
+            connection.startTLS(false);
+            connection.getSession().setStartTls(true);
+            connection.buildStreams();
+            connection.getSession().setTls(true);
+            connection.getSession().setSecurePort(true);
+        }
+
+        // Set session direction depending on if submission port or not.
+        connection.getSession().setDirection(submission ? Session.Direction.OUTBOUND : Session.Direction.INBOUND);
+    }
+
+    /**
+     * Gets connection.
+     *
+     * @return Connection instance.
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
     /**
      * Server receipt runner.
      * <p>The loop begins after a connection is received and the welcome message sent.
@@ -94,57 +171,8 @@ public class EmailReceipt implements Runnable {
      */
     public void run() {
         try {
-            // Check client against RBLs and send appropriate greeting.
-            // If blacklisted and inbound non-secure, send rejection.
-            // Secure connections will perform RBL check at MAIL command.
-            if (connection.getSession().isInbound() &&
-                    !connection.getSession().isSecurePort() &&
-                    !isReputableIp()) {
-                // Send rejection message for blacklisted IP.
-                connection.write(SmtpResponses.LISTED_CLIENT_550);
-                return;
-            } else {
-                // Send normal welcome message for clean IPs.
-                connection.write(String.format(SmtpResponses.GREETING_220, Config.getServer().getHostname(),
-                        connection.getSession().getRdns(), connection.getSession().getDate()));
-            }
-
-            // Track successful connection.
-            SmtpMetrics.incrementEmailReceiptStart();
-
-            Verb verb;
-            for (int i = 0; i < transactionsLimit; i++) {
-                String read = connection.read().trim();
-                if (read.isEmpty()) {
-                    log.error("Read empty, breaking.");
-                    break;
-                }
-                verb = new Verb(read);
-
-                // Don't process if error.
-                if (!isError(verb)) process(verb);
-
-                // Special handling for MAIL command on secure inbound connections.
-                // Perform RBL check here once we know the connection is not outbound.
-                // Secure port supports submission when authenticated.
-                if (verb.getVerb().equalsIgnoreCase("mail") &&
-                        connection.getSession().isInbound() &&
-                        connection.getSession().isSecurePort() &&
-                        !isReputableIp()) {
-                    // Send rejection message for blacklisted IP.
-                    connection.write(SmtpResponses.LISTED_CLIENT_550);
-                    break;
-                }
-
-                // Break the loop.
-                // Break if error limit reached.
-                if (verb.getCommand().equalsIgnoreCase("quit") || errorLimit <= 0) {
-                    if (errorLimit <= 0) {
-                        log.warn("Error limit reached.");
-                        SmtpMetrics.incrementEmailReceiptLimit();
-                    }
-                    break;
-                }
+            if (greet()) {
+                loop();
             }
         } catch (Exception e) {
             SmtpMetrics.incrementEmailReceiptException(e.getClass().getSimpleName());
@@ -154,25 +182,134 @@ public class EmailReceipt implements Runnable {
         }
     }
 
+    /**
+     * Sends the greeting.
+     * <p>Checks client against RBLs and sends appropriate greeting.
+     * <p>If blacklisted and inbound non-secure, sends rejection.
+     * <p>Secure connections will perform RBL check at MAIL command.
+     * <p>The RBL check started at accept time and only its result is awaited here.
+     * <p>Waits for reverse lookups up to the configured greeting budget first.
+     *
+     * @return True if the session should continue.
+     * @throws IOException Unable to communicate.
+     */
+    boolean greet() throws IOException {
+        connection.awaitRdns();
+
+        if (connection.getSession().isInbound() &&
+                !connection.getSession().isSecurePort() &&
+                !isReputableIp()) {
+            // Send rejection message for blacklisted IP.
+            connection.write(String.format(SmtpResponses.LISTED_CLIENT_550, connection.getSession().getFriendRbl()));
+            return false;
+        } else {
+            // Send normal welcome message for clean IPs.
+            connection.write(String.format(SmtpResponses.GREETING_220, Config.getServer().getHostname(),
+                    connection.getSession().getRdns(), connection.getSession().getDate()));
+        }
+
+        // Track successful connection.
+        SmtpMetrics.incrementEmailReceiptStart();
+
+        return true;
+    }
+
+    /**
+     * Reads and processes commands until the session ends.
+     *
+     * @throws IOException Unable to communicate.
+     */
+    void loop() throws IOException {
+        while (transactions < transactionsLimit) {
+            String read = connection.read().trim();
+            if (read.isEmpty()) {
+                log.error("Read empty, breaking.");
+                break;
+            }
+
+            if (!processCommand(read)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Processes a single command line.
+     *
+     * @param read Command line without EOL.
+     * @return False if the session should end.
+     * @throws IOException Unable to communicate.
+     */
+    boolean processCommand(String read) throws IOException {
+        transactions++;
+        Verb verb = new Verb(read);
+
+        // Reverse lookups that missed the greeting budget.
+        Keyword keyword = verb.getKeyword();
+        if (keyword == Keyword.EHLO || keyword == Keyword.HELO || keyword == Keyword.LHLO || keyword == Keyword.MAIL) {
+            connection.applyRdns();
+        }
+
+        // Don't process if error.
+        if (!isError(verb)) process(verb);
+
+        // Special handling for MAIL command on secure inbound connections.
+        // Await RBL check here once we know the connection is not outbound.
+        // Secure port supports submission when authenticated.
+        if (verb.getKeyword() == Keyword.MAIL &&
+                connection.getSession().isInbound() &&
+                connection.getSession().isSecurePort() &&
+                !isReputableIp()) {
+            // Send rejection message for blacklisted IP.
+            connection.write(String.format(SmtpResponses.LISTED_CLIENT_550, connection.getSession().getFriendRbl()));
+            return false;
+        }
+
+        // Break the loop.
+        // Break if error limit reached.
+        if (verb.getCommand().equalsIgnoreCase("quit") || errorLimit <= 0) {
+            if (errorLimit <= 0) {
+                log.warn("Error limit reached.");
+                SmtpMetrics.incrementEmailReceiptLimit();
+            }
+            return false;
+        }
+
+        return transactions < transactionsLimit;
+    }
+
     /**
      * Performs RBL check on client IP.
+     * <p>Trusted networks pass and denied networks are rejected before any DNS query.
+     * <p>Awaits the check started at accept time or starts one if the client IP changed since, like by XCLIENT.
      *
-     * @return true if blacklist check passed or not enabled, false if blacklisted.
+     * @return false if blacklisted and rejection enabled or in denied networks, true otherwise.
      */
     private boolean isReputableIp() {
         String clientIp = connection.getSession().getFriendAddr();
         boolean isBlacklisted = false;
         String blacklistingRbl = null;
+        RblConfig rblConfig = Config.getServer().getRblConfig();
+
+        NetworkPolicy.Verdict verdict = NetworkPolicy.classify(clientIp);
+        if (verdict == NetworkPolicy.Verdict.DENIED) {
+            log.info("Client IP {} is in denied networks", clientIp);
+            connection.getSession()
+                    .setFriendInRbl(true)
+                    .setFriendRbl("deniedNetworks");
+            SmtpMetrics.incrementEmailRblRejection();
+            return false;
+        }
 
-        // Only perform RBL check if enabled in configuration.
-        if (Config.getServer().getRblConfig().isEnabled()) {
-            log.debug("Checking IP {} against RBL lists", clientIp);
-
-            List<String> rblProviders = Config.getServer().getRblConfig().getProviders();
-            int timeoutSeconds = Config.getServer().getRblConfig().getTimeoutSeconds();
+        // Only perform RBL check if enabled in configuration and not trusted.
+        if (rblConfig.isEnabled() && verdict == NetworkPolicy.Verdict.NONE) {
+            if (rblCheck == null || !Objects.equals(rblIp, clientIp)) {
+                log.debug("Checking IP {} against RBL lists", clientIp);
+                checkRbl();
+            }
 
-            // Check the client IP against configured RBL providers.
-            List<RblResult> results = RblChecker.checkIpAgainstRbls(clientIp, rblProviders, timeoutSeconds);
+            // Results complete within the configured timeout.
+            List<RblResult> results = rblCheck.join();
 
             // Find the first RBL that lists this IP (if any).
             Optional<RblResult> blacklisted = results.stream()
@@ -191,13 +328,14 @@ public class EmailReceipt implements Runnable {
                 .setFriendInRbl(isBlacklisted)
                 .setFriendRbl(blacklistingRbl);
 
-        // Send appropriate greeting or rejection based on RBL status and enablement.
-        if (isBlacklisted && Config.getServer().getRblConfig().isRejectEnabled()) {
+        // Reject only if enabled, otherwise the result is left in session for webhooks to decide on.
+        if (isBlacklisted && rblConfig.isRejectEnabled()) {
             // Track rejected connections due to RBL listing.
             SmtpMetrics.incrementEmailRblRejection();
+            return false;
         }
 
-        return !isBlacklisted;
+        return true;
     }
 
     /**
@@ -224,16 +362,14 @@ public class EmailReceipt implements Runnable {
      * @throws IOException Unable to communicate.
      */
     private void process(Verb verb) throws IOException {
-        if (Extensions.isExtension(verb)) {
-            Optional<Extension> opt = Extensions.getExtension(verb);
-            if (opt.isPresent()) {
-                // Call webhook before processing extension.
-                if (!processWebhook(verb)) {
-                    return; // Webhook intercepted processing.
-                }
-
-                opt.get().getServer().process(connection, verb);
+        Optional<Extension> opt = Extensions.getExtension(verb);
+        if (opt.isPresent()) {
+            // Call webhook before processing extension.
+            if (!processWebhook(verb)) {
+                return; // Webhook intercepted processing.
             }
+
+            opt.get().getServer().process(connection, verb);
         } else {
             errorLimit--;
             if (errorLimit == 0) {
@@ -255,10 +391,10 @@ public class EmailReceipt implements Runnable {
     private boolean processWebhook(Verb verb) throws IOException {
         try {
             Map<String, WebhookConfig> webhooks = Config.getServer().getWebhooks();
-            String extensionKey = verb.getKey().toLowerCase();
+            String extensionKey = verb.getKey();
+            WebhookConfig config = webhooks.isEmpty() ? null : webhooks.get(extensionKey);
 
-            if (webhooks.containsKey(extensionKey)) {
-                WebhookConfig config = webhooks.get(extensionKey);
+            if (config != null) {
 
                 if (!config.isEnabled()) {
                     return true; // Continue processing.
@@ -29,8 +29,8 @@ public class MessageEnvelope implements Serializable, Cloneable {
     private String mail = null;
     private String rcpt = null;
     private List<String> rcpts = new ArrayList<>();
-    private final Map<String, List<String>> params = new HashMap<>();
-    private final Map<String, String> headers = new HashMap<>();
+    private Map<String, List<String>> params = new HashMap<>();
+    private Map<String, String> headers = new HashMap<>();
     private boolean prependHeaders = false;
 
     // Set MimeConfig.
@@ -691,13 +691,12 @@ public class MessageEnvelope implements Serializable, Cloneable {
             // Deep copy mutable collections.
             cloned.rcpts = new ArrayList<>(this.rcpts);
 
-            cloned.params.clear();
+            cloned.params = new HashMap<>();
             for (Map.Entry<String, List<String>> entry : this.params.entrySet()) {
                 cloned.params.put(entry.getKey(), new ArrayList<>(entry.getValue()));
             }
 
-            cloned.headers.clear();
-            cloned.headers.putAll(this.headers);
+            cloned.headers = new HashMap<>(this.headers);
 
             // Deep copy byte array if present.
             if (this.bytes != null) {
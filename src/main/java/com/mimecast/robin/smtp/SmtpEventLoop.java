@@ -0,0 +1,366 @@
+package com.mimecast.robin.smtp;
+
+import com.mimecast.robin.config.server.WebhookConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.main.Extensions;
+import com.mimecast.robin.smtp.extension.Extension;
+import com.mimecast.robin.smtp.extension.server.ServerProcessor;
+import com.mimecast.robin.smtp.metrics.SmtpMetrics;
+import com.mimecast.robin.smtp.verb.Keyword;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * SMTP event loop for non-blocking connections.
+ *
+ * <p>Runs a {@link Selector} over many {@link ChannelReceipt} instances on a single thread.
+ * <p>Commands that only touch session state and write a reply are processed on the loop.
+ * <p>Commands that read further input or may block, like DATA, BDAT, AUTH, STARTTLS, webhooks and plugins,
+ * are handed to a worker with the channel switched to blocking mode.
+ * <p>Once the worker is done the channel is switched back and returned to the loop.
+ * <p>Connections that negotiated TLS stay on the worker until closed.
+ *
+ * @see SmtpListener
+ * @see ChannelReceipt
+ */
+public class SmtpEventLoop implements Runnable {
+    private static final Logger log = LogManager.getLogger(SmtpEventLoop.class);
+
+    /**
+     * Commands eligible for processing on the loop.
+     */
+    private static final Set<Keyword> INLINE = EnumSet.of(Keyword.HELO, Keyword.EHLO, Keyword.LHLO, Keyword.MAIL, Keyword.RCPT, Keyword.RSET, Keyword.HELP, Keyword.QUIT);
+
+    /**
+     * Idle sweep interval in milliseconds.
+     */
+    private static final long SWEEP_INTERVAL = 1000L;
+
+    /**
+     * Selector instance.
+     */
+    private final Selector selector;
+
+    /**
+     * Worker executor.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Inline commands not overridden by plugins.
+     */
+    private final Set<Keyword> inline = EnumSet.noneOf(Keyword.class);
+
+    /**
+     * Receipts waiting to be registered.
+     */
+    private final Queue<ChannelReceipt> registrations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Receipts waiting to be handed to workers.
+     */
+    private final List<ChannelReceipt> handoffs = new ArrayList<>();
+
+    /**
+     * Running flag.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Last idle sweep time.
+     */
+    private long lastSweep = System.currentTimeMillis();
+
+    /**
+     * Constructs a new SmtpEventLoop instance.
+     *
+     * @param workers Worker executor.
+     * @throws IOException Unable to open selector.
+     */
+    public SmtpEventLoop(ExecutorService workers) throws IOException {
+        this.selector = Selector.open();
+        this.workers = workers;
+
+        // Plugins may replace default extensions so only built-in processors are trusted not to block.
+        for (Keyword key : INLINE) {
+            Optional<Extension> opt = Extensions.getExtension(key.getKey());
+            if (opt.isPresent()) {
+                ServerProcessor processor = opt.get().getServer();
+                if (processor != null && processor.getClass().getPackageName().equals(ServerProcessor.class.getPackageName())) {
+                    inline.add(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a receipt with this loop.
+     * <p>The channel must be in non-blocking mode.
+     *
+     * @param receipt ChannelReceipt instance.
+     */
+    public void register(ChannelReceipt receipt) {
+        registrations.add(receipt);
+        selector.wakeup();
+    }
+
+    /**
+     * Gets the number of connections registered with this loop.
+     *
+     * @return Connection count.
+     */
+    public int getConnections() {
+        return selector.keys().size();
+    }
+
+    /**
+     * Event loop.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(SWEEP_INTERVAL);
+                registerPending();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                handOff();
+                sweep();
+            } catch (Exception e) {
+                log.error("Event loop unexpected exception: {}", e.getMessage());
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((ChannelReceipt) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.info("Selector already closed.");
+        }
+    }
+
+    /**
+     * Stops the loop and closes its connections.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Registers pending receipts and processes any commands already buffered.
+     */
+    private void registerPending() {
+        ChannelReceipt receipt;
+        while ((receipt = registrations.poll()) != null) {
+            try {
+                SelectionKey key = receipt.getChannel().register(selector, SelectionKey.OP_READ, receipt);
+                receipt.touch();
+                process(receipt, key);
+            } catch (IOException e) {
+                log.info("Error registering channel: {}", e.getMessage());
+                receipt.close();
+            }
+        }
+    }
+
+    /**
+     * Handles a selected key.
+     *
+     * @param key SelectionKey instance.
+     */
+    private void handle(SelectionKey key) {
+        ChannelReceipt receipt = (ChannelReceipt) key.attachment();
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+
+            if (key.isWritable()) {
+                if (!receipt.getOutput().flushPending()) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                process(receipt, key);
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                if (receipt.getInput().fill() == -1) {
+                    log.info("Connection closed by client.");
+                    close(receipt, key);
+                    return;
+                }
+                process(receipt, key);
+            }
+        } catch (Exception e) {
+            SmtpMetrics.incrementEmailReceiptException(e.getClass().getSimpleName());
+            log.info("Error reading/writing: {}", e.getMessage());
+            close(receipt, key);
+        }
+    }
+
+    /**
+     * Processes buffered command lines.
+     * <p>Replies to pipelined commands are batched and flushed once the buffered lines are processed.
+     * <p>Stops reading while replies are pending so clients that do not read are throttled.
+     *
+     * @param receipt ChannelReceipt instance.
+     * @param key     SelectionKey instance.
+     * @throws IOException Unable to communicate.
+     */
+    private void process(ChannelReceipt receipt, SelectionKey key) throws IOException {
+        String line;
+        while (!receipt.getOutput().hasPending() && (line = receipt.nextLine()) != null) {
+            if (line.isEmpty()) {
+                log.error("Read empty, breaking.");
+                close(receipt, key);
+                return;
+            }
+
+            if (!isInline(line)) {
+                receipt.getConnection().flush();
+                receipt.setPending(line);
+                key.cancel();
+                handoffs.add(receipt);
+                return;
+            }
+
+            if (!receipt.getReceipt().processCommand(line) || !receipt.getChannel().isOpen()) {
+                close(receipt, key);
+                return;
+            }
+        }
+
+        receipt.getConnection().flush();
+        if (receipt.getOutput().hasPending()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Is command eligible for processing on the loop.
+     *
+     * @param line Command line.
+     * @return Boolean.
+     */
+    private boolean isInline(String line) {
+        int end = 0;
+        while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != ':') {
+            end++;
+        }
+        Keyword keyword = Keyword.of(line, end);
+
+        if (keyword == null || !inline.contains(keyword)) {
+            return false;
+        }
+
+        // Webhooks make HTTP calls.
+        WebhookConfig webhook = Config.getServer().getWebhooks().get(keyword.getKey());
+        if (webhook != null && webhook.isEnabled()) {
+            return false;
+        }
+
+        // Dovecot recipient validation talks to a socket.
+        return keyword != Keyword.RCPT || !Config.getServer().getDovecot().getBooleanProperty("auth");
+    }
+
+    /**
+     * Hands off receipts to workers.
+     * <p>Cancelled keys are flushed first so the channels can be switched to blocking mode.
+     *
+     * @throws IOException Unable to select.
+     */
+    private void handOff() throws IOException {
+        if (handoffs.isEmpty()) {
+            return;
+        }
+
+        selector.selectNow();
+        for (ChannelReceipt receipt : handoffs) {
+            try {
+                receipt.getChannel().configureBlocking(true);
+                workers.submit(() -> work(receipt));
+            } catch (Exception e) {
+                log.info("Error handing off channel: {}", e.getMessage());
+                receipt.close();
+            }
+        }
+        handoffs.clear();
+    }
+
+    /**
+     * Worker task.
+     * <p>Processes the pending command in blocking mode and returns the channel to the loop if still open.
+     *
+     * @param receipt ChannelReceipt instance.
+     */
+    private void work(ChannelReceipt receipt) {
+        try {
+            boolean open = receipt.getReceipt().processCommand(receipt.takePending());
+
+            // TLS sessions stay on the worker.
+            if (open && receipt.getChannel().isOpen() && receipt.getConnection().getSession().isStartTls()) {
+                receipt.getReceipt().loop();
+                open = false;
+            }
+
+            if (open && receipt.getChannel().isOpen()) {
+                receipt.reclaim();
+                receipt.getChannel().configureBlocking(false);
+                register(receipt);
+                return;
+            }
+        } catch (Exception e) {
+            SmtpMetrics.incrementEmailReceiptException(e.getClass().getSimpleName());
+            log.info("Error reading/writing: {}", e.getMessage());
+        }
+
+        receipt.close();
+    }
+
+    /**
+     * Closes idle connections.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+
+        for (SelectionKey key : selector.keys()) {
+            ChannelReceipt receipt = (ChannelReceipt) key.attachment();
+            if (key.isValid() && receipt.isIdle(now)) {
+                log.info("Closing idle connection.");
+                close(receipt, key);
+            }
+        }
+    }
+
+    /**
+     * Closes receipt and cancels key.
+     *
+     * @param receipt ChannelReceipt instance.
+     * @param key     SelectionKey instance.
+     */
+    private void close(ChannelReceipt receipt, SelectionKey key) {
+        key.cancel();
+        receipt.close();
+    }
+}
@@ -8,20 +8,33 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SMTP socket listener for handling client connections.
  * <p>This class runs a {@link ServerSocket} bound to a configured network interface and port.
  * <p>For each accepted connection, it creates an {@link EmailReceipt} instance to handle the SMTP session.
  * <p>It uses a {@link ThreadPoolExecutor} to manage concurrent connections efficiently.
+ * <p>Alternatively in <i>virtual</i> execution mode each connection runs on its own virtual thread
+ * and concurrency is capped by {@link ListenerConfig#getMaxConnections()}.
+ * <p>In <i>nio</i> execution mode connections are served by {@link SmtpEventLoop} instances
+ * with virtual thread workers for blocking commands under the same ceiling.
+ * <p>In all modes an {@link AdmissionController} decides on each accepted connection.
+ * <p>Connections beyond the ceiling wait in a bounded queue for a limited time,
+ * those that find the queue full or time out are sent a 421 and closed without starting a session.
  *
  * @see EmailReceipt
+ * @see SmtpEventLoop
  * @see Server
  */
 public class SmtpListener {
@@ -33,11 +46,31 @@ public class SmtpListener {
     private ServerSocket listener;
 
     /**
-     * Thread pool for handling client connections.
-     * Using a ThreadPoolExecutor allows for fine-tuning of thread management,
+     * Executor for handling client connections.
+     * In platform mode this is a ThreadPoolExecutor which allows for fine-tuning of thread management,
      * which is crucial for performance and resource control.
+     * In virtual mode this is a virtual thread per task executor.
      */
-    private final ThreadPoolExecutor executor;
+    private final ExecutorService executor;
+
+    /**
+     * Connection admission controller.
+     */
+    private final AdmissionController admission;
+
+    /**
+     * Event loops for nio execution mode.
+     * <p>Null in other execution modes.
+     */
+    private final SmtpEventLoop[] eventLoops;
+
+    /**
+     * Connection stats.
+     * <p>Used in place of thread pool stats in virtual and nio execution modes.
+     */
+    private final AtomicInteger largestConnections = new AtomicInteger();
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicLong completedConnections = new AtomicLong();
 
     /**
      * Flag to indicate a server shutdown is in progress.
@@ -67,14 +100,34 @@ public class SmtpListener {
         this.secure = secure;
         this.submission = submission;
 
-        // Initialize and configure the thread pool executor.
-        this.executor = new ThreadPoolExecutor(
-                config.getMinimumPoolSize(),
-                config.getMaximumPoolSize(),
-                config.getThreadKeepAliveTime(), TimeUnit.SECONDS,
-                new SynchronousQueue<>(),
-                new ThreadPoolExecutor.CallerRunsPolicy()
-        );
+        if (config.isVirtualThreads() || config.isNio()) {
+            // Initialize virtual thread executor bounded by admission.
+            this.admission = new AdmissionController(config.getMaxConnections(), config.getQueueSize(), config.getMaxQueueTime() * 1000L);
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("smtp-" + port + "-", 0).factory());
+            this.eventLoops = config.isNio() ? new SmtpEventLoop[config.getEventLoopThreads()] : null;
+        } else {
+            // Initialize and configure the thread pool executor.
+            // Admission holds one slot per thread so a hand off only waits for a finishing thread to poll again.
+            this.admission = new AdmissionController(config.getMaximumPoolSize(), config.getQueueSize(), config.getMaxQueueTime() * 1000L);
+            this.eventLoops = null;
+            this.executor = new ThreadPoolExecutor(
+                    config.getMinimumPoolSize(),
+                    config.getMaximumPoolSize(),
+                    config.getThreadKeepAliveTime(), TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    (task, pool) -> {
+                        if (pool.isShutdown()) {
+                            throw new RejectedExecutionException("Listener shut down");
+                        }
+                        try {
+                            pool.getQueue().put(task);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted waiting for a worker", e);
+                        }
+                    }
+            );
+        }
     }
 
     /**
@@ -84,10 +137,19 @@ public class SmtpListener {
      */
     public void listen() {
         try {
-            listener = new ServerSocket(port, config.getBacklog(), InetAddress.getByName(bind));
-            log.info("Listening to [{}]:{}", bind, port);
+            if (eventLoops != null) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                listener = channel.socket();
+                channel.bind(new InetSocketAddress(InetAddress.getByName(bind), port), config.getBacklog());
+                log.info("Listening to [{}]:{} using {} event loops", bind, port, eventLoops.length);
 
-            acceptConnection();
+                acceptChannel(channel);
+            } else {
+                listener = new ServerSocket(port, config.getBacklog(), InetAddress.getByName(bind));
+                log.info("Listening to [{}]:{} using {} threads", bind, port, config.getExecutionMode());
+
+                acceptConnection();
+            }
 
         } catch (IOException e) {
             log.fatal("Error listening: {}", e.getMessage());
@@ -107,7 +169,7 @@ public class SmtpListener {
 
     /**
      * Accepts incoming connections in a loop until a shutdown is initiated.
-     * For each connection, it submits a new {@link EmailReceipt} task to the thread pool.
+     * For each admitted connection, it submits a new {@link EmailReceipt} task to the executor.
      */
     private void acceptConnection() {
         try {
@@ -115,16 +177,7 @@ public class SmtpListener {
                 Socket sock = listener.accept();
                 log.info("Accepted connection from {}:{} on port {}.", sock.getInetAddress().getHostAddress(), sock.getPort(), port);
 
-                executor.submit(() -> {
-                    try {
-                        new EmailReceipt(sock, secure, submission).run();
-
-                    } catch (Exception e) {
-                        SmtpMetrics.incrementEmailReceiptException(e.getClass().getSimpleName());
-                        log.error("Email receipt unexpected exception: {}", e.getMessage());
-                    }
-                    return null;
-                });
+                admit(sock, () -> serveSocket(sock));
             } while (!serverShutdown);
 
         } catch (SocketException e) {
@@ -136,6 +189,171 @@ public class SmtpListener {
         }
     }
 
+    /**
+     * Serves an admitted socket connection on the executor.
+     *
+     * @param sock Socket instance.
+     */
+    private void serveSocket(Socket sock) {
+        executor.execute(() -> {
+            try {
+                new EmailReceipt(sock, secure, submission).run();
+
+            } catch (Exception e) {
+                SmtpMetrics.incrementEmailReceiptException(e.getClass().getSimpleName());
+                log.error("Email receipt unexpected exception: {}", e.getMessage());
+            } finally {
+                completedConnections.incrementAndGet();
+                admission.release();
+            }
+        });
+    }
+
+    /**
+     * Accepts incoming channels in a loop until a shutdown is initiated.
+     * <p>Each admitted channel is opened and greeted on a worker then registered with an event loop in round robin.
+     *
+     * @param channel ServerSocketChannel instance.
+     */
+    private void acceptChannel(ServerSocketChannel channel) {
+        try {
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new SmtpEventLoop(executor);
+                Thread.ofPlatform().name("smtp-loop-" + port + "-" + i).daemon().start(eventLoops[i]);
+            }
+
+            int next = 0;
+            do {
+                SocketChannel sock = channel.accept();
+                log.info("Accepted connection from {} on port {}.", sock.getRemoteAddress(), port);
+
+                SmtpEventLoop loop = eventLoops[next];
+                next = (next + 1) % eventLoops.length;
+                admit(sock.socket(), () -> executor.execute(() -> openChannel(sock, loop)));
+            } while (!serverShutdown);
+
+        } catch (SocketException | ClosedChannelException e) {
+            if (!serverShutdown) {
+                log.info("Error in socket exchange: {}", e.getMessage());
+            }
+        } catch (IOException e) {
+            log.info("Error reading/writing: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs admission control for an accepted connection.
+     * <p>Admitted connections are served straight away.
+     * <p>Queued connections wait on a virtual thread so the accept loop carries on.
+     * <p>Rejected connections get a 421 from the accept loop itself.
+     *
+     * @param sock  Socket instance.
+     * @param serve Serves the connection once a slot is held.
+     */
+    private void admit(Socket sock, Runnable serve) {
+        switch (admission.tryAdmit()) {
+            case ADMITTED -> dispatch(sock, serve);
+
+            case QUEUED -> {
+                SmtpMetrics.incrementConnectionQueued();
+                Thread.ofVirtual().name("smtp-queue-" + port + "-", 0).start(() -> {
+                    try {
+                        if (admission.await() && !serverShutdown) {
+                            dispatch(sock, serve);
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    SmtpMetrics.incrementConnectionShed();
+                    log.warn("Shedding queued connection from {} on port {}.", sock.getInetAddress().getHostAddress(), port);
+                    busy(sock);
+                });
+            }
+
+            default -> {
+                SmtpMetrics.incrementConnectionRejected();
+                log.warn("Rejecting connection from {} on port {} with full admission queue.", sock.getInetAddress().getHostAddress(), port);
+                busy(sock);
+            }
+        }
+    }
+
+    /**
+     * Serves a connection holding an admission slot.
+     * <p>The slot is handed back if the executor refuses the task.
+     *
+     * @param sock  Socket instance.
+     * @param serve Serves the connection.
+     */
+    private void dispatch(Socket sock, Runnable serve) {
+        acceptedConnections.incrementAndGet();
+        largestConnections.accumulateAndGet(getActiveThreads(), Math::max);
+        try {
+            serve.run();
+        } catch (RejectedExecutionException e) {
+            completedConnections.incrementAndGet();
+            admission.release();
+            busy(sock);
+        }
+    }
+
+    /**
+     * Sends a 421 busy response and closes the socket.
+     * <p>Lightweight path that runs no session and holds no admission slot.
+     *
+     * @param sock Socket instance.
+     */
+    private void busy(Socket sock) {
+        try (sock) {
+            sock.getOutputStream().write((SmtpResponses.BUSY_421 + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            log.debug("Unable to send busy response: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a channel receipt, sends the greeting and registers it with the given event loop.
+     * <p>Secure listener sessions are served on the worker until closed.
+     *
+     * @param sock SocketChannel instance.
+     * @param loop SmtpEventLoop instance.
+     */
+    private void openChannel(SocketChannel sock, SmtpEventLoop loop) {
+        Runnable onClose = () -> {
+            completedConnections.incrementAndGet();
+            admission.release();
+        };
+
+        ChannelReceipt receipt = null;
+        try {
+            receipt = new ChannelReceipt(sock, secure, submission, onClose);
+            if (receipt.getReceipt().greet()) {
+                if (receipt.getConnection().getSession().isStartTls()) {
+                    receipt.getReceipt().loop();
+                } else {
+                    sock.configureBlocking(false);
+                    loop.register(receipt);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            SmtpMetrics.incrementEmailReceiptException(e.getClass().getSimpleName());
+            log.error("Email receipt unexpected exception: {}", e.getMessage());
+        }
+
+        if (receipt != null) {
+            receipt.close();
+        } else {
+            try {
+                sock.close();
+            } catch (IOException e) {
+                log.info("Socket already closed.");
+            }
+            onClose.run();
+        }
+    }
+
     /**
      * Initiates a graceful shutdown of the listener.
      * <p>This method gracefully shuts down the listener by closing the server socket
@@ -148,6 +366,13 @@ public class SmtpListener {
         if (listener != null) {
             listener.close();
         }
+        if (eventLoops != null) {
+            for (SmtpEventLoop loop : eventLoops) {
+                if (loop != null) {
+                    loop.shutdown();
+                }
+            }
+        }
         executor.shutdown();
     }
 
@@ -169,42 +394,58 @@ public class SmtpListener {
         return port;
     }
 
+    /**
+     * Gets the execution mode of this listener.
+     *
+     * @return Execution mode string.
+     */
+    public String getExecutionMode() {
+        return config.getExecutionMode();
+    }
+
     /**
      * Gets the number of currently active threads in this listener's thread pool.
+     * <p>In virtual and nio execution modes this is the number of open connections.
      *
      * @return The number of active threads.
      */
     public int getActiveThreads() {
-        return executor.getActiveCount();
+        if (executor instanceof ThreadPoolExecutor pool) {
+            return pool.getActiveCount();
+        }
+        return Math.toIntExact(acceptedConnections.get() - completedConnections.get());
     }
 
     // Additional thread pool stats for health reporting
 
     /**
      * Gets the core number of threads for the thread pool.
+     * <p>Always 0 in virtual and nio execution modes.
      *
      * @return The core pool size.
      */
     public int getCorePoolSize() {
-        return executor.getCorePoolSize();
+        return executor instanceof ThreadPoolExecutor pool ? pool.getCorePoolSize() : 0;
     }
 
     /**
      * Gets the maximum allowed number of threads for the thread pool.
+     * <p>In virtual and nio execution modes this is the connection permits ceiling.
      *
      * @return The maximum pool size.
      */
     public int getMaximumPoolSize() {
-        return executor.getMaximumPoolSize();
+        return executor instanceof ThreadPoolExecutor pool ? pool.getMaximumPoolSize() : config.getMaxConnections();
     }
 
     /**
      * Gets the current number of threads in the pool.
+     * <p>In virtual and nio execution modes this equals the active connections.
      *
      * @return The current pool size.
      */
     public int getPoolSize() {
-        return executor.getPoolSize();
+        return executor instanceof ThreadPoolExecutor pool ? pool.getPoolSize() : getActiveThreads();
     }
 
     /**
@@ -213,17 +454,44 @@ public class SmtpListener {
      * @return The largest pool size reached.
      */
     public int getLargestPoolSize() {
-        return executor.getLargestPoolSize();
+        return executor instanceof ThreadPoolExecutor pool ? pool.getLargestPoolSize() : largestConnections.get();
     }
 
     /**
-     * Gets the current size of the task queue.
-     * For a {@link SynchronousQueue}, this will always be 0.
+     * Gets the current size of the admission queue.
+     * <p>This is the number of accepted connections waiting for a free worker.
      *
-     * @return The number of tasks in the queue.
+     * @return The number of connections in the queue.
      */
     public int getQueueSize() {
-        return executor.getQueue() != null ? executor.getQueue().size() : 0;
+        return admission.getWaiting();
+    }
+
+    /**
+     * Gets the total number of connections that waited in the admission queue.
+     *
+     * @return The queued connection count.
+     */
+    public long getQueuedCount() {
+        return admission.getQueuedCount();
+    }
+
+    /**
+     * Gets the total number of connections rejected with a 421 because the admission queue was full.
+     *
+     * @return The rejected connection count.
+     */
+    public long getRejectedCount() {
+        return admission.getRejectedCount();
+    }
+
+    /**
+     * Gets the total number of queued connections shed with a 421 after the maximum queue time.
+     *
+     * @return The shed connection count.
+     */
+    public long getShedCount() {
+        return admission.getShedCount();
     }
 
     /**
@@ -232,7 +500,7 @@ public class SmtpListener {
      * @return The completed task count.
      */
     public long getCompletedTaskCount() {
-        return executor.getCompletedTaskCount();
+        return executor instanceof ThreadPoolExecutor pool ? pool.getCompletedTaskCount() : completedConnections.get();
     }
 
     /**
@@ -241,15 +509,27 @@ public class SmtpListener {
      * @return The total task count.
      */
     public long getTaskCount() {
-        return executor.getTaskCount();
+        return executor instanceof ThreadPoolExecutor pool ? pool.getTaskCount() : acceptedConnections.get();
     }
 
     /**
      * Gets the keep-alive time for idle threads in seconds.
+     * <p>Always 0 in virtual and nio execution modes as virtual threads are not pooled.
      *
      * @return The thread keep-alive time in seconds.
      */
     public long getKeepAliveSeconds() {
-        return executor.getKeepAliveTime(TimeUnit.SECONDS);
+        return executor instanceof ThreadPoolExecutor pool ? pool.getKeepAliveTime(TimeUnit.SECONDS) : 0L;
+    }
+
+    /**
+     * Gets the number of available connection permits.
+     * <p>In platform execution mode this is the number of idle thread slots.
+     * <p>In virtual and nio execution modes this is the number of connections that may still be accepted.
+     *
+     * @return The number of available permits.
+     */
+    public int getAvailablePermits() {
+        return getMaximumPoolSize() - getActiveThreads();
     }
 }
@@ -119,11 +119,21 @@ public final class SmtpResponses {
 
     // ========== 4xx Temporary Failure Codes ==========
 
+    /**
+     * 421 Service busy.
+     */
+    public static final String BUSY_421 = "421 4.3.2 Service busy, try again later";
+
     /**
      * 451 Internal server error.
      */
     public static final String INTERNAL_ERROR_451 = "451 4.3.2 Internal server error [%s]";
 
+    /**
+     * 451 Unable to store message.
+     */
+    public static final String STORAGE_ERROR_451 = "451 4.3.0 Unable to store message [%s]";
+
     // ========== 5xx Permanent Failure Codes ==========
 
     /**
@@ -2,7 +2,6 @@ package com.mimecast.robin.smtp.connection;
 
 import com.mimecast.robin.config.client.LoggingConfig;
 import com.mimecast.robin.config.server.ScenarioConfig;
-import com.mimecast.robin.config.server.ServerConfig;
 import com.mimecast.robin.config.server.UserConfig;
 import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Factories;
@@ -16,11 +15,20 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.SSLSocket;
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Connection controller.
@@ -47,6 +55,18 @@ public class Connection extends SmtpFoundation {
      */
     private ScenarioConfig scenario = null;
 
+    /**
+     * [Server] Pending reverse lookups of the local and remote addresses.
+     * <p>Only read on the session thread once complete.
+     */
+    private CompletableFuture<String> localRdns = DONE;
+    private CompletableFuture<String> remoteRdns = DONE;
+
+    /**
+     * [Server] Reverse lookup already applied or not started.
+     */
+    private static final CompletableFuture<String> DONE = CompletableFuture.completedFuture(null);
+
     /**
      * [Client] Constructs a new Connection instance with given Session.
      *
@@ -72,19 +92,125 @@ public class Connection extends SmtpFoundation {
         // Socket.
         this.socket = socket;
         setTimeout(DEFAULTTIMEOUT);
+        pipelining = true;
 
         // Streams.
         buildStreams();
 
         // Session.
         session = Factories.getSession();
+        setConnectionInfo();
+        transcript = TranscriptSink.open();
+    }
+
+    /**
+     * [Server] Constructs a new Connection instance with given Socket and streams.
+     * <p>Used when the streams are not the socket's own, like for channels switched between blocking modes.
+     *
+     * @param socket       Socket instance.
+     * @param inputStream  InputStream instance.
+     * @param outputStream OutputStream instance.
+     * @throws IOException Unable to communicate.
+     */
+    public Connection(Socket socket, InputStream inputStream, OutputStream outputStream) throws IOException {
+        // Socket.
+        this.socket = socket;
+        setTimeout(DEFAULTTIMEOUT);
+
+        // Streams.
+        pipelining = true;
+        inc = new LineInputStream(inputStream);
+        out = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        // Session.
+        session = Factories.getSession();
+        setConnectionInfo();
+        transcript = TranscriptSink.open();
+    }
+
+    /**
+     * [Server] Sets connection info on session from socket.
+     * <p>Host names start as the bare IP addresses and are filled in on the session thread once the lookups complete.
+     */
+    private void setConnectionInfo() {
+        String localAddr = socket.getLocalAddress().getHostAddress();
+        String remoteAddr = socket.getInetAddress().getHostAddress();
 
-        // Connection info.
-        session.setAddr(socket.getLocalAddress().getHostName());
-        session.setRdns(socket.getLocalAddress().getHostAddress());
+        session.setAddr(localAddr);
+        session.setRdns(localAddr);
 
-        session.setFriendAddr(socket.getInetAddress().getHostAddress());
-        session.setFriendRdns(socket.getInetAddress().getHostName());
+        session.setFriendAddr(remoteAddr);
+        session.setFriendRdns(remoteAddr);
+
+        if (Config.getServer().getRdnsConfig().isEnabled()) {
+            localRdns = lookupRdns(socket.getLocalAddress());
+            remoteRdns = lookupRdns(socket.getInetAddress());
+        }
+    }
+
+    /**
+     * [Server] Looks up host name of given address.
+     * <p>Can be overridden for testing/mocking purposes.
+     *
+     * @param address InetAddress instance.
+     * @return Future of host name or null if none.
+     */
+    protected CompletableFuture<String> lookupRdns(InetAddress address) {
+        return RdnsResolver.getInstance().lookup(address);
+    }
+
+    /**
+     * [Server] Waits for reverse lookups up to the greeting budget and sets the host names on session.
+     * <p>Lookups still pending afterward are applied by {@link #applyRdns()} once they complete.
+     */
+    public void awaitRdns() {
+        try {
+            CompletableFuture.allOf(localRdns, remoteRdns)
+                    .get(Config.getServer().getRdnsConfig().getGreetingBudget(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("Reverse lookup pending after greeting budget for: {}", session.getFriendAddr());
+        } catch (ExecutionException e) {
+            log.debug("Reverse lookup error: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        applyRdns();
+    }
+
+    /**
+     * [Server] Sets host names of completed reverse lookups on session.
+     * <p>Called on the session thread, each result is applied once and pending ones are left for a later call.
+     */
+    public void applyRdns() {
+        if (localRdns.isDone()) {
+            // Unless already changed.
+            String local = getRdns(localRdns);
+            if (local != null && socket.getLocalAddress().getHostAddress().equals(session.getAddr())) {
+                session.setAddr(local);
+            }
+            localRdns = DONE;
+        }
+
+        if (remoteRdns.isDone()) {
+            // Unless already changed, like by XCLIENT.
+            String remote = getRdns(remoteRdns);
+            String remoteAddr = remote != null ? socket.getInetAddress().getHostAddress() : null;
+            if (remote != null && remoteAddr.equals(session.getFriendAddr()) && remoteAddr.equals(session.getFriendRdns())) {
+                session.setFriendRdns(remote);
+            }
+            remoteRdns = DONE;
+        }
+    }
+
+    /**
+     * [Server] Gets completed reverse lookup result.
+     *
+     * @param lookup Lookup future.
+     * @return Host name or null if pending, failed or none.
+     */
+    private static String getRdns(CompletableFuture<String> lookup) {
+        return lookup.isDone() && !lookup.isCompletedExceptionally() ? lookup.join() : null;
     }
 
     /**
@@ -136,12 +262,22 @@ public class Connection extends SmtpFoundation {
 
     /**
      * Build input/output streams.
+     * <p>Output is buffered when pipelining reply batching is enabled.
      *
      * @throws IOException Unable to communicate.
      */
     public void buildStreams() throws IOException {
         inc = new LineInputStream(socket.getInputStream());
-        out = new DataOutputStream(socket.getOutputStream());
+        out = new DataOutputStream(pipelining ? new BufferedOutputStream(socket.getOutputStream()) : socket.getOutputStream());
+    }
+
+    /**
+     * Gets input stream.
+     *
+     * @return LineInputStream instance.
+     */
+    public LineInputStream getInputStream() {
+        return inc;
     }
 
     /**
@@ -209,12 +345,14 @@ public class Connection extends SmtpFoundation {
      * @return Optional of ScenarioConfig.
      */
     public Optional<ScenarioConfig> getScenario() {
-        return scenario != null ? Optional.of(scenario) : Optional.ofNullable(Config.getServer())
-                .map(ServerConfig::getScenarios)
-                .map(s -> {
-                    ScenarioConfig c = s.get(session.getEhlo());
-                    return c != null ? c : s.get("*");
-                });
+        if (scenario != null) {
+            return Optional.of(scenario);
+        }
+
+        // Scenarios are indexed by EHLO and compiled once per server config.
+        Map<String, ScenarioConfig> scenarios = Config.getServer().getScenarios();
+        ScenarioConfig config = scenarios.get(session.getEhlo());
+        return Optional.ofNullable(config != null ? config : scenarios.get("*"));
     }
 
     /**
@@ -224,4 +362,17 @@ public class Connection extends SmtpFoundation {
     public void reset() {
         // TODO Implement reset.
     }
+
+    /**
+     * Close socket.
+     * <p>Hands the session transcript to the sink if recorded.
+     */
+    @Override
+    public void close() {
+        super.close();
+
+        Transcript finished = transcript;
+        transcript = null;
+        TranscriptSink.close(finished, session);
+    }
 }
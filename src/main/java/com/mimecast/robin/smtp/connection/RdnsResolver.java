@@ -0,0 +1,173 @@
+package com.mimecast.robin.smtp.connection;
+
+import com.mimecast.robin.config.server.RdnsConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.util.AsyncTtlCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xbill.DNS.*;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous reverse DNS resolver with a shared TTL cache.
+ *
+ * <p>Resolves PTR records with the dnsjava async resolver API so the caller never blocks on DNS.
+ * <p>Names are forward confirmed, an A or AAAA lookup of the name must return the address or none is used.
+ * <p>Results are cached for the record TTL capped by {@link RdnsConfig#getMaxTtl()}.
+ * <p>Addresses without a confirmed PTR record and failed lookups are cached for {@link RdnsConfig#getNegativeTtl()}.
+ * <p>Concurrent lookups of the same address share one query.
+ * <p>The cache is bounded by {@link RdnsConfig#getCacheSize()} and shared across listeners.
+ * <p>Loopback addresses resolve to <i>localhost</i> without a query.
+ *
+ * @see AsyncTtlCache
+ */
+public class RdnsResolver {
+    private static final Logger log = LogManager.getLogger(RdnsResolver.class);
+
+    /**
+     * Shared instance.
+     */
+    private static volatile RdnsResolver instance;
+
+    /**
+     * Cache.
+     */
+    private final AsyncTtlCache<InetAddress, String> cache;
+
+    private final long maxTtl;
+    private final long negativeTtl;
+
+    /**
+     * Gets shared instance.
+     * <p>Configured from the server config on first use.
+     *
+     * @return RdnsResolver instance.
+     */
+    public static RdnsResolver getInstance() {
+        if (instance == null) {
+            synchronized (RdnsResolver.class) {
+                if (instance == null) {
+                    instance = new RdnsResolver(Config.getServer().getRdnsConfig());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Constructs a new RdnsResolver instance.
+     *
+     * @param config RdnsConfig instance.
+     */
+    public RdnsResolver(RdnsConfig config) {
+        this.cache = new AsyncTtlCache<>(config.getCacheSize());
+        this.maxTtl = config.getMaxTtl() * 1000L;
+        this.negativeTtl = config.getNegativeTtl() * 1000L;
+    }
+
+    /**
+     * Looks up the host name of given address.
+     * <p>Returns a cached or in-flight result when there is one.
+     *
+     * @param address InetAddress instance.
+     * @return Future of host name without trailing dot or null if none.
+     */
+    public CompletableFuture<String> lookup(InetAddress address) {
+        if (address.isLoopbackAddress()) {
+            return CompletableFuture.completedFuture("localhost");
+        }
+
+        return cache.get(address, this::resolve);
+    }
+
+    /**
+     * Gets number of cached addresses.
+     *
+     * @return Cache size.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Resolves PTR record.
+     *
+     * @param address InetAddress instance.
+     * @return Future of host name or null with TTL.
+     */
+    private CompletionStage<AsyncTtlCache.Timed<String>> resolve(InetAddress address) {
+        Message query = Message.newQuery(org.xbill.DNS.Record.newRecord(ReverseMap.fromAddress(address), Type.PTR, DClass.IN));
+
+        return Lookup.getDefaultResolver().sendAsync(query).handle((response, error) -> {
+            if (error != null) {
+                log.debug("Reverse lookup failed for {}: {}", address.getHostAddress(), error.getMessage());
+            } else {
+                for (org.xbill.DNS.Record rec : response.getSection(Section.ANSWER)) {
+                    if (rec instanceof PTRRecord ptr) {
+                        return confirm(address, ptr);
+                    }
+                }
+            }
+
+            return CompletableFuture.completedFuture(negative());
+        }).thenCompose(stage -> stage);
+    }
+
+    /**
+     * Forward confirms PTR record name.
+     * <p>Looks up the A or AAAA records of the name matching the address family.
+     *
+     * @param address InetAddress instance.
+     * @param ptr     PTRRecord instance.
+     * @return Future of host name or null with TTL.
+     */
+    private CompletionStage<AsyncTtlCache.Timed<String>> confirm(InetAddress address, PTRRecord ptr) {
+        int type = address instanceof Inet6Address ? Type.AAAA : Type.A;
+        Message query = Message.newQuery(org.xbill.DNS.Record.newRecord(ptr.getTarget(), type, DClass.IN));
+
+        return Lookup.getDefaultResolver().sendAsync(query).handle((response, error) -> {
+            if (error != null) {
+                log.debug("Forward lookup failed for {}: {}", ptr.getTarget(), error.getMessage());
+                return negative();
+            }
+
+            for (org.xbill.DNS.Record rec : response.getSection(Section.ANSWER)) {
+                if (address.equals(getAddress(rec))) {
+                    long ttl = Math.min(ptr.getTTL(), rec.getTTL()) * 1000L;
+                    return new AsyncTtlCache.Timed<>(ptr.getTarget().toString(true), Math.min(ttl, maxTtl));
+                }
+            }
+
+            log.debug("Reverse name {} not confirmed for {}", ptr.getTarget(), address.getHostAddress());
+            return negative();
+        });
+    }
+
+    /**
+     * Gets address of A or AAAA record.
+     *
+     * @param rec Record instance.
+     * @return InetAddress instance or null if other type.
+     */
+    private static InetAddress getAddress(org.xbill.DNS.Record rec) {
+        if (rec instanceof ARecord a) {
+            return a.getAddress();
+        } else if (rec instanceof AAAARecord aaaa) {
+            return aaaa.getAddress();
+        }
+        return null;
+    }
+
+    /**
+     * Gets negative result.
+     *
+     * @return Null with negative TTL.
+     */
+    private AsyncTtlCache.Timed<String> negative() {
+        return new AsyncTtlCache.Timed<>(null, negativeTtl);
+    }
+}
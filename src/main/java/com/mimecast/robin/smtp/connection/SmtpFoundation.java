@@ -1,15 +1,19 @@
 package com.mimecast.robin.smtp.connection;
 
 import com.mimecast.robin.main.Factories;
+import com.mimecast.robin.smtp.io.DataDecoder;
 import com.mimecast.robin.smtp.io.LineInputStream;
 import com.mimecast.robin.smtp.io.SlowOutputStream;
+import com.mimecast.robin.smtp.io.TransferCountingOutputStream;
 import com.mimecast.robin.util.Random;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.SSLSocket;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
@@ -23,6 +27,7 @@ import java.util.List;
  * SMTP foundation for socket reads and writes.
  *
  * <p>Provides basic socket functionalities for building SMTP servers and clients.
+ * <p>Command and reply lines go to the {@link Transcript} when one is open and to the log otherwise.
  *
  * @see Connection
  * @see <a href="https://tools.ietf.org/html/rfc5321">RFC 5321</a>
@@ -42,6 +47,11 @@ public abstract class SmtpFoundation {
      */
     public static final int EXTENDEDTIMEOUT = 120000;
 
+    /**
+     * Block size for fixed length reads.
+     */
+    private static final int READ_BLOCK_SIZE = 65536;
+
     /**
      * Socket instance.
      */
@@ -57,6 +67,15 @@ public abstract class SmtpFoundation {
      */
     DataOutputStream out;
 
+    /**
+     * Pipelining reply batching.
+     * <p>When enabled writes are buffered and only flushed once the input buffer drains,
+     * before reading message content or starting TLS and on close.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc2920">RFC 2920</a>
+     */
+    boolean pipelining = false;
+
     /**
      * Default TLS protocols supported as string array.
      */
@@ -72,6 +91,11 @@ public abstract class SmtpFoundation {
      */
     protected boolean logData = true;
 
+    /**
+     * Session transcript or null if not recorded.
+     */
+    protected Transcript transcript;
+
     /**
      * Constants.
      */
@@ -147,9 +171,11 @@ public abstract class SmtpFoundation {
         String receivedCode = "";
 
         try {
+            flushIfDrained();
+
             byte[] read;
             while ((read = inc.readLine()) != null) {
-                log.info("<< {}", StringUtils.stripEnd(new String(read, UTF_8), null));
+                logRead(read);
 
                 if (expectedCode.length() == 3) {
                     receivedCode = new String(read).trim().substring(0, expectedCode.length());
@@ -161,6 +187,7 @@ public abstract class SmtpFoundation {
                 }
             }
         } catch (IOException e) {
+            failed();
             log.info("Error reading: {}", e.getMessage());
             throw e;
         }
@@ -176,6 +203,61 @@ public abstract class SmtpFoundation {
         return received.toString();
     }
 
+    /**
+     * Logs line read.
+     *
+     * @param line Line bytes.
+     */
+    public void logRead(byte[] line) {
+        if (transcript != null) {
+            transcript.record(Transcript.IN, line);
+        } else if (log.isInfoEnabled()) {
+            log.info("<< {}", StringUtils.stripEnd(new String(line, UTF_8), null));
+        }
+    }
+
+    /**
+     * Logs bytes written.
+     *
+     * @param bytes Bytes written.
+     */
+    private void logWrite(byte[] bytes) {
+        if (transcript != null) {
+            transcript.record(Transcript.OUT, bytes);
+        } else if (log.isInfoEnabled()) {
+            log.info(LOG_WRITE, new String(bytes).trim());
+        }
+    }
+
+    /**
+     * Marks transcript as failed on I/O errors.
+     */
+    private void failed() {
+        if (transcript != null) {
+            transcript.setFailed();
+        }
+    }
+
+    /**
+     * Sets session transcript.
+     *
+     * @param transcript Transcript instance or null to log lines instead.
+     * @return Self.
+     */
+    public SmtpFoundation setTranscript(Transcript transcript) {
+        this.transcript = transcript;
+        return this;
+    }
+
+    /**
+     * Gets session transcript.
+     *
+     * @return Transcript instance or null.
+     */
+    public Transcript getTranscript() {
+        return transcript;
+    }
+
     /**
      * Check for SMTP multiline last line.
      *
@@ -188,76 +270,62 @@ public abstract class SmtpFoundation {
 
     /**
      * Read fixed number of bytes from socket.
+     * <p>Bytes already buffered by the line reader are consumed first and the rest is copied in large blocks.
+     * <p>A TransferCountingOutputStream destination lets file storage use channel transfer instead.
      *
      * @param bytesToRead  Number of bytes to read.
      * @param outputStream OutputStream instance.
      * @throws IOException Unable to communicate.
+     * @see TransferCountingOutputStream
      */
     public void readBytes(int bytesToRead, OutputStream outputStream) throws IOException {
-        for (int i = 0; i < bytesToRead; i++) {
-            outputStream.write((byte) inc.read());
+        flush();
+
+        long read;
+        if (outputStream instanceof TransferCountingOutputStream transferStream) {
+            read = transferStream.transferFrom(inc, bytesToRead);
+        } else {
+            read = IOUtils.copyLarge(inc, outputStream, 0, bytesToRead, new byte[Math.min(READ_BLOCK_SIZE, Math.max(bytesToRead, 1))]);
+        }
+
+        if (read < bytesToRead) {
+            failed();
+            log.info("Error reading: {} of {} bytes received", read, bytesToRead);
+            throw new EOFException("Connection closed after " + read + " of " + bytesToRead + " bytes");
         }
     }
 
     /**
      * Read multiline data from socket to given output stream.
-     * <p>To remove the &lt;CRLF&gt;.&lt;CRLF&gt; terminator we need to keep EOL's.
-     * <p>This lets us check previous line endings + current line for the terminator as per RFC 5321.
+     * <p>Raw bytes are fed to a DataDecoder which removes dot stuffing and stops at the &lt;CRLF&gt;.&lt;CRLF&gt; terminator.
+     * <p>Bytes read past the terminator are pushed back for the next command.
      *
      * @param out OutputStream instance.
      * @throws IOException Unable to communicate.
+     * @see DataDecoder
      */
     public void readMultiline(OutputStream out) throws IOException {
         try {
-            byte[] read;
-            byte[] eol = new byte[0];
-            while ((read = inc.readLine()) != null) {
-                // Stop if terminator found
-                int length = eol.length + read.length;
-                if ((length == 5 || length == 3) && isTerminator(eol, read)) {
-                    break;
-                }
+            flush();
 
-                // Write previous EOL if any
-                out.write(eol);
-                // Get current EOL and store
-                eol = getEol(read);
+            DataDecoder decoder = new DataDecoder(out);
+            byte[] buffer = new byte[READ_BLOCK_SIZE];
 
-                // Write line without EOL
-                out.write(trimBytes(read, eol.length));
+            int read;
+            while (!decoder.isDone() && (read = inc.read(buffer, 0, buffer.length)) != -1) {
+                int used = decoder.decode(buffer, 0, read);
+                if (used < read) {
+                    inc.unread(buffer, used, read - used);
+                }
             }
+            decoder.finish();
         } catch (IOException e) {
+            failed();
             log.info("Error reading: {}", e.getMessage());
             throw e;
         }
     }
 
-    /**
-     * Is fullstop.
-     * <p>Check given byte arrays form &lt;CRLF&gt;.&lt;CRLF&gt; terminator sequence.
-     *
-     * @param arrays Byte arrays.
-     * @return Boolean.
-     */
-    private boolean isTerminator(byte[]... arrays) {
-        int length = 0;
-        for (byte[] array : arrays) {
-            length += array.length;
-        }
-
-        byte[] total = new byte[length];
-        int pos = 0;
-        for (byte[] array : arrays) {
-            System.arraycopy(array, 0, total, pos, array.length);
-            pos += array.length;
-        }
-
-        return (total.length == 5 && total[0] == 13 && total[1] == 10 && total[2] == 46 && total[3] == 13 && total[4] == 10) ||
-                // For non compliant cases
-                (total.length == 3 && total[0] == 10 && total[1] == 46 && total[2] == 10) ||
-                (total.length == 3 && total[0] == 13 && total[1] == 46 && total[2] == 13);
-    }
-
     /**
      * Gets EOL.
      * <p>Gets EOL bytes from given byte array.
@@ -303,6 +371,54 @@ public abstract class SmtpFoundation {
         return rest;
     }
 
+    /**
+     * Sets pipelining reply batching.
+     * <p>Takes effect for streams built after this call.
+     *
+     * @param pipelining Boolean.
+     * @return Self.
+     */
+    public SmtpFoundation setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+        return this;
+    }
+
+    /**
+     * Is pipelining reply batching enabled.
+     *
+     * @return Boolean.
+     */
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    /**
+     * Flushes buffered writes to socket.
+     *
+     * @throws IOException Unable to communicate.
+     */
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed();
+            log.info("Error writing: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Flushes buffered writes if no more input is buffered.
+     * <p>Replies to pipelined commands are held back while further commands can be read without blocking.
+     *
+     * @throws IOException Unable to communicate.
+     */
+    public void flushIfDrained() throws IOException {
+        if (pipelining && inc.available() == 0) {
+            flush();
+        }
+    }
+
     /**
      * Write string to a socket via the instance DataOutputStream.
      *
@@ -319,12 +435,47 @@ public abstract class SmtpFoundation {
      * @param bytes String to write to socket.
      * @throws IOException Unable to communicate.
      */
-    @SuppressWarnings("java:S2629") // Info should always be enabled.
     public void write(byte[] bytes) throws IOException {
         try {
             out.write(bytes);
-            log.info(LOG_WRITE, new String(bytes).trim());
+            if (!pipelining) {
+                out.flush();
+            }
+            logWrite(bytes);
         } catch (IOException e) {
+            failed();
+            log.info("Error writing: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Write multiple lines to a socket in a single write.
+     * <p>Used for pipelined commands.
+     *
+     * @param lines Lines to write without EOL.
+     * @throws IOException Unable to communicate.
+     * @see <a href="https://tools.ietf.org/html/rfc2920">RFC 2920</a>
+     */
+    public void write(List<String> lines) throws IOException {
+        StringBuilder batch = new StringBuilder();
+        for (String line : lines) {
+            batch.append(line).append("\r\n");
+        }
+
+        try {
+            byte[] bytes = batch.toString().getBytes(UTF_8);
+            out.write(bytes);
+            out.flush();
+            if (transcript != null) {
+                transcript.record(Transcript.OUT, bytes);
+            } else if (log.isInfoEnabled()) {
+                for (String line : lines) {
+                    log.info(LOG_WRITE, line);
+                }
+            }
+        } catch (IOException e) {
+            failed();
             log.info("Error writing: {}", e.getMessage());
             throw e;
         }
@@ -392,7 +543,7 @@ public abstract class SmtpFoundation {
     /**
      * Write from given InputStream.
      * <p>Used for DATA deliveries.
-     * <p>Implements dot stuffing.
+     * <p>Implements dot stuffing of every line starting with a dot.
      *
      * @param inputStream Input stream.
      * @throws IOException Unable to communicate.
@@ -414,20 +565,17 @@ public abstract class SmtpFoundation {
     public void stream(LineInputStream inputStream, int slowBytes, int slowWait) throws IOException {
         OutputStream outStream = slowBytes >= 1 && slowWait >= 100 ? new SlowOutputStream(out, slowBytes, slowWait) : out;
 
-        String string;
         byte[] bytes;
         while ((bytes = inputStream.readLine()) != null) {
-            string = new String(bytes).trim();
-
             // Dot stuffing.
-            if (string.equals(".")) {
-                outStream.write(".".getBytes(UTF_8));
+            if (bytes.length > 0 && bytes[0] == '.') {
+                outStream.write('.');
             }
 
             outStream.write(bytes);
 
             if (logData && log.isTraceEnabled()) {
-                log.trace(LOG_WRITE, StringUtils.stripEnd(new String(bytes, UTF_8).replaceAll("\\s+$", ""), null));
+                log.trace(LOG_WRITE, StringUtils.stripEnd(new String(bytes, UTF_8), null));
             }
         }
         outStream.write("\r\n".getBytes(UTF_8));
@@ -441,6 +589,7 @@ public abstract class SmtpFoundation {
      */
     public void startTLS(boolean client) throws SmtpException {
         try {
+            flush();
             socket = Factories.getTLSSocket()
                     .setSocket(socket)
                     .setProtocols(protocols)
@@ -457,6 +606,14 @@ public abstract class SmtpFoundation {
      * Close socket.
      */
     public void close() {
+        try {
+            if (out != null && socket != null && !socket.isClosed()) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.info("Error flushing: {}", e.getMessage());
+        }
+
         try {
             if (socket != null && !socket.isClosed()) {
                 socket.close();
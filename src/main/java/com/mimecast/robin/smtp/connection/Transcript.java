@@ -0,0 +1,329 @@
+package com.mimecast.robin.smtp.connection;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Session transcript ring buffer.
+ *
+ * <p>Holds the raw bytes of command and reply lines with their timestamps in a fixed size byte ring.
+ * <p>Recording a line copies its bytes and allocates nothing, the oldest lines are dropped once the ring is full.
+ * <p>Replies starting with a 4xx or 5xx code mark the session as failed.
+ * <p>Lines are only decoded when the sink writes the transcript out.
+ * <p>Instances are confined to the connection thread until handed to the sink.
+ *
+ * @see TranscriptSink
+ */
+public class Transcript {
+
+    /**
+     * Line directions.
+     */
+    public static final byte IN = '<';
+    public static final byte OUT = '>';
+
+    /**
+     * Entry header size: direction, timestamp and length.
+     */
+    private static final int HEADER = 1 + 8 + 4;
+
+    /**
+     * Maximum bytes kept per line.
+     */
+    private static final int MAX_LINE = 1024;
+
+    /**
+     * Ring buffer.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Oldest entry offset.
+     */
+    private int head = 0;
+
+    /**
+     * Next entry offset.
+     */
+    private int tail = 0;
+
+    /**
+     * Bytes in use.
+     */
+    private int used = 0;
+
+    /**
+     * Number of lines held and dropped.
+     */
+    private int lines = 0;
+    private int dropped = 0;
+
+    /**
+     * Failed session flag.
+     */
+    private boolean failed = false;
+
+    /**
+     * Session start time.
+     */
+    private final long started = System.currentTimeMillis();
+
+    /**
+     * Session details set on close.
+     */
+    private String uid = "";
+    private String addr = "";
+
+    /**
+     * Constructs a new Transcript instance with given buffer.
+     *
+     * @param buffer Ring buffer, reused across sessions.
+     */
+    public Transcript(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Records bytes.
+     * <p>Bytes holding several lines are recorded line by line and line endings are dropped.
+     *
+     * @param direction Direction, IN or OUT.
+     * @param bytes     Byte array.
+     * @param offset    Start offset.
+     * @param length    Number of bytes.
+     */
+    public void record(byte direction, byte[] bytes, int offset, int length) {
+        long time = System.currentTimeMillis();
+        int end = offset + length;
+        int start = offset;
+
+        for (int i = offset; i <= end; i++) {
+            if (i == end || bytes[i] == '\n') {
+                int stop = i;
+                while (stop > start && (bytes[stop - 1] == '\r' || bytes[stop - 1] == '\n')) {
+                    stop--;
+                }
+                if (stop > start || i < end) {
+                    add(direction, time, bytes, start, stop - start);
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Records line.
+     *
+     * @param direction Direction, IN or OUT.
+     * @param bytes     Byte array.
+     */
+    public void record(byte direction, byte[] bytes) {
+        record(direction, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Adds entry dropping the oldest ones to make room.
+     *
+     * @param direction Direction.
+     * @param time      Timestamp.
+     * @param bytes     Byte array.
+     * @param offset    Start offset.
+     * @param length    Line length.
+     */
+    private void add(byte direction, long time, byte[] bytes, int offset, int length) {
+        if (direction == OUT && isFailure(bytes, offset, length)) {
+            failed = true;
+        }
+
+        length = Math.min(length, Math.min(MAX_LINE, buffer.length - HEADER));
+        int need = HEADER + length;
+        while (used + need > buffer.length) {
+            int size = HEADER + readInt(head + 9);
+            head = (head + size) % buffer.length;
+            used -= size;
+            lines--;
+            dropped++;
+        }
+
+        put(tail, direction);
+        for (int i = 0; i < 8; i++) {
+            put(tail + 1 + i, (byte) (time >>> (56 - 8 * i)));
+        }
+        for (int i = 0; i < 4; i++) {
+            put(tail + 9 + i, (byte) (length >>> (24 - 8 * i)));
+        }
+        copyIn(tail + HEADER, bytes, offset, length);
+
+        tail = (tail + need) % buffer.length;
+        used += need;
+        lines++;
+    }
+
+    /**
+     * Is reply a 4xx or 5xx failure.
+     *
+     * @param bytes  Byte array.
+     * @param offset Start offset.
+     * @param length Line length.
+     * @return Boolean.
+     */
+    private static boolean isFailure(byte[] bytes, int offset, int length) {
+        return length >= 3 &&
+                (bytes[offset] == '4' || bytes[offset] == '5') &&
+                bytes[offset + 1] >= '0' && bytes[offset + 1] <= '9' &&
+                bytes[offset + 2] >= '0' && bytes[offset + 2] <= '9' &&
+                (length == 3 || bytes[offset + 3] == ' ' || bytes[offset + 3] == '-');
+    }
+
+    /**
+     * Marks session as failed.
+     * <p>Used for I/O errors.
+     */
+    public void setFailed() {
+        this.failed = true;
+    }
+
+    /**
+     * Is session failed.
+     *
+     * @return Boolean.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets number of lines held.
+     *
+     * @return Line count.
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Gets number of lines dropped to make room.
+     *
+     * @return Dropped count.
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Gets ring buffer.
+     *
+     * @return Byte array.
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Sets session details.
+     *
+     * @param uid  Session UID.
+     * @param addr Client address.
+     * @return Self.
+     */
+    public Transcript setSession(String uid, String addr) {
+        this.uid = uid != null ? uid : "";
+        this.addr = addr != null ? addr : "";
+        return this;
+    }
+
+    /**
+     * Writes transcript as a single JSON object.
+     * <p>Lines are arrays of milliseconds since session start, direction and text.
+     *
+     * @param json JsonWriter instance.
+     * @throws IOException Unable to write.
+     */
+    public void writeTo(JsonWriter json) throws IOException {
+        json.beginObject();
+        json.name("uid").value(uid);
+        json.name("addr").value(addr);
+        json.name("start").value(started);
+        json.name("failed").value(failed);
+        json.name("dropped").value(dropped);
+        json.name("lines").beginArray();
+
+        byte[] line = new byte[Math.min(MAX_LINE, buffer.length)];
+        int position = head;
+        for (int n = 0; n < lines; n++) {
+            byte direction = buffer[position];
+            long time = 0;
+            for (int i = 0; i < 8; i++) {
+                time = time << 8 | (buffer[(position + 1 + i) % buffer.length] & 0xFF);
+            }
+            int length = readInt(position + 9);
+            copyOut(position + HEADER, line, length);
+
+            json.beginArray();
+            json.value(time - started);
+            json.value(String.valueOf((char) direction));
+            json.value(new String(line, 0, length, StandardCharsets.UTF_8));
+            json.endArray();
+
+            position = (position + HEADER + length) % buffer.length;
+        }
+
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * Puts byte at ring offset.
+     *
+     * @param index Offset, wrapped.
+     * @param value Byte.
+     */
+    private void put(int index, byte value) {
+        buffer[index % buffer.length] = value;
+    }
+
+    /**
+     * Reads int at ring offset.
+     *
+     * @param index Offset, wrapped.
+     * @return Integer.
+     */
+    private int readInt(int index) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | (buffer[(index + i) % buffer.length] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Copies bytes into the ring.
+     *
+     * @param index  Ring offset, wrapped.
+     * @param bytes  Source array.
+     * @param offset Source offset.
+     * @param length Number of bytes.
+     */
+    private void copyIn(int index, byte[] bytes, int offset, int length) {
+        int from = index % buffer.length;
+        int first = Math.min(length, buffer.length - from);
+        System.arraycopy(bytes, offset, buffer, from, first);
+        System.arraycopy(bytes, offset + first, buffer, 0, length - first);
+    }
+
+    /**
+     * Copies bytes out of the ring.
+     *
+     * @param index  Ring offset, wrapped.
+     * @param dest   Destination array.
+     * @param length Number of bytes.
+     */
+    private void copyOut(int index, byte[] dest, int length) {
+        int from = index % buffer.length;
+        int first = Math.min(length, buffer.length - from);
+        System.arraycopy(buffer, from, dest, 0, first);
+        System.arraycopy(buffer, 0, dest, first, length - first);
+    }
+}
@@ -0,0 +1,347 @@
+package com.mimecast.robin.smtp.connection;
+
+import com.google.gson.stream.JsonWriter;
+import com.mimecast.robin.config.server.TranscriptConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.smtp.session.Session;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous session transcript sink.
+ *
+ * <p>Writes finished session transcripts as NDJSON, one JSON object per session, from a single daemon thread.
+ * <p>Connections only copy line bytes into their {@link Transcript} ring and never format or log lines themselves.
+ * <p>Sessions are sampled by {@link TranscriptConfig#getSampleRate()} when opened.
+ * <p>With the failed policy only sessions with a 4xx or 5xx reply or an I/O error are written.
+ * <p>Ring buffers are pooled and reused so recording allocates nothing per line.
+ * <p>When the queue is full transcripts are dropped and counted rather than blocking the connection.
+ * <p>The file is opened on first use and path or sizes need a restart to change.
+ *
+ * @see Transcript
+ */
+public class TranscriptSink {
+    private static final Logger log = LogManager.getLogger(TranscriptSink.class);
+
+    /**
+     * Shared instance.
+     */
+    private static volatile TranscriptSink instance;
+
+    /**
+     * Maximum number of pooled ring buffers.
+     */
+    private static final int POOL_SIZE = 256;
+
+    /**
+     * Finished transcripts waiting to be written.
+     */
+    private final BlockingQueue<Transcript> queue;
+
+    /**
+     * Free ring buffers.
+     */
+    private final Queue<byte[]> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Transcript file path.
+     */
+    private final Path path;
+
+    /**
+     * Ring buffer size.
+     */
+    private final int bufferSize;
+
+    /**
+     * Number of transcripts written and dropped.
+     */
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Number of transcripts submitted and not yet written or dropped.
+     */
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * Gets shared instance.
+     * <p>Configured from the server config on first use.
+     *
+     * @return TranscriptSink instance.
+     */
+    public static TranscriptSink getInstance() {
+        if (instance == null) {
+            synchronized (TranscriptSink.class) {
+                if (instance == null) {
+                    instance = new TranscriptSink(Config.getServer().getTranscriptConfig());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Opens transcript for new session.
+     * <p>Returns null unless the sink is enabled and the session is sampled.
+     *
+     * @return Transcript instance or null.
+     */
+    public static Transcript open() {
+        TranscriptConfig config = Config.getServer() != null ? Config.getServer().getTranscriptConfig() : null;
+        if (config == null || !config.isEnabled()) {
+            return null;
+        }
+
+        int rate = config.getSampleRate();
+        if (rate < 100 && ThreadLocalRandom.current().nextInt(100) >= rate) {
+            return null;
+        }
+
+        return getInstance().newTranscript();
+    }
+
+    /**
+     * Submits finished session transcript to the shared instance.
+     *
+     * @param transcript Transcript instance or null.
+     * @param session    Session instance.
+     */
+    public static void close(Transcript transcript, Session session) {
+        if (transcript == null) {
+            return;
+        }
+
+        TranscriptConfig config = Config.getServer() != null ? Config.getServer().getTranscriptConfig() : new TranscriptConfig();
+        getInstance().submit(transcript.setSession(session.getUID(), session.getFriendAddr()), config.isFailedOnly());
+    }
+
+    /**
+     * Waits for the shared instance to write submitted transcripts.
+     * <p>Used on shutdown.
+     *
+     * @param timeout Time in milliseconds.
+     */
+    public static void drain(long timeout) {
+        if (instance != null) {
+            try {
+                instance.await(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Constructs a new TranscriptSink instance.
+     *
+     * @param config TranscriptConfig instance.
+     */
+    public TranscriptSink(TranscriptConfig config) {
+        this.path = Paths.get(config.getPath());
+        this.bufferSize = config.getBufferSize();
+        this.queue = new ArrayBlockingQueue<>(config.getQueueSize());
+
+        Thread writer = new Thread(this::run, "transcript-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Creates transcript with a pooled ring buffer.
+     *
+     * @return Transcript instance.
+     */
+    public Transcript newTranscript() {
+        byte[] buffer = pool.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+        } else {
+            buffer = new byte[bufferSize];
+        }
+        return new Transcript(buffer);
+    }
+
+    /**
+     * Submits finished transcript for writing.
+     *
+     * @param transcript Transcript instance.
+     * @param failedOnly Only write failed sessions.
+     */
+    public void submit(Transcript transcript, boolean failedOnly) {
+        if (failedOnly && !transcript.isFailed()) {
+            recycle(transcript);
+            return;
+        }
+
+        pending.incrementAndGet();
+        if (!queue.offer(transcript)) {
+            dropped.incrementAndGet();
+            pending.decrementAndGet();
+            recycle(transcript);
+        }
+    }
+
+    /**
+     * Waits for submitted transcripts to be written.
+     *
+     * @param timeout Time in milliseconds.
+     * @return True if all were written in time.
+     * @throws InterruptedException If interrupted.
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (pending.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Gets number of transcripts written.
+     *
+     * @return Written count.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Gets number of transcripts dropped on a full queue or write error.
+     *
+     * @return Dropped count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets transcript file path.
+     *
+     * @return Path instance.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns ring buffer to the pool.
+     *
+     * @param transcript Transcript instance.
+     */
+    private void recycle(Transcript transcript) {
+        byte[] buffer = transcript.getBuffer();
+        if (buffer.length == bufferSize && pooled.get() < POOL_SIZE) {
+            pooled.incrementAndGet();
+            pool.offer(buffer);
+        }
+    }
+
+    /**
+     * Writer loop.
+     * <p>Flushes whenever the queue runs empty.
+     */
+    private void run() {
+        Writer out = null;
+        while (true) {
+            Transcript transcript;
+            try {
+                transcript = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                if (transcript != null) {
+                    if (out == null) {
+                        out = openFile();
+                    }
+                    write(out, transcript);
+                    written.incrementAndGet();
+                }
+
+                if (out != null && queue.isEmpty()) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                log.error("Error writing transcript to {}: {}", path, e.getMessage());
+                if (transcript != null) {
+                    dropped.incrementAndGet();
+                }
+                out = close(out);
+            } finally {
+                if (transcript != null) {
+                    recycle(transcript);
+                    pending.decrementAndGet();
+                }
+            }
+        }
+        close(out);
+    }
+
+    /**
+     * Opens transcript file for appending.
+     *
+     * @return Writer instance.
+     * @throws IOException Unable to open.
+     */
+    private Writer openFile() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writes transcript as one NDJSON line.
+     *
+     * @param out        Writer instance.
+     * @param transcript Transcript instance.
+     * @throws IOException Unable to write.
+     */
+    private static void write(Writer out, Transcript transcript) throws IOException {
+        // Not flushed here, the loop flushes once the queue runs empty.
+        JsonWriter json = new JsonWriter(out);
+        json.setHtmlSafe(false);
+        transcript.writeTo(json);
+        out.write('\n');
+    }
+
+    /**
+     * Closes writer quietly.
+     *
+     * @param out Writer instance or null.
+     * @return Null.
+     */
+    private static Writer close(Writer out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.debug("Error closing transcript: {}", e.getMessage());
+            }
+        }
+        return null;
+    }
+}
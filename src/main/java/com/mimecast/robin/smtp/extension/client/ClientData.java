@@ -7,6 +7,7 @@ import com.mimecast.robin.smtp.MessageEnvelope;
 import com.mimecast.robin.smtp.connection.Connection;
 import com.mimecast.robin.smtp.io.ChunkedInputStream;
 import com.mimecast.robin.smtp.io.MagicInputStream;
+import com.mimecast.robin.smtp.session.Session;
 import com.mimecast.robin.smtp.transaction.EnvelopeTransactionList;
 import com.mimecast.robin.util.Magic;
 import com.mimecast.robin.util.StreamUtils;
@@ -46,6 +47,18 @@ public class ClientData extends ClientProcessor {
      */
     @Override
     public boolean process(Connection connection) throws IOException {
+        return process(connection, false);
+    }
+
+    /**
+     * DATA processor.
+     *
+     * @param connection Connection instance.
+     * @param pipelined  DATA command already sent as part of a pipelined group.
+     * @return Boolean.
+     * @throws IOException Unable to communicate.
+     */
+    public boolean process(Connection connection, boolean pipelined) throws IOException {
         super.process(connection);
 
         // Select message to send.
@@ -56,7 +69,7 @@ public class ClientData extends ClientProcessor {
         envelopeTransactions = connection.getSession().getSessionTransactionList().getEnvelopes().get(messageID);
 
         // Evaluate is BDAT enabled.
-        boolean bdat = connection.getSession().isEhloBdat() && envelope.getChunkSize() >= 128;
+        boolean bdat = !pipelined && isBdat(connection.getSession(), envelope);
 
         // Get data stream.
         InputStream inputStream = getStream(connection, bdat);
@@ -66,7 +79,7 @@ public class ClientData extends ClientProcessor {
             result = processBdat(inputStream);
 
         } else {
-            result = processData("DATA", inputStream);
+            result = processData("DATA", inputStream, pipelined);
         }
 
         StreamUtils.closeQuietly(inputStream);
@@ -74,6 +87,17 @@ public class ClientData extends ClientProcessor {
         return result;
     }
 
+    /**
+     * Is BDAT to be used for given envelope.
+     *
+     * @param session  Session instance.
+     * @param envelope MessageEnvelope instance.
+     * @return Boolean.
+     */
+    public static boolean isBdat(Session session, MessageEnvelope envelope) {
+        return session.isEhloBdat() && envelope.getChunkSize() >= 128;
+    }
+
     /**
      * DATA stream selector.
      *
@@ -140,8 +164,23 @@ public class ClientData extends ClientProcessor {
      */
     @SuppressWarnings("SameParameterValue")
     protected boolean processData(String verb, InputStream inputStream) throws IOException {
+        return processData(verb, inputStream, false);
+    }
+
+    /**
+     * DATA processor.
+     *
+     * @param verb        Verb.
+     * @param inputStream InputStream instance.
+     * @param pipelined   DATA command already sent as part of a pipelined group.
+     * @return Boolean.
+     * @throws IOException Unable to communicate.
+     */
+    protected boolean processData(String verb, InputStream inputStream, boolean pipelined) throws IOException {
         String write = verb != null ? verb : "DATA";
-        connection.write(write);
+        if (!pipelined) {
+            connection.write(write);
+        }
 
         String read;
         read = connection.read("354");
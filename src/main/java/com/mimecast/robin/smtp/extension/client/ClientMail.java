@@ -28,23 +28,41 @@ public class ClientMail extends ClientProcessor {
     public boolean process(Connection connection) throws IOException {
         super.process(connection);
 
+        String write = getMail();
+        connection.write(write);
+
+        return processResponse(write, connection.read("250"));
+    }
+
+    /**
+     * Gets MAIL command for the next envelope.
+     *
+     * @return MAIL command string.
+     */
+    String getMail() {
         // Select message to send.
         int messageID = connection.getSession().getSessionTransactionList().getEnvelopes().size();
         MessageEnvelope envelope = connection.getSession().getEnvelopes().get(messageID);
 
-        // Construct delivery envelope.
-        EnvelopeTransactionList transactionList = new EnvelopeTransactionList();
-
         // Check if envelope requires SMTPUTF8
         boolean smtpUtf8 = isUTF8(envelope.getMail().getBytes()) || envelope.getRcpts().stream().anyMatch(r -> isUTF8(r.getBytes()));
 
         // Sender.
         int size = sizeMessage(envelope);
-        String write = "MAIL FROM:<" + envelope.getMail() + ">" + (size > 0 ? " SIZE=" + size : "") + (smtpUtf8 ? " SMTPUTF8" : "") + envelope.getParams("mail");
-        connection.write(write);
-
-        String read = connection.read("250");
+        return "MAIL FROM:<" + envelope.getMail() + ">" + (size > 0 ? " SIZE=" + size : "") + (smtpUtf8 ? " SMTPUTF8" : "") + envelope.getParams("mail");
+    }
 
+    /**
+     * Processes MAIL response.
+     * <p>Adds a new delivery envelope with the MAIL transaction to the session.
+     *
+     * @param write MAIL command string.
+     * @param read  Response string.
+     * @return Boolean.
+     */
+    boolean processResponse(String write, String read) {
+        // Construct delivery envelope.
+        EnvelopeTransactionList transactionList = new EnvelopeTransactionList();
         transactionList.addTransaction("MAIL", write, read, !read.startsWith("250"));
 
         // Add transaction list to envelope.
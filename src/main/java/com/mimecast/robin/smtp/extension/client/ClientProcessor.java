@@ -29,4 +29,16 @@ public abstract class ClientProcessor {
 
         return true;
     }
+
+    /**
+     * Sets connection without processing.
+     * <p>Used by behaviours that drive the processor steps directly.
+     *
+     * @param connection Connection instance.
+     * @return Self.
+     */
+    ClientProcessor setConnection(Connection connection) {
+        this.connection = connection;
+        return this;
+    }
 }
@@ -5,6 +5,8 @@ import com.mimecast.robin.smtp.connection.Connection;
 import com.mimecast.robin.smtp.transaction.EnvelopeTransactionList;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * RCPT extension processor.
@@ -22,27 +24,56 @@ public class ClientRcpt extends ClientProcessor {
     public boolean process(Connection connection) throws IOException {
         super.process(connection);
 
-        // Select message and envelope to send.
-        int messageID = connection.getSession().getSessionTransactionList().getEnvelopes().size() - 1; // Adjust as it's initially added in ClientMail.
-        MessageEnvelope envelope = connection.getSession().getEnvelopes().get(messageID);
-
-        // Get delivery envelope.
-        EnvelopeTransactionList envelopeTransactions = connection.getSession().getSessionTransactionList().getEnvelopes().get(messageID);
-
         // Loop recipients.
-        String write;
-        String read;
         boolean accepting = false;
-        for (String to : envelope.getRcpts()) {
-            write = "RCPT TO:<" + to + ">" + envelope.getParams("rcpt");
+        for (String write : getRcpts(connection.getSession().getEnvelopes().get(getMessageID()))) {
             connection.write(write);
 
-            read = connection.read("250");
-
-            if (read.startsWith("250")) accepting = true;
-            envelopeTransactions.addTransaction("RCPT", write, read, !accepting);
+            if (processResponse(write, connection.read("250"))) accepting = true;
         }
 
         return accepting;
     }
+
+    /**
+     * Gets RCPT commands for given envelope.
+     *
+     * @param envelope MessageEnvelope instance.
+     * @return List of RCPT command strings.
+     */
+    List<String> getRcpts(MessageEnvelope envelope) {
+        List<String> rcpts = new ArrayList<>();
+        for (String to : envelope.getRcpts()) {
+            rcpts.add("RCPT TO:<" + to + ">" + envelope.getParams("rcpt"));
+        }
+
+        return rcpts;
+    }
+
+    /**
+     * Processes RCPT response.
+     * <p>Adds the RCPT transaction to the current delivery envelope.
+     *
+     * @param write RCPT command string.
+     * @param read  Response string.
+     * @return True if recipient accepted.
+     */
+    boolean processResponse(String write, String read) {
+        // Get delivery envelope.
+        EnvelopeTransactionList envelopeTransactions = connection.getSession().getSessionTransactionList().getEnvelopes().get(getMessageID());
+
+        boolean accepted = read.startsWith("250");
+        envelopeTransactions.addTransaction("RCPT", write, read, !accepted);
+
+        return accepted;
+    }
+
+    /**
+     * Gets current message ID.
+     *
+     * @return Message ID.
+     */
+    private int getMessageID() {
+        return connection.getSession().getSessionTransactionList().getEnvelopes().size() - 1; // Adjust as it's initially added in ClientMail.
+    }
 }
@@ -9,6 +9,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -111,11 +113,102 @@ public class DefaultBehaviour implements Behaviour {
      * @throws IOException Unable to communicate.
      */
     private void send() throws IOException {
+        if (isPipelining()) {
+            pipeline();
+            return;
+        }
+
         if (!process("mail", connection)) return;
         if (!process("rcpt", connection)) return;
         process("data", connection);
     }
 
+    /**
+     * Is pipelined envelope delivery possible.
+     * <p>Requires the server to advertise PIPELINING and the default MAIL, RCPT and DATA processors.
+     * <p>Can be disabled with the pipelining property.
+     *
+     * @return Boolean.
+     */
+    private boolean isPipelining() {
+        return connection.getSession().isEhloPipelining() &&
+                Config.getProperties().getBooleanProperty("pipelining", true) &&
+                isDefault("mail", ClientMail.class) &&
+                isDefault("rcpt", ClientRcpt.class) &&
+                isDefault("data", ClientData.class);
+    }
+
+    /**
+     * Is extension client processor of given default class.
+     *
+     * @param extension String.
+     * @param clazz     Default processor class.
+     * @return Boolean.
+     */
+    private boolean isDefault(String extension, Class<? extends ClientProcessor> clazz) {
+        Optional<Extension> opt = Extensions.getExtension(extension);
+        if (opt.isEmpty()) return false;
+
+        ClientProcessor processor = opt.get().getClient();
+        return processor != null && processor.getClass() == clazz;
+    }
+
+    /**
+     * Executes pipelined envelope delivery.
+     * <p>MAIL, all RCPT and DATA unless BDAT is used are sent in a single write.
+     * <p>Responses are then read in order and matched to their commands in the envelope transactions.
+     * <p>If DATA is accepted but no recipient was an empty message is sent to end the transaction.
+     *
+     * @throws IOException Unable to communicate.
+     * @see <a href="https://tools.ietf.org/html/rfc2920">RFC 2920</a>
+     */
+    private void pipeline() throws IOException {
+        ClientMail mail = (ClientMail) new ClientMail().setConnection(connection);
+        ClientRcpt rcpt = (ClientRcpt) new ClientRcpt().setConnection(connection);
+
+        int messageID = connection.getSession().getSessionTransactionList().getEnvelopes().size();
+        MessageEnvelope envelope = connection.getSession().getEnvelopes().get(messageID);
+        boolean data = !ClientData.isBdat(connection.getSession(), envelope);
+
+        // Write group.
+        String mailWrite = mail.getMail();
+        List<String> rcptWrites = rcpt.getRcpts(envelope);
+
+        List<String> group = new ArrayList<>();
+        group.add(mailWrite);
+        group.addAll(rcptWrites);
+        if (data) group.add("DATA");
+        connection.write(group);
+
+        // Read responses in order.
+        boolean accepted = mail.processResponse(mailWrite, connection.read("250"));
+
+        boolean accepting = false;
+        for (String write : rcptWrites) {
+            if (rcpt.processResponse(write, connection.read("250"))) accepting = true;
+        }
+        accepted = accepted && accepting;
+
+        if (!data) {
+            if (accepted) process("data", connection);
+            return;
+        }
+
+        if (accepted) {
+            new ClientData().process(connection, true);
+            return;
+        }
+
+        // DATA must still be answered.
+        String read = connection.read("354");
+        if (read.startsWith("354")) {
+            connection.write(".");
+            read = connection.read("250");
+        }
+        connection.getSession().getSessionTransactionList().getEnvelopes().get(messageID)
+                .addTransaction("DATA", "DATA", read, true);
+    }
+
     /**
      * Executes QUIT.
      *
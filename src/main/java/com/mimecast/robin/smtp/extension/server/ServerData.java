@@ -1,20 +1,19 @@
 package com.mimecast.robin.smtp.extension.server;
 
 import com.mimecast.robin.config.server.ScenarioConfig;
-import com.mimecast.robin.config.server.WebhookConfig;
 import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Factories;
 import com.mimecast.robin.smtp.SmtpResponses;
 import com.mimecast.robin.smtp.connection.Connection;
+import com.mimecast.robin.smtp.io.TransferCountingOutputStream;
 import com.mimecast.robin.smtp.metrics.SmtpMetrics;
 import com.mimecast.robin.smtp.verb.BdatVerb;
 import com.mimecast.robin.smtp.verb.Verb;
-import com.mimecast.robin.smtp.webhook.WebhookCaller;
 import com.mimecast.robin.storage.StorageClient;
+import com.mimecast.robin.storage.StoragePipeline;
 import org.apache.commons.io.output.CountingOutputStream;
 
 import java.io.IOException;
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -77,9 +76,13 @@ public class ServerData extends ServerProcessor {
 
         // Read email lines and store to disk.
         StorageClient storageClient = asciiRead("eml");
+        if (storageClient == null) {
+            connection.write(String.format(SmtpResponses.STORAGE_ERROR_451, connection.getSession().getUID()));
+            return;
+        }
 
-        // Call RAW webhook after successful storage.
-        callRawWebhook();
+        // Deliver and call RAW webhook after successful storage.
+        StoragePipeline.getInstance().process(connection, storageClient);
 
         Optional<ScenarioConfig> opt = connection.getScenario();
         if (opt.isPresent() && opt.get().getData() != null) {
@@ -93,13 +96,13 @@ public class ServerData extends ServerProcessor {
      * ASCII read.
      *
      * @param extension File extension.
-     * @return StorageClient StorageClient instance.
+     * @return StorageClient instance or null if the message could not be saved.
      * @throws IOException Unable to communicate.
      */
     protected StorageClient asciiRead(String extension) throws IOException {
         connection.write(SmtpResponses.READY_WILLING_354);
 
-        StorageClient storageClient = Factories.getStorageClient(connection, extension);
+        StorageClient storageClient = getStorageClient(extension);
 
         try (CountingOutputStream cos = new CountingOutputStream(storageClient.getStream())) {
             connection.setTimeout(connection.getSession().getExtendedTimeout());
@@ -110,9 +113,18 @@ public class ServerData extends ServerProcessor {
             connection.setTimeout(connection.getSession().getTimeout());
         }
 
-        storageClient.save();
+        return storageClient.save() ? storageClient : null;
+    }
 
-        return storageClient;
+    /**
+     * Gets storage client.
+     * <p>Can be overridden for testing/mocking purposes.
+     *
+     * @param extension File extension.
+     * @return StorageClient instance.
+     */
+    protected StorageClient getStorageClient(String extension) {
+        return Factories.getStorageClient(connection, extension);
     }
 
     /**
@@ -127,19 +139,22 @@ public class ServerData extends ServerProcessor {
             connection.write(SmtpResponses.INVALID_ARGS_501);
         } else {
             // Read bytes.
-            StorageClient storageClient = Factories.getStorageClient(connection, "eml");
-            CountingOutputStream cos = new CountingOutputStream(storageClient.getStream());
+            StorageClient storageClient = getStorageClient("eml");
+            CountingOutputStream cos = new TransferCountingOutputStream(storageClient.getStream());
 
             binaryRead(bdatVerb, cos);
             bytesReceived = cos.getByteCount();
 
             if (bdatVerb.isLast()) {
                 log.debug("Last chunk received.");
-                storageClient.save();
-            }
+                if (!storageClient.save()) {
+                    connection.write(String.format(SmtpResponses.STORAGE_ERROR_451, connection.getSession().getUID()));
+                    return;
+                }
 
-            // Call RAW webhook after successful storage.
-            callRawWebhook();
+                // Deliver and call RAW webhook after successful storage.
+                StoragePipeline.getInstance().process(connection, storageClient);
+            }
 
             // Scenario response or accept.
             scenarioResponse(connection.getSession().getUID());
@@ -182,31 +197,6 @@ public class ServerData extends ServerProcessor {
         }
     }
 
-    /**
-     * Calls RAW webhook if configured.
-     */
-    private void callRawWebhook() {
-        try {
-            Map<String, WebhookConfig> webhooks = Config.getServer().getWebhooks();
-
-            String filePath = connection.getSession().getEnvelopes().isEmpty() ? null :
-                    connection.getSession().getEnvelopes().getLast().getFile();
-            if (filePath == null || filePath.isEmpty()) {
-                return;
-            }
-
-            if (webhooks.containsKey("raw")) {
-                WebhookConfig rawCfg = webhooks.get("raw");
-                if (rawCfg.isEnabled()) {
-                    log.debug("Calling RAW webhook with file: {}", filePath);
-                    WebhookCaller.callRaw(rawCfg, filePath, connection);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error calling RAW webhook: {}", e.getMessage(), e);
-        }
-    }
-
     /**
      * Gets bytes received.
      *
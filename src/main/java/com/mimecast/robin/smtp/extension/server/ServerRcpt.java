@@ -12,7 +12,6 @@ import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -47,16 +46,14 @@ public class ServerRcpt extends ServerMail {
         } else if (Config.getServer().isUsersEnabled()) {
             // Scenario response.
             Optional<ScenarioConfig> opt = connection.getScenario();
-            if (opt.isPresent() && opt.get().getRcpt() != null) {
-                for (Map<String, String> entry : opt.get().getRcpt()) {
-                    if (getAddress() != null && getAddress().getAddress().matches(entry.get("value"))) {
-                        String response = entry.get("response");
-                        if (response.startsWith("2") && !connection.getSession().getEnvelopes().isEmpty()) {
-                            connection.getSession().getEnvelopes().getLast().addRcpt(getAddress().getAddress());
-                        }
-                        connection.write(response);
-                        return response.startsWith("2");
+            if (opt.isPresent() && getAddress() != null) {
+                String response = opt.get().getRcptMatcher().match(getAddress().getAddress());
+                if (response != null) {
+                    if (response.startsWith("2") && !connection.getSession().getEnvelopes().isEmpty()) {
+                        connection.getSession().getEnvelopes().getLast().addRcpt(getAddress().getAddress());
                     }
+                    connection.write(response);
+                    return response.startsWith("2");
                 }
             }
         }
@@ -0,0 +1,139 @@
+package com.mimecast.robin.smtp.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Input stream backed by a socket channel.
+ *
+ * <p>While the channel is in non-blocking mode an event loop fills the buffer using {@link #fill()} and consumes it directly.
+ * <p>Once the channel is switched to blocking mode reads drain the buffer first and then continue from the socket.
+ * <p>Socket reads go through the socket adaptor so the socket timeout is honoured.
+ */
+public class ChannelInputStream extends InputStream {
+
+    /**
+     * Maximum buffer size.
+     */
+    private static final int MAX_SIZE = 65536;
+
+    /**
+     * Socket channel instance.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Read buffer kept in read mode between calls.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Socket input stream for blocking reads.
+     */
+    private InputStream socketStream;
+
+    /**
+     * Constructs a new ChannelInputStream instance.
+     *
+     * @param channel SocketChannel instance.
+     * @param size    Initial buffer size.
+     */
+    public ChannelInputStream(SocketChannel channel, int size) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(size).flip();
+    }
+
+    /**
+     * Gets buffer.
+     * <p>The buffer is in read mode.
+     *
+     * @return ByteBuffer instance.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Fills buffer from channel without blocking when in non-blocking mode.
+     * <p>The buffer grows up to 64 KB if full.
+     *
+     * @return Number of bytes read or -1 if end of stream.
+     * @throws IOException Unable to read.
+     */
+    public int fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining() && buffer.capacity() < MAX_SIZE) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+
+        try {
+            return channel.read(buffer);
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Is buffer full.
+     *
+     * @return Boolean.
+     */
+    public boolean isFull() {
+        return buffer.remaining() == MAX_SIZE;
+    }
+
+    /**
+     * Unread bytes back to the start of the buffer.
+     *
+     * @param bytes Byte array.
+     */
+    public void unread(byte[] bytes) {
+        if (bytes.length > 0) {
+            ByteBuffer merged = ByteBuffer.allocate(Math.max(buffer.capacity(), bytes.length + buffer.remaining()));
+            merged.put(bytes).put(buffer).flip();
+            buffer = merged;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (buffer.hasRemaining()) {
+            return buffer.get() & 0xFF;
+        }
+        return getSocketStream().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (buffer.hasRemaining()) {
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+        return getSocketStream().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer.remaining() + (channel.isBlocking() ? getSocketStream().available() : 0);
+    }
+
+    /**
+     * Gets socket input stream.
+     *
+     * @return InputStream instance.
+     * @throws IOException Unable to read.
+     */
+    private InputStream getSocketStream() throws IOException {
+        if (socketStream == null) {
+            socketStream = channel.socket().getInputStream();
+        }
+        return socketStream;
+    }
+}
@@ -0,0 +1,92 @@
+package com.mimecast.robin.smtp.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Output stream backed by a socket channel.
+ *
+ * <p>In non-blocking mode bytes the socket does not accept straight away are queued.
+ * <p>The event loop is expected to call {@link #flushPending()} once the channel is writable.
+ * <p>In blocking mode any queued bytes are written first and writes block until complete.
+ */
+public class ChannelOutputStream extends OutputStream {
+
+    /**
+     * Socket channel instance.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Pending writes.
+     */
+    private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+
+    /**
+     * Constructs a new ChannelOutputStream instance.
+     *
+     * @param channel SocketChannel instance.
+     */
+    public ChannelOutputStream(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(b, off, len);
+
+        if (channel.isBlocking()) {
+            flushPending();
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        } else {
+            if (pending.isEmpty()) {
+                channel.write(src);
+            }
+            if (src.hasRemaining()) {
+                pending.add(ByteBuffer.allocate(src.remaining()).put(src).flip());
+            }
+        }
+    }
+
+    /**
+     * Writes pending bytes.
+     * <p>In non-blocking mode this stops at the first incomplete write.
+     *
+     * @return True if nothing is left pending.
+     * @throws IOException Unable to write.
+     */
+    public synchronized boolean flushPending() throws IOException {
+        ByteBuffer head;
+        while ((head = pending.peek()) != null) {
+            channel.write(head);
+            if (head.hasRemaining()) {
+                if (!channel.isBlocking()) {
+                    return false;
+                }
+                continue;
+            }
+            pending.poll();
+        }
+        return true;
+    }
+
+    /**
+     * Has pending bytes.
+     *
+     * @return Boolean.
+     */
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+}
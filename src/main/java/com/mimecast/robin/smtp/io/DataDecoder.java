@@ -0,0 +1,305 @@
+package com.mimecast.robin.smtp.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * SMTP DATA body decoder.
+ *
+ * <p>Streaming state machine that consumes raw DATA bytes in arbitrary buffer splits.
+ * <p>It detects the &lt;CRLF&gt;.&lt;CRLF&gt; terminator across buffer boundaries and removes dot stuffing.
+ * <p>For non compliant clients &lt;LF&gt;.&lt;LF&gt; and &lt;CR&gt;.&lt;CR&gt; are also accepted as terminators.
+ * <p>The EOL preceding the terminator is not part of the decoded output.
+ * <p>Decoded bytes are collected in a buffer and written to the output stream in large blocks.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc5321#section-4.5.2">RFC 5321 #4.5.2</a>
+ */
+public class DataDecoder {
+
+    /**
+     * Carrige return byte.
+     */
+    private static final byte CR = 13; // \r
+
+    /**
+     * Line feed byte.
+     */
+    private static final byte LF = 10; // \n
+
+    /**
+     * Dot byte.
+     */
+    private static final byte DOT = 46; // .
+
+    /**
+     * Default output buffer size.
+     */
+    private static final int DEFAULT_SIZE = 65536;
+
+    /**
+     * Decoder states.
+     */
+    private enum State {
+        LINE_START, // At the start of a line.
+        DOT, // Read a dot at the start of a line.
+        DOT_CR, // Read a dot and CR at the start of a line.
+        IN_LINE, // Reading line content.
+        CR, // Read CR within a line.
+        DONE // Terminator found.
+    }
+
+    /**
+     * Pending EOL types.
+     * <p>The EOL of a line is held back until the next line is known not to be the terminator.
+     */
+    private enum Eol {
+        START, // No line read yet, the DATA command EOL stands in.
+        NONE,
+        CR,
+        LF,
+        CRLF
+    }
+
+    /**
+     * Output stream instance.
+     */
+    private final OutputStream out;
+
+    /**
+     * Output buffer.
+     */
+    private final byte[] buf;
+
+    /**
+     * Output buffer position.
+     */
+    private int count = 0;
+
+    /**
+     * Current state.
+     */
+    private State state = State.LINE_START;
+
+    /**
+     * Pending EOL.
+     */
+    private Eol eol = Eol.START;
+
+    /**
+     * Constructs a new DataDecoder instance.
+     *
+     * @param out OutputStream instance.
+     */
+    public DataDecoder(OutputStream out) {
+        this(out, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a new DataDecoder instance with given output buffer size.
+     *
+     * @param out  OutputStream instance.
+     * @param size Output buffer size.
+     */
+    public DataDecoder(OutputStream out, int size) {
+        this.out = out;
+        this.buf = new byte[size];
+    }
+
+    /**
+     * Is terminator found.
+     *
+     * @return Boolean.
+     */
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Decodes given bytes.
+     * <p>Stops after the terminator leaving any following bytes unconsumed.
+     *
+     * @param b   Byte array.
+     * @param off Offset.
+     * @param len Length.
+     * @return Number of bytes consumed.
+     * @throws IOException Unable to write.
+     */
+    @SuppressWarnings("squid:S3776")
+    public int decode(byte[] b, int off, int len) throws IOException {
+        int i = off;
+        int end = off + len;
+        while (i < end && state != State.DONE) {
+            switch (state) {
+                case IN_LINE -> {
+                    int start = i;
+                    while (i < end && b[i] != CR && b[i] != LF) {
+                        i++;
+                    }
+                    emit(b, start, i - start);
+                    if (i < end) {
+                        if (b[i] == LF) {
+                            eol = Eol.LF;
+                            state = State.LINE_START;
+                        } else {
+                            state = State.CR;
+                        }
+                        i++;
+                    }
+                }
+
+                case CR -> {
+                    // A bare CR ends the line and the byte is processed again.
+                    if (b[i] == LF) {
+                        eol = Eol.CRLF;
+                        i++;
+                    } else {
+                        eol = Eol.CR;
+                    }
+                    state = State.LINE_START;
+                }
+
+                case LINE_START -> {
+                    if (b[i] == DOT) {
+                        state = State.DOT;
+                        i++;
+                    } else {
+                        emitEol();
+                        state = State.IN_LINE;
+                    }
+                }
+
+                case DOT -> {
+                    if (b[i] == CR) {
+                        state = State.DOT_CR;
+                        i++;
+                    } else if (b[i] == LF) {
+                        i++;
+                        if (eol == Eol.START || eol == Eol.LF) {
+                            state = State.DONE;
+                        } else {
+                            dotLine(Eol.LF);
+                        }
+                    } else {
+                        // Dot stuffed line so the leading dot is dropped.
+                        emitEol();
+                        state = State.IN_LINE;
+                    }
+                }
+
+                case DOT_CR -> {
+                    if (b[i] == LF) {
+                        i++;
+                        if (eol == Eol.START || eol == Eol.CRLF) {
+                            state = State.DONE;
+                        } else {
+                            dotLine(Eol.CRLF);
+                        }
+                    } else if (eol == Eol.START || eol == Eol.CR) {
+                        state = State.DONE;
+                    } else {
+                        dotLine(Eol.CR);
+                    }
+                }
+
+                default -> {
+                    // Done.
+                }
+            }
+        }
+
+        return i - off;
+    }
+
+    /**
+     * Finishes decoding and flushes buffered output.
+     * <p>If the stream ended without terminator a trailing lone dot line is kept and the last EOL dropped.
+     *
+     * @throws IOException Unable to write.
+     */
+    public void finish() throws IOException {
+        if (state == State.DOT || (state == State.DOT_CR && eol != Eol.START && eol != Eol.CR)) {
+            emitEol();
+            emit(DOT);
+        }
+        flush();
+    }
+
+    /**
+     * Writes a lone dot line that is not a terminator.
+     *
+     * @param lineEol EOL of the dot line.
+     * @throws IOException Unable to write.
+     */
+    private void dotLine(Eol lineEol) throws IOException {
+        emitEol();
+        emit(DOT);
+        eol = lineEol;
+        state = State.LINE_START;
+    }
+
+    /**
+     * Writes pending EOL.
+     *
+     * @throws IOException Unable to write.
+     */
+    private void emitEol() throws IOException {
+        switch (eol) {
+            case CR -> emit(CR);
+            case LF -> emit(LF);
+            case CRLF -> {
+                emit(CR);
+                emit(LF);
+            }
+            default -> {
+                // Nothing pending.
+            }
+        }
+        eol = Eol.NONE;
+    }
+
+    /**
+     * Writes byte to output buffer.
+     *
+     * @param b Byte.
+     * @throws IOException Unable to write.
+     */
+    private void emit(byte b) throws IOException {
+        if (count == buf.length) {
+            flush();
+        }
+        buf[count++] = b;
+    }
+
+    /**
+     * Writes bytes to output buffer.
+     * <p>Writes larger than the buffer go straight to the output stream.
+     *
+     * @param b   Byte array.
+     * @param off Offset.
+     * @param len Length.
+     * @throws IOException Unable to write.
+     */
+    private void emit(byte[] b, int off, int len) throws IOException {
+        if (len > buf.length - count) {
+            flush();
+            if (len >= buf.length) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Flushes output buffer to output stream.
+     *
+     * @throws IOException Unable to write.
+     */
+    private void flush() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+}
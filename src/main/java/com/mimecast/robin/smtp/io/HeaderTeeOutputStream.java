@@ -0,0 +1,233 @@
+package com.mimecast.robin.smtp.io;
+
+import com.mimecast.robin.mime.headers.MimeHeader;
+import com.mimecast.robin.mime.headers.MimeHeaders;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Header tee output stream.
+ *
+ * <p>Passes all bytes through to the wrapped stream and parses the message header block on the way.
+ * <p>Headers are unfolded the same way {@link com.mimecast.robin.mime.EmailParser} does so the message
+ * does not need reading back from storage just to look at its headers.
+ * <p>Parsing stops at the first blank line and later bytes are only passed through.
+ * <p>Header blocks over {@link #MAX_HEADERS} bytes are abandoned and {@link #getHeaders()} returns null.
+ */
+public class HeaderTeeOutputStream extends FilterOutputStream {
+
+    /**
+     * Maximum header block size parsed.
+     */
+    public static final int MAX_HEADERS = 1024 * 1024;
+
+    /**
+     * Parsed headers.
+     */
+    private final MimeHeaders headers = new MimeHeaders();
+
+    /**
+     * Current header being unfolded.
+     */
+    private final StringBuilder header = new StringBuilder();
+
+    /**
+     * Current line bytes.
+     */
+    private byte[] line = new byte[256];
+    private int length = 0;
+
+    /**
+     * Last byte was a CR that may be followed by a LF.
+     */
+    private boolean pendingCr = false;
+
+    /**
+     * Number of header bytes seen.
+     */
+    private int seen = 0;
+
+    /**
+     * Parsing state.
+     */
+    private boolean done = false;
+    private boolean overflow = false;
+
+    /**
+     * Constructs a new HeaderTeeOutputStream instance.
+     *
+     * @param out OutputStream instance.
+     */
+    public HeaderTeeOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Writes byte.
+     *
+     * @param b Byte.
+     * @throws IOException Unable to write.
+     */
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (!done) {
+            feed((byte) b);
+        }
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param b   Byte array.
+     * @param off Start offset.
+     * @param len Number of bytes.
+     * @throws IOException Unable to write.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        for (int i = off; !done && i < off + len; i++) {
+            feed(b[i]);
+        }
+    }
+
+    /**
+     * Closes stream and completes the last header.
+     *
+     * @throws IOException Unable to close.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+
+    /**
+     * Is header block complete.
+     * <p>Either a blank line was seen or the stream was closed.
+     *
+     * @return Boolean.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Gets parsed headers.
+     * <p>Completes the last header if the blank line was not seen yet.
+     *
+     * @return MimeHeaders instance or null if the header block was too large.
+     */
+    public MimeHeaders getHeaders() {
+        finish();
+        return overflow ? null : headers;
+    }
+
+    /**
+     * Gets wrapped stream.
+     *
+     * @return OutputStream instance.
+     */
+    public OutputStream getOut() {
+        return out;
+    }
+
+    /**
+     * Feeds one byte.
+     * <p>Lines end with CRLF, a bare LF or a bare CR like in {@link LineInputStream}.
+     *
+     * @param b Byte.
+     */
+    private void feed(byte b) {
+        if (++seen > MAX_HEADERS) {
+            overflow = true;
+            done();
+            return;
+        }
+
+        if (pendingCr) {
+            pendingCr = false;
+            if (b == '\n') {
+                append(b);
+                line();
+                return;
+            }
+            line();
+            if (done) {
+                return;
+            }
+        }
+
+        append(b);
+        if (b == '\r') {
+            pendingCr = true;
+        } else if (b == '\n') {
+            line();
+        }
+    }
+
+    /**
+     * Appends byte to current line.
+     *
+     * @param b Byte.
+     */
+    private void append(byte b) {
+        if (length == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[length++] = b;
+    }
+
+    /**
+     * Processes current line.
+     */
+    private void line() {
+        String string = new String(line, 0, length);
+
+        // If line doesn't start with a whitespace
+        // we need to produce a header from what we got so far.
+        if (!Character.isWhitespace(line[0]) && !header.isEmpty()) {
+            headers.put(new MimeHeader(header.toString()));
+            header.setLength(0);
+        }
+        length = 0;
+
+        // End of headers.
+        if (StringUtils.isBlank(string.trim())) {
+            done();
+            return;
+        }
+
+        header.append(string);
+    }
+
+    /**
+     * Completes parsing.
+     */
+    private void finish() {
+        if (!done) {
+            if (length > 0) {
+                line();
+            }
+            done();
+        }
+    }
+
+    /**
+     * Puts last header and releases buffers.
+     */
+    private void done() {
+        if (!done && !overflow && !header.isEmpty()) {
+            headers.put(new MimeHeader(header.toString()));
+        }
+        header.setLength(0);
+        header.trimToSize();
+        done = true;
+        line = new byte[0];
+    }
+}
@@ -1,20 +1,19 @@
 package com.mimecast.robin.smtp.io;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.util.Arrays;
 
 /**
  * Input stream with binary line reading capability.
  *
  * <p>InputStream implementation returns lines with EOL as byte array and counts lines.
+ * <p>Reads from the underlying stream in bulk into a reusable buffer and scans it for CR/LF.
+ * <p>Lines are available as recycled {@link LineSlice} views or as byte array copies.
+ * <p>Bytes can be pushed back with unread and will be returned by the next read.
  */
-public class LineInputStream extends PushbackInputStream {
-    private static final Logger log = LogManager.getLogger(LineInputStream.class);
+public class LineInputStream extends FilterInputStream {
 
     /**
      * Carrige return byte.
@@ -26,6 +25,31 @@ public class LineInputStream extends PushbackInputStream {
      */
     private static final int LF = 10; // \n
 
+    /**
+     * Default buffer size.
+     */
+    private static final int DEFAULT_SIZE = 8192;
+
+    /**
+     * Read buffer.
+     */
+    private byte[] buf;
+
+    /**
+     * Position of the next unread byte in buffer.
+     */
+    private int pos = 0;
+
+    /**
+     * Position after the last valid byte in buffer.
+     */
+    private int limit = 0;
+
+    /**
+     * Recycled line slice.
+     */
+    private final LineSlice slice = new LineSlice();
+
     /**
      * Current line number.
      */
@@ -37,17 +61,22 @@ public class LineInputStream extends PushbackInputStream {
      * @param stream InputStream instance.
      */
     public LineInputStream(InputStream stream) {
-        super(stream);
+        this(stream, DEFAULT_SIZE);
     }
 
     /**
-     * Constructs a new LineInputStream instance with given pushback buffer size.
+     * Constructs a new LineInputStream instance with given initial buffer size.
+     * <p>The buffer grows as needed to fit long lines and unread bytes.
      *
      * @param stream InputStream instance.
-     * @param size   Pushback buffer size.
+     * @param size   Initial buffer size.
      */
     public LineInputStream(InputStream stream, int size) {
-        super(stream, size);
+        super(stream);
+        if (size <= 0) {
+            throw new IllegalArgumentException("size <= 0");
+        }
+        this.buf = new byte[size];
     }
 
     /**
@@ -59,42 +88,257 @@ public class LineInputStream extends PushbackInputStream {
         return lineNumber;
     }
 
+    /**
+     * Drains buffered bytes.
+     * <p>Removes and returns any bytes held by this stream that were read from the underlying stream but not consumed.
+     *
+     * @return Byte array.
+     */
+    public byte[] drainBuffered() {
+        byte[] bytes = Arrays.copyOfRange(buf, pos, limit);
+        pos = 0;
+        limit = 0;
+        return bytes;
+    }
+
     /**
      * Read line as byte array.
      *
      * @return Byte array.
      * @throws IOException Unable to read.
      */
-    @SuppressWarnings({"squid:S1168", "squid:S135"})
+    @SuppressWarnings("squid:S1168")
     public byte[] readLine() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        boolean foundCR = false;
-        int intByte;
-        while ((intByte = read()) != -1) {
-            // Have CR but LF doesn't follow unread byte and return what is read so far.
-            if (foundCR && intByte != LF) {
-                unread(intByte);
-                break;
+        LineSlice line = readLineSlice();
+        return line != null ? line.toByteArray() : null;
+    }
+
+    /**
+     * Read line as slice.
+     * <p>A line ends with CRLF, a bare LF, a bare CR or the end of the stream.
+     * <p>The returned slice is recycled and only valid until the next read or unread.
+     *
+     * @return LineSlice instance or null if end of stream.
+     * @throws IOException Unable to read.
+     */
+    public LineSlice readLineSlice() throws IOException {
+        int scan = pos;
+        while (true) {
+            for (; scan < limit; scan++) {
+                int b = buf[scan];
+
+                // LF will instantly terminate the line.
+                if (b == LF) {
+                    return slice(scan + 1);
+                }
+
+                // CR terminates the line including the LF if one follows.
+                if (b == CR) {
+                    if (scan + 1 < limit) {
+                        return slice(buf[scan + 1] == LF ? scan + 2 : scan + 1);
+                    }
+                    break;
+                }
+            }
+
+            // Need more bytes to find or complete the EOL.
+            int offset = scan - pos;
+            if (fill() == -1) {
+                return limit > pos ? slice(limit) : null;
             }
+            scan = pos + offset;
+        }
+    }
 
-            // CR is recorded and read continues in hope of finding LF next.
-            foundCR = foundCR || intByte == CR;
+    /**
+     * Makes slice for bytes up to given end and consumes them.
+     *
+     * @param end Position after line end.
+     * @return LineSlice instance.
+     */
+    private LineSlice slice(int end) {
+        slice.set(buf, pos, end - pos);
+        pos = end;
+        lineNumber++;
+        return slice;
+    }
 
-            // LF will instantly terminate the read and return.
-            if (intByte == LF) {
-                buffer.write(intByte);
-                break;
+    /**
+     * Fills buffer from underlying stream.
+     * <p>Unread bytes are moved to the start of the buffer and the buffer is grown if full.
+     *
+     * @return Number of bytes read or -1 if end of stream.
+     * @throws IOException Unable to read.
+     */
+    private int fill() throws IOException {
+        if (pos == limit) {
+            pos = 0;
+            limit = 0;
+        } else if (limit == buf.length) {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            } else {
+                buf = Arrays.copyOf(buf, buf.length * 2);
             }
+        }
 
-            buffer.write(intByte);
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read > 0) {
+            limit += read;
         }
+        return read;
+    }
 
-        if (buffer.size() == 0) {
-            return null;
+    /**
+     * Reads a byte.
+     *
+     * @return Byte or -1 if end of stream.
+     * @throws IOException Unable to read.
+     */
+    @Override
+    public int read() throws IOException {
+        if (pos >= limit && fill() <= 0) {
+            return -1;
         }
+        return buf[pos++] & 0xff;
+    }
 
-        lineNumber++;
-        return buffer.toByteArray();
+    /**
+     * Reads bytes into given array.
+     * <p>Large reads bypass the buffer once it is empty.
+     *
+     * @param b   Byte array.
+     * @param off Offset.
+     * @param len Length.
+     * @return Number of bytes read or -1 if end of stream.
+     * @throws IOException Unable to read.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (pos >= limit) {
+            if (len >= buf.length) {
+                return in.read(b, off, len);
+            }
+            if (fill() <= 0) {
+                return -1;
+            }
+        }
+
+        int count = Math.min(len, limit - pos);
+        System.arraycopy(buf, pos, b, off, count);
+        pos += count;
+        return count;
+    }
+
+    /**
+     * Skips bytes.
+     *
+     * @param n Number of bytes to skip.
+     * @return Number of bytes skipped.
+     * @throws IOException Unable to skip.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        long buffered = Math.min(n, limit - pos);
+        pos += (int) buffered;
+        if (buffered < n) {
+            buffered += in.skip(n - buffered);
+        }
+        return buffered;
+    }
+
+    /**
+     * Gets number of bytes that can be read without blocking.
+     *
+     * @return Number of bytes.
+     * @throws IOException Unable to query.
+     */
+    @Override
+    public int available() throws IOException {
+        int buffered = limit - pos;
+        int available = in.available();
+        return buffered > Integer.MAX_VALUE - available ? Integer.MAX_VALUE : buffered + available;
+    }
+
+    /**
+     * Pushes back a byte.
+     *
+     * @param b Byte.
+     */
+    public void unread(int b) {
+        unread(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * Pushes back a byte array.
+     *
+     * @param b Byte array.
+     */
+    public void unread(byte[] b) {
+        unread(b, 0, b.length);
+    }
+
+    /**
+     * Pushes back part of a byte array.
+     * <p>The bytes will be returned by the next read before any other buffered bytes.
+     *
+     * @param b   Byte array.
+     * @param off Offset.
+     * @param len Length.
+     */
+    public void unread(byte[] b, int off, int len) {
+        if (len <= pos) {
+            System.arraycopy(b, off, buf, pos - len, len);
+            pos -= len;
+            return;
+        }
+
+        int buffered = limit - pos;
+        byte[] grown = new byte[Math.max(buf.length, len + buffered)];
+        System.arraycopy(buf, pos, grown, len, buffered);
+        System.arraycopy(b, off, grown, 0, len);
+        buf = grown;
+        pos = 0;
+        limit = len + buffered;
+    }
+
+    /**
+     * Mark is not supported.
+     *
+     * @return Boolean.
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Mark is not supported.
+     *
+     * @param readlimit Ignored.
+     */
+    @Override
+    public synchronized void mark(int readlimit) {
+        // Not supported.
+    }
+
+    /**
+     * Reset is not supported.
+     *
+     * @throws IOException Always.
+     */
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
     }
 }
@@ -0,0 +1,141 @@
+package com.mimecast.robin.smtp.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Line slice.
+ *
+ * <p>Offset and length view of a line held in the buffer of a {@link LineInputStream}.
+ * <p>The view is recycled and only valid until the next read or unread on the stream that produced it.
+ *
+ * @see LineInputStream#readLineSlice()
+ */
+public class LineSlice {
+
+    /**
+     * Carrige return byte.
+     */
+    private static final byte CR = 13; // \r
+
+    /**
+     * Line feed byte.
+     */
+    private static final byte LF = 10; // \n
+
+    /**
+     * Backing buffer.
+     */
+    private byte[] buffer;
+
+    /**
+     * Line offset in buffer.
+     */
+    private int offset;
+
+    /**
+     * Line length including EOL.
+     */
+    private int length;
+
+    /**
+     * Sets slice bounds.
+     *
+     * @param buffer Backing buffer.
+     * @param offset Line offset.
+     * @param length Line length.
+     * @return Self.
+     */
+    LineSlice set(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Gets backing buffer.
+     *
+     * @return Byte array.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets line offset in buffer.
+     *
+     * @return Offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets line length including EOL.
+     *
+     * @return Length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets byte at given line index.
+     *
+     * @param index Index relative to line start.
+     * @return Byte.
+     */
+    public byte byteAt(int index) {
+        return buffer[offset + index];
+    }
+
+    /**
+     * Gets EOL length.
+     * <p>Returns 2 for CRLF, 1 for bare CR or LF and 0 if line has no EOL.
+     *
+     * @return Length.
+     */
+    public int getEolLength() {
+        if (length == 0) {
+            return 0;
+        }
+
+        byte one = buffer[offset + length - 1];
+        if (one == LF) {
+            return length > 1 && buffer[offset + length - 2] == CR ? 2 : 1;
+        }
+
+        return one == CR ? 1 : 0;
+    }
+
+    /**
+     * Writes line to given output stream.
+     *
+     * @param out OutputStream instance.
+     * @throws IOException Unable to write.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, offset, length);
+    }
+
+    /**
+     * Writes line without EOL to given output stream.
+     *
+     * @param out OutputStream instance.
+     * @throws IOException Unable to write.
+     */
+    public void writeContentTo(OutputStream out) throws IOException {
+        out.write(buffer, offset, length - getEolLength());
+    }
+
+    /**
+     * Copies line to a new byte array.
+     *
+     * @return Byte array.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+}
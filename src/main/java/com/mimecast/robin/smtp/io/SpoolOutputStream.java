@@ -0,0 +1,372 @@
+package com.mimecast.robin.smtp.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hybrid memory and disk spool output stream.
+ *
+ * <p>Keeps messages up to a threshold in pooled memory chunks and spills to the target file once they grow past it.
+ * <p>On close a message still in memory is compacted to a single array and its chunks go back to the pool.
+ * <p>In memory messages are only written to disk by {@link #persist()} in a single write.
+ * <p>A threshold of zero spills on the first write.
+ */
+public class SpoolOutputStream extends OutputStream {
+
+    /**
+     * Pooled chunk size.
+     */
+    static final int CHUNK_SIZE = 16384;
+
+    /**
+     * Maximum number of chunks kept in the pool.
+     */
+    private static final int POOL_SIZE = 1024;
+
+    /**
+     * Spill file buffer size.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Chunk pool shared by all spools.
+     */
+    private static final Queue<byte[]> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Memory threshold in bytes.
+     */
+    private final int threshold;
+
+    /**
+     * Target file path.
+     */
+    private Path path;
+
+    /**
+     * Memory chunks while writing.
+     */
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    /**
+     * Compacted bytes once closed in memory.
+     */
+    private byte[] bytes;
+
+    /**
+     * Number of bytes written.
+     */
+    private long size = 0;
+
+    /**
+     * Spill file streams.
+     */
+    private FileOutputStream file;
+    private OutputStream buffered;
+
+    /**
+     * State.
+     */
+    private boolean persisted = false;
+    private boolean closed = false;
+
+    /**
+     * Constructs a new SpoolOutputStream instance.
+     *
+     * @param path      Target file path.
+     * @param threshold Memory threshold in bytes.
+     */
+    public SpoolOutputStream(Path path, int threshold) {
+        this.path = path;
+        this.threshold = Math.max(threshold, 0);
+    }
+
+    /**
+     * Writes byte.
+     *
+     * @param b Byte.
+     * @throws IOException Unable to write.
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensure(1);
+        if (buffered != null) {
+            buffered.write(b);
+        } else {
+            int position = (int) (size % CHUNK_SIZE);
+            if (position == 0) {
+                chunks.add(borrow());
+            }
+            chunks.getLast()[position] = (byte) b;
+        }
+        size++;
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param b   Byte array.
+     * @param off Offset.
+     * @param len Length.
+     * @throws IOException Unable to write.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensure(len);
+        if (buffered != null) {
+            buffered.write(b, off, len);
+            size += len;
+            return;
+        }
+
+        while (len > 0) {
+            int position = (int) (size % CHUNK_SIZE);
+            if (position == 0) {
+                chunks.add(borrow());
+            }
+            int count = Math.min(len, CHUNK_SIZE - position);
+            System.arraycopy(b, off, chunks.getLast(), position, count);
+            off += count;
+            len -= count;
+            size += count;
+        }
+    }
+
+    /**
+     * Flushes spill file if any.
+     *
+     * @throws IOException Unable to write.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (buffered != null) {
+            buffered.flush();
+        }
+    }
+
+    /**
+     * Closes spool.
+     * <p>Closes the spill file or compacts memory chunks.
+     *
+     * @throws IOException Unable to write.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (buffered != null) {
+            buffered.close();
+        } else {
+            bytes = new byte[(int) size];
+            int position = 0;
+            for (byte[] chunk : chunks) {
+                int count = Math.min(CHUNK_SIZE, bytes.length - position);
+                System.arraycopy(chunk, 0, bytes, position, count);
+                position += count;
+                release(chunk);
+            }
+            chunks.clear();
+        }
+    }
+
+    /**
+     * Gets spill file stream for writing past the buffer.
+     * <p>Flushes buffered bytes first so writes to it land at the end of the file.
+     *
+     * @return FileOutputStream instance or null if not spilled.
+     * @throws IOException Unable to write.
+     */
+    public FileOutputStream getFileStream() throws IOException {
+        if (buffered == null) {
+            return null;
+        }
+
+        buffered.flush();
+        return file;
+    }
+
+    /**
+     * Writes message to target file if not already there.
+     * <p>An open spool is spilled and keeps writing to file.
+     *
+     * @return Target file path.
+     * @throws IOException Unable to write.
+     */
+    public Path persist() throws IOException {
+        if (!persisted) {
+            if (closed) {
+                Files.write(path, bytes);
+                persisted = true;
+            } else {
+                spill();
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * Is spilled or persisted to target file.
+     *
+     * @return Boolean.
+     */
+    public boolean isPersisted() {
+        return persisted;
+    }
+
+    /**
+     * Is message kept in memory.
+     *
+     * @return Boolean.
+     */
+    public boolean isInMemory() {
+        return buffered == null;
+    }
+
+    /**
+     * Gets message bytes if closed in memory.
+     *
+     * @return Byte array or null.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets number of bytes written.
+     *
+     * @return Size.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets target file path.
+     *
+     * @return Path instance.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Sets target file path.
+     * <p>Only before the message is on disk, after that the file needs moving instead.
+     *
+     * @param path Path instance.
+     * @return True if set.
+     */
+    public boolean setPath(Path path) {
+        if (persisted) {
+            return false;
+        }
+
+        this.path = path;
+        return true;
+    }
+
+    /**
+     * Gets input stream of closed message.
+     * <p>Reads from memory if still there or from the target file.
+     *
+     * @return InputStream instance.
+     * @throws IOException Unable to open file.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        return new FileInputStream(path.toFile());
+    }
+
+    /**
+     * Checks spool is open and spills if given bytes would pass the threshold.
+     *
+     * @param len Number of bytes about to be written.
+     * @throws IOException Unable to write.
+     */
+    private void ensure(int len) throws IOException {
+        if (closed) {
+            throw new IOException("Spool closed");
+        }
+
+        if (buffered == null && size + len > threshold) {
+            spill();
+        }
+    }
+
+    /**
+     * Spills memory chunks to target file.
+     *
+     * @throws IOException Unable to write.
+     */
+    private void spill() throws IOException {
+        file = new FileOutputStream(path.toFile());
+        buffered = new BufferedOutputStream(file, BUFFER_SIZE);
+        persisted = true;
+
+        long remaining = size;
+        for (byte[] chunk : chunks) {
+            int count = (int) Math.min(CHUNK_SIZE, remaining);
+            buffered.write(chunk, 0, count);
+            remaining -= count;
+            release(chunk);
+        }
+        chunks.clear();
+    }
+
+    /**
+     * Takes chunk from pool or allocates a new one.
+     *
+     * @return Byte array.
+     */
+    private static byte[] borrow() {
+        byte[] chunk = pool.poll();
+        if (chunk != null) {
+            pooled.decrementAndGet();
+            return chunk;
+        }
+
+        return new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Returns chunk to pool unless full.
+     *
+     * @param chunk Byte array.
+     */
+    private static void release(byte[] chunk) {
+        if (pooled.incrementAndGet() <= POOL_SIZE) {
+            pool.offer(chunk);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets number of chunks in pool.
+     *
+     * @return Count.
+     */
+    static int getPooled() {
+        return pooled.get();
+    }
+}
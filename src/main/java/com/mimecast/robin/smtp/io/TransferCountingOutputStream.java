@@ -0,0 +1,126 @@
+package com.mimecast.robin.smtp.io;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Counting output stream with bulk transfer capability.
+ *
+ * <p>Moves a fixed number of bytes from an input stream in large blocks.
+ * <p>When the wrapped stream is a file it uses {@link FileChannel#transferFrom} instead of copying through the heap.
+ * <p>A {@link HeaderTeeOutputStream} gets bytes copied through it until its header block is done
+ * and the rest is transferred to the file behind it.
+ * <p>A {@link SpoolOutputStream} gets bytes copied into memory until it spills and the rest is transferred to its file.
+ * <p>Bytes transferred either way are added to the byte count.
+ */
+public class TransferCountingOutputStream extends CountingOutputStream {
+
+    /**
+     * Block size for copy and transfer.
+     */
+    private static final int BLOCK_SIZE = 65536;
+
+    /**
+     * Block size for copying through a header tee or memory spool.
+     */
+    private static final int COPY_BLOCK_SIZE = 4096;
+
+    /**
+     * Constructs a new TransferCountingOutputStream instance.
+     *
+     * @param out OutputStream instance.
+     */
+    public TransferCountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Transfers up to given number of bytes from input stream.
+     * <p>Stops early only if the input stream ends.
+     *
+     * @param input InputStream instance.
+     * @param count Number of bytes.
+     * @return Number of bytes transferred.
+     * @throws IOException Unable to read or write.
+     */
+    public long transferFrom(InputStream input, long count) throws IOException {
+        OutputStream target = out;
+        long total = 0;
+
+        // Headers need to pass through the tee, the rest can go past it.
+        if (target instanceof HeaderTeeOutputStream tee) {
+            total += copyUntil(input, count, tee::isDone);
+            target = tee.getOut();
+        }
+
+        // Spools hold small messages in memory, once spilled the rest can go straight to file.
+        if (target instanceof SpoolOutputStream spool) {
+            total += copyUntil(input, count - total, () -> !spool.isInMemory());
+            target = spool.isInMemory() ? spool : spool.getFileStream();
+        }
+
+        if (target instanceof FileOutputStream fileOutputStream) {
+            return total + transferFrom(Channels.newChannel(input), fileOutputStream.getChannel(), count - total);
+        }
+
+        return total + IOUtils.copyLarge(input, this, 0, count - total, new byte[(int) Math.min(BLOCK_SIZE, Math.max(count - total, 1))]);
+    }
+
+    /**
+     * Copies bytes through this stream in small blocks until done or count reached.
+     *
+     * @param input InputStream instance.
+     * @param count Number of bytes.
+     * @param done  Done condition checked before each block.
+     * @return Number of bytes copied.
+     * @throws IOException Unable to read or write.
+     */
+    private long copyUntil(InputStream input, long count, BooleanSupplier done) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(COPY_BLOCK_SIZE, Math.max(count, 1))];
+        long total = 0;
+        while (total < count && !done.getAsBoolean()) {
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, count - total));
+            if (read == -1) {
+                break;
+            }
+            write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Transfers bytes from channel to file channel at its current position.
+     *
+     * @param source ReadableByteChannel instance.
+     * @param file   FileChannel instance.
+     * @param count  Number of bytes.
+     * @return Number of bytes transferred.
+     * @throws IOException Unable to read or write.
+     */
+    private long transferFrom(ReadableByteChannel source, FileChannel file, long count) throws IOException {
+        long position = file.position();
+        long total = 0;
+        while (total < count) {
+            long transferred = file.transferFrom(source, position + total, Math.min(BLOCK_SIZE, count - total));
+            if (transferred <= 0) {
+                break;
+            }
+            total += transferred;
+            beforeWrite((int) transferred);
+        }
+
+        // Transfer does not move the channel position.
+        file.position(position + total);
+        return total;
+    }
+}
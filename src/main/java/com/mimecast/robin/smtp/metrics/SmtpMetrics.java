@@ -9,6 +9,7 @@ import org.apache.logging.log4j.Logger;
  * SMTP-related Micrometer metrics.
  *
  * <p>Provides counters for tracking email receipt operations including successful runs and exceptions.
+ * <p>Also tracks listener admission control outcomes for queued, rejected and shed connections.
  */
 public final class SmtpMetrics {
     private static final Logger log = LogManager.getLogger(SmtpMetrics.class);
@@ -17,6 +18,9 @@ public final class SmtpMetrics {
     private static volatile Counter emailReceiptSuccessCounter;
     private static volatile Counter emailReceiptLimitCounter;
     private static volatile Counter emailRblRejectionCounter;
+    private static volatile Counter connectionQueuedCounter;
+    private static volatile Counter connectionRejectedCounter;
+    private static volatile Counter connectionShedCounter;
 
     /**
      * Private constructor for utility class.
@@ -113,6 +117,38 @@ public final class SmtpMetrics {
         }
     }
 
+    /**
+     * Increment the TLS handshake counter.
+     * <p>Called when a TLS handshake completes, tagged by side and whether the session was resumed.
+     * <p>The abbreviated to full ratio shows how often session resumption saves a full handshake.
+     *
+     * @param client  True if in client mode.
+     * @param resumed True if an existing session was resumed.
+     */
+    public static void incrementTlsHandshake(boolean client, boolean resumed) {
+        try {
+            if (MetricsRegistry.getPrometheusRegistry() != null) {
+                Counter.builder("smtp.tls.handshake")
+                        .description("Number of TLS handshakes by mode and type")
+                        .tag("mode", client ? "client" : "server")
+                        .tag("type", resumed ? "abbreviated" : "full")
+                        .register(MetricsRegistry.getPrometheusRegistry())
+                        .increment();
+            }
+
+            if (MetricsRegistry.getGraphiteRegistry() != null) {
+                Counter.builder("smtp.tls.handshake")
+                        .description("Number of TLS handshakes by mode and type")
+                        .tag("mode", client ? "client" : "server")
+                        .tag("type", resumed ? "abbreviated" : "full")
+                        .register(MetricsRegistry.getGraphiteRegistry())
+                        .increment();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to increment TLS handshake counter: {}", e.getMessage());
+        }
+    }
+
     /**
      * Increment the email receipt limit counter.
      * <p>Called when an email receipt is terminated due to reaching error or transaction limits.
@@ -155,6 +191,69 @@ public final class SmtpMetrics {
         }
     }
 
+    /**
+     * Increment the connection queued counter.
+     * <p>Called when an accepted connection is put in the admission queue to wait for a free worker.
+     */
+    public static void incrementConnectionQueued() {
+        try {
+            if (connectionQueuedCounter == null) {
+                synchronized (SmtpMetrics.class) {
+                    if (connectionQueuedCounter == null) {
+                        initializeCounters();
+                    }
+                }
+            }
+            if (connectionQueuedCounter != null) {
+                connectionQueuedCounter.increment();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to increment connection queued counter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Increment the connection rejected counter.
+     * <p>Called when an accepted connection is turned away with a 421 because the admission queue is full.
+     */
+    public static void incrementConnectionRejected() {
+        try {
+            if (connectionRejectedCounter == null) {
+                synchronized (SmtpMetrics.class) {
+                    if (connectionRejectedCounter == null) {
+                        initializeCounters();
+                    }
+                }
+            }
+            if (connectionRejectedCounter != null) {
+                connectionRejectedCounter.increment();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to increment connection rejected counter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Increment the connection shed counter.
+     * <p>Called when a queued connection is turned away with a 421 after waiting the maximum queue time.
+     */
+    public static void incrementConnectionShed() {
+        try {
+            if (connectionShedCounter == null) {
+                synchronized (SmtpMetrics.class) {
+                    if (connectionShedCounter == null) {
+                        initializeCounters();
+                    }
+                }
+            }
+            if (connectionShedCounter != null) {
+                connectionShedCounter.increment();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to increment connection shed counter: {}", e.getMessage());
+        }
+    }
+
     /**
      * Initialize the metric counters.
      * <p>This is called lazily on first use to ensure registries are available.
@@ -177,6 +276,18 @@ public final class SmtpMetrics {
                     .description("Number of connections rejected due to RBL listings")
                     .register(MetricsRegistry.getPrometheusRegistry());
 
+            connectionQueuedCounter = Counter.builder("smtp.connection.queued")
+                    .description("Number of connections queued by admission control")
+                    .register(MetricsRegistry.getPrometheusRegistry());
+
+            connectionRejectedCounter = Counter.builder("smtp.connection.rejected")
+                    .description("Number of connections rejected by admission control with a full queue")
+                    .register(MetricsRegistry.getPrometheusRegistry());
+
+            connectionShedCounter = Counter.builder("smtp.connection.shed")
+                    .description("Number of queued connections shed by admission control after the maximum queue time")
+                    .register(MetricsRegistry.getPrometheusRegistry());
+
             // Initialize exception counter with common exception types so it appears in metrics from the start
             Counter.builder("smtp.email.receipt.exceptions")
                     .description("Number of exceptions during email receipt processing")
@@ -205,6 +316,18 @@ public final class SmtpMetrics {
                     .description("Number of email receipt operations terminated due to error or transaction limits")
                     .register(MetricsRegistry.getGraphiteRegistry());
 
+            Counter.builder("smtp.connection.queued")
+                    .description("Number of connections queued by admission control")
+                    .register(MetricsRegistry.getGraphiteRegistry());
+
+            Counter.builder("smtp.connection.rejected")
+                    .description("Number of connections rejected by admission control with a full queue")
+                    .register(MetricsRegistry.getGraphiteRegistry());
+
+            Counter.builder("smtp.connection.shed")
+                    .description("Number of queued connections shed by admission control after the maximum queue time")
+                    .register(MetricsRegistry.getGraphiteRegistry());
+
             // Initialize exception counters for Graphite too
             Counter.builder("smtp.email.receipt.exceptions")
                     .description("Number of exceptions during email receipt processing")
@@ -225,5 +348,8 @@ public final class SmtpMetrics {
         emailReceiptStartCounter = null;
         emailReceiptSuccessCounter = null;
         emailReceiptLimitCounter = null;
+        connectionQueuedCounter = null;
+        connectionRejectedCounter = null;
+        connectionShedCounter = null;
     }
 }
@@ -2,19 +2,16 @@ package com.mimecast.robin.smtp.security;
 
 import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Factories;
+import com.mimecast.robin.smtp.metrics.SmtpMetrics;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.*;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -94,32 +91,20 @@ public class DefaultTLSSocket implements TLSSocket {
             throw new IOException("Socket not defined");
         }
 
-        // Trust manager.
-        TrustManager[] tm = new TrustManager[]{Factories.getTrustManager()};
-
-        // Key manager X.509.
-        KeyManager[] km = null;
-        if (!client) {
-            KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
-            KeyStore ks = KeyStore.getInstance("JKS");
-
-            // Load keystore.
-            ks.load(getKeyStore(), getKeyStorePassword());
-            kmf.init(ks, getKeyStorePassword());
-
-            km = kmf.getKeyManagers();
+        SSLSocketFactory sf;
+        if (client) {
+            // Cached client context per trust configuration with a shared session cache.
+            sf = TLSContextCache.getClientContext(Factories.getTrustManager()).getSocketFactory();
+        } else {
+            // Cached server context with keystore loaded once and a shared session cache.
+            sf = TLSContextCache.getServerContext(getKeyStore(), getKeyStorePassword(), protocols, ciphers).getSocketFactory();
         }
 
-        // Get the default SSLSocketFactory.
-        @SuppressWarnings("squid:S4423")
-        SSLContext sc = SSLContext.getInstance("TLS");
-        sc.init(km, tm, new SecureRandom());
-        SSLSocketFactory sf = sc.getSocketFactory();
-
         // Wrap 'socket' from above in a TLS socket.
-        InetSocketAddress remoteAddress = (InetSocketAddress) socket.getRemoteSocketAddress();
+        // The host as connected to without a reverse lookup is used for SNI and to key client sessions.
+        String peerHost = ((InetSocketAddress) socket.getRemoteSocketAddress()).getHostString();
         @SuppressWarnings("squid:S2095")
-        SSLSocket sslSocket = (SSLSocket) sf.createSocket(socket, remoteAddress.getHostName(), socket.getPort(), true);
+        SSLSocket sslSocket = (SSLSocket) sf.createSocket(socket, peerHost, socket.getPort(), true);
 
         // We are a client.
         sslSocket.setUseClientMode(client);
@@ -129,9 +114,15 @@ public class DefaultTLSSocket implements TLSSocket {
         sslSocket.setEnabledCipherSuites(getEnabledCipherSuites(sslSocket));
 
         // Make a friend!
-        log.info("Attempting handshake with: {}.", sslSocket.getSession().getPeerHost());
+        log.info("Attempting handshake with: {}.", peerHost);
+        long start = System.currentTimeMillis();
         sslSocket.startHandshake();
-        log.debug("Handshake done with: {} / {}.", sslSocket.getSession().getProtocol(), sslSocket.getSession().getCipherSuite());
+
+        // A resumed session keeps the creation time of the session it resumes.
+        SSLSession session = sslSocket.getSession();
+        boolean resumed = session.getCreationTime() < start;
+        SmtpMetrics.incrementTlsHandshake(client, resumed);
+        log.debug("Handshake done with: {} / {} ({}).", session.getProtocol(), session.getCipherSuite(), resumed ? "abbreviated" : "full");
 
         return sslSocket;
     }
@@ -201,20 +192,12 @@ public class DefaultTLSSocket implements TLSSocket {
     }
 
     /**
-     * Gets keystore.
+     * Gets keystore path.
      *
-     * @return Keystore.
+     * @return Keystore path.
      */
-    private FileInputStream getKeyStore() {
-        try {
-            String path = Config.getProperties().getStringProperty("javax.net.ssl.keyStore");
-            if (StringUtils.isNotBlank(path)) {
-                return new FileInputStream(path);
-            }
-        } catch (FileNotFoundException e) {
-            log.error("Error getting keystore.");
-        }
-        return null;
+    private String getKeyStore() {
+        return Config.getProperties().getStringProperty("javax.net.ssl.keyStore");
     }
 
     /**
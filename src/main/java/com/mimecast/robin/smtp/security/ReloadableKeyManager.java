@@ -0,0 +1,194 @@
+package com.mimecast.robin.smtp.security;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Key manager with swappable delegate.
+ *
+ * <p>Lets a cached SSLContext pick up renewed certificates without being rebuilt.
+ * <p>Keeping the context keeps its session cache so clients can still resume after a reload.
+ * <p>Aliases are tagged with the delegate generation they came from.
+ * <p>This way a handshake that chose an alias before a swap still gets the matching certificate chain and private key.
+ *
+ * @see TLSContextCache
+ */
+public class ReloadableKeyManager extends X509ExtendedKeyManager {
+
+    /**
+     * Alias generation separator.
+     */
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Delegate generation.
+     *
+     * @param id         Generation number.
+     * @param keyManager Delegate.
+     */
+    private record Generation(int id, X509ExtendedKeyManager keyManager) {
+    }
+
+    /**
+     * Current delegate generation.
+     */
+    private volatile Generation current;
+
+    /**
+     * Previous delegate generation kept for handshakes in progress.
+     */
+    private volatile Generation previous;
+
+    /**
+     * Constructs a new ReloadableKeyManager instance.
+     *
+     * @param keyManager Initial delegate.
+     */
+    public ReloadableKeyManager(X509ExtendedKeyManager keyManager) {
+        this.current = new Generation(0, keyManager);
+    }
+
+    /**
+     * Swaps in a new delegate.
+     *
+     * @param keyManager New delegate.
+     */
+    public synchronized void setDelegate(X509ExtendedKeyManager keyManager) {
+        previous = current;
+        current = new Generation(current.id() + 1, keyManager);
+    }
+
+    /**
+     * Gets current delegate.
+     *
+     * @return X509ExtendedKeyManager instance.
+     */
+    public X509ExtendedKeyManager getDelegate() {
+        return current.keyManager();
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        Generation generation = current;
+        return tag(generation, generation.keyManager().getClientAliases(keyType, issuers));
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+        Generation generation = current;
+        return tag(generation, generation.keyManager().chooseClientAlias(keyType, issuers, socket));
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+        Generation generation = current;
+        return tag(generation, generation.keyManager().chooseEngineClientAlias(keyType, issuers, engine));
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        Generation generation = current;
+        return tag(generation, generation.keyManager().getServerAliases(keyType, issuers));
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        Generation generation = current;
+        return tag(generation, generation.keyManager().chooseServerAlias(keyType, issuers, socket));
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        Generation generation = current;
+        return tag(generation, generation.keyManager().chooseEngineServerAlias(keyType, issuers, engine));
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        Generation generation = lookup(alias);
+        return generation != null ? generation.keyManager().getCertificateChain(untag(alias)) : null;
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        Generation generation = lookup(alias);
+        return generation != null ? generation.keyManager().getPrivateKey(untag(alias)) : null;
+    }
+
+    /**
+     * Tags alias with generation.
+     *
+     * @param generation Generation instance.
+     * @param alias      Alias or null.
+     * @return Tagged alias or null.
+     */
+    private String tag(Generation generation, String alias) {
+        return alias != null ? generation.id() + String.valueOf(SEPARATOR) + alias : null;
+    }
+
+    /**
+     * Tags aliases with generation.
+     *
+     * @param generation Generation instance.
+     * @param aliases    Aliases or null.
+     * @return Tagged aliases or null.
+     */
+    @SuppressWarnings("squid:S1168")
+    private String[] tag(Generation generation, String[] aliases) {
+        if (aliases == null) {
+            return null;
+        }
+
+        String[] tagged = new String[aliases.length];
+        for (int i = 0; i < aliases.length; i++) {
+            tagged[i] = tag(generation, aliases[i]);
+        }
+        return tagged;
+    }
+
+    /**
+     * Removes generation tag from alias.
+     *
+     * @param alias Tagged alias.
+     * @return Alias.
+     */
+    private String untag(String alias) {
+        return alias.substring(alias.indexOf(SEPARATOR) + 1);
+    }
+
+    /**
+     * Finds generation of tagged alias.
+     * <p>Aliases from generations older than the previous one are no longer resolved.
+     *
+     * @param alias Tagged alias.
+     * @return Generation instance or null.
+     */
+    private Generation lookup(String alias) {
+        if (alias == null) {
+            return null;
+        }
+
+        int separator = alias.indexOf(SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+
+        int id;
+        try {
+            id = Integer.parseInt(alias.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Generation generation = current;
+        if (generation.id() == id) {
+            return generation;
+        }
+        generation = previous;
+        return generation != null && generation.id() == id ? generation : null;
+    }
+}
@@ -0,0 +1,288 @@
+package com.mimecast.robin.smtp.security;
+
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.main.Factories;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide TLS context cache.
+ *
+ * <p>Server SSLContext instances are built once per keystore path, password, protocols and cipher suites.
+ * <p>The keystore is read and parsed once instead of on every STARTTLS and secure port accept.
+ * <p>Sharing the context shares its server session cache so returning clients can resume handshakes.
+ * <p>A watcher polls keystore files for changes and swaps renewed certificates into the cached contexts
+ * through a {@link ReloadableKeyManager} leaving the session cache in place.
+ * <p>Polling file time and size also catches keystores replaced by rename or symlink swap.
+ * <p>Client SSLContext instances are built once per trust configuration.
+ * <p>Their session cache is keyed by peer host and port so repeat deliveries to the same MX resume handshakes,
+ * using session tickets where the server supports them.
+ *
+ * @see DefaultTLSSocket
+ */
+public final class TLSContextCache {
+    private static final Logger log = LogManager.getLogger(TLSContextCache.class);
+
+    /**
+     * Cache key.
+     *
+     * @param path      Keystore path.
+     * @param password  Keystore password.
+     * @param protocols Protocols list or null.
+     * @param ciphers   Cipher suites list or null.
+     */
+    private record Key(String path, String password, List<String> protocols, List<String> ciphers) {
+    }
+
+    /**
+     * Cached server context.
+     */
+    private static class Entry {
+        private final SSLContext context;
+        private final ReloadableKeyManager keyManager;
+        private final String path;
+        private final char[] password;
+        private volatile long stamp;
+
+        private Entry(SSLContext context, ReloadableKeyManager keyManager, String path, char[] password, long stamp) {
+            this.context = context;
+            this.keyManager = keyManager;
+            this.path = path;
+            this.password = password;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Cached contexts.
+     */
+    private static final Map<Key, Entry> contexts = new ConcurrentHashMap<>();
+
+    /**
+     * Cached client contexts by trust configuration.
+     */
+    private static final Map<String, SSLContext> clientContexts = new ConcurrentHashMap<>();
+
+    /**
+     * Keystore watcher.
+     */
+    private static ScheduledExecutorService watcher;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private TLSContextCache() {
+    }
+
+    /**
+     * Gets cached server context.
+     * <p>Builds it on first use and starts the keystore watcher.
+     *
+     * @param path      Keystore path.
+     * @param password  Keystore password.
+     * @param protocols Protocols list or null.
+     * @param ciphers   Cipher suites list or null.
+     * @return SSLContext instance.
+     * @throws IOException              Unable to read keystore.
+     * @throws GeneralSecurityException Problems with keystore or KeyManager.
+     */
+    public static SSLContext getServerContext(String path, char[] password, String[] protocols, String[] ciphers) throws IOException, GeneralSecurityException {
+        Key key = new Key(path, new String(password), list(protocols), list(ciphers));
+
+        Entry entry = contexts.get(key);
+        if (entry == null) {
+            synchronized (TLSContextCache.class) {
+                entry = contexts.get(key);
+                if (entry == null) {
+                    entry = create(path, password);
+                    contexts.put(key, entry);
+                    startWatcher();
+                }
+            }
+        }
+
+        return entry.context;
+    }
+
+    /**
+     * Gets cached client context.
+     * <p>Trust configuration is the trust manager class and the configured trust store.
+     * <p>The first trust manager instance seen for a configuration is the one used.
+     *
+     * @param trustManager X509TrustManager instance.
+     * @return SSLContext instance.
+     * @throws GeneralSecurityException Problems with TrustManager.
+     */
+    public static SSLContext getClientContext(X509TrustManager trustManager) throws GeneralSecurityException {
+        String key = trustManager.getClass().getName() + "|" + System.getProperty("javax.net.ssl.trustStore", "");
+
+        SSLContext context = clientContexts.get(key);
+        if (context == null) {
+            synchronized (TLSContextCache.class) {
+                context = clientContexts.get(key);
+                if (context == null) {
+                    @SuppressWarnings("squid:S4423")
+                    SSLContext created = SSLContext.getInstance("TLS");
+                    created.init(null, new TrustManager[]{trustManager}, null);
+                    clientContexts.put(key, created);
+                    context = created;
+                }
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     * Checks keystore files and reloads changed ones.
+     * <p>A keystore that fails to load keeps the previous certificates and is tried again on the next check.
+     */
+    static void checkForChanges() {
+        for (Entry entry : contexts.values()) {
+            long stamp = stamp(entry.path);
+            if (stamp == entry.stamp) {
+                continue;
+            }
+
+            try {
+                entry.keyManager.setDelegate(loadKeyManager(entry.path, entry.password));
+                entry.stamp = stamp;
+                log.info("Reloaded keystore: {}", entry.path);
+            } catch (IOException | GeneralSecurityException e) {
+                log.warn("Unable to reload keystore {}: {}", entry.path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds server context.
+     *
+     * @param path     Keystore path.
+     * @param password Keystore password.
+     * @return Entry instance.
+     * @throws IOException              Unable to read keystore.
+     * @throws GeneralSecurityException Problems with keystore or KeyManager.
+     */
+    private static Entry create(String path, char[] password) throws IOException, GeneralSecurityException {
+        long stamp = stamp(path);
+        ReloadableKeyManager keyManager = new ReloadableKeyManager(loadKeyManager(path, password));
+
+        @SuppressWarnings("squid:S4423")
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(new KeyManager[]{keyManager}, new TrustManager[]{Factories.getTrustManager()}, null);
+
+        return new Entry(context, keyManager, path, password.clone(), stamp);
+    }
+
+    /**
+     * Loads keystore into a key manager.
+     * <p>A missing keystore results in an empty key manager like before caching.
+     *
+     * @param path     Keystore path.
+     * @param password Keystore password.
+     * @return X509ExtendedKeyManager instance.
+     * @throws IOException              Unable to read keystore.
+     * @throws GeneralSecurityException Problems with keystore or KeyManager.
+     */
+    private static X509ExtendedKeyManager loadKeyManager(String path, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (InputStream stream = open(path)) {
+            ks.load(stream, password);
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks, password);
+
+        for (KeyManager km : kmf.getKeyManagers()) {
+            if (km instanceof X509ExtendedKeyManager x509) {
+                return x509;
+            }
+        }
+        throw new KeyStoreException("No X509 key manager available");
+    }
+
+    /**
+     * Opens keystore file.
+     *
+     * @param path Keystore path.
+     * @return InputStream instance or null if not available.
+     */
+    private static InputStream open(String path) {
+        if (StringUtils.isNotBlank(path)) {
+            try {
+                return new FileInputStream(path);
+            } catch (IOException e) {
+                log.error("Error getting keystore.");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets keystore file change stamp.
+     *
+     * @param path Keystore path.
+     * @return Stamp combining modification time and size or 0 if not available.
+     */
+    private static long stamp(String path) {
+        if (StringUtils.isBlank(path)) {
+            return 0L;
+        }
+        File file = new File(path);
+        return file.lastModified() * 31 + file.length();
+    }
+
+    /**
+     * Starts keystore watcher if not already running.
+     * <p>Polls every <i>keystoreReloadInterval</i> seconds from server config, 0 disables it.
+     */
+    private static void startWatcher() {
+        if (watcher != null) {
+            return;
+        }
+
+        long interval = Config.getServer().getKeyStoreReloadInterval();
+        if (interval <= 0) {
+            return;
+        }
+
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tls-keystore-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(TLSContextCache::checkForChanges, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Converts array to list for key equality.
+     *
+     * @param array String array or null.
+     * @return List of String or null.
+     */
+    private static List<String> list(String[] array) {
+        return array != null ? Arrays.asList(array.clone()) : null;
+    }
+}
@@ -3,7 +3,6 @@ package com.mimecast.robin.smtp.session;
 import com.mimecast.robin.config.ConfigMapper;
 import com.mimecast.robin.config.assertion.AssertConfig;
 import com.mimecast.robin.config.client.CaseConfig;
-import com.mimecast.robin.main.Config;
 import com.mimecast.robin.smtp.MessageEnvelope;
 import com.mimecast.robin.smtp.connection.SmtpFoundation;
 import com.mimecast.robin.smtp.transaction.SessionTransactionList;
@@ -12,7 +11,6 @@ import org.apache.logging.log4j.ThreadContext;
 
 import java.io.Serial;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -44,6 +42,11 @@ public class Session implements Serializable, Cloneable {
      */
     private String uid = UUID.randomUUID().toString();
 
+    /**
+     * Creation time in epoch millis.
+     */
+    private long created = System.currentTimeMillis();
+
     /**
      * Current RFC 2822 compliant date.
      */
@@ -174,6 +177,11 @@ public class Session implements Serializable, Cloneable {
      */
     private boolean ehloBdat = false;
 
+    /**
+     * [Client] EHLO advertised PIPELINING.
+     */
+    private boolean ehloPipelining = false;
+
     /**
      * [Client] EHLO advertised CHUNKING.
      */
@@ -253,6 +261,7 @@ public class Session implements Serializable, Cloneable {
     /**
      * List of magic variables.
      * <p>Handy place to store external data for reuse.
+     * <p>Holds only values put in this session, defaults are looked up from {@link Magic} on demand.
      */
     private final Map<String, Object> magic = new HashMap<>();
 
@@ -267,7 +276,6 @@ public class Session implements Serializable, Cloneable {
     public Session() {
         ThreadContext.put("aCode", uid);
 
-        Magic.putMagic(this);
         setDate();
     }
 
@@ -341,7 +349,16 @@ public class Session implements Serializable, Cloneable {
      * Sets the date.
      */
     private void setDate() {
-        this.date = new SimpleDateFormat("E, d MMM yyyy HH:mm:ss Z", Config.getProperties().getLocale()).format(new Date());
+        this.date = Magic.formatDate(created);
+    }
+
+    /**
+     * Gets creation time.
+     *
+     * @return Epoch millis.
+     */
+    public long getCreated() {
+        return created;
     }
 
     /**
@@ -862,6 +879,26 @@ public class Session implements Serializable, Cloneable {
         return this;
     }
 
+    /**
+     * Gets EHLO advertised PIPELINING.
+     *
+     * @return PIPELINING enablement.
+     */
+    public boolean isEhloPipelining() {
+        return ehloPipelining;
+    }
+
+    /**
+     * Sets EHLO advertised PIPELINING.
+     *
+     * @param ehloPipelining EHLO PIPELINING boolean.
+     * @return Self.
+     */
+    public Session setEhloPipelining(boolean ehloPipelining) {
+        this.ehloPipelining = ehloPipelining;
+        return this;
+    }
+
     /**
      * Gets EHLO advertised authentication mechanisms.
      *
@@ -1168,16 +1205,19 @@ public class Session implements Serializable, Cloneable {
      * @return Self.
      */
     public boolean hasMagic(String key) {
-        return magic.containsKey(key);
+        return magic.containsKey(key) || Magic.hasDefaultMagic(key);
     }
 
     /**
      * Gets magic.
+     * <p>Returns a copy of the defaults merged with the values put in this session.
      *
      * @return Map of String, Object.
      */
     public Map<String, Object> getMagic() {
-        return magic;
+        Map<String, Object> merged = Magic.getDefaultMagic(this);
+        merged.putAll(magic);
+        return merged;
     }
 
     /**
@@ -1187,7 +1227,11 @@ public class Session implements Serializable, Cloneable {
      * @return Object.
      */
     public Object getMagic(String key) {
-        return magic.get(key);
+        Object value = magic.get(key);
+        if (value != null || magic.containsKey(key)) {
+            return value;
+        }
+        return Magic.getDefaultMagic(key, this);
     }
 
     /**
@@ -1234,6 +1278,9 @@ public class Session implements Serializable, Cloneable {
         try {
             Session clone = (Session) super.clone();
 
+            // Magic robinUid stays that of the original as when defaults were copied on construction.
+            magic.putIfAbsent("robinUid", getMagic("robinUid"));
+
             // Assign new UID.
             clone.setUID(UUID.randomUUID().toString());
 
@@ -0,0 +1,86 @@
+package com.mimecast.robin.smtp.verb;
+
+/**
+ * Built-in SMTP command keywords.
+ *
+ * <p>Used as a dispatch index for the default extensions so they need no string hashing.
+ * <p>Keywords are resolved case-insensitively straight from the command line without allocating.
+ * <p>Anything else, like plugin commands, resolves to null and is looked up by name.
+ *
+ * @see Verb#getKeyword()
+ */
+public enum Keyword {
+    HELO, LHLO, EHLO,
+    STARTTLS, AUTH,
+    MAIL, RCPT,
+    DATA, BDAT,
+    RSET, HELP, QUIT;
+
+    /**
+     * Lowercase key.
+     */
+    private final String key = name().toLowerCase();
+
+    /**
+     * Gets lowercase key.
+     *
+     * @return Key string.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Resolves keyword from the start of given string.
+     *
+     * @param value  String.
+     * @param length Keyword length.
+     * @return Keyword or null if not built-in.
+     */
+    public static Keyword of(String value, int length) {
+        switch (length) {
+            case 4:
+                // Pack the four letters uppercase into one int.
+                int packed = 0;
+                for (int i = 0; i < 4; i++) {
+                    char c = value.charAt(i);
+                    if (c >= 'a' && c <= 'z') {
+                        c -= 32;
+                    } else if (c < 'A' || c > 'Z') {
+                        return null;
+                    }
+                    packed = packed << 8 | c;
+                }
+                return switch (packed) {
+                    case 0x48454C4F -> HELO;
+                    case 0x4C484C4F -> LHLO;
+                    case 0x45484C4F -> EHLO;
+                    case 0x41555448 -> AUTH;
+                    case 0x4D41494C -> MAIL;
+                    case 0x52435054 -> RCPT;
+                    case 0x44415441 -> DATA;
+                    case 0x42444154 -> BDAT;
+                    case 0x52534554 -> RSET;
+                    case 0x48454C50 -> HELP;
+                    case 0x51554954 -> QUIT;
+                    default -> null;
+                };
+
+            case 8:
+                return value.regionMatches(true, 0, "STARTTLS", 0, 8) ? STARTTLS : null;
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Resolves keyword from given string.
+     *
+     * @param value String.
+     * @return Keyword or null if not built-in.
+     */
+    public static Keyword of(String value) {
+        return value != null ? of(value, value.length()) : null;
+    }
+}
@@ -2,10 +2,14 @@ package com.mimecast.robin.smtp.verb;
 
 import com.mimecast.robin.main.Config;
 
+import java.util.Arrays;
+
 /**
  * SMTP verb.
  *
  * <p>This implements the basic parsing for SMTP verbs.
+ * <p>Commands are split in a single pass on whitespace and on <i>:</i> or <i>=</i> with optional whitespace around.
+ * <p>This yields the keyword followed by parameter names and values, like <i>MAIL FROM:&lt;&gt; SIZE=123</i>.
  *
  * @see AuthVerb
  * @see BdatVerb
@@ -24,6 +28,11 @@ public class Verb {
      */
     final String[] parts;
 
+    /**
+     * Built-in keyword or null.
+     */
+    private final Keyword keyword;
+
     /**
      * Constructs a new Verb instance with given command.
      *
@@ -31,17 +40,20 @@ public class Verb {
      */
     public Verb(String command) {
         this.command = command.trim();
-        this.parts = command.split("(\\s+)?(\\s+|:|=)(\\s+)?");
+        this.parts = split(this.command);
+        this.keyword = parts.length > 0 ? Keyword.of(parts[0]) : null;
     }
 
     /**
      * Constructs a new Verb instance with given Verb.
+     * <p>Shares the already parsed parts.
      *
      * @param verb Verb instance.
      */
     public Verb(Verb verb) {
         this.command = verb.getCommand();
-        this.parts = command.split("(\\s+)?(\\s+|:|=)(\\s+)?");
+        this.parts = verb.parts;
+        this.keyword = verb.keyword;
     }
 
     /**
@@ -79,7 +91,7 @@ public class Verb {
      * @return Verb string.
      */
     public String getVerb() {
-        return parts != null ? parts[0] : "";
+        return parts != null && parts.length > 0 ? parts[0] : "";
     }
 
     /**
@@ -88,7 +100,16 @@ public class Verb {
      * @return Key string.
      */
     public String getKey() {
-        return getVerb().toLowerCase();
+        return keyword != null ? keyword.getKey() : getVerb().toLowerCase();
+    }
+
+    /**
+     * Gets built-in keyword.
+     *
+     * @return Keyword or null if not built-in.
+     */
+    public Keyword getKeyword() {
+        return keyword;
     }
 
     /**
@@ -134,4 +155,82 @@ public class Verb {
                         (command.equalsIgnoreCase("BDAT") && !Config.getServer().isChunking())
         );
     }
+
+    /**
+     * Splits command into parts.
+     * <p>Separators are whitespace runs or a single <i>:</i> or <i>=</i> with optional whitespace around.
+     * <p>Matches the former <i>split("(\\s+)?(\\s+|:|=)(\\s+)?")</i> without compiling a regex.
+     * <p>A leading separator yields an empty first part and trailing empty parts are dropped.
+     *
+     * @param command SMTP command.
+     * @return Parts array.
+     */
+    static String[] split(String command) {
+        int length = command.length();
+        String[] result = null;
+        int count = 0;
+        int start = 0;
+
+        int i = 0;
+        while (i < length) {
+            // Whitespace run, then an optional delimiter followed by another whitespace run.
+            int end = skipSpace(command, i, length);
+            if (end < length && (command.charAt(end) == ':' || command.charAt(end) == '=')) {
+                end = skipSpace(command, end + 1, length);
+            }
+
+            if (end == i) {
+                i++;
+                continue;
+            }
+
+            if (result == null) {
+                result = new String[8];
+            } else if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = command.substring(start, i);
+            start = end;
+            i = end;
+        }
+
+        // No separator.
+        if (result == null) {
+            return new String[]{command};
+        }
+
+        if (start < length) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count + 1);
+            }
+            result[count++] = command.substring(start);
+        }
+
+        // Drop trailing empty parts.
+        while (count > 0 && result[count - 1].isEmpty()) {
+            count--;
+        }
+
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Skips whitespace.
+     *
+     * @param command SMTP command.
+     * @param from    Start index.
+     * @param length  Command length.
+     * @return Index of first non whitespace character or length.
+     */
+    private static int skipSpace(String command, int from, int length) {
+        while (from < length) {
+            char c = command.charAt(from);
+            // Same set as regex \s.
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                break;
+            }
+            from++;
+        }
+        return from;
+    }
 }
@@ -323,14 +323,28 @@ public class WebhookCaller {
      * @return WebhookResponse.
      */
     public static WebhookResponse callRaw(WebhookConfig config, String filePath, Connection connection) {
+        return callRaw(config, filePath, null, connection);
+    }
+
+    /**
+     * Calls RAW webhook with email content as text/plain.
+     * <p>Sends given bytes if any instead of reading the file.
+     *
+     * @param config     Webhook configuration.
+     * @param filePath   Path to email file.
+     * @param bytes      Email bytes held in memory or null.
+     * @param connection Connection instance.
+     * @return WebhookResponse.
+     */
+    public static WebhookResponse callRaw(WebhookConfig config, String filePath, byte[] bytes, Connection connection) {
         if (!config.isEnabled() || config.getUrl().isEmpty()) {
             return new WebhookResponse(200, "", true);
         }
 
         if (config.isWaitForResponse()) {
-            return callRawSync(config, filePath, connection);
+            return callRawSync(config, filePath, bytes, connection);
         } else {
-            callRawAsync(config, filePath, connection);
+            callRawAsync(config, filePath, bytes, connection);
             return new WebhookResponse(200, "", true);
         }
     }
@@ -340,12 +354,13 @@ public class WebhookCaller {
      *
      * @param config     Webhook configuration.
      * @param filePath   Path to email file.
+     * @param bytes      Email bytes held in memory or null.
      * @param connection Connection instance.
      * @return WebhookResponse.
      */
-    private static WebhookResponse callRawSync(WebhookConfig config, String filePath, Connection connection) {
+    private static WebhookResponse callRawSync(WebhookConfig config, String filePath, byte[] bytes, Connection connection) {
         try {
-            var response = executeRawHttpRequest(config, filePath, connection);
+            var response = executeRawHttpRequest(config, filePath, bytes, connection);
             if (config.isIgnoreErrors()) {
                 return new WebhookResponse(200, "", true);
             }
@@ -364,12 +379,13 @@ public class WebhookCaller {
      *
      * @param config     Webhook configuration.
      * @param filePath   Path to email file.
+     * @param bytes      Email bytes held in memory or null.
      * @param connection Connection instance.
      */
-    private static void callRawAsync(WebhookConfig config, String filePath, Connection connection) {
+    private static void callRawAsync(WebhookConfig config, String filePath, byte[] bytes, Connection connection) {
         CompletableFuture.runAsync(() -> {
             try {
-                executeRawHttpRequest(config, filePath, connection);
+                executeRawHttpRequest(config, filePath, bytes, connection);
             } catch (Exception e) {
                 if (!config.isIgnoreErrors()) {
                     log.error("Async RAW webhook call failed: {}", e.getMessage(), e);
@@ -383,11 +399,12 @@ public class WebhookCaller {
      *
      * @param config     Webhook configuration.
      * @param filePath   Path to email file.
+     * @param bytes      Email bytes held in memory or null.
      * @param connection Connection instance.
      * @return WebhookResponse.
      * @throws IOException If request fails.
      */
-    private static WebhookResponse executeRawHttpRequest(WebhookConfig config, String filePath, Connection connection) throws IOException {
+    private static WebhookResponse executeRawHttpRequest(WebhookConfig config, String filePath, byte[] bytes, Connection connection) throws IOException {
         URI uri = URI.create(config.getUrl());
         HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
 
@@ -428,7 +445,7 @@ public class WebhookCaller {
                     "PATCH".equalsIgnoreCase(config.getMethod())) {
 
                 conn.setDoOutput(true);
-                sendRawEmailContent(conn, filePath, config.isBase64());
+                sendRawEmailContent(conn, filePath, bytes, config.isBase64());
             }
 
             // Get response.
@@ -449,12 +466,13 @@ public class WebhookCaller {
      *
      * @param conn     HTTP connection.
      * @param filePath Path to email file.
+     * @param bytes    Email bytes held in memory or null to read the file.
      * @param base64   Whether to base64 encode content.
      * @throws IOException If reading or writing fails.
      */
-    private static void sendRawEmailContent(HttpURLConnection conn, String filePath, boolean base64) throws IOException {
+    private static void sendRawEmailContent(HttpURLConnection conn, String filePath, byte[] bytes, boolean base64) throws IOException {
         try (OutputStream os = conn.getOutputStream();
-             FileInputStream fis = new FileInputStream(filePath)) {
+             InputStream fis = bytes != null ? new ByteArrayInputStream(bytes) : new FileInputStream(filePath)) {
 
             if (base64) {
                 // Base64 encode the content.
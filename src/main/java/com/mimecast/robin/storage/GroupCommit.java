@@ -0,0 +1,360 @@
+package com.mimecast.robin.storage;
+
+import com.mimecast.robin.config.BasicConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.metrics.MetricsRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group commit for stored message files.
+ *
+ * <p>Sessions hand over their saved file and wait while a single daemon thread forces files to disk in batches.
+ * <p>A batch closes after the interval since its first file or once it holds the maximum number of files.
+ * <p>Files are forced one by one and then each distinct parent directory once so new and renamed entries survive too.
+ * <p>A file that fails to force only fails its own session, the rest of the batch still commits.
+ * <p>Each flush is timed as <i>storage.fsync</i> tagged with mode and group batch sizes recorded as <i>storage.fsync.batch</i>.
+ *
+ * @see LocalStorageClient
+ */
+public class GroupCommit {
+    private static final Logger log = LogManager.getLogger(GroupCommit.class);
+
+    /**
+     * Durability modes.
+     */
+    public static final String NONE = "none";
+    public static final String MESSAGE = "message";
+    public static final String GROUP = "group";
+
+    /**
+     * Shared instance.
+     */
+    private static volatile GroupCommit instance;
+
+    /**
+     * Files waiting for the next batch.
+     */
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Batch interval in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * Maximum files per batch.
+     */
+    private final int size;
+
+    /**
+     * Flusher thread.
+     */
+    private final Thread flusher;
+
+    /**
+     * Stopped state.
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Number of batches and files committed.
+     */
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+
+    /**
+     * Gets shared instance.
+     * <p>Configured from the storage config on first use.
+     *
+     * @return GroupCommit instance.
+     */
+    public static GroupCommit getInstance() {
+        if (instance == null) {
+            synchronized (GroupCommit.class) {
+                if (instance == null) {
+                    BasicConfig storage = Config.getServer().getStorage();
+                    instance = new GroupCommit(storage.getLongProperty("groupInterval", 5L),
+                            Math.toIntExact(storage.getLongProperty("groupSize", 64L)));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Waits for the shared instance to commit queued files.
+     * <p>Used on shutdown.
+     *
+     * @param timeout Time in milliseconds.
+     */
+    public static void drain(long timeout) {
+        if (instance != null) {
+            try {
+                instance.shutdown(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Constructs a new GroupCommit instance.
+     *
+     * @param interval Batch interval in milliseconds.
+     * @param size     Maximum files per batch.
+     */
+    public GroupCommit(long interval, int size) {
+        this.interval = Math.max(interval, 0L);
+        this.size = Math.max(size, 1);
+
+        flusher = new Thread(this::run, "storage-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Commits file to disk.
+     * <p>Returns once the batch holding it is durable.
+     * <p>Once stopped the file is forced on the calling thread instead.
+     *
+     * @param path File path.
+     * @throws IOException Unable to force file.
+     */
+    public void commit(Path path) throws IOException {
+        if (stopped) {
+            force(List.of(path), MESSAGE);
+            return;
+        }
+
+        Request request = new Request(path, new CompletableFuture<>());
+        queue.add(request);
+
+        try {
+            while (true) {
+                try {
+                    request.done().get(1, TimeUnit.SECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    // The flusher exited before picking it up.
+                    if (!flusher.isAlive() && queue.remove(request)) {
+                        force(List.of(path), MESSAGE);
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for group commit");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops taking new files and waits for queued ones.
+     *
+     * @param timeout Time in milliseconds.
+     * @return True if all were committed in time.
+     * @throws InterruptedException If interrupted.
+     */
+    public boolean shutdown(long timeout) throws InterruptedException {
+        stopped = true;
+        flusher.join(timeout);
+        return !flusher.isAlive();
+    }
+
+    /**
+     * Gets number of batches flushed.
+     *
+     * @return Count.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets number of files committed in batches.
+     *
+     * @return Count.
+     */
+    public long getCommitted() {
+        return committed.get();
+    }
+
+    /**
+     * Forces files and their parent directories to disk.
+     *
+     * @param paths File paths.
+     * @param mode  Durability mode for metrics.
+     * @throws IOException Unable to force.
+     */
+    public static void force(Collection<Path> paths, String mode) throws IOException {
+        long start = System.nanoTime();
+
+        for (Path path : paths) {
+            forceFile(path);
+        }
+        forceDirectories(paths);
+
+        record(mode, paths.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Forces file to disk.
+     *
+     * @param path File path.
+     * @throws IOException Unable to force.
+     */
+    private static void forceFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces each distinct parent directory of given files to disk once.
+     *
+     * @param paths File paths.
+     */
+    private static void forceDirectories(Collection<Path> paths) {
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path path : paths) {
+            if (path.toAbsolutePath().getParent() != null) {
+                directories.add(path.toAbsolutePath().getParent());
+            }
+        }
+
+        for (Path directory : directories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Not every platform can open a directory, the files are still durable.
+                log.debug("Storage unable to force directory {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flusher loop.
+     * <p>Exits once stopped and the queue runs empty.
+     */
+    private void run() {
+        List<Request> batch = new ArrayList<>(size);
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+                while (batch.size() < size) {
+                    long wait = deadline - System.nanoTime();
+                    Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Forces batch and releases waiting sessions.
+     * <p>Sessions whose file fails are failed on their own.
+     *
+     * @param batch List of Request instances.
+     */
+    private void flush(List<Request> batch) {
+        long start = System.nanoTime();
+
+        List<Request> durable = new ArrayList<>(batch.size());
+        List<Path> paths = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            try {
+                forceFile(request.path());
+                durable.add(request);
+                paths.add(request.path());
+            } catch (IOException e) {
+                log.error("Storage group commit of {} failed: {}", request.path(), e.getMessage());
+                request.done().completeExceptionally(e);
+            }
+        }
+        forceDirectories(paths);
+
+        batches.incrementAndGet();
+        committed.addAndGet(durable.size());
+        for (Request request : durable) {
+            request.done().complete(null);
+        }
+
+        record(GROUP, durable.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Records flush timing and batch size.
+     *
+     * @param mode  Durability mode.
+     * @param files Number of files.
+     * @param nanos Duration in nanoseconds.
+     */
+    private static void record(String mode, int files, long nanos) {
+        for (MeterRegistry registry : new MeterRegistry[]{MetricsRegistry.getPrometheusRegistry(), MetricsRegistry.getGraphiteRegistry()}) {
+            if (registry != null) {
+                Timer.builder("storage.fsync")
+                        .description("Stored message fsync duration")
+                        .tag("mode", mode)
+                        .register(registry)
+                        .record(nanos, TimeUnit.NANOSECONDS);
+
+                if (GROUP.equals(mode)) {
+                    DistributionSummary.builder("storage.fsync.batch")
+                            .description("Stored messages per group commit")
+                            .register(registry)
+                            .record(files);
+                }
+            }
+        }
+    }
+
+    /**
+     * File waiting for commit.
+     *
+     * @param path File path.
+     * @param done Completed once durable.
+     */
+    private record Request(Path path, CompletableFuture<Void> done) {
+    }
+}
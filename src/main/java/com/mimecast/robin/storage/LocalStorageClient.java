@@ -5,6 +5,7 @@ import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Factories;
 import com.mimecast.robin.mime.EmailParser;
 import com.mimecast.robin.mime.headers.MimeHeader;
+import com.mimecast.robin.mime.headers.MimeHeaders;
 import com.mimecast.robin.queue.PersistentQueue;
 import com.mimecast.robin.queue.QueueFiles;
 import com.mimecast.robin.queue.RelayQueueCron;
@@ -14,6 +15,9 @@ import com.mimecast.robin.queue.relay.DovecotLdaDelivery;
 import com.mimecast.robin.queue.relay.RelayMessage;
 import com.mimecast.robin.smtp.MessageEnvelope;
 import com.mimecast.robin.smtp.connection.Connection;
+import com.mimecast.robin.smtp.io.HeaderTeeOutputStream;
+import com.mimecast.robin.smtp.io.LineInputStream;
+import com.mimecast.robin.smtp.io.SpoolOutputStream;
 import com.mimecast.robin.smtp.transaction.EnvelopeTransactionList;
 import com.mimecast.robin.util.PathUtils;
 import org.apache.commons.io.output.NullOutputStream;
@@ -27,6 +31,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -37,6 +42,11 @@ import java.util.Optional;
 public class LocalStorageClient implements StorageClient {
     protected static final Logger log = LogManager.getLogger(LocalStorageClient.class);
 
+    /**
+     * Default memory spool threshold in bytes.
+     */
+    public static final long SPOOL_THRESHOLD = 65536L;
+
     /**
      * Enablement.
      */
@@ -63,15 +73,25 @@ public class LocalStorageClient implements StorageClient {
     protected String path;
 
     /**
-     * EmailParser instance.
+     * Message headers.
      */
-    protected EmailParser parser;
+    protected MimeHeaders headers;
 
     /**
      * Save file output stream.
      */
     protected OutputStream stream = NullOutputStream.INSTANCE;
 
+    /**
+     * Header tee in front of the save file.
+     */
+    protected HeaderTeeOutputStream tee;
+
+    /**
+     * Memory spool in front of the save file.
+     */
+    protected SpoolOutputStream spool;
+
     /**
      * Sets file extension.
      *
@@ -125,7 +145,13 @@ public class LocalStorageClient implements StorageClient {
     public OutputStream getStream() throws FileNotFoundException {
         if (config.getStorage().getBooleanProperty("enabled")) {
             if (PathUtils.makePath(path)) {
-                stream = new FileOutputStream(Paths.get(path, fileName).toString());
+                // Small messages stay in memory until something needs them on disk.
+                spool = new SpoolOutputStream(Paths.get(path, fileName),
+                        Math.toIntExact(config.getStorage().getLongProperty("spoolThreshold", SPOOL_THRESHOLD)));
+
+                // Headers are parsed while the message is written so save need not read it back.
+                tee = new HeaderTeeOutputStream(spool);
+                stream = tee;
             } else {
                 log.error("Storage path could not be created");
             }
@@ -146,49 +172,165 @@ public class LocalStorageClient implements StorageClient {
         return Paths.get(path, fileName).toString();
     }
 
+    /**
+     * Gets message bytes if held in memory.
+     *
+     * @return Byte array or null.
+     */
+    @Override
+    public byte[] getBytes() {
+        return spool != null ? spool.getBytes() : null;
+    }
+
     /**
      * Saves file.
+     * <p>Messages still in memory are written to disk unless storage is set not to keep them.
+     * <p>Async pipeline mode always needs them on disk for journal recovery.
+     * <p>So does any durability mode but none, the file is then forced to disk before the reply.
+     * <p>Delivery and relay happen after in {@link #deliver(Connection)}.
+     *
+     * @return True if saved, false if the file could not be written or made durable.
      */
     @Override
-    public void save() {
+    public boolean save() {
         if (config.getStorage().getBooleanProperty("enabled")) {
             try {
                 stream.close();
 
-                // Save email path to current envelope if any.
-                if (!connection.getSession().getEnvelopes().isEmpty()) {
-                    connection.getSession().getEnvelopes().getLast().setFile(getFile());
-                }
-
-                parser = new EmailParser(getFile()).parse(true);
+                headers = getHeaders();
 
                 // Rename file if X-Robin-Filename header exists. TODO: Add disablement flag.
                 rename();
 
+                if (config.getStorage().getBooleanProperty("keep", true) || config.getPipelineConfig().isAsync() || isDurable()) {
+                    persist();
+                }
+
+                // Make it durable before the reply is sent if configured.
+                if (spool == null || spool.isPersisted()) {
+                    sync();
+                }
+
                 // Save envelope file path.
                 if (!connection.getSession().getEnvelopes().isEmpty()) {
                     connection.getSession().getEnvelopes().getLast().setFile(getFile());
                 }
 
-                // Save to Dovecot LDA if enabled.
-                saveToDovecotLda();
-
-                // Relay email if X-Robin-Relay or relay configuration or direction outbound enabled.
-                relay();
-
             } catch (IOException e) {
                 log.error("Storage unable to store the email: {}", e.getMessage());
+                return false;
             }
 
-            try {
-                stream.flush();
-                stream.close();
+            if (spool == null || spool.isPersisted()) {
                 log.info("Storage file saved to: {}", getFile());
+            } else {
+                log.info("Storage kept in memory: {}", getFile());
+            }
+        }
 
-            } catch (IOException e) {
-                log.error("Storage file not flushed/closed: {}", e.getMessage());
+        return true;
+    }
+
+    /**
+     * Delivers saved file.
+     * <p>Saves to Dovecot LDA and relays if enabled.
+     * <p>Given connection replaces the one set as it may be a snapshot taken for the pipeline.
+     *
+     * @param connection Connection instance.
+     * @throws IOException Unable to deliver.
+     */
+    @Override
+    public void deliver(Connection connection) throws IOException {
+        if (config.getStorage().getBooleanProperty("enabled")) {
+            this.connection = connection;
+
+            // Read headers back only when recovering from the pipeline journal.
+            if (headers == null && !connection.getSession().getEnvelopes().isEmpty()) {
+                String file = connection.getSession().getEnvelopes().getLast().getFile();
+                if (file != null && new File(file).exists()) {
+                    headers = new EmailParser(file).parse(true).getHeaders();
+                }
             }
+
+            // Dovecot LDA and the relay queue read the message from disk.
+            if (config.getDovecot().getBooleanProperty("saveToDovecotLda") || isRelay()) {
+                persist();
+            }
+
+            // Save to Dovecot LDA if enabled.
+            saveToDovecotLda();
+
+            // Relay email if X-Robin-Relay or relay configuration or direction outbound enabled.
+            relay();
+        }
+    }
+
+    /**
+     * Writes message to disk if still in memory.
+     *
+     * @throws IOException Unable to write file.
+     */
+    private void persist() throws IOException {
+        if (spool != null && !spool.isPersisted()) {
+            spool.persist();
+            log.debug("Storage spool written to: {}", getFile());
+        }
+    }
+
+    /**
+     * Is a durability mode other than none set.
+     *
+     * @return Boolean.
+     */
+    private boolean isDurable() {
+        return !config.getStorage().getStringProperty("durability", GroupCommit.NONE).equalsIgnoreCase(GroupCommit.NONE);
+    }
+
+    /**
+     * Forces saved file to disk.
+     * <p>Per message mode forces it right away while group mode waits for its batch.
+     * <p>Can be overridden for testing/mocking purposes.
+     *
+     * @throws IOException Unable to force file.
+     */
+    protected void sync() throws IOException {
+        String mode = config.getStorage().getStringProperty("durability", GroupCommit.NONE);
+        if (mode.equalsIgnoreCase(GroupCommit.MESSAGE)) {
+            GroupCommit.force(List.of(Paths.get(getFile())), GroupCommit.MESSAGE);
+        } else if (mode.equalsIgnoreCase(GroupCommit.GROUP)) {
+            GroupCommit.getInstance().commit(Paths.get(getFile()));
+        }
+    }
+
+    /**
+     * Is message going to be relayed.
+     * <p>Any setting {@link RelayMessage#relay()} may relay under counts.
+     *
+     * @return Boolean.
+     */
+    private boolean isRelay() {
+        return config.getRelay().getBooleanProperty("enabled")
+                || (connection.getSession().isOutbound() && config.getRelay().getBooleanProperty("outboundEnabled"))
+                || (headers != null && headers.get("x-robin-relay").isPresent());
+    }
+
+    /**
+     * Gets message headers.
+     * <p>Uses the headers parsed on write and only reads the file back if there are none.
+     *
+     * @return MimeHeaders instance.
+     * @throws IOException Unable to read file.
+     */
+    private MimeHeaders getHeaders() throws IOException {
+        if (tee != null && tee.getHeaders() != null) {
+            return tee.getHeaders();
         }
+
+        if (spool != null) {
+            return new EmailParser(new LineInputStream(spool.getInputStream())).parse(true).getHeaders();
+        }
+
+        return new EmailParser(getFile()).parse(true).getHeaders();
     }
 
     /**
@@ -198,7 +340,7 @@ public class LocalStorageClient implements StorageClient {
      * @throws IOException Unable to delete file.
      */
     private void rename() throws IOException {
-        Optional<MimeHeader> optional = parser.getHeaders().get("x-robin-filename");
+        Optional<MimeHeader> optional = headers.get("x-robin-filename");
         if (optional.isPresent()) {
             MimeHeader header = optional.get();
 
@@ -210,7 +352,12 @@ public class LocalStorageClient implements StorageClient {
                     log.info("Storage deleted existing file before rename");
                 }
 
-                if (new File(source).renameTo(new File(target.toString()))) {
+                // Still in memory, just write it under the new name later.
+                if (spool != null && spool.setPath(target)) {
+                    fileName = header.getValue();
+                    log.info("Storage spool moved to: {}", getFile());
+
+                } else if (new File(source).renameTo(new File(target.toString()))) {
                     fileName = header.getValue();
                     log.info("Storage moved file to: {}", getFile());
                 }
@@ -287,7 +434,7 @@ public class LocalStorageClient implements StorageClient {
      */
     private void relay() {
         if (!connection.getSession().getEnvelopes().isEmpty()) {
-            new RelayMessage(connection, parser).relay();
+            new RelayMessage(connection, headers).relay();
         }
     }
 }
@@ -0,0 +1,99 @@
+package com.mimecast.robin.storage;
+
+import com.mimecast.robin.smtp.session.Session;
+import org.mapdb.Atomic;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.mapdb.serializer.SerializerJava;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Post-acceptance pipeline journal backed by MapDB.
+ *
+ * <p>Holds a session snapshot for every accepted message until the pipeline has run all its stages.
+ * <p>Each change is committed before returning so entries survive a crash and are replayed on startup.
+ *
+ * @see StoragePipeline
+ */
+public class PipelineJournal implements Closeable {
+
+    private final DB db;
+    private final BTreeMap<Long, Session> entries;
+    private final Atomic.Long seq;
+
+    /**
+     * Constructs a new PipelineJournal instance.
+     *
+     * @param file The file to store the database.
+     */
+    public PipelineJournal(File file) {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        this.db = DBMaker
+                .fileDB(file)
+                .fileMmapEnableIfSupported()
+                .transactionEnable()
+                .closeOnJvmShutdown()
+                .make();
+
+        this.seq = db.atomicLong("journal_seq").createOrOpen();
+        this.entries = db.treeMap("journal_map", Serializer.LONG, new SerializerJava()).createOrOpen();
+    }
+
+    /**
+     * Appends session snapshot.
+     *
+     * @param session Session instance.
+     * @return Entry id.
+     */
+    public long append(Session session) {
+        long id = seq.incrementAndGet();
+        entries.put(id, session);
+        db.commit();
+        return id;
+    }
+
+    /**
+     * Removes entry once all stages ran.
+     *
+     * @param id Entry id.
+     */
+    public void remove(long id) {
+        entries.remove(id);
+        db.commit();
+    }
+
+    /**
+     * Gets entries not yet removed in id order.
+     *
+     * @return Map of entry id and Session.
+     */
+    public Map<Long, Session> pending() {
+        return new TreeMap<>(entries);
+    }
+
+    /**
+     * Gets number of entries.
+     *
+     * @return Size.
+     */
+    public long size() {
+        return entries.sizeLong();
+    }
+
+    /**
+     * Close the database.
+     */
+    @Override
+    public void close() {
+        db.close();
+    }
+}
@@ -3,6 +3,7 @@ package com.mimecast.robin.storage;
 import com.mimecast.robin.smtp.connection.Connection;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.OutputStream;
 
 /**
@@ -44,8 +45,32 @@ public interface StorageClient {
      */
     String getFile();
 
+    /**
+     * Gets message bytes if held in memory.
+     * <p>Lets consumers skip reading the file back, null means read {@link #getFile()} instead.
+     *
+     * @return Byte array or null.
+     */
+    default byte[] getBytes() {
+        return null;
+    }
+
     /**
      * Saves file.
+     * <p>A false return means the message must not be accepted.
+     *
+     * @return True if saved.
+     */
+    boolean save();
+
+    /**
+     * Delivers saved file.
+     * <p>Post-acceptance work like local delivery and relay, run by {@link StoragePipeline} after save.
+     * <p>In async pipeline mode this runs on a pipeline thread with a snapshot of the connection.
+     *
+     * @param connection Connection instance.
+     * @throws IOException Unable to deliver.
      */
-    void save();
+    default void deliver(Connection connection) throws IOException {
+    }
 }
@@ -0,0 +1,409 @@
+package com.mimecast.robin.storage;
+
+import com.mimecast.robin.config.server.PipelineConfig;
+import com.mimecast.robin.config.server.ScenarioConfig;
+import com.mimecast.robin.config.server.WebhookConfig;
+import com.mimecast.robin.main.Config;
+import com.mimecast.robin.main.Factories;
+import com.mimecast.robin.metrics.MetricsRegistry;
+import com.mimecast.robin.smtp.connection.Connection;
+import com.mimecast.robin.smtp.session.Session;
+import com.mimecast.robin.smtp.webhook.WebhookCaller;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Post-acceptance pipeline.
+ *
+ * <p>Runs the work that follows a stored message in stages: storage delivery and the RAW webhook.
+ * <p>In sync mode stages run on the connection thread before the reply is sent.
+ * <p>In async mode a session snapshot is journaled and the stages run on a bounded executor
+ * so the reply does not wait for them.
+ * <p>When the executor queue is full stages run on the connection thread instead.
+ * <p>Journal entries left by a crash or shutdown are replayed on startup by {@link #recover()}.
+ * <p>Each stage is timed as <i>storage.pipeline.stage</i> tagged with stage and result.
+ *
+ * @see PipelineJournal
+ * @see StorageClient#deliver(Connection)
+ */
+public class StoragePipeline {
+    private static final Logger log = LogManager.getLogger(StoragePipeline.class);
+
+    /**
+     * Stage names.
+     */
+    public static final String STORAGE = "storage";
+    public static final String WEBHOOK = "webhook";
+
+    /**
+     * Shared instance.
+     */
+    private static volatile StoragePipeline instance;
+
+    /**
+     * Pipeline configuration.
+     */
+    private final PipelineConfig config;
+
+    /**
+     * Executor, null in sync mode.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Journal, opened on first use.
+     */
+    private volatile PipelineJournal journal;
+
+    /**
+     * Number of stages completed and failed.
+     */
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Gets shared instance.
+     * <p>Configured from the server config on first use.
+     *
+     * @return StoragePipeline instance.
+     */
+    public static StoragePipeline getInstance() {
+        if (instance == null) {
+            synchronized (StoragePipeline.class) {
+                if (instance == null) {
+                    instance = new StoragePipeline(Config.getServer().getPipelineConfig());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Waits for the shared instance to finish queued messages.
+     * <p>Used on shutdown, anything left over stays journaled.
+     *
+     * @param timeout Time in milliseconds.
+     */
+    public static void drain(long timeout) {
+        if (instance != null) {
+            try {
+                instance.shutdown(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Registers shared instance gauges with given registry.
+     * <p>Called once the metrics registries are up, the gauges read the shared instance when scraped.
+     *
+     * @param registry MeterRegistry instance.
+     */
+    public static void registerMetrics(MeterRegistry registry) {
+        if (registry == null) {
+            return;
+        }
+
+        Gauge.builder("storage.pipeline.queue", () -> {
+                    StoragePipeline current = instance;
+                    return current != null && current.executor != null ? current.executor.getQueue().size() : 0;
+                })
+                .description("Messages waiting for a pipeline thread")
+                .register(registry);
+
+        Gauge.builder("storage.pipeline.journal", () -> {
+                    StoragePipeline current = instance;
+                    return current != null ? current.getPending() : 0L;
+                })
+                .description("Accepted messages with pipeline stages still to run")
+                .register(registry);
+    }
+
+    /**
+     * Constructs a new StoragePipeline instance.
+     *
+     * @param config PipelineConfig instance.
+     */
+    public StoragePipeline(PipelineConfig config) {
+        this.config = config;
+
+        if (config.isAsync()) {
+            AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+                    60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(config.getQueueSize()),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "storage-pipeline-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Is async mode.
+     *
+     * @return Boolean.
+     */
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    /**
+     * Processes stored message.
+     * <p>In async mode returns once the session snapshot is journaled,
+     * unless the connection scenario asks for sync.
+     *
+     * @param connection Connection instance.
+     * @param client     StorageClient instance the message was saved with.
+     */
+    public void process(Connection connection, StorageClient client) {
+        if (!isAsync() || connection.getScenario().map(ScenarioConfig::isSync).orElse(false)) {
+            run(connection, client);
+            return;
+        }
+
+        // The connection carries on with the next transaction so stages get a copy.
+        Connection snapshot = new Connection(connection.getSession().clone().setUID(connection.getSession().getUID()));
+
+        long id;
+        try {
+            id = getJournal().append(snapshot.getSession());
+        } catch (Exception e) {
+            log.error("Pipeline unable to journal {}, running inline: {}", snapshot.getSession().getUID(), e.getMessage());
+            run(connection, client);
+            return;
+        }
+
+        submit(id, snapshot, client);
+    }
+
+    /**
+     * Replays journal entries left from a previous run.
+     * <p>In sync mode entries are replayed inline, only if a journal file exists.
+     *
+     * @return Number of entries replayed.
+     */
+    public int recover() {
+        if (!isAsync() && !new File(config.getJournal()).exists()) {
+            return 0;
+        }
+
+        Map<Long, Session> pending = getJournal().pending();
+        for (Map.Entry<Long, Session> entry : pending.entrySet()) {
+            Connection connection = new Connection(entry.getValue());
+            StorageClient client = Factories.getStorageClient(connection, "eml");
+            log.info("Pipeline recovering: {}", connection.getSession().getUID());
+
+            if (isAsync()) {
+                submit(entry.getKey(), connection, client);
+            } else {
+                complete(entry.getKey(), connection, client);
+            }
+        }
+
+        return pending.size();
+    }
+
+    /**
+     * Stops accepting work and waits for queued messages.
+     *
+     * @param timeout Time in milliseconds.
+     * @return True if all finished in time.
+     * @throws InterruptedException If interrupted.
+     */
+    public boolean shutdown(long timeout) throws InterruptedException {
+        boolean done = true;
+        if (executor != null) {
+            executor.shutdown();
+            done = executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        if (done && journal != null) {
+            journal.close();
+            journal = null;
+        }
+        return done;
+    }
+
+    /**
+     * Gets number of stages completed.
+     *
+     * @return Count.
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Gets number of stages failed.
+     *
+     * @return Count.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Gets number of journal entries pending.
+     *
+     * @return Count.
+     */
+    public long getPending() {
+        PipelineJournal current = journal;
+        return current != null ? current.size() : 0L;
+    }
+
+    /**
+     * Submits journaled message to the executor.
+     *
+     * @param id         Journal entry id.
+     * @param connection Connection instance.
+     * @param client     StorageClient instance.
+     */
+    private void submit(long id, Connection connection, StorageClient client) {
+        // Shutting down, the journal entry is replayed on next startup.
+        if (executor.isShutdown()) {
+            log.warn("Pipeline stopped, left journaled: {}", connection.getSession().getUID());
+            return;
+        }
+
+        executor.execute(() -> complete(id, connection, client));
+    }
+
+    /**
+     * Runs stages and removes journal entry.
+     *
+     * @param id         Journal entry id.
+     * @param connection Connection instance.
+     * @param client     StorageClient instance.
+     */
+    private void complete(long id, Connection connection, StorageClient client) {
+        run(connection, client);
+
+        try {
+            getJournal().remove(id);
+        } catch (Exception e) {
+            log.error("Pipeline unable to remove journal entry {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Runs stages in order.
+     * <p>A failed stage does not stop the next one.
+     *
+     * @param connection Connection instance.
+     * @param client     StorageClient instance.
+     */
+    private void run(Connection connection, StorageClient client) {
+        stage(STORAGE, connection, () -> client.deliver(connection));
+        stage(WEBHOOK, connection, () -> callRawWebhook(connection, client));
+    }
+
+    /**
+     * Runs and times stage.
+     *
+     * @param name       Stage name.
+     * @param connection Connection instance.
+     * @param stage      Stage instance.
+     */
+    private void stage(String name, Connection connection, Stage stage) {
+        long start = System.nanoTime();
+        String result = "ok";
+        try {
+            stage.run();
+            completed.incrementAndGet();
+
+        } catch (Exception e) {
+            result = "error";
+            failed.incrementAndGet();
+            log.error("Pipeline stage {} failed for {}: {}", name, connection.getSession().getUID(), e.getMessage());
+        }
+
+        record(name, result, System.nanoTime() - start);
+    }
+
+    /**
+     * Calls RAW webhook if configured.
+     * <p>Sends the message from memory when the storage client still holds it.
+     *
+     * @param connection Connection instance.
+     * @param client     StorageClient instance.
+     */
+    private static void callRawWebhook(Connection connection, StorageClient client) {
+        Map<String, WebhookConfig> webhooks = Config.getServer().getWebhooks();
+
+        String filePath = connection.getSession().getEnvelopes().isEmpty() ? null :
+                connection.getSession().getEnvelopes().getLast().getFile();
+        if (filePath == null || filePath.isEmpty()) {
+            return;
+        }
+
+        if (webhooks.containsKey("raw")) {
+            WebhookConfig rawCfg = webhooks.get("raw");
+            if (rawCfg.isEnabled()) {
+                log.debug("Calling RAW webhook with file: {}", filePath);
+                WebhookCaller.callRaw(rawCfg, filePath, client.getBytes(), connection);
+            }
+        }
+    }
+
+    /**
+     * Gets journal opening it on first use.
+     *
+     * @return PipelineJournal instance.
+     */
+    private PipelineJournal getJournal() {
+        if (journal == null) {
+            synchronized (this) {
+                if (journal == null) {
+                    journal = new PipelineJournal(new File(config.getJournal()));
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Records stage timing.
+     *
+     * @param name   Stage name.
+     * @param result Stage result.
+     * @param nanos  Duration in nanoseconds.
+     */
+    private static void record(String name, String result, long nanos) {
+        for (MeterRegistry registry : new MeterRegistry[]{MetricsRegistry.getPrometheusRegistry(), MetricsRegistry.getGraphiteRegistry()}) {
+            if (registry != null) {
+                Timer.builder("storage.pipeline.stage")
+                        .description("Post-acceptance pipeline stage duration")
+                        .tag("stage", name)
+                        .tag("result", result)
+                        .register(registry)
+                        .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Pipeline stage.
+     */
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,166 @@
+package com.mimecast.robin.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of asynchronously loaded values with per entry TTL.
+ *
+ * <p>Each value is loaded once and shared by every caller asking for the same key while in flight or fresh.
+ * <p>The loader decides the TTL of each value so DNS answers can honour their record TTL.
+ * <p>Loads that fail are not cached and the next caller tries again.
+ * <p>When over size expired entries are evicted first then any others until within bounds.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class AsyncTtlCache<K, V> {
+
+    /**
+     * Loaded value with TTL.
+     *
+     * @param value Value, may be null.
+     * @param ttl   Time to live in milliseconds.
+     * @param <V>   Value type.
+     */
+    public record Timed<V>(V value, long ttl) {
+    }
+
+    /**
+     * Cache entry.
+     * <p>In-flight entries do not expire.
+     *
+     * @param <V> Value type.
+     */
+    private static class Entry<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private volatile long expires = Long.MAX_VALUE;
+
+        private boolean isExpired(long now) {
+            return expires <= now;
+        }
+    }
+
+    /**
+     * Cache map.
+     */
+    private final Map<K, Entry<V>> map = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int maxSize;
+
+    /**
+     * Cache stats.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new AsyncTtlCache instance.
+     *
+     * @param maxSize Maximum number of entries.
+     */
+    public AsyncTtlCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Gets value for key loading it if absent or expired.
+     *
+     * @param key    Key.
+     * @param loader Loader called with the key on a miss.
+     * @return Future of value.
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletionStage<Timed<V>>> loader) {
+        long now = System.currentTimeMillis();
+        Object[] started = new Object[1];
+        Entry<V> entry = map.compute(key, (k, value) -> {
+            if (value != null && !value.isExpired(now)) {
+                return value;
+            }
+            Entry<V> created = new Entry<>();
+            started[0] = created;
+            return created;
+        });
+
+        if (entry != started[0]) {
+            hits.incrementAndGet();
+            return entry.future;
+        }
+
+        misses.incrementAndGet();
+        evict(now);
+
+        CompletionStage<Timed<V>> stage;
+        try {
+            stage = loader.apply(key);
+        } catch (RuntimeException e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+
+        stage.whenComplete((timed, error) -> {
+            if (error != null) {
+                map.remove(key, entry);
+                entry.future.completeExceptionally(error);
+            } else {
+                entry.expires = System.currentTimeMillis() + Math.max(0L, timed.ttl());
+                entry.future.complete(timed.value());
+            }
+        });
+
+        return entry.future;
+    }
+
+    /**
+     * Gets number of entries.
+     *
+     * @return Size.
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Gets number of lookups served from cache or in-flight loads.
+     *
+     * @return Hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets number of lookups that started a load.
+     *
+     * @return Misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Evicts entries over the maximum size.
+     *
+     * @param now Current time in milliseconds.
+     */
+    private void evict(long now) {
+        if (map.size() <= maxSize) {
+            return;
+        }
+
+        map.values().removeIf(entry -> entry.isExpired(now));
+
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        while (map.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
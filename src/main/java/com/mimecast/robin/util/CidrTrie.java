@@ -0,0 +1,235 @@
+package com.mimecast.robin.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * CIDR prefix trie for IPv4 and IPv6.
+ *
+ * <p>Binary trie keyed by address bits with one root per address family.
+ * <p>Lookups return the value of the longest matching prefix and take at most one step per prefix bit.
+ * <p>Populate it first and then publish it, for example through a volatile field.
+ * <p>Once published it is never modified so lookups need no locking.
+ * <p>IPv4-mapped IPv6 addresses are matched as IPv4.
+ *
+ * @param <V> Value type.
+ */
+public class CidrTrie<V> {
+
+    /**
+     * Trie node.
+     *
+     * @param <V> Value type.
+     */
+    private static class Node<V> {
+        private Node<V> zero;
+        private Node<V> one;
+        private V value;
+    }
+
+    /**
+     * IPv4 root.
+     */
+    private final Node<V> v4 = new Node<>();
+
+    /**
+     * IPv6 root.
+     */
+    private final Node<V> v6 = new Node<>();
+
+    /**
+     * Number of prefixes.
+     */
+    private int size = 0;
+
+    /**
+     * Adds prefix.
+     * <p>A bare address is added as a host prefix.
+     * <p>Adding the same prefix again replaces its value.
+     *
+     * @param cidr  Prefix in CIDR notation like 192.0.2.0/24 or 2001:db8::/32.
+     * @param value Value.
+     * @return Self.
+     * @throws IllegalArgumentException If the prefix is invalid.
+     */
+    public CidrTrie<V> put(String cidr, V value) {
+        String address = cidr.trim();
+        int length = -1;
+
+        int slash = address.indexOf('/');
+        if (slash != -1) {
+            try {
+                length = Integer.parseInt(address.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+            }
+            address = address.substring(0, slash).trim();
+        }
+
+        byte[] bytes = parseAddress(address);
+        if (bytes == null) {
+            throw new IllegalArgumentException("Invalid address: " + cidr);
+        }
+
+        int bits = bytes.length * 8;
+        if (length == -1) {
+            length = bits;
+        } else if (bytes.length == 4 && address.indexOf(':') != -1) {
+            // IPv4-mapped IPv6 prefix.
+            length -= 96;
+        }
+        if (length < 0 || length > bits) {
+            throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+        }
+
+        Node<V> node = bytes.length == 4 ? v4 : v6;
+        for (int i = 0; i < length; i++) {
+            if (bit(bytes, i)) {
+                if (node.one == null) {
+                    node.one = new Node<>();
+                }
+                node = node.one;
+            } else {
+                if (node.zero == null) {
+                    node.zero = new Node<>();
+                }
+                node = node.zero;
+            }
+        }
+
+        if (node.value == null) {
+            size++;
+        }
+        node.value = value;
+
+        return this;
+    }
+
+    /**
+     * Gets value of the longest prefix matching given address.
+     *
+     * @param ip IP address literal.
+     * @return Value or null if none matches or address is invalid.
+     */
+    public V get(String ip) {
+        byte[] bytes = parseAddress(ip);
+        return bytes != null ? get(bytes) : null;
+    }
+
+    /**
+     * Gets value of the longest prefix matching given address.
+     *
+     * @param bytes Address bytes, 4 for IPv4 or 16 for IPv6.
+     * @return Value or null if none matches.
+     */
+    public V get(byte[] bytes) {
+        Node<V> node = bytes.length == 4 ? v4 : v6;
+        V match = node.value;
+
+        int bits = bytes.length * 8;
+        for (int i = 0; i < bits; i++) {
+            node = bit(bytes, i) ? node.one : node.zero;
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                match = node.value;
+            }
+        }
+
+        return match;
+    }
+
+    /**
+     * Gets number of prefixes.
+     *
+     * @return Size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Is empty.
+     *
+     * @return Boolean.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Parses IP address literal without DNS.
+     *
+     * @param ip IP address literal.
+     * @return Address bytes, 4 for IPv4 or 16 for IPv6, or null if invalid.
+     */
+    public static byte[] parseAddress(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return null;
+        }
+
+        if (ip.indexOf(':') == -1) {
+            return parseIpv4(ip);
+        }
+
+        // Bracketed literals are only ever parsed as IPv6 and never resolved.
+        String literal = ip.startsWith("[") ? ip : "[" + ip + "]";
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses IPv4 dotted quad literal.
+     *
+     * @param ip IP address literal.
+     * @return Address bytes or null if invalid.
+     */
+    public static byte[] parseIpv4(String ip) {
+        if (ip == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[4];
+        int octet = 0;
+        int value = 0;
+        int digits = 0;
+
+        for (int i = 0, len = ip.length(); i < len; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && digits > 0 && octet < 3) {
+                bytes[octet++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+
+        if (octet != 3 || digits == 0) {
+            return null;
+        }
+        bytes[3] = (byte) value;
+
+        return bytes;
+    }
+
+    /**
+     * Gets address bit.
+     *
+     * @param bytes Address bytes.
+     * @param index Bit index from the most significant bit.
+     * @return True if set.
+     */
+    private static boolean bit(byte[] bytes, int index) {
+        return (bytes[index >> 3] & (0x80 >> (index & 7))) != 0;
+    }
+}
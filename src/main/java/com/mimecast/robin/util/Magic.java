@@ -15,14 +15,21 @@ import java.lang.management.ManagementFactory;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * Magic processors.
+ *
+ * <p>Default magic is not copied into each session but looked up on demand.
+ * <p>It consists of the string and list properties, system properties passed as JVM arguments
+ * and the <i>robinUid</i>, <i>robinYymd</i> and <i>robinDate</i> session values.
+ * <p>Values put in a session take precedence over defaults.
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class Magic {
@@ -38,38 +45,159 @@ public class Magic {
      */
     private static final Pattern transactionPattern = Pattern.compile("(250.*)\\s\\[[a-z0-9\\-_]+\\.[a-z]+([0-9]+)?]", Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Session magic names.
+     */
+    private static final Set<String> SESSION_MAGIC = Set.of("robinUid", "robinYymd", "robinDate");
+
+    /**
+     * System property names passed as JVM arguments.
+     * <p>JVM arguments never change so these are read once.
+     */
+    private static volatile Set<String> argumentNames;
+
+    /**
+     * Date stamps for one second.
+     *
+     * @param second Epoch second.
+     * @param locale Locale property.
+     * @param yymd   Date as yyyyMMdd.
+     * @param date   RFC 2822 date.
+     */
+    private record Stamp(long second, String locale, String yymd, String date) {
+    }
+
+    /**
+     * Last date stamps.
+     */
+    private static volatile Stamp stamp;
+
     /**
      * Puts magic variables in session.
+     * <p>Sessions look up defaults on demand so this is only needed to snapshot them.
      *
      * @param session Session instance.
      */
     public static void putMagic(Session session) {
-        session.putMagic("robinUid", session.getUID());
-        session.putMagic("robinYymd", new SimpleDateFormat("yyyyMMdd").format(new Date()));
-        session.putMagic("robinDate", new SimpleDateFormat("E, d MMM yyyy HH:mm:ss Z", Config.getProperties().getLocale()).format(new Date()));
+        getDefaultMagic(session).forEach(session::putMagic);
+    }
 
-        // Add magic properties.
-        for (Map.Entry<String, Object> entry : Config.getProperties().getMap().entrySet()) {
-            if (entry.getValue() instanceof String) {
-                session.putMagic(entry.getKey(), entry.getValue());
+    /**
+     * Has default magic by key.
+     *
+     * @param key Magic key.
+     * @return Boolean.
+     */
+    public static boolean hasDefaultMagic(String key) {
+        if (getArgumentNames().contains(key)) {
+            return true;
+        }
+
+        Object value = Config.getProperties().getMap().get(key);
+        return value instanceof String || value instanceof List || SESSION_MAGIC.contains(key);
+    }
+
+    /**
+     * Gets default magic by key.
+     * <p>JVM arguments take precedence over properties which take precedence over session values.
+     *
+     * @param key     Magic key.
+     * @param session Session instance.
+     * @return String, List of Strings or null.
+     */
+    public static Object getDefaultMagic(String key, Session session) {
+        if (getArgumentNames().contains(key)) {
+            return Config.getProperties().getStringProperty(key);
+        }
 
-            } else if (entry.getValue() instanceof List) {
-                session.putMagic(entry.getKey(), ((List) entry.getValue()).stream()
-                        .filter(o -> o instanceof String)
-                        .collect(Collectors.toList()));
+        Object value = Config.getProperties().getMap().get(key);
+        if (value instanceof String) {
+            return value;
+        } else if (value instanceof List) {
+            return ((List) value).stream()
+                    .filter(o -> o instanceof String)
+                    .collect(Collectors.toList());
+        }
+
+        return switch (key) {
+            case "robinUid" -> session.getUID();
+            // Sessions persisted before creation time was recorded have none.
+            case "robinYymd" -> getStamp(session.getCreated() > 0 ? session.getCreated() : System.currentTimeMillis()).yymd();
+            case "robinDate" -> session.getDate();
+            default -> null;
+        };
+    }
+
+    /**
+     * Gets all default magic.
+     *
+     * @param session Session instance.
+     * @return Map of String, Object.
+     */
+    public static Map<String, Object> getDefaultMagic(Session session) {
+        Map<String, Object> magic = new HashMap<>();
+        for (String key : SESSION_MAGIC) {
+            magic.put(key, getDefaultMagic(key, session));
+        }
+        for (Map.Entry<String, Object> entry : Config.getProperties().getMap().entrySet()) {
+            if (entry.getValue() instanceof String || entry.getValue() instanceof List) {
+                magic.put(entry.getKey(), getDefaultMagic(entry.getKey(), session));
             }
         }
+        for (String key : getArgumentNames()) {
+            magic.put(key, getDefaultMagic(key, session));
+        }
+        return magic;
+    }
+
+    /**
+     * Gets system property names passed as JVM arguments.
+     *
+     * @return Set of names.
+     */
+    private static Set<String> getArgumentNames() {
+        Set<String> names = argumentNames;
+        if (names == null) {
+            names = argumentNames = ManagementFactory.getRuntimeMXBean().getInputArguments()
+                    .stream()
+                    .filter(s -> s.startsWith("-D"))
+                    .map(s -> s.replace("-D", "").replaceAll("=.*", ""))
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+        return names;
+    }
 
-        // Add magic arguments.
-        List<String> args = ManagementFactory.getRuntimeMXBean().getInputArguments()
-                .stream()
-                .filter(s -> s.startsWith("-D"))
-                .map(s -> s.replace("-D", "").replaceAll("=.*", ""))
-                .collect(Collectors.toList());
+    /**
+     * Formats RFC 2822 date.
+     * <p>Uses the locale property and the default time zone.
+     *
+     * @param millis Epoch millis.
+     * @return Date string.
+     */
+    public static String formatDate(long millis) {
+        return getStamp(millis).date();
+    }
 
-        for (String key : args) {
-            session.putMagic(key, Config.getProperties().getStringProperty(key));
+    /**
+     * Gets date stamps for given time.
+     * <p>Stamps are formatted once per second and shared.
+     *
+     * @param millis Epoch millis.
+     * @return Stamp instance.
+     */
+    private static Stamp getStamp(long millis) {
+        long second = Math.floorDiv(millis, 1000L);
+        String locale = Config.getProperties().getStringProperty("locale", "");
+
+        Stamp current = stamp;
+        if (current == null || current.second() != second || !current.locale().equals(locale)) {
+            Date date = new Date(second * 1000L);
+            current = new Stamp(second, locale,
+                    new SimpleDateFormat("yyyyMMdd").format(date),
+                    new SimpleDateFormat("E, d MMM yyyy HH:mm:ss Z", Config.getProperties().getLocale()).format(date));
+            stamp = current;
         }
+        return current;
     }
 
     /**
@@ -85,6 +213,7 @@ public class Magic {
 
     /**
      * Session magic replace with optional null string.
+     * <p>Templates are compiled once and cached, see {@link MagicTemplate}.
      *
      * @param magicString Magic string.
      * @param session     Session instance.
@@ -92,52 +221,44 @@ public class Magic {
      * @return Map of String, Object.
      */
     public static String magicReplace(String magicString, Session session, boolean nullString) {
+        return MagicTemplate.render(magicString, session, nullString);
+    }
 
-        Matcher matcher = magicVariablePattern.matcher(magicString);
-
-        while (matcher.find()) {
-            String magicVariable = matcher.group();
-
-            String magicFunction = matcher.group(1);
-            String magicArgs = matcher.group(2);
-            if (magicArgs != null) {
-                magicArgs = magicArgs.replaceAll("[()]", "");
-            }
-            String magicName = matcher.group(3);
-            String magicRow = matcher.group(5);
-            String resultColumn = matcher.group(7);
-            String value = null;
-
-            // Magic variables.
-            if (session.hasMagic(magicName)) {
-                value = getMagicValue(magicName, magicRow, session);
-            }
+    /**
+     * Resolves compiled magic variable reference.
+     *
+     * @param reference Reference instance.
+     * @param session   Session instance.
+     * @return String or null if not found.
+     */
+    static String resolve(MagicTemplate.Reference reference, Session session) {
+        String magicName = reference.name();
+        String magicRow = reference.row();
+        String resultColumn = reference.column();
+        String value = null;
 
-            // Saved results.
-            if (resultColumn != null && session.getSavedResults().containsKey(magicName)) {
-                int resultRow = Integer.parseInt(magicRow);
+        // Magic variables.
+        if (session.hasMagic(magicName)) {
+            value = getMagicValue(magicName, magicRow, session);
+        }
 
-                if (session.getSavedResults().get(magicName) != null &&
-                        session.getSavedResults().get(magicName).get(resultRow) != null) {
+        // Saved results.
+        if (resultColumn != null && session.getSavedResults().containsKey(magicName)) {
+            int resultRow = Integer.parseInt(magicRow);
 
-                    value = String.valueOf(((Map<String, String>) session.getSavedResults().get(magicName).get(resultRow)).get(resultColumn));
-                }
-            }
+            if (session.getSavedResults().get(magicName) != null &&
+                    session.getSavedResults().get(magicName).get(resultRow) != null) {
 
-            // Magic functions.
-            if (magicFunction != null && value != null) {
-                value = magicFunction(magicFunction, magicArgs, value);
+                value = String.valueOf(((Map<String, String>) session.getSavedResults().get(magicName).get(resultRow)).get(resultColumn));
             }
+        }
 
-            if (value != null) {
-                magicString = magicString.replace(magicVariable, value);
-
-            } else if (nullString) {
-                magicString = magicString.replace(magicVariable, "null");
-            }
+        // Magic functions.
+        if (reference.function() != null && value != null) {
+            value = magicFunction(reference.function(), reference.args(), value);
         }
 
-        return magicString;
+        return value;
     }
 
     /**
@@ -0,0 +1,275 @@
+package com.mimecast.robin.util;
+
+import com.mimecast.robin.smtp.session.Session;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+/**
+ * Compiled magic template.
+ *
+ * <p>A magic string is parsed once into literal segments and variable references.
+ * <p>Rendering is then a walk concatenating literals and resolved values without running the magic regex.
+ * <p>Repeated occurrences of the same variable resolve once per render and share the value,
+ * like random list picks did with the previous replace based implementation.
+ * <p>Compiled templates are cached by template string in a bounded cache shared by all threads.
+ * <p>Strings without any variable skip the cache altogether.
+ *
+ * @see Magic#magicReplace(String, Session, boolean)
+ */
+public final class MagicTemplate {
+
+    /**
+     * Maximum number of cached templates.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * Cache of compiled templates.
+     */
+    private static final Map<String, MagicTemplate> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Cache stats.
+     */
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Variable reference.
+     *
+     * @param text     Variable text as found in the template.
+     * @param function Magic function or null.
+     * @param args     Magic function arguments or null.
+     * @param name     Variable name.
+     * @param row      List or saved results row or null.
+     * @param column   Saved results column or null.
+     */
+    record Reference(String text, String function, String args, String name, String row, String column) {
+    }
+
+    /**
+     * Template string.
+     */
+    private final String source;
+
+    /**
+     * Literal segments around references, one more than occurrences.
+     */
+    private final String[] literals;
+
+    /**
+     * Reference index of each occurrence.
+     */
+    private final int[] occurrences;
+
+    /**
+     * Distinct references.
+     */
+    private final Reference[] references;
+
+    /**
+     * Constructs a new MagicTemplate instance.
+     *
+     * @param source Template string.
+     */
+    private MagicTemplate(String source) {
+        this.source = source;
+
+        List<String> literalList = new ArrayList<>();
+        List<Integer> occurrenceList = new ArrayList<>();
+        Map<String, Integer> index = new HashMap<>();
+        List<Reference> referenceList = new ArrayList<>();
+
+        Matcher matcher = Magic.magicVariablePattern.matcher(source);
+        int last = 0;
+        while (matcher.find()) {
+            literalList.add(source.substring(last, matcher.start()));
+            last = matcher.end();
+
+            String text = matcher.group();
+            Integer slot = index.get(text);
+            if (slot == null) {
+                String args = matcher.group(2);
+                if (args != null) {
+                    args = args.replaceAll("[()]", "");
+                }
+
+                slot = referenceList.size();
+                index.put(text, slot);
+                referenceList.add(new Reference(text, matcher.group(1), args, matcher.group(3), matcher.group(5), matcher.group(7)));
+            }
+            occurrenceList.add(slot);
+        }
+        literalList.add(source.substring(last));
+
+        this.literals = literalList.toArray(new String[0]);
+        this.occurrences = occurrenceList.stream().mapToInt(Integer::intValue).toArray();
+        this.references = referenceList.toArray(new Reference[0]);
+    }
+
+    /**
+     * Gets compiled template from cache compiling it on a miss.
+     *
+     * @param template Template string.
+     * @return MagicTemplate instance.
+     */
+    public static MagicTemplate compile(String template) {
+        MagicTemplate compiled = cache.get(template);
+        if (compiled != null) {
+            hits.incrementAndGet();
+            return compiled;
+        }
+
+        misses.incrementAndGet();
+        compiled = new MagicTemplate(template);
+
+        // Strings without variables render as they are so there is no point caching them.
+        if (compiled.references.length > 0) {
+            cache.put(template, compiled);
+            evict();
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Renders magic string.
+     *
+     * @param template   Template string.
+     * @param session    Session instance.
+     * @param nullString Render unresolved variables as <i>null</i>.
+     * @return Rendered string.
+     */
+    public static String render(String template, Session session, boolean nullString) {
+        // Every variable has a $ sign.
+        if (template.indexOf('$') == -1) {
+            return template;
+        }
+        return compile(template).render(session, nullString);
+    }
+
+    /**
+     * Renders template.
+     * <p>Unresolved variables are kept as they are unless nullString is set.
+     *
+     * @param session    Session instance.
+     * @param nullString Render unresolved variables as <i>null</i>.
+     * @return Rendered string.
+     */
+    public String render(Session session, boolean nullString) {
+        if (references.length == 0) {
+            return source;
+        }
+
+        String[] values = new String[references.length];
+        boolean[] resolved = new boolean[references.length];
+
+        StringBuilder sb = new StringBuilder(source.length() + 32);
+        for (int i = 0; i < occurrences.length; i++) {
+            sb.append(literals[i]);
+
+            int slot = occurrences[i];
+            if (!resolved[slot]) {
+                values[slot] = Magic.resolve(references[slot], session);
+                resolved[slot] = true;
+            }
+
+            if (values[slot] != null) {
+                sb.append(values[slot]);
+            } else {
+                sb.append(nullString ? "null" : references[slot].text());
+            }
+        }
+        sb.append(literals[occurrences.length]);
+
+        return sb.toString();
+    }
+
+    /**
+     * Has variables.
+     *
+     * @return Boolean.
+     */
+    public boolean hasReferences() {
+        return references.length > 0;
+    }
+
+    /**
+     * Gets number of cached templates.
+     *
+     * @return Cache size.
+     */
+    public static int size() {
+        return cache.size();
+    }
+
+    /**
+     * Gets number of compilations served from cache.
+     *
+     * @return Hits.
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets number of compilations that parsed the template.
+     *
+     * @return Misses.
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Registers cache metrics.
+     * <p>Hits and misses are exposed as <i>magic.template.cache</i> tagged with <i>result</i>
+     * and the number of cached templates as <i>magic.template.cache.size</i>.
+     *
+     * @param registry MeterRegistry instance or null.
+     */
+    public static void registerMetrics(MeterRegistry registry) {
+        if (registry == null) {
+            return;
+        }
+
+        FunctionCounter.builder("magic.template.cache", hits, AtomicLong::get)
+                .description("Number of magic template compilations by cache result")
+                .tag("result", "hit")
+                .register(registry);
+
+        FunctionCounter.builder("magic.template.cache", misses, AtomicLong::get)
+                .description("Number of magic template compilations by cache result")
+                .tag("result", "miss")
+                .register(registry);
+
+        Gauge.builder("magic.template.cache.size", cache, Map::size)
+                .description("Number of cached magic templates")
+                .register(registry);
+    }
+
+    /**
+     * Evicts templates over the maximum size.
+     */
+    private static void evict() {
+        if (cache.size() <= CACHE_SIZE) {
+            return;
+        }
+
+        Iterator<MagicTemplate> iterator = cache.values().iterator();
+        while (cache.size() > CACHE_SIZE && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -11,6 +11,12 @@ public class Benchmarks {
         final Options options = new OptionsBuilder()
                 .include(EmailBuilderBench.class.getSimpleName())
                 .include(EmailParserBench.class.getSimpleName())
+                .include(LineInputStreamBench.class.getSimpleName())
+                .include(DataDecoderBench.class.getSimpleName())
+                .include(ScenarioRcptBench.class.getSimpleName())
+                .include(VerbBench.class.getSimpleName())
+                .include(SessionBench.class.getSimpleName())
+                .include(MagicBench.class.getSimpleName())
                 .threads(4)
                 .forks(1)
                 .build();
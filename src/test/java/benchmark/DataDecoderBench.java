@@ -0,0 +1,86 @@
+package benchmark;
+
+import com.mimecast.robin.smtp.io.DataDecoder;
+import com.mimecast.robin.smtp.io.LineInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * DATA body decoding throughput.
+ * <p>Each operation decodes 1 MB so ops/s in throughput mode reads as MB/s for a single core.
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class DataDecoderBench {
+
+    static final int SIZE = 1024 * 1024;
+
+    /**
+     * Dot stuffed EML corpus from test resources followed by the terminator.
+     */
+    byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (Stream<Path> paths = Files.list(Paths.get("src/test/resources/mime"))) {
+            for (Path path : paths.filter(p -> p.toString().endsWith(".eml")).sorted().toList()) {
+                outputStream.write(Files.readAllBytes(path));
+            }
+        }
+
+        byte[] emails = new String(outputStream.toByteArray()).replace("\n.", "\n..").getBytes();
+        outputStream.reset();
+        while (outputStream.size() < SIZE) {
+            outputStream.write(emails);
+        }
+        data = Arrays.copyOf(outputStream.toByteArray(), SIZE + 5);
+        data[SIZE - 2] = '\r';
+        data[SIZE - 1] = '\n';
+        System.arraycopy(".\r\n\r\n".getBytes(), 0, data, SIZE, 5);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void decoder() throws IOException {
+        DataDecoder decoder = new DataDecoder(NullOutputStream.INSTANCE);
+        int pos = 0;
+        while (!decoder.isDone()) {
+            int len = Math.min(65536, data.length - pos);
+            pos += decoder.decode(data, pos, len);
+        }
+        decoder.finish();
+    }
+
+    /**
+     * Previous line by line loop for comparison.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void lines() throws IOException {
+        OutputStream out = NullOutputStream.INSTANCE;
+        LineInputStream inc = new LineInputStream(new ByteArrayInputStream(data));
+
+        byte[] read;
+        byte[] eol = new byte[0];
+        while ((read = inc.readLine()) != null) {
+            int length = eol.length + read.length;
+            if (length == 5 && eol[0] == 13 && read[0] == 46 && read[1] == 13 && read[2] == 10) {
+                break;
+            }
+            out.write(eol);
+            eol = read.length > 1 && read[read.length - 2] == 13 ? new byte[]{13, 10} : new byte[]{10};
+            out.write(Arrays.copyOf(read, read.length - eol.length));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * Byte at a time line reader kept as a baseline for LineInputStreamBench.
+ */
+public class LegacyLineInputStream extends PushbackInputStream {
+
+    private static final int CR = 13;
+    private static final int LF = 10;
+
+    public LegacyLineInputStream(InputStream stream, int size) {
+        super(stream, size);
+    }
+
+    public byte[] readLine() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        boolean foundCR = false;
+        int intByte;
+        while ((intByte = read()) != -1) {
+            if (foundCR && intByte != LF) {
+                unread(intByte);
+                break;
+            }
+
+            foundCR = foundCR || intByte == CR;
+
+            if (intByte == LF) {
+                buffer.write(intByte);
+                break;
+            }
+
+            buffer.write(intByte);
+        }
+
+        if (buffer.size() == 0) {
+            return null;
+        }
+
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import com.mimecast.robin.smtp.io.LineInputStream;
+import com.mimecast.robin.smtp.io.LineSlice;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+public class LineInputStreamBench {
+
+    /**
+     * EML corpus built from test resources repeated to roughly 1 MB.
+     */
+    byte[] corpus;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (Stream<Path> paths = Files.list(Paths.get("src/test/resources/mime"))) {
+            for (Path path : paths.filter(p -> p.toString().endsWith(".eml")).sorted().toList()) {
+                outputStream.write(Files.readAllBytes(path));
+            }
+        }
+
+        byte[] emails = outputStream.toByteArray();
+        while (outputStream.size() < 1024 * 1024) {
+            outputStream.write(emails);
+        }
+        corpus = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+    public void legacyReadLine(Blackhole blackhole) throws IOException {
+        LegacyLineInputStream stream = new LegacyLineInputStream(new ByteArrayInputStream(corpus), 1024);
+        byte[] bytes;
+        while ((bytes = stream.readLine()) != null) {
+            blackhole.consume(bytes);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+    public void readLine(Blackhole blackhole) throws IOException {
+        LineInputStream stream = new LineInputStream(new ByteArrayInputStream(corpus), 1024);
+        byte[] bytes;
+        while ((bytes = stream.readLine()) != null) {
+            blackhole.consume(bytes);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+    public void readLineSlice(Blackhole blackhole) throws IOException {
+        LineInputStream stream = new LineInputStream(new ByteArrayInputStream(corpus), 1024);
+        LineSlice slice;
+        while ((slice = stream.readLineSlice()) != null) {
+            blackhole.consume(slice.getLength());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.smtp.session.Session;
+import com.mimecast.robin.util.Magic;
+import org.openjdk.jmh.annotations.*;
+
+import javax.naming.ConfigurationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Magic replace cost.
+ * <p>Renders a webhook style header template through the compiled template cache.
+ * <p>Compared with the previous regex scan and string replace per call.
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class MagicBench {
+
+    private static final Pattern pattern = Pattern.compile("\\{([a-z]+)?(\\([a-z0-9-_.:;|]+\\))?\\$([a-z0-9-_.]+)(\\[([0-9?]+)](\\[([a-z0-9]+)])?)?}", Pattern.CASE_INSENSITIVE);
+
+    private static final String TEMPLATE = "Bearer {$token}; uid={$robinUid}; host={toLowerCase$host}";
+
+    private Session session;
+
+    @Setup(Level.Trial)
+    public void setup() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+        session = new Session();
+        session.putMagic("token", "c2VjcmV0LXRva2Vu");
+        session.putMagic("host", "MX.EXAMPLE.COM");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public String template() {
+        return Magic.magicReplace(TEMPLATE, session);
+    }
+
+    /**
+     * Previous regex scan for comparison.
+     * <p>Function calls are left out so it only undercounts the legacy cost.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public String regex() {
+        String magicString = TEMPLATE;
+        Matcher matcher = pattern.matcher(magicString);
+        while (matcher.find()) {
+            String name = matcher.group(3);
+            if (matcher.group(2) != null) {
+                matcher.group(2).replaceAll("[()]", "");
+            }
+            Object value = session.hasMagic(name) ? session.getMagic(name) : null;
+            if (value != null) {
+                magicString = magicString.replace(matcher.group(), String.valueOf(value));
+            }
+        }
+        return magicString;
+    }
+}
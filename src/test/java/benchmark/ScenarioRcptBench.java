@@ -0,0 +1,77 @@
+package benchmark;
+
+import com.mimecast.robin.config.server.RcptMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scenario RCPT matching throughput.
+ * <p>Matches a mix of exact, pattern and unmatched recipients against a few hundred scenario entries.
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class ScenarioRcptBench {
+
+    @Param({"10", "300"})
+    int entries;
+
+    List<Map<String, String>> rcpt;
+    RcptMatcher matcher;
+    String[] addresses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rcpt = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            Map<String, String> entry = new HashMap<>();
+            if (i % 3 == 0) {
+                entry.put("value", "user" + i + "\\-[0-9]+@example\\.com");
+            } else {
+                entry.put("value", "user" + i + "@example\\.com");
+            }
+            entry.put("response", "550 User " + i);
+            rcpt.add(entry);
+        }
+        matcher = new RcptMatcher(rcpt);
+
+        addresses = new String[]{
+                "user" + (entries - 1) + "@example.com",
+                "user" + (entries / 3 * 3) + "-42@example.com",
+                "nobody@example.com"
+        };
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int compiled() {
+        int hits = 0;
+        for (String address : addresses) {
+            if (matcher.match(address) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Previous loop recompiling each regex for comparison.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int matches() {
+        int hits = 0;
+        for (String address : addresses) {
+            for (Map<String, String> entry : rcpt) {
+                if (address.matches(entry.get("value"))) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,41 @@
+package benchmark;
+
+import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.smtp.session.Session;
+import com.mimecast.robin.util.Magic;
+import org.openjdk.jmh.annotations.*;
+
+import javax.naming.ConfigurationException;
+
+/**
+ * Session construction cost.
+ * <p>Builds a session and resolves one magic variable as a connection with a webhook or scenario would.
+ * <p>Run with <i>-prof gc</i> to compare allocation per session.
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class SessionBench {
+
+    @Setup(Level.Trial)
+    public void setup() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public String lazy() {
+        Session session = new Session();
+        return Magic.magicReplace("{$robinUid}", session);
+    }
+
+    /**
+     * Previous eager copy of all default magic into each session for comparison.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public String eager() {
+        Session session = new Session();
+        Magic.putMagic(session);
+        return Magic.magicReplace("{$robinUid}", session);
+    }
+}
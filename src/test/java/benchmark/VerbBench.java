@@ -0,0 +1,59 @@
+package benchmark;
+
+import com.mimecast.robin.main.Extensions;
+import com.mimecast.robin.smtp.extension.Extension;
+import com.mimecast.robin.smtp.verb.Verb;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+
+/**
+ * SMTP command parse and dispatch cost.
+ * <p>Parses a typical transaction worth of commands and resolves the extension for each.
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class VerbBench {
+
+    String[] commands = {
+            "EHLO client.example.com",
+            "MAIL FROM:<tony@example.com> SIZE=12345 BODY=8BITMIME",
+            "RCPT TO:<pepper@example.com> NOTIFY=SUCCESS,FAILURE",
+            "RCPT TO: <happy@example.com>",
+            "DATA",
+            "RSET",
+            "XCLIENT NAME=client.example.com ADDR=192.0.2.1",
+            "QUIT"
+    };
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int tokenizer() {
+        int found = 0;
+        for (String command : commands) {
+            Verb verb = new Verb(command);
+            if (Extensions.getExtension(verb).isPresent()) {
+                found += verb.getCount();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Previous regex split and lowercase map lookup for comparison.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int regex() {
+        Map<String, Extension> map = Extensions.getExtensions();
+        int found = 0;
+        for (String command : commands) {
+            String[] parts = command.trim().split("(\\s+)?(\\s+|:|=)(\\s+)?");
+            String key = parts[0].toLowerCase();
+            if (map.containsKey(key) && map.get(key.toLowerCase()) != null) {
+                found += parts.length;
+            }
+        }
+        return found;
+    }
+}
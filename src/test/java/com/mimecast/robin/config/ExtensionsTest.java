@@ -130,6 +130,13 @@ class ExtensionsTest {
         assertNotNull(Extensions.getExtension(new Verb("quit")).get().getServer());
     }
 
+    @Test
+    void getExtensionKeyword() {
+        assertSame(Extensions.getExtension("mail").get(), Extensions.getExtension(new Verb("MAIL FROM:<>")).get());
+        assertSame(Extensions.getExtension("starttls").get(), Extensions.getExtension(new Verb("StartTLS")).get());
+        assertFalse(Extensions.getExtension(new Verb("NOOP")).isPresent());
+    }
+
     private static class ServerTest extends ServerProcessor {}
     private static class ClientTest extends ClientProcessor {}
 
@@ -0,0 +1,45 @@
+package com.mimecast.robin.config.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListenerConfigTest {
+
+    @Test
+    void defaults() {
+        ListenerConfig config = new ListenerConfig(new HashMap<>());
+
+        assertEquals("platform", config.getExecutionMode());
+        assertFalse(config.isVirtualThreads());
+        assertEquals(10000, config.getMaxConnections());
+        assertEquals(100, config.getQueueSize());
+        assertEquals(30, config.getMaxQueueTime());
+    }
+
+    @Test
+    void virtual() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("executionMode", "Virtual");
+        map.put("maxConnections", 500D);
+
+        ListenerConfig config = new ListenerConfig(map);
+        assertEquals("virtual", config.getExecutionMode());
+        assertTrue(config.isVirtualThreads());
+        assertEquals(500, config.getMaxConnections());
+    }
+
+    @Test
+    void admission() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("queueSize", 5D);
+        map.put("maxQueueTime", 2D);
+
+        ListenerConfig config = new ListenerConfig(map);
+        assertEquals(5, config.getQueueSize());
+        assertEquals(2, config.getMaxQueueTime());
+    }
+}
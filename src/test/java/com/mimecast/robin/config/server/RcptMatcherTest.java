@@ -0,0 +1,73 @@
+package com.mimecast.robin.config.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RcptMatcherTest {
+
+    private static Map<String, String> entry(String value, String response) {
+        return Map.of("value", value, "response", response);
+    }
+
+    @Test
+    void match() {
+        RcptMatcher matcher = new RcptMatcher(List.of(
+                entry("jane@example\\.com", "501 Invalid address"),
+                entry("friday\\-[0-9]+@example\\.com", "252 I think I know this user")
+        ));
+
+        assertEquals("501 Invalid address", matcher.match("jane@example.com"));
+        assertEquals("252 I think I know this user", matcher.match("friday-13@example.com"));
+        assertNull(matcher.match("janeXexample.com"));
+        assertNull(matcher.match("jane@example.com.au"));
+        assertNull(matcher.match(null));
+    }
+
+    @Test
+    void order() {
+        RcptMatcher matcher = new RcptMatcher(List.of(
+                entry(".*@reject\\.com", "550 Rejected"),
+                entry("ultron@reject\\.com", "501 Heart not found"),
+                entry("vision@reject\\.com", "250 OK"),
+                entry(".*", "451 Try later")
+        ));
+
+        // Earlier pattern wins over later exact entry.
+        assertEquals("550 Rejected", matcher.match("ultron@reject.com"));
+
+        // Exact entry wins over later pattern.
+        matcher = new RcptMatcher(List.of(
+                entry("vision@reject\\.com", "250 OK"),
+                entry(".*", "451 Try later")
+        ));
+        assertEquals("250 OK", matcher.match("vision@reject.com"));
+        assertEquals("451 Try later", matcher.match("thanos@reject.com"));
+    }
+
+    @Test
+    void invalid() {
+        RcptMatcher matcher = new RcptMatcher(List.of(
+                entry("[unclosed", "550 Never"),
+                entry("tony@example\\.com", "250 OK")
+        ));
+
+        assertNull(matcher.match("[unclosed"));
+        assertEquals("250 OK", matcher.match("tony@example.com"));
+        assertTrue(new RcptMatcher(null).isEmpty());
+    }
+
+    @Test
+    void literal() {
+        assertEquals("jane@example.com", RcptMatcher.literal("jane@example\\.com"));
+        assertEquals("a-b_c@d.e", RcptMatcher.literal("a-b_c@d\\.e"));
+        assertEquals("a+b@c", RcptMatcher.literal("a\\+b@c"));
+        assertNull(RcptMatcher.literal("jane@example.com"));
+        assertNull(RcptMatcher.literal("\\w+@example\\.com"));
+        assertNull(RcptMatcher.literal("a|b"));
+        assertNull(RcptMatcher.literal("trailing\\"));
+    }
+}
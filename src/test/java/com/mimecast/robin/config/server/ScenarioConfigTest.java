@@ -9,6 +9,8 @@ import javax.naming.ConfigurationException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class ScenarioConfigTest {
 
@@ -49,4 +51,11 @@ class ScenarioConfigTest {
     void getData() {
         assertEquals("554 Your data is corrupted", scenarioConfig.getData());
     }
+
+    @Test
+    void getRcptMatcher() {
+        assertSame(scenarioConfig.getRcptMatcher(), scenarioConfig.getRcptMatcher());
+        assertEquals("501 Heart not found", scenarioConfig.getRcptMatcher().match("ultron@reject.com"));
+        assertNull(scenarioConfig.getRcptMatcher().match("vision@reject.com"));
+    }
 }
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import javax.naming.ConfigurationException;
+import java.io.File;
+import java.io.IOException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,4 +79,72 @@ class ServerConfigTest {
         // Tested in ScenarioConfigTest.
         assertFalse(Config.getServer().getScenarios().isEmpty());
     }
+
+    @Test
+    void getRdnsConfig() {
+        RdnsConfig rdns = Config.getServer().getRdnsConfig();
+        assertTrue(rdns.isEnabled());
+        assertEquals(500, rdns.getGreetingBudget());
+        assertEquals(10000, rdns.getCacheSize());
+        assertEquals(3600, rdns.getMaxTtl());
+        assertEquals(300, rdns.getNegativeTtl());
+    }
+
+    @Test
+    void getTranscriptConfig() {
+        TranscriptConfig transcript = Config.getServer().getTranscriptConfig();
+        assertFalse(transcript.isEnabled());
+        assertEquals("/var/log/robin-transcript.ndjson", transcript.getPath());
+        assertEquals(100, transcript.getSampleRate());
+        assertFalse(transcript.isFailedOnly());
+        assertEquals(16384, transcript.getBufferSize());
+        assertEquals(4096, transcript.getQueueSize());
+    }
+
+    @Test
+    void getPipelineConfig() {
+        PipelineConfig pipeline = Config.getServer().getPipelineConfig();
+        assertFalse(pipeline.isAsync());
+        assertEquals(4, pipeline.getThreads());
+        assertEquals(1024, pipeline.getQueueSize());
+        assertEquals("/tmp/robinPipeline.db", pipeline.getJournal());
+    }
+
+    @Test
+    void compiled() throws IOException {
+        ServerConfig config = new ServerConfig("src/test/resources/cfg/server.json5");
+
+        assertSame(config.getSmtpConfig(), config.getSmtpConfig());
+        assertSame(config.getRblConfig(), config.getRblConfig());
+        assertSame(config.getRdnsConfig(), config.getRdnsConfig());
+        assertSame(config.getTranscriptConfig(), config.getTranscriptConfig());
+        assertSame(config.getPipelineConfig(), config.getPipelineConfig());
+        assertSame(config.getStorage(), config.getStorage());
+        assertSame(config.getQueue(), config.getQueue());
+        assertSame(config.getRelay(), config.getRelay());
+        assertSame(config.getDovecot(), config.getDovecot());
+        assertSame(config.getWebhooks(), config.getWebhooks());
+        assertSame(config.getScenarios(), config.getScenarios());
+        assertSame(config.getUsers(), config.getUsers());
+
+        assertThrows(UnsupportedOperationException.class, () -> config.getScenarios().clear());
+        assertThrows(UnsupportedOperationException.class, () -> config.getWebhooks().clear());
+        assertThrows(UnsupportedOperationException.class, () -> config.getUsers().clear());
+    }
+
+    @Test
+    void getUserMissing() {
+        assertFalse(Config.getServer().getUser("thanos@example.com").isPresent());
+        assertFalse(Config.getServer().getUser(null).isPresent());
+    }
+
+    @Test
+    void getConfigFiles() throws IOException {
+        ServerConfig config = new ServerConfig("src/test/resources/cfg/server.json5");
+
+        assertEquals("src/test/resources/cfg/server.json5", config.getConfigFiles().get(0));
+        assertTrue(config.getConfigFiles().contains("src/test/resources/cfg" + File.separator + "scenarios.json5"));
+        assertTrue(new ServerConfig().getConfigFiles().isEmpty());
+        assertEquals(0, config.getConfigReloadInterval());
+    }
 }
@@ -0,0 +1,48 @@
+package com.mimecast.robin.config.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerConfigWatcherTest {
+
+    @Test
+    void reload(@TempDir Path dir) throws IOException {
+        Path server = Files.writeString(dir.resolve("server.json5"), "{ hostname: \"before.example.com\" }");
+        Files.writeString(dir.resolve("webhooks.json5"), "{ ehlo: { url: \"http://localhost:8000/ehlo\" } }");
+        ServerConfig config = new ServerConfig(server.toString());
+
+        Files.writeString(server, "{ hostname: \"after.example.com\" }");
+        ServerConfig reloaded = ServerConfigWatcher.reload(config);
+
+        assertNotSame(config, reloaded);
+        assertEquals("after.example.com", reloaded.getHostname());
+        assertTrue(reloaded.getWebhooks().containsKey("ehlo"));
+    }
+
+    @Test
+    void reloadBadSplitFile(@TempDir Path dir) throws IOException {
+        Path server = Files.writeString(dir.resolve("server.json5"), "{ hostname: \"before.example.com\" }");
+        ServerConfig config = new ServerConfig(server.toString());
+
+        // Server file is fine but a split file it loads later is not.
+        Files.writeString(server, "{ hostname: \"after.example.com\" }");
+        Files.writeString(dir.resolve("scenarios.json5"), "{ broken: [ }");
+
+        assertSame(config, ServerConfigWatcher.reload(config));
+        assertEquals("before.example.com", config.getHostname());
+    }
+
+    @Test
+    void preload() throws IOException {
+        ServerConfig config = new ServerConfig("src/test/resources/cfg/server.json5").preload();
+
+        assertFalse(config.getScenarios().isEmpty());
+        assertFalse(config.getUsers().isEmpty());
+    }
+}
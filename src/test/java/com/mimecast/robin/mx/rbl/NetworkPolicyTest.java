@@ -0,0 +1,49 @@
+package com.mimecast.robin.mx.rbl;
+
+import com.mimecast.robin.config.server.RblConfig;
+import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.util.CidrTrie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.naming.ConfigurationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Network Policy Test.
+ * <p>Tests trusted and denied network classification.
+ */
+class NetworkPolicyTest {
+
+    @BeforeAll
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+    }
+
+    @Test
+    void classify() {
+        assertEquals(NetworkPolicy.Verdict.TRUSTED, NetworkPolicy.classify("198.51.100.1"));
+        assertEquals(NetworkPolicy.Verdict.DENIED, NetworkPolicy.classify("198.51.100.200"));
+        assertEquals(NetworkPolicy.Verdict.TRUSTED, NetworkPolicy.classify("2001:db8:1:beef::1"));
+        assertEquals(NetworkPolicy.Verdict.DENIED, NetworkPolicy.classify("2001:db8:1:dead::1"));
+        assertEquals(NetworkPolicy.Verdict.NONE, NetworkPolicy.classify("127.0.0.1"));
+        assertEquals(NetworkPolicy.Verdict.NONE, NetworkPolicy.classify("invalid"));
+    }
+
+    @Test
+    void build() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("trustedNetworks", List.of("192.0.2.0/24", "not-a-network"));
+        map.put("deniedNetworks", List.of("192.0.2.0/24"));
+
+        CidrTrie<NetworkPolicy.Verdict> trie = NetworkPolicy.build(new RblConfig(map));
+
+        // Invalid skipped and denied wins for the same prefix.
+        assertEquals(1, trie.size());
+        assertEquals(NetworkPolicy.Verdict.DENIED, trie.get("192.0.2.1"));
+    }
+}
@@ -44,6 +44,12 @@ class RblCheckerTest {
         }});
 
         // Clean IP should return no records for all RBLs
+        for (String provider : List.of("test-rbl-1.example.com", "test-rbl-2.example.com", "test-rbl-3.example.com")) {
+            LocalDnsResolver.put("1.1.168.192." + provider, Type.A, List.of());
+        }
+
+        // Listed IP not in test-rbl-3.example.com
+        LocalDnsResolver.put("1.0.0.10.test-rbl-3.example.com", Type.A, List.of());
     }
 
     /**
@@ -0,0 +1,154 @@
+package com.mimecast.robin.mx.rbl;
+
+import com.mimecast.robin.config.server.RblConfig;
+import com.mimecast.robin.mx.util.LocalDnsResolver;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RBL Engine Test.
+ * <p>Tests caching, deduplication and concurrency cap of the shared RBL engine.
+ */
+class RblEngineTest {
+
+    @BeforeAll
+    static void before() {
+        LocalDnsResolver.put("2.0.0.10.engine-rbl.example.com", Type.A, List.of("127.0.0.2"));
+        LocalDnsResolver.put("3.0.0.10.engine-rbl.example.com", Type.A, List.of());
+    }
+
+    @Test
+    void cached() {
+        RblEngine engine = new RblEngine(new RblConfig(null), new LocalDnsResolver());
+
+        RblResult listed = engine.check("10.0.0.2", "engine-rbl.example.com").join();
+        assertTrue(listed.isListed());
+        assertEquals(List.of("127.0.0.2"), listed.getResponseRecords());
+
+        RblResult clean = engine.check("10.0.0.3", "engine-rbl.example.com").join();
+        assertFalse(clean.isListed());
+
+        // Both listed and not listed results come from cache.
+        assertTrue(engine.check("10.0.0.2", "engine-rbl.example.com").join().isListed());
+        assertFalse(engine.check("10.0.0.3", "engine-rbl.example.com").join().isListed());
+        assertEquals(2, engine.getMisses());
+        assertEquals(2, engine.getHits());
+        assertEquals(2, engine.size());
+    }
+
+    @Test
+    void deduplicated() {
+        PendingResolver resolver = new PendingResolver();
+        RblEngine engine = new RblEngine(new RblConfig(null), resolver);
+
+        CompletableFuture<RblResult> first = engine.check("10.0.0.4", "pending-rbl.example.com");
+        CompletableFuture<RblResult> second = engine.check("10.0.0.4", "pending-rbl.example.com");
+        assertEquals(1, resolver.queries.size());
+        assertFalse(first.isDone());
+
+        resolver.answer(0, Rcode.NOERROR, "127.0.0.4");
+        assertTrue(first.join().isListed());
+        assertTrue(second.join().isListed());
+    }
+
+    @Test
+    void concurrencyCapped() {
+        PendingResolver resolver = new PendingResolver();
+        Map<String, Object> map = new HashMap<>();
+        map.put("maxConcurrentQueries", 1);
+        RblEngine engine = new RblEngine(new RblConfig(map), resolver);
+
+        CompletableFuture<RblResult> first = engine.check("10.0.0.5", "pending-rbl.example.com");
+        CompletableFuture<RblResult> second = engine.check("10.0.0.6", "pending-rbl.example.com");
+        assertEquals(1, resolver.queries.size());
+
+        resolver.answer(0, Rcode.NXDOMAIN, null);
+        assertFalse(first.join().isListed());
+        assertEquals(2, resolver.queries.size());
+
+        resolver.answer(1, Rcode.NOERROR, "127.0.0.2");
+        assertTrue(second.join().isListed());
+    }
+
+    @Test
+    void serverFailureNotCached() {
+        PendingResolver resolver = new PendingResolver();
+        RblEngine engine = new RblEngine(new RblConfig(null), resolver);
+
+        CompletableFuture<RblResult> first = engine.check("10.0.0.7", "pending-rbl.example.com");
+        resolver.answer(0, Rcode.SERVFAIL, null);
+        assertFalse(first.join().isListed());
+        assertEquals(0, engine.size());
+
+        CompletableFuture<RblResult> second = engine.check("10.0.0.7", "pending-rbl.example.com");
+        assertEquals(2, resolver.queries.size());
+        resolver.answer(1, Rcode.NOERROR, "127.0.0.2");
+        assertTrue(second.join().isListed());
+    }
+
+    @Test
+    void timeout() {
+        RblEngine engine = new RblEngine(new RblConfig(null), new PendingResolver());
+
+        List<RblResult> results = engine.check("10.0.0.8", List.of("pending-rbl.example.com"), 1).join();
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).isListed());
+    }
+
+    @Test
+    void invalidIp() {
+        PendingResolver resolver = new PendingResolver();
+        RblEngine engine = new RblEngine(new RblConfig(null), resolver);
+
+        assertFalse(engine.check("999.0.0.1", "pending-rbl.example.com").join().isListed());
+        assertTrue(resolver.queries.isEmpty());
+    }
+
+    /**
+     * Resolver answering queries on demand.
+     */
+    private static class PendingResolver extends LocalDnsResolver {
+        private final List<Message> queries = new ArrayList<>();
+        private final List<CompletableFuture<Message>> futures = new ArrayList<>();
+
+        @Override
+        public synchronized CompletionStage<Message> sendAsync(Message query) {
+            CompletableFuture<Message> future = new CompletableFuture<>();
+            queries.add(query);
+            futures.add(future);
+            return future;
+        }
+
+        @Override
+        public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+            return sendAsync(query);
+        }
+
+        private void answer(int index, int rcode, String address) {
+            Message query = queries.get(index);
+            Message response = new Message(query.getHeader().getID());
+            response.getHeader().setRcode(rcode);
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            if (address != null) {
+                try {
+                    response.addRecord(new ARecord(query.getQuestion().getName(), DClass.IN, 60L, InetAddress.getByName(address)), Section.ANSWER);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            futures.get(index).complete(response);
+        }
+    }
+}
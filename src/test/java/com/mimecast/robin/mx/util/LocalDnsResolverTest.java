@@ -3,11 +3,12 @@ package com.mimecast.robin.mx.util;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
-import org.xbill.DNS.Lookup;
-import org.xbill.DNS.TextParseException;
-import org.xbill.DNS.Type;
+import org.xbill.DNS.*;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -97,6 +98,34 @@ class LocalDnsResolverTest {
         assertNull(lookup("mimecast.eu", Type.MX));
     }
 
+    @Test
+    void delegated() throws Exception {
+        List<Message> queries = new ArrayList<>();
+        LocalDnsResolver resolver = new LocalDnsResolver(new LocalDnsResolver() {
+            @Override
+            public CompletionStage<Message> sendAsync(Message query) {
+                queries.add(query);
+                return CompletableFuture.completedFuture(query);
+            }
+        });
+        LocalDnsResolver.put("mimecast.io", Type.A, List.of());
+
+        // Local entries are answered locally, empty ones too.
+        Message answer = resolver.sendAsync(query("service-alpha-inbound-a.mimecast.com.", Type.A)).toCompletableFuture().get();
+        assertEquals("91.220.42.231", answer.getSection(Section.ANSWER).get(0).rdataToString());
+        assertTrue(resolver.sendAsync(query("mimecast.io.", Type.A)).toCompletableFuture().get().getSection(Section.ANSWER).isEmpty());
+        assertTrue(queries.isEmpty());
+
+        // Others go to the wrapped resolver.
+        Message query = query("mimecast.org.", Type.A);
+        assertSame(query, resolver.sendAsync(query).toCompletableFuture().get());
+        assertEquals(List.of(query), queries);
+    }
+
+    Message query(String uri, int type) throws TextParseException {
+        return Message.newQuery(org.xbill.DNS.Record.newRecord(Name.fromString(uri), type, DClass.IN));
+    }
+
     org.xbill.DNS.Record[] lookup(String uri, int type) throws TextParseException {
         Lookup lookup = new Lookup(uri, type);
         return lookup.run();
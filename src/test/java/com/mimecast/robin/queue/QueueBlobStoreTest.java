@@ -0,0 +1,86 @@
+package com.mimecast.robin.queue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueueBlobStoreTest {
+
+    @Test
+    void shared(@TempDir Path dir) throws IOException {
+        Path queue = dir.resolve("queue");
+        Path src = Files.writeString(dir.resolve("20261017.uid.eml"), "Subject: shared\r\n\r\nBody\r\n");
+        String hash = QueueBlobStore.hash(src);
+        Path blob = queue.resolve("blobs").resolve(hash + ".eml");
+
+        Path first = QueueBlobStore.acquire(queue, src, "uid.0.eml");
+        Path second = QueueBlobStore.acquire(queue, src, "uid.0.eml");
+
+        assertNotEquals(first, second);
+        assertTrue(first.getFileName().toString().startsWith(QueueBlobStore.PREFIX + hash + "-"));
+        assertEquals(Files.readString(src), Files.readString(first));
+        assertEquals(Files.readString(src), Files.readString(second));
+
+        // One stored copy linked from both references.
+        assertTrue(Files.isSameFile(first, blob));
+        assertTrue(Files.isSameFile(second, blob));
+        assertEquals(3, QueueBlobStore.getLinks(blob));
+
+        // Source is untouched.
+        Files.delete(src);
+
+        QueueBlobStore.release(first);
+        assertFalse(Files.exists(first));
+        assertTrue(Files.exists(blob));
+
+        QueueBlobStore.release(second);
+        assertFalse(Files.exists(second));
+        assertFalse(Files.exists(blob));
+    }
+
+    @Test
+    void distinct(@TempDir Path dir) throws IOException {
+        Path queue = dir.resolve("queue");
+        Path one = QueueBlobStore.acquire(queue, Files.writeString(dir.resolve("one.eml"), "Subject: one\r\n"), "one.eml");
+        Path two = QueueBlobStore.acquire(queue, Files.writeString(dir.resolve("two.eml"), "Subject: two\r\n"), "two.eml");
+
+        assertFalse(Files.isSameFile(one, two));
+        try (var blobs = Files.list(queue.resolve("blobs"))) {
+            assertEquals(2, blobs.count());
+        }
+    }
+
+    @Test
+    void legacy(@TempDir Path dir) throws IOException {
+        // Copies made before the blob store are just deleted.
+        Path copy = Files.writeString(dir.resolve("qeml-20261017.uid.eml"), "Subject: legacy\r\n");
+
+        QueueBlobStore.release(copy);
+        assertFalse(Files.exists(copy));
+        assertDoesNotThrow(() -> QueueBlobStore.release(copy));
+    }
+
+    @Test
+    void sweep(@TempDir Path dir) throws IOException {
+        Path queue = dir.resolve("queue");
+        Path kept = QueueBlobStore.acquire(queue, Files.writeString(dir.resolve("kept.eml"), "Subject: kept\r\n"), "kept.eml");
+        Path lost = QueueBlobStore.acquire(queue, Files.writeString(dir.resolve("lost.eml"), "Subject: lost\r\n"), "lost.eml");
+        Path blobs = queue.resolve("blobs");
+
+        // Crashed before linking or mid store.
+        Files.delete(lost);
+        Files.writeString(blobs.resolve("blob-1.tmp"), "Subject: partial\r\n");
+
+        assertEquals(2, QueueBlobStore.sweep(queue));
+        try (var files = Files.list(blobs)) {
+            assertTrue(Files.isSameFile(kept, files.findFirst().orElseThrow()));
+        }
+        assertEquals(0, QueueBlobStore.sweep(queue));
+        assertEquals(0, QueueBlobStore.sweep(dir.resolve("missing")));
+    }
+}
@@ -0,0 +1,62 @@
+package com.mimecast.robin.queue.relay;
+
+import com.mimecast.robin.config.BasicConfig;
+import com.mimecast.robin.mime.headers.MimeHeader;
+import com.mimecast.robin.queue.QueueFiles;
+import com.mimecast.robin.queue.RelaySession;
+import com.mimecast.robin.smtp.MessageEnvelope;
+import com.mimecast.robin.smtp.connection.ConnectionMock;
+import com.mimecast.robin.smtp.session.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayMessageTest {
+
+    @Test
+    void headerAndInbound(@TempDir Path dir) throws IOException {
+        String content = "Subject: " + UUID.randomUUID() + "\r\n\r\nBody\r\n";
+        ConnectionMock connection = new ConnectionMock();
+        connection.getSession().addEnvelope(new MessageEnvelope()
+                .setMail("tony@example.com")
+                .addRcpt("pepper@example.com"));
+        connection.getSession().getEnvelopes().getLast().setFile(Files.writeString(dir.resolve("relay.eml"), content).toString());
+
+        RelayMessage relayMessage = new RelayMessage(connection);
+        MessageEnvelope envelope = connection.getSession().getEnvelopes().getLast();
+        Session header = relayMessage.getRelaySession(new MimeHeader("X-Robin-Relay", "localhost:25"), envelope);
+        Session inbound = relayMessage.getRelaySession(new BasicConfig(Map.of(
+                "host", "localhost",
+                "port", 24L,
+                "tls", false,
+                "protocol", "lmtp")), envelope);
+
+        // Each session holds an envelope of its own.
+        MessageEnvelope headerEnvelope = header.getEnvelopes().getLast();
+        MessageEnvelope inboundEnvelope = inbound.getEnvelopes().getLast();
+        assertNotSame(headerEnvelope, inboundEnvelope);
+
+        QueueFiles.persistEnvelopeFiles(new RelaySession(header));
+        QueueFiles.persistEnvelopeFiles(new RelaySession(inbound));
+        Path headerFile = Paths.get(headerEnvelope.getFile());
+        Path inboundFile = Paths.get(inboundEnvelope.getFile());
+        assertNotEquals(headerFile, inboundFile);
+        assertTrue(Files.isSameFile(headerFile, inboundFile));
+
+        // Delivering one leaves the other's content in place.
+        QueueFiles.releaseEnvelopeFile(headerEnvelope);
+        assertFalse(Files.exists(headerFile));
+        assertEquals(content, Files.readString(inboundFile));
+
+        QueueFiles.releaseEnvelopeFile(inboundEnvelope);
+        assertFalse(Files.exists(inboundFile));
+    }
+}
@@ -0,0 +1,62 @@
+package com.mimecast.robin.smtp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    @Test
+    void admitQueueReject() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(1, 1, 50);
+
+        assertEquals(AdmissionController.Decision.ADMITTED, admission.tryAdmit());
+        assertEquals(0, admission.getAvailableSlots());
+
+        assertEquals(AdmissionController.Decision.QUEUED, admission.tryAdmit());
+        assertEquals(1, admission.getWaiting());
+
+        assertEquals(AdmissionController.Decision.REJECTED, admission.tryAdmit());
+        assertEquals(1, admission.getWaiting());
+
+        // No slot is freed so the queued connection is shed.
+        assertFalse(admission.await());
+        assertEquals(0, admission.getWaiting());
+
+        assertEquals(1, admission.getQueuedCount());
+        assertEquals(1, admission.getRejectedCount());
+        assertEquals(1, admission.getShedCount());
+    }
+
+    @Test
+    void queuedAdmittedOnRelease() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(1, 5, 5000);
+
+        assertEquals(AdmissionController.Decision.ADMITTED, admission.tryAdmit());
+        assertEquals(AdmissionController.Decision.QUEUED, admission.tryAdmit());
+
+        admission.release();
+
+        // New arrivals do not overtake a waiting connection.
+        assertEquals(AdmissionController.Decision.QUEUED, admission.tryAdmit());
+
+        assertTrue(admission.await());
+        assertEquals(1, admission.getWaiting());
+        assertFalse(admission.await());
+
+        assertEquals(2, admission.getQueuedCount());
+        assertEquals(0, admission.getRejectedCount());
+        assertEquals(1, admission.getShedCount());
+    }
+
+    @Test
+    void noQueue() {
+        AdmissionController admission = new AdmissionController(1, 0, 0);
+
+        assertEquals(AdmissionController.Decision.ADMITTED, admission.tryAdmit());
+        assertEquals(AdmissionController.Decision.REJECTED, admission.tryAdmit());
+
+        admission.release();
+        assertEquals(AdmissionController.Decision.ADMITTED, admission.tryAdmit());
+    }
+}
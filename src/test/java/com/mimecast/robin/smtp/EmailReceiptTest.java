@@ -1,12 +1,16 @@
 package com.mimecast.robin.smtp;
 
 import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.mx.util.LocalDnsResolver;
 import com.mimecast.robin.smtp.connection.ConnectionMock;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Type;
 
 import javax.naming.ConfigurationException;
 import java.io.IOException;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -16,6 +20,13 @@ class EmailReceiptTest {
     @BeforeAll
     static void before() throws ConfigurationException {
         Foundation.init("src/test/resources/cfg/");
+
+        // Not listed on the configured RBL providers.
+        for (String provider : List.of("zen.spamhaus.org", "bl.spamcop.net", "dnsbl.sorbs.net")) {
+            LocalDnsResolver.put("1.0.0.127." + provider, Type.A, List.of());
+        }
+        LocalDnsResolver.put("3.2.0.192.bl.spamcop.net", Type.A, List.of());
+        LocalDnsResolver.put("3.2.0.192.dnsbl.sorbs.net", Type.A, List.of());
     }
 
     private ConnectionMock getConnection(StringBuilder stringBuilder) {
@@ -134,4 +145,42 @@ class EmailReceiptTest {
         assertTrue(connection.getLine(11).startsWith("554 5.5.1 No valid recipients"), "startsWith(\"554 5.5.1 No valid recipients\")");
         assertEquals("221 2.0.0 Closing connection\r\n", connection.getLine(12));
     }
+
+    @Test
+    void rejectListed() throws IOException {
+        Lookup.setDefaultResolver(new LocalDnsResolver());
+        LocalDnsResolver.put("3.2.0.192.zen.spamhaus.org", Type.A, List.of("127.0.0.2"));
+
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("EHLO example.com\r\n");
+        stringBuilder.append("QUIT\r\n");
+
+        ConnectionMock connection = getConnection(stringBuilder);
+        connection.getSession().setFriendAddr("192.0.2.3");
+
+        // RBL check starts on construction and is awaited at the greeting.
+        EmailReceipt receipt = new EmailReceipt(connection, false, false);
+        receipt.run();
+
+        connection.parseLines();
+        assertEquals("550 5.7.1 Service unavailable; client IP blocked by RBL [zen.spamhaus.org]\r\n", connection.getLine(1));
+        assertTrue(connection.getSession().isFriendInRbl());
+        assertEquals("zen.spamhaus.org", connection.getSession().getFriendRbl());
+    }
+
+    @Test
+    void rejectDenied() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("EHLO example.com\r\n");
+        stringBuilder.append("QUIT\r\n");
+
+        ConnectionMock connection = getConnection(stringBuilder);
+        connection.getSession().setFriendAddr("198.51.100.129");
+
+        new EmailReceipt(connection, false, false).run();
+
+        connection.parseLines();
+        assertEquals("550 5.7.1 Service unavailable; client IP blocked by RBL [deniedNetworks]\r\n", connection.getLine(1));
+        assertTrue(connection.getSession().isFriendInRbl());
+    }
 }
@@ -0,0 +1,202 @@
+package com.mimecast.robin.smtp;
+
+import com.mimecast.robin.config.server.ListenerConfig;
+import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.mx.util.LocalDnsResolver;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Lookup;
+
+import javax.naming.ConfigurationException;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmtpListenerTest {
+
+    @BeforeAll
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+
+        // Avoid DNS lookups.
+        Lookup.setDefaultResolver(new LocalDnsResolver());
+    }
+
+    @Test
+    void platformStats() throws IOException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("minimumPoolSize", 2D);
+        map.put("maximumPoolSize", 20D);
+
+        SmtpListener listener = new SmtpListener(0, "localhost", new ListenerConfig(map), false, false);
+        assertEquals("platform", listener.getExecutionMode());
+        assertEquals(2, listener.getCorePoolSize());
+        assertEquals(20, listener.getMaximumPoolSize());
+        assertEquals(0, listener.getActiveThreads());
+        assertEquals(20, listener.getAvailablePermits());
+        assertEquals(60, listener.getKeepAliveSeconds());
+        listener.serverShutdown();
+    }
+
+    @Test
+    void virtualStats() throws IOException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("executionMode", "virtual");
+        map.put("maxConnections", 50000D);
+
+        SmtpListener listener = new SmtpListener(0, "localhost", new ListenerConfig(map), false, false);
+        assertEquals("virtual", listener.getExecutionMode());
+        assertEquals(0, listener.getCorePoolSize());
+        assertEquals(50000, listener.getMaximumPoolSize());
+        assertEquals(0, listener.getActiveThreads());
+        assertEquals(0, listener.getPoolSize());
+        assertEquals(50000, listener.getAvailablePermits());
+        assertEquals(0, listener.getQueueSize());
+        assertEquals(0, listener.getTaskCount());
+        assertEquals(0, listener.getKeepAliveSeconds());
+        listener.serverShutdown();
+    }
+
+    @Test
+    void virtualSession() throws IOException, InterruptedException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("executionMode", "virtual");
+
+        session(new SmtpListener(0, "localhost", new ListenerConfig(map), false, false));
+    }
+
+    @Test
+    void nioSession() throws IOException, InterruptedException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("executionMode", "nio");
+        map.put("eventLoopThreads", 2D);
+
+        session(new SmtpListener(0, "localhost", new ListenerConfig(map), false, false));
+    }
+
+    @Test
+    void platformAdmission() throws IOException, InterruptedException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("minimumPoolSize", 1D);
+        map.put("maximumPoolSize", 1D);
+        map.put("queueSize", 1D);
+        map.put("maxQueueTime", 1D);
+
+        admission(new SmtpListener(0, "localhost", new ListenerConfig(map), false, false));
+    }
+
+    @Test
+    void nioAdmission() throws IOException, InterruptedException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("executionMode", "nio");
+        map.put("eventLoopThreads", 1D);
+        map.put("maxConnections", 1D);
+        map.put("queueSize", 1D);
+        map.put("maxQueueTime", 1D);
+
+        admission(new SmtpListener(0, "localhost", new ListenerConfig(map), false, false));
+    }
+
+    /**
+     * Fills a single worker listener and checks overflow connections are queued, rejected and shed.
+     */
+    private void admission(SmtpListener listener) throws IOException, InterruptedException {
+        Thread thread = new Thread(listener::listen);
+        thread.start();
+
+        try {
+            while (listener.getListener() == null || !listener.getListener().isBound()) {
+                Thread.sleep(10);
+            }
+            int port = listener.getListener().getLocalPort();
+
+            try (Socket served = new Socket("localhost", port);
+                 Socket queued = new Socket("localhost", port)) {
+                served.setSoTimeout(10000);
+                queued.setSoTimeout(10000);
+                BufferedReader servedReader = new BufferedReader(new InputStreamReader(served.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(servedReader.readLine().startsWith("220 "));
+
+                long deadline = System.currentTimeMillis() + 5000;
+                while (listener.getQueueSize() < 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, listener.getQueueSize());
+
+                // Queue is full so the next connection is turned away straight away.
+                try (Socket rejected = new Socket("localhost", port)) {
+                    rejected.setSoTimeout(10000);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(rejected.getInputStream(), StandardCharsets.UTF_8));
+                    assertEquals(SmtpResponses.BUSY_421, reader.readLine());
+                    assertNull(reader.readLine());
+                }
+
+                // The worker stays busy so the queued connection is shed after the maximum queue time.
+                BufferedReader queuedReader = new BufferedReader(new InputStreamReader(queued.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals(SmtpResponses.BUSY_421, queuedReader.readLine());
+                assertNull(queuedReader.readLine());
+
+                assertEquals(0, listener.getQueueSize());
+                assertEquals(1, listener.getQueuedCount());
+                assertEquals(1, listener.getRejectedCount());
+                assertEquals(1, listener.getShedCount());
+            }
+        } finally {
+            listener.serverShutdown();
+            thread.join(5000);
+        }
+    }
+
+    /**
+     * Runs a pipelined session.
+     * <p>A nio listener hands the unrecognized command and DATA off to a worker and back.
+     */
+    private void session(SmtpListener listener) throws IOException, InterruptedException {
+        Thread thread = new Thread(listener::listen);
+        thread.start();
+
+        try {
+            while (listener.getListener() == null || !listener.getListener().isBound()) {
+                Thread.sleep(10);
+            }
+
+            try (Socket socket = new Socket("localhost", listener.getListener().getLocalPort())) {
+                socket.setSoTimeout(10000);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = socket.getOutputStream();
+
+                assertTrue(reader.readLine().startsWith("220 "));
+
+                out.write("HELO example.com\r\nMAIL FROM:<tony@example.com>\r\nNOOP\r\nRCPT TO:<pepper@example.com>\r\nDATA\r\n".getBytes(StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("250 Welcome"));
+                assertTrue(reader.readLine().startsWith("250 2.1.0 Sender OK"));
+                assertTrue(reader.readLine().startsWith("500 "));
+                assertTrue(reader.readLine().startsWith("250 2.1.5 Recipient OK"));
+                assertTrue(reader.readLine().startsWith("354 "));
+
+                out.write("Subject: Lost in space\r\n\r\nRescue me!\r\n.\r\nRSET\r\n".getBytes(StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("250 2.0.0 Received OK"));
+                assertTrue(reader.readLine().startsWith("250 "));
+                assertEquals(1, listener.getActiveThreads());
+
+                out.write("QUIT\r\n".getBytes(StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("221 "));
+                assertNull(reader.readLine());
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (listener.getCompletedTaskCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, listener.getCompletedTaskCount());
+            assertEquals(0, listener.getActiveThreads());
+        } finally {
+            listener.serverShutdown();
+            thread.join(5000);
+        }
+    }
+}
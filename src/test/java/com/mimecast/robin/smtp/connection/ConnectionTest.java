@@ -2,13 +2,25 @@ package com.mimecast.robin.smtp.connection;
 
 import com.mimecast.robin.config.server.ScenarioConfig;
 import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.smtp.io.LineInputStream;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import javax.naming.ConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ConnectionTest {
@@ -44,4 +56,110 @@ class ConnectionTest {
         assertTrue(connection.getScenario().isPresent());
         assertEquals("501 Not talking to you", connection.getScenario().get().getEhlo());
     }
+
+    @Test
+    void readBytes() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("BDAT 12 LAST\r\n");
+        stringBuilder.append("Rescue me!\r\n");
+        stringBuilder.append("QUIT\r\n");
+
+        ConnectionMock connection = getConnection(stringBuilder);
+        assertEquals("BDAT 12 LAST\r\n", new String(connection.getInputStream().readLine()));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        connection.readBytes(12, outputStream);
+        assertEquals("Rescue me!\r\n", outputStream.toString());
+        assertEquals("QUIT\r\n", new String(connection.getInputStream().readLine()));
+
+        assertThrows(EOFException.class, () -> connection.readBytes(12, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void dotStuffing() throws IOException {
+        String body = "Subject: Dots\r\n\r\n.foo\r\n..\r\n.\r\nbar.\r\n";
+
+        ConnectionMock client = getConnection(new StringBuilder());
+        client.stream(new LineInputStream(new ByteArrayInputStream(body.getBytes())));
+        client.write(".");
+        assertEquals("Subject: Dots\r\n\r\n..foo\r\n...\r\n..\r\nbar.\r\n\r\n.\r\n", client.getOutput());
+
+        // Server removes the stuffing again.
+        ConnectionMock server = getConnection(new StringBuilder(client.getOutput() + "QUIT\r\n"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        server.readMultiline(outputStream);
+        assertEquals(body, outputStream.toString());
+        assertEquals("QUIT\r\n", new String(server.getInputStream().readLine()));
+    }
+
+    @Test
+    void pipelining() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("RCPT TO:<tony@example.com>\r\n");
+        stringBuilder.append("RCPT TO:<pepper@example.com>\r\n");
+
+        ConnectionMock connection = getConnection(stringBuilder);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        connection.out = new DataOutputStream(new BufferedOutputStream(output));
+        connection.setPipelining(true);
+
+        assertEquals("RCPT TO:<tony@example.com>", connection.read().trim());
+        connection.write("250 2.1.5 Sender OK");
+        assertEquals(0, output.size());
+
+        assertEquals("RCPT TO:<pepper@example.com>", connection.read().trim());
+        connection.write("250 2.1.5 Sender OK");
+        assertEquals(0, output.size());
+
+        // Input drained so replies are flushed before blocking.
+        assertEquals("", connection.read());
+        assertEquals("250 2.1.5 Sender OK\r\n250 2.1.5 Sender OK\r\n", output.toString());
+    }
+
+    @Test
+    void rdns() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+
+            Connection connection = new Connection(accepted);
+            connection.awaitRdns();
+
+            assertEquals(accepted.getInetAddress().getHostAddress(), connection.getSession().getFriendAddr());
+            assertEquals("localhost", connection.getSession().getFriendRdns());
+            assertEquals("localhost", connection.getSession().getAddr());
+        }
+    }
+
+    @Test
+    void rdnsLate() throws IOException {
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+
+            Connection connection = new Connection(accepted) {
+                @Override
+                protected CompletableFuture<String> lookupRdns(InetAddress address) {
+                    return lookup;
+                }
+            };
+
+            // Still pending after the greeting budget.
+            connection.awaitRdns();
+            String addr = accepted.getInetAddress().getHostAddress();
+            assertEquals(addr, connection.getSession().getFriendRdns());
+
+            // Applied on a later command once complete.
+            lookup.complete("mx.example.com");
+            connection.applyRdns();
+            assertEquals("mx.example.com", connection.getSession().getFriendRdns());
+            assertEquals("mx.example.com", connection.getSession().getAddr());
+
+            // Applied once only.
+            connection.getSession().setFriendRdns(addr);
+            connection.applyRdns();
+            assertEquals(addr, connection.getSession().getFriendRdns());
+        }
+    }
 }
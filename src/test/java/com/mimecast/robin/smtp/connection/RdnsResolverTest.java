@@ -0,0 +1,103 @@
+package com.mimecast.robin.smtp.connection;
+
+import com.mimecast.robin.config.server.RdnsConfig;
+import com.mimecast.robin.mx.util.LocalDnsResolver;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Type;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RdnsResolverTest {
+
+    @BeforeAll
+    static void before() {
+        Lookup.setDefaultResolver(new LocalDnsResolver());
+
+        LocalDnsResolver.put("4.113.0.203.in-addr.arpa", Type.PTR, List.of("mail.example.com."));
+        LocalDnsResolver.put("5.113.0.203.in-addr.arpa", Type.PTR, List.of("mx.example.com."));
+        LocalDnsResolver.put("6.113.0.203.in-addr.arpa", Type.PTR, List.of("spoof.example.com."));
+        LocalDnsResolver.put("9.113.0.203.in-addr.arpa", Type.PTR, List.of());
+
+        LocalDnsResolver.put("mail.example.com", Type.A, List.of("203.0.113.4"));
+        LocalDnsResolver.put("mx.example.com", Type.A, List.of("203.0.113.5"));
+        LocalDnsResolver.put("spoof.example.com", Type.A, List.of("198.51.100.6"));
+    }
+
+    private RdnsResolver getResolver(long cacheSize, long maxTtl) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("cacheSize", cacheSize);
+        map.put("maxTtl", maxTtl);
+        return new RdnsResolver(new RdnsConfig(map));
+    }
+
+    @Test
+    void lookup() throws Exception {
+        RdnsResolver resolver = getResolver(10, 3600);
+
+        CompletableFuture<String> future = resolver.lookup(InetAddress.getByName("203.0.113.4"));
+        assertEquals("mail.example.com", future.get());
+
+        // Cached.
+        assertSame(future, resolver.lookup(InetAddress.getByName("203.0.113.4")));
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    void negative() throws Exception {
+        RdnsResolver resolver = getResolver(10, 3600);
+
+        CompletableFuture<String> future = resolver.lookup(InetAddress.getByName("203.0.113.9"));
+        assertNull(future.get());
+
+        // Negative cached.
+        assertSame(future, resolver.lookup(InetAddress.getByName("203.0.113.9")));
+    }
+
+    @Test
+    void unconfirmed() throws Exception {
+        RdnsResolver resolver = getResolver(10, 3600);
+
+        // PTR name does not resolve back to the address.
+        CompletableFuture<String> future = resolver.lookup(InetAddress.getByName("203.0.113.6"));
+        assertNull(future.get());
+
+        // Negative cached.
+        assertSame(future, resolver.lookup(InetAddress.getByName("203.0.113.6")));
+    }
+
+    @Test
+    void ttlCapped() throws Exception {
+        RdnsResolver resolver = getResolver(10, 0);
+
+        CompletableFuture<String> future = resolver.lookup(InetAddress.getByName("203.0.113.4"));
+        assertEquals("mail.example.com", future.get());
+
+        // Expired straight away so looked up again.
+        assertNotSame(future, resolver.lookup(InetAddress.getByName("203.0.113.4")));
+    }
+
+    @Test
+    void bounded() throws Exception {
+        RdnsResolver resolver = getResolver(1, 3600);
+
+        assertEquals("mail.example.com", resolver.lookup(InetAddress.getByName("203.0.113.4")).get());
+        assertEquals("mx.example.com", resolver.lookup(InetAddress.getByName("203.0.113.5")).get());
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    void loopback() throws Exception {
+        RdnsResolver resolver = getResolver(10, 3600);
+
+        assertEquals("localhost", resolver.lookup(InetAddress.getByName("127.0.0.1")).get());
+        assertEquals(0, resolver.size());
+    }
+}
@@ -0,0 +1,152 @@
+package com.mimecast.robin.smtp.connection;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.mimecast.robin.config.server.TranscriptConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranscriptTest {
+
+    private static JsonObject toJson(Transcript transcript) throws IOException {
+        StringWriter writer = new StringWriter();
+        transcript.writeTo(new JsonWriter(writer));
+        return JsonParser.parseString(writer.toString()).getAsJsonObject();
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void record() throws IOException {
+        Transcript transcript = new Transcript(new byte[4096]).setSession("uid-1", "192.0.2.1");
+        transcript.record(Transcript.OUT, bytes("220 example.com ESMTP\r\n"));
+        transcript.record(Transcript.IN, bytes("EHLO client.example.com\r\n"));
+        transcript.record(Transcript.OUT, bytes("250-example.com\r\n250-PIPELINING\r\n250 SMTPUTF8\r\n"));
+
+        assertEquals(5, transcript.getLines());
+        assertFalse(transcript.isFailed());
+
+        JsonObject json = toJson(transcript);
+        assertEquals("uid-1", json.get("uid").getAsString());
+        assertEquals("192.0.2.1", json.get("addr").getAsString());
+        assertFalse(json.get("failed").getAsBoolean());
+
+        JsonArray lines = json.getAsJsonArray("lines");
+        assertEquals(5, lines.size());
+        assertEquals(">", lines.get(0).getAsJsonArray().get(1).getAsString());
+        assertEquals("220 example.com ESMTP", lines.get(0).getAsJsonArray().get(2).getAsString());
+        assertEquals("<", lines.get(1).getAsJsonArray().get(1).getAsString());
+        assertEquals("EHLO client.example.com", lines.get(1).getAsJsonArray().get(2).getAsString());
+        assertEquals("250 SMTPUTF8", lines.get(4).getAsJsonArray().get(2).getAsString());
+    }
+
+    @Test
+    void failed() {
+        Transcript transcript = new Transcript(new byte[4096]);
+        transcript.record(Transcript.IN, bytes("550 looks like a reply but is a command\r\n"));
+        transcript.record(Transcript.OUT, bytes("4567\r\n"));
+        assertFalse(transcript.isFailed());
+
+        transcript.record(Transcript.OUT, bytes("550 5.1.1 Unknown user\r\n"));
+        assertTrue(transcript.isFailed());
+
+        transcript = new Transcript(new byte[4096]);
+        transcript.setFailed();
+        assertTrue(transcript.isFailed());
+    }
+
+    @Test
+    void wrap() throws IOException {
+        Transcript transcript = new Transcript(new byte[1024]);
+        for (int i = 0; i < 100; i++) {
+            transcript.record(Transcript.IN, bytes("RCPT TO:<user" + i + "@example.com>\r\n"));
+        }
+
+        assertTrue(transcript.getDropped() > 0);
+        assertEquals(100, transcript.getLines() + transcript.getDropped());
+
+        // Newest lines are kept in order.
+        JsonArray lines = toJson(transcript).getAsJsonArray("lines");
+        assertEquals(transcript.getLines(), lines.size());
+        assertEquals("RCPT TO:<user99@example.com>", lines.get(lines.size() - 1).getAsJsonArray().get(2).getAsString());
+        assertEquals("RCPT TO:<user" + (100 - lines.size()) + "@example.com>", lines.get(0).getAsJsonArray().get(2).getAsString());
+    }
+
+    @Test
+    void truncate() throws IOException {
+        Transcript transcript = new Transcript(new byte[1024]);
+        transcript.record(Transcript.IN, bytes("X".repeat(5000)));
+
+        JsonArray lines = toJson(transcript).getAsJsonArray("lines");
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).getAsJsonArray().get(2).getAsString().length() < 1024);
+    }
+
+    private static TranscriptSink getSink(Path path) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("path", path.toString());
+        map.put("bufferSize", 2048L);
+        return new TranscriptSink(new TranscriptConfig(map));
+    }
+
+    @Test
+    void sink(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("transcript.ndjson");
+        TranscriptSink sink = getSink(path);
+
+        Transcript ok = sink.newTranscript().setSession("ok", "192.0.2.1");
+        ok.record(Transcript.OUT, bytes("221 Bye\r\n"));
+        sink.submit(ok, false);
+
+        Transcript failed = sink.newTranscript().setSession("failed", "192.0.2.2");
+        failed.record(Transcript.OUT, bytes("554 Rejected\r\n"));
+        sink.submit(failed, false);
+
+        assertTrue(sink.await(5000));
+        assertEquals(2, sink.getWritten());
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(2, lines.size());
+        assertEquals("ok", JsonParser.parseString(lines.get(0)).getAsJsonObject().get("uid").getAsString());
+        assertTrue(JsonParser.parseString(lines.get(1)).getAsJsonObject().get("failed").getAsBoolean());
+    }
+
+    @Test
+    void sinkFailedOnly(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("transcript.ndjson");
+        TranscriptSink sink = getSink(path);
+
+        Transcript ok = sink.newTranscript().setSession("ok", "192.0.2.1");
+        ok.record(Transcript.OUT, bytes("250 OK\r\n"));
+        sink.submit(ok, true);
+
+        Transcript failed = sink.newTranscript().setSession("failed", "192.0.2.2");
+        failed.record(Transcript.OUT, bytes("451 Try again\r\n"));
+        sink.submit(failed, true);
+
+        assertTrue(sink.await(5000));
+        assertEquals(1, sink.getWritten());
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(1, lines.size());
+        assertEquals("failed", JsonParser.parseString(lines.get(0)).getAsJsonObject().get("uid").getAsString());
+
+        // Buffers are reused.
+        assertSame(ok.getBuffer(), sink.newTranscript().getBuffer());
+    }
+}
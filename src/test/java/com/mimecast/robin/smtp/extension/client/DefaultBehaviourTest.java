@@ -3,14 +3,18 @@ package com.mimecast.robin.smtp.extension.client;
 import com.mimecast.robin.main.Foundation;
 import com.mimecast.robin.smtp.MessageEnvelope;
 import com.mimecast.robin.smtp.connection.ConnectionMock;
+import com.mimecast.robin.smtp.transaction.EnvelopeTransactionList;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import javax.naming.ConfigurationException;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DefaultBehaviourTest {
 
@@ -61,4 +65,85 @@ class DefaultBehaviourTest {
         assertEquals(".\r\n", connection.getLine(16));
         assertEquals("QUIT\r\n", connection.getLine(17));
     }
+
+    @Test
+    void processPipelining() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("250-smtp.example.com at your service, [127.0.0.1]\r\n" +
+                "250-PIPELINING\r\n" +
+                "250 HELP\r\n");
+        stringBuilder.append("250 2.1.0 Sender OK\r\n");
+        stringBuilder.append("250 2.1.5 Recipient OK\r\n");
+        stringBuilder.append("550 5.1.1 Unknown user\r\n");
+        stringBuilder.append("250 2.1.5 Recipient OK\r\n");
+        stringBuilder.append("354 Ready and willing\r\n");
+        stringBuilder.append("250 2.0.0 Received OK\r\n");
+        stringBuilder.append("221 2.0.0 Closing connection\r\n");
+
+        ConnectionMock connection = new ConnectionMock(stringBuilder);
+        connection.getSession().setEhlo("example.com");
+
+        MessageEnvelope envelope = new MessageEnvelope();
+        envelope.setMail("tony@example.com");
+        envelope.setRcpts(Arrays.asList("pepper@example.com", "happy@example.com", "rhodey@example.com"));
+        envelope.setSubject("Lost in space");
+        envelope.setMessage("Rescue me!");
+        connection.getSession().addEnvelope(envelope);
+
+        DefaultBehaviour behaviour = new DefaultBehaviour();
+        behaviour.process(connection);
+
+        assertTrue(connection.getSession().isEhloPipelining());
+
+        connection.parseLines();
+        assertEquals("EHLO example.com\r\n", connection.getLine(1));
+        assertEquals("MAIL FROM:<tony@example.com> SIZE=337\r\n", connection.getLine(2));
+        assertEquals("RCPT TO:<pepper@example.com>\r\n", connection.getLine(3));
+        assertEquals("RCPT TO:<happy@example.com>\r\n", connection.getLine(4));
+        assertEquals("RCPT TO:<rhodey@example.com>\r\n", connection.getLine(5));
+        assertEquals("DATA\r\n", connection.getLine(6));
+        assertEquals("MIME-Version: 1.0\r\n", connection.getLine(7));
+        assertEquals(".\r\n", connection.getLine(17));
+        assertEquals("QUIT\r\n", connection.getLine(18));
+
+        EnvelopeTransactionList transactions = connection.getSession().getSessionTransactionList().getEnvelopes().getFirst();
+        assertFalse(transactions.getMail().isError());
+        assertEquals(3, transactions.getRcpt().size());
+        assertEquals(Collections.singletonList("happy@example.com"), transactions.getFailedRecipients());
+        assertEquals("250 2.0.0 Received OK", transactions.getData().getResponse());
+        assertFalse(transactions.getData().isError());
+    }
+
+    @Test
+    void processPipeliningRejected() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("250-smtp.example.com at your service, [127.0.0.1]\r\n" +
+                "250 PIPELINING\r\n");
+        stringBuilder.append("250 2.1.0 Sender OK\r\n");
+        stringBuilder.append("550 5.1.1 Unknown user\r\n");
+        stringBuilder.append("354 Ready and willing\r\n");
+        stringBuilder.append("554 5.5.1 No valid recipients\r\n");
+        stringBuilder.append("221 2.0.0 Closing connection\r\n");
+
+        ConnectionMock connection = new ConnectionMock(stringBuilder);
+        connection.getSession().setEhlo("example.com");
+
+        MessageEnvelope envelope = new MessageEnvelope();
+        envelope.setMail("tony@example.com");
+        envelope.setRcpt("happy@example.com");
+        envelope.setSubject("Lost in space");
+        envelope.setMessage("Rescue me!");
+        connection.getSession().addEnvelope(envelope);
+
+        new DefaultBehaviour().process(connection);
+
+        connection.parseLines();
+        assertEquals("DATA\r\n", connection.getLine(4));
+        assertEquals(".\r\n", connection.getLine(5));
+        assertEquals("QUIT\r\n", connection.getLine(6));
+
+        EnvelopeTransactionList transactions = connection.getSession().getSessionTransactionList().getEnvelopes().getFirst();
+        assertEquals(Collections.singletonList("happy@example.com"), transactions.getFailedRecipients());
+        assertTrue(transactions.getData().isError());
+    }
 }
@@ -5,6 +5,8 @@ import com.mimecast.robin.smtp.MessageEnvelope;
 import com.mimecast.robin.smtp.SmtpResponses;
 import com.mimecast.robin.smtp.connection.ConnectionMock;
 import com.mimecast.robin.smtp.verb.Verb;
+import com.mimecast.robin.storage.LocalStorageClient;
+import com.mimecast.robin.storage.StorageClient;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -13,6 +15,7 @@ import java.io.IOException;
 import java.net.Socket;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ServerDataTest {
@@ -133,4 +136,62 @@ class ServerDataTest {
         assertTrue(connection.getLine(1).startsWith("250 2.0.0 Chunk OK"), "startsWith(\"250 2.0.0 Chunk OK\")");
         assertEquals(stringBuilder.toString().length() - 2, data.getBytesReceived());
     }
+
+    /**
+     * Storage client failing to make the message durable.
+     */
+    static class UnsyncedStorageClient extends LocalStorageClient {
+        @Override
+        protected void sync() throws IOException {
+            throw new IOException("Injected sync failure");
+        }
+    }
+
+    /**
+     * Server data with given storage client.
+     */
+    static class UnsyncedServerData extends ServerData {
+        @Override
+        protected StorageClient getStorageClient(String extension) {
+            return new UnsyncedStorageClient().setConnection(connection).setExtension(extension);
+        }
+    }
+
+    @Test
+    void processAsciiUnsynced() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("MIME-Version: 1.0\r\n");
+        stringBuilder.append("Subject: Lost in space\r\n");
+        stringBuilder.append("\r\n");
+        stringBuilder.append("Rescue me!\r\n");
+        stringBuilder.append(".\r\n\r\n\r\n");
+
+        ConnectionMock connection = new ConnectionMock(stringBuilder);
+        connection.setSocket(new Socket());
+        connection.getSession().addEnvelope(new MessageEnvelope());
+        connection.getSession().getEnvelopes().getLast().addRcpt("john@example.com");
+
+        assertTrue(new UnsyncedServerData().process(connection, new Verb("DATA")));
+
+        connection.parseLines();
+        assertEquals(SmtpResponses.READY_WILLING_354 + "\r\n", connection.getLine(1));
+        assertTrue(connection.getLine(2).startsWith("451 4.3.0"), "startsWith(\"451 4.3.0\")");
+        assertNull(connection.getSession().getEnvelopes().getLast().getFile());
+    }
+
+    @Test
+    void processBinaryUnsynced() throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("Subject: Lost in space\r\n");
+        stringBuilder.append("\r\n");
+        stringBuilder.append("Rescue me!\r\n\r\n");
+
+        ConnectionMock connection = new ConnectionMock(stringBuilder);
+        connection.setSocket(new Socket());
+
+        assertTrue(new UnsyncedServerData().process(connection, new Verb("BDAT 38 LAST")));
+
+        connection.parseLines();
+        assertTrue(connection.getLine(1).startsWith("451 4.3.0"), "startsWith(\"451 4.3.0\")");
+    }
 }
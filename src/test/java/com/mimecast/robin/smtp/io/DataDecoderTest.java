@@ -0,0 +1,92 @@
+package com.mimecast.robin.smtp.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataDecoderTest {
+
+    /**
+     * Decodes given string in given split size and returns decoded output and unconsumed rest.
+     */
+    private static String[] decode(String data, int split) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataDecoder decoder = new DataDecoder(out, 16);
+
+        byte[] bytes = data.getBytes();
+        int pos = 0;
+        while (pos < bytes.length && !decoder.isDone()) {
+            int len = Math.min(split, bytes.length - pos);
+            int used = decoder.decode(bytes, pos, len);
+            pos += used;
+            if (used < len) {
+                break;
+            }
+        }
+        decoder.finish();
+
+        return new String[]{out.toString(), new String(bytes, pos, bytes.length - pos), String.valueOf(decoder.isDone())};
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1", "2", "3", "7", "1024"})
+    void splits(int split) throws IOException {
+        String[] result = decode("Subject: Lost in space\r\n\r\nRescue me!\r\n..dot\r\n.\r\nRSET\r\n", split);
+
+        assertEquals("Subject: Lost in space\r\n\r\nRescue me!\r\n.dot", result[0]);
+        assertEquals("RSET\r\n", result[1]);
+        assertEquals("true", result[2]);
+    }
+
+    @Test
+    void lenient() throws IOException {
+        assertEquals("a\nb", decode("a\nb\n.\nQUIT", 1)[0]);
+        assertEquals("QUIT", decode("a\nb\n.\nQUIT", 1)[1]);
+
+        assertEquals("a\rb", decode("a\rb\r.\rQUIT", 1)[0]);
+        assertEquals("QUIT", decode("a\rb\r.\rQUIT", 1)[1]);
+    }
+
+    @Test
+    void loneDot() throws IOException {
+        // Mixed EOL does not form a terminator so the dot line is data.
+        String[] result = decode("a\r\n.\nb\r\n.\r\n", 4);
+        assertEquals("a\r\n.\nb", result[0]);
+        assertEquals("true", result[2]);
+    }
+
+    @Test
+    void empty() throws IOException {
+        String[] result = decode(".\r\nQUIT\r\n", 1);
+        assertEquals("", result[0]);
+        assertEquals("QUIT\r\n", result[1]);
+    }
+
+    @Test
+    void unterminated() throws IOException {
+        String[] result = decode("a\r\nb\r\n", 3);
+        assertEquals("a\r\nb", result[0]);
+        assertEquals("false", result[2]);
+    }
+
+    @Test
+    void large() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataDecoder decoder = new DataDecoder(out, 16);
+
+        String line = "x".repeat(100);
+        byte[] bytes = (line + "\r\n.\r\n").getBytes();
+        assertEquals(bytes.length, decoder.decode(bytes, 0, bytes.length));
+        assertTrue(decoder.isDone());
+        decoder.finish();
+        assertEquals(line, out.toString());
+        assertFalse(out.toString().endsWith("\r\n"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.mimecast.robin.smtp.io;
+
+import com.mimecast.robin.mime.EmailParser;
+import com.mimecast.robin.mime.headers.MimeHeader;
+import com.mimecast.robin.mime.headers.MimeHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeaderTeeOutputStreamTest {
+
+    private static List<String> toList(MimeHeaders headers) {
+        return headers.get().stream().map(MimeHeader::toString).toList();
+    }
+
+    private static MimeHeaders parse(byte[] bytes) throws IOException {
+        return new EmailParser(new LineInputStream(new ByteArrayInputStream(bytes))).parse(true).getHeaders();
+    }
+
+    /**
+     * Writes in uneven chunks to split lines and line endings across writes.
+     */
+    private static HeaderTeeOutputStream tee(byte[] bytes, ByteArrayOutputStream out) throws IOException {
+        HeaderTeeOutputStream tee = new HeaderTeeOutputStream(out);
+        int chunk = 1;
+        for (int i = 0; i < bytes.length; i += chunk, chunk = chunk % 7 + 1) {
+            tee.write(bytes, i, Math.min(chunk, bytes.length - i));
+        }
+        tee.close();
+        return tee;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "src/test/resources/cases/tests/test.crlf.eml",
+            "src/test/resources/cases/tests/test.lf.eml",
+            "src/test/resources/cases/tests/test.duplicated.unique.headers.eml",
+            "src/test/resources/mime/lipsum.mixed.eol.eml",
+            "src/test/resources/mime/lipsum.822.eml"
+    })
+    void files(String path) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        HeaderTeeOutputStream tee = tee(bytes, out);
+
+        assertArrayEquals(bytes, out.toByteArray());
+        assertFalse(tee.getHeaders().get().isEmpty());
+        assertEquals(toList(parse(bytes)), toList(tee.getHeaders()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "Subject: no blank line",
+            "Subject: no blank line\r\n",
+            "Subject: folded\r\n\tacross lines\r\nFrom: <tony@example.com>\r\n\r\nBody: not a header\r\n",
+            "Subject: bare cr\rFrom: <tony@example.com>\r\rBody\r",
+            "Subject: bare lf\nFrom: <tony@example.com>\n \n\nBody\n",
+            "\r\nBody: not a header\r\n"
+    })
+    void strings(String string) throws IOException {
+        byte[] bytes = string.getBytes();
+        HeaderTeeOutputStream tee = tee(bytes, new ByteArrayOutputStream());
+
+        assertTrue(tee.isDone());
+        assertEquals(toList(parse(bytes)), toList(tee.getHeaders()));
+    }
+
+    @Test
+    void done() throws IOException {
+        HeaderTeeOutputStream tee = new HeaderTeeOutputStream(new ByteArrayOutputStream());
+        tee.write("Subject: done\r\n".getBytes());
+        assertFalse(tee.isDone());
+
+        tee.write("\r\nX-Robin-Filename: body.eml\r\n".getBytes());
+        assertTrue(tee.isDone());
+        assertEquals(1, tee.getHeaders().get().size());
+        assertTrue(tee.getHeaders().get("x-robin-filename").isEmpty());
+    }
+
+    @Test
+    void overflow() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HeaderTeeOutputStream tee = new HeaderTeeOutputStream(out);
+        byte[] line = ("X-Long: " + "a".repeat(1000) + "\r\n").getBytes();
+        for (int i = 0; i <= HeaderTeeOutputStream.MAX_HEADERS / line.length; i++) {
+            tee.write(line);
+        }
+        tee.close();
+
+        assertTrue(tee.isDone());
+        assertNull(tee.getHeaders());
+        assertTrue(out.size() > HeaderTeeOutputStream.MAX_HEADERS);
+    }
+}
@@ -5,12 +5,15 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import javax.naming.ConfigurationException;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class LineInputStreamTest {
 
@@ -39,4 +42,55 @@ class LineInputStreamTest {
         assertEquals("Content-Transfer-Encoding: 8bit", lines.get(42).trim());
         assertEquals("--MCBoundary11505141140170031--", lines.get(76).trim());
     }
+
+    @Test
+    void readLineEol() throws IOException {
+        LineInputStream stream = new LineInputStream(new ByteArrayInputStream("one\r\ntwo\nthree\rfour\r".getBytes()), 2);
+
+        assertEquals("one\r\n", new String(stream.readLine()));
+        assertEquals("two\n", new String(stream.readLine()));
+        assertEquals("three\r", new String(stream.readLine()));
+        assertEquals("four\r", new String(stream.readLine()));
+        assertNull(stream.readLine());
+        assertEquals(4, stream.getLineNumber());
+    }
+
+    @Test
+    void readLineSlice() throws IOException {
+        String line = "x".repeat(5000) + "\r\n";
+        LineInputStream stream = new LineInputStream(new ByteArrayInputStream((line + "end").getBytes()), 16);
+
+        LineSlice slice = stream.readLineSlice();
+        assertEquals(line.length(), slice.getLength());
+        assertEquals(2, slice.getEolLength());
+        assertEquals(line, new String(slice.toByteArray()));
+
+        slice = stream.readLineSlice();
+        assertEquals("end", new String(slice.toByteArray()));
+        assertEquals(0, slice.getEolLength());
+        assertNull(stream.readLineSlice());
+    }
+
+    @Test
+    void unread() throws IOException {
+        LineInputStream stream = new LineInputStream(new ByteArrayInputStream("--boundary--\r\ntail\r\n".getBytes()), 4);
+
+        byte[] bytes = stream.readLine();
+        stream.unread(bytes);
+        assertArrayEquals(bytes, stream.readLine());
+        assertEquals("tail\r\n", new String(stream.readLine()));
+
+        stream.unread("again\n".getBytes());
+        assertEquals("again\n", new String(stream.readLine()));
+        assertNull(stream.readLine());
+    }
+
+    @Test
+    void drainBuffered() throws IOException {
+        LineInputStream stream = new LineInputStream(new ByteArrayInputStream("EHLO example.com\r\nMAIL FROM:<>\r\n".getBytes()));
+
+        assertEquals("EHLO example.com\r\n", new String(stream.readLine()));
+        assertEquals("MAIL FROM:<>\r\n", new String(stream.drainBuffered()));
+        assertNull(stream.readLine());
+    }
 }
@@ -0,0 +1,114 @@
+package com.mimecast.robin.smtp.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpoolOutputStreamTest {
+
+    private static byte[] getBytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    void memory(@TempDir Path dir) throws IOException {
+        byte[] bytes = getBytes(SpoolOutputStream.CHUNK_SIZE * 2 + 10);
+        Path file = dir.resolve("memory.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, bytes.length);
+        spool.write(bytes[0]);
+        spool.write(bytes, 1, bytes.length - 1);
+        spool.close();
+
+        assertTrue(spool.isInMemory());
+        assertFalse(spool.isPersisted());
+        assertFalse(Files.exists(file));
+        assertEquals(bytes.length, spool.size());
+        assertArrayEquals(bytes, spool.getBytes());
+        try (InputStream input = spool.getInputStream()) {
+            assertArrayEquals(bytes, input.readAllBytes());
+        }
+
+        assertEquals(file, spool.persist());
+        assertTrue(spool.isPersisted());
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test
+    void spill(@TempDir Path dir) throws IOException {
+        byte[] bytes = getBytes(SpoolOutputStream.CHUNK_SIZE + 100);
+        Path file = dir.resolve("spill.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, SpoolOutputStream.CHUNK_SIZE);
+        spool.write(bytes, 0, 100);
+        assertTrue(spool.isInMemory());
+
+        for (int i = 100; i < bytes.length; i++) {
+            spool.write(bytes[i]);
+        }
+        assertFalse(spool.isInMemory());
+        assertTrue(spool.isPersisted());
+        assertNotNull(spool.getFileStream());
+        spool.close();
+
+        assertNull(spool.getBytes());
+        assertEquals(bytes.length, spool.size());
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+        try (InputStream input = spool.getInputStream()) {
+            assertArrayEquals(bytes, input.readAllBytes());
+        }
+    }
+
+    @Test
+    void zero(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("zero.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, 0);
+        spool.write('a');
+        spool.close();
+
+        assertFalse(spool.isInMemory());
+        assertEquals("a", Files.readString(file));
+        assertThrows(IOException.class, () -> spool.write('b'));
+    }
+
+    @Test
+    void setPath(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("before.eml");
+        Path target = dir.resolve("after.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, 1024);
+        spool.write("Subject: moved\r\n".getBytes());
+        spool.close();
+
+        assertTrue(spool.setPath(target));
+        spool.persist();
+        assertFalse(Files.exists(file));
+        assertEquals("Subject: moved\r\n", Files.readString(target));
+        assertFalse(spool.setPath(file));
+    }
+
+    @Test
+    void persistOpen(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("open.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, 1024);
+        spool.write("Subject: ".getBytes());
+        spool.persist();
+        assertFalse(spool.isInMemory());
+
+        spool.write("open\r\n".getBytes());
+        spool.close();
+        assertEquals("Subject: open\r\n", Files.readString(file));
+    }
+}
@@ -0,0 +1,105 @@
+package com.mimecast.robin.smtp.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferCountingOutputStreamTest {
+
+    private static byte[] getBytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    void transferToFile(@TempDir Path dir) throws IOException {
+        byte[] bytes = getBytes(200000);
+        Path file = dir.resolve("transfer.eml");
+
+        LineInputStream input = new LineInputStream(new ByteArrayInputStream(bytes));
+        input.read(); // Leaves the rest of the first block buffered.
+
+        try (TransferCountingOutputStream stream = new TransferCountingOutputStream(new FileOutputStream(file.toFile()))) {
+            stream.write(bytes[0]);
+            assertEquals(150000, stream.transferFrom(input, 150000));
+            stream.write(input.read());
+            assertEquals(150002, stream.getByteCount());
+        }
+
+        byte[] expected = new byte[150002];
+        System.arraycopy(bytes, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+
+    @Test
+    void transferToStream() throws IOException {
+        byte[] bytes = getBytes(100000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        TransferCountingOutputStream stream = new TransferCountingOutputStream(output);
+        assertEquals(bytes.length, stream.transferFrom(new ByteArrayInputStream(bytes), bytes.length + 10));
+        assertEquals(bytes.length, stream.getByteCount());
+        assertArrayEquals(bytes, output.toByteArray());
+    }
+
+    @Test
+    void transferThroughTee(@TempDir Path dir) throws IOException {
+        byte[] body = getBytes(100000);
+        byte[] headers = "Subject: tee\r\nX-Robin-Relay: example.com\r\n\r\n".getBytes();
+        byte[] bytes = new byte[headers.length + body.length];
+        System.arraycopy(headers, 0, bytes, 0, headers.length);
+        System.arraycopy(body, 0, bytes, headers.length, body.length);
+        Path file = dir.resolve("tee.eml");
+
+        HeaderTeeOutputStream tee = new HeaderTeeOutputStream(new FileOutputStream(file.toFile()));
+        try (TransferCountingOutputStream stream = new TransferCountingOutputStream(tee)) {
+            assertEquals(bytes.length, stream.transferFrom(new LineInputStream(new ByteArrayInputStream(bytes)), bytes.length));
+            assertEquals(bytes.length, stream.getByteCount());
+        }
+
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+        assertEquals(2, tee.getHeaders().get().size());
+        assertEquals("example.com", tee.getHeaders().get("x-robin-relay").orElseThrow().getValue());
+    }
+
+    @Test
+    void transferThroughSpool(@TempDir Path dir) throws IOException {
+        byte[] bytes = getBytes(100000);
+        Path file = dir.resolve("spool.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, 10000);
+        try (TransferCountingOutputStream stream = new TransferCountingOutputStream(new HeaderTeeOutputStream(spool))) {
+            assertEquals(bytes.length, stream.transferFrom(new LineInputStream(new ByteArrayInputStream(bytes)), bytes.length));
+            assertEquals(bytes.length, stream.getByteCount());
+        }
+
+        assertFalse(spool.isInMemory());
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test
+    void transferIntoSpool(@TempDir Path dir) throws IOException {
+        byte[] bytes = getBytes(5000);
+        Path file = dir.resolve("memory.eml");
+
+        SpoolOutputStream spool = new SpoolOutputStream(file, 10000);
+        try (TransferCountingOutputStream stream = new TransferCountingOutputStream(spool)) {
+            assertEquals(bytes.length, stream.transferFrom(new ByteArrayInputStream(bytes), bytes.length));
+        }
+
+        assertTrue(spool.isInMemory());
+        assertFalse(Files.exists(file));
+        assertArrayEquals(bytes, spool.getBytes());
+    }
+}
@@ -135,4 +135,26 @@ class SmtpMetricsTest {
                 .tag("exception_type", "TimeoutException")
                 .counter().count(), 0.001);
     }
+
+    @Test
+    void testIncrementConnectionAdmission() {
+        // Act
+        SmtpMetrics.incrementConnectionQueued();
+        SmtpMetrics.incrementConnectionQueued();
+        SmtpMetrics.incrementConnectionRejected();
+        SmtpMetrics.incrementConnectionShed();
+
+        // Assert
+        Counter queued = testRegistry.find("smtp.connection.queued").counter();
+        assertNotNull(queued, "Queued counter should be registered");
+        assertEquals(2.0, queued.count(), 0.001, "Queued counter should have incremented 2 times");
+
+        Counter rejected = testRegistry.find("smtp.connection.rejected").counter();
+        assertNotNull(rejected, "Rejected counter should be registered");
+        assertEquals(1.0, rejected.count(), 0.001, "Rejected counter should have incremented 1 time");
+
+        Counter shed = testRegistry.find("smtp.connection.shed").counter();
+        assertNotNull(shed, "Shed counter should be registered");
+        assertEquals(1.0, shed.count(), 0.001, "Shed counter should have incremented 1 time");
+    }
 }
@@ -0,0 +1,63 @@
+package com.mimecast.robin.smtp.security;
+
+import com.mimecast.robin.main.Foundation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.naming.ConfigurationException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultTLSSocketTest {
+
+    @BeforeAll
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+        System.setProperty("javax.net.ssl.keyStore", "src/test/resources/keystore.jks");
+        System.setProperty("javax.net.ssl.keyStorePassword", "avengers");
+    }
+
+    @Test
+    void resumption() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            SSLSession first = handshake(server);
+            SSLSession second = handshake(server);
+
+            // Client context is shared so the second handshake resumes the first session.
+            assertEquals(first.getCreationTime(), second.getCreationTime());
+            assertEquals(first.getProtocol(), second.getProtocol());
+        }
+    }
+
+    /**
+     * Upgrades a plain loopback connection on both sides and returns the client session.
+     */
+    private SSLSession handshake(ServerSocket server) throws Exception {
+        CompletableFuture<Void> accepted = CompletableFuture.runAsync(() -> {
+            try (SSLSocket socket = new DefaultTLSSocket().setSocket(server.accept()).startTLS(false)) {
+                socket.getOutputStream().write(1);
+                socket.getOutputStream().flush();
+                socket.getInputStream().read();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        try (SSLSocket socket = new DefaultTLSSocket().setSocket(new Socket(server.getInetAddress(), server.getLocalPort())).startTLS(true)) {
+            socket.setSoTimeout(5000);
+            assertEquals(1, socket.getInputStream().read());
+            socket.getOutputStream().write(1);
+            socket.getOutputStream().flush();
+
+            accepted.get(5, TimeUnit.SECONDS);
+            return socket.getSession();
+        }
+    }
+}
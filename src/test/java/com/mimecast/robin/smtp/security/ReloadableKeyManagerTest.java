@@ -0,0 +1,63 @@
+package com.mimecast.robin.smtp.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.io.FileInputStream;
+import java.security.KeyStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReloadableKeyManagerTest {
+
+    private static final char[] PASSWORD = "avengers".toCharArray();
+
+    /**
+     * Loads test keystore with its entry stored under given alias.
+     */
+    static KeyStore keyStore(String alias) throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (FileInputStream stream = new FileInputStream("src/test/resources/keystore.jks")) {
+            ks.load(stream, PASSWORD);
+        }
+
+        if (!ks.containsAlias(alias)) {
+            KeyStore.PasswordProtection protection = new KeyStore.PasswordProtection(PASSWORD);
+            ks.setEntry(alias, ks.getEntry("example.com", protection), protection);
+            ks.deleteEntry("example.com");
+        }
+        return ks;
+    }
+
+    private static X509ExtendedKeyManager keyManager(String alias) throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(keyStore(alias), PASSWORD);
+        return (X509ExtendedKeyManager) kmf.getKeyManagers()[0];
+    }
+
+    @Test
+    void swap() throws Exception {
+        ReloadableKeyManager keyManager = new ReloadableKeyManager(keyManager("example.com"));
+
+        String alias = keyManager.chooseServerAlias("RSA", null, null);
+        assertEquals("0:example.com", alias);
+        assertNotNull(keyManager.getCertificateChain(alias));
+        assertNotNull(keyManager.getPrivateKey(alias));
+
+        // Alias chosen before the swap still resolves.
+        keyManager.setDelegate(keyManager("renewed.example.com"));
+        assertNotNull(keyManager.getCertificateChain(alias));
+        assertNotNull(keyManager.getPrivateKey(alias));
+
+        String renewed = keyManager.chooseServerAlias("RSA", null, null);
+        assertEquals("1:renewed.example.com", renewed);
+        assertNotNull(keyManager.getPrivateKey(renewed));
+
+        // Only one previous generation is kept.
+        keyManager.setDelegate(keyManager("example.com"));
+        assertNull(keyManager.getCertificateChain(alias));
+        assertNotNull(keyManager.getCertificateChain(renewed));
+        assertNull(keyManager.getPrivateKey("example.com"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.mimecast.robin.smtp.security;
+
+import com.mimecast.robin.main.Foundation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.naming.ConfigurationException;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TLSContextCacheTest {
+
+    private static final String KEYSTORE = "src/test/resources/keystore.jks";
+    private static final char[] PASSWORD = "avengers".toCharArray();
+
+    @BeforeAll
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+    }
+
+    @Test
+    void cached() throws Exception {
+        SSLContext context = TLSContextCache.getServerContext(KEYSTORE, PASSWORD, null, null);
+        assertSame(context, TLSContextCache.getServerContext(KEYSTORE, PASSWORD, null, null));
+        assertSame(context, TLSContextCache.getServerContext(KEYSTORE, PASSWORD.clone(), null, null));
+
+        SSLContext tls13 = TLSContextCache.getServerContext(KEYSTORE, PASSWORD, new String[]{"TLSv1.3"}, null);
+        assertNotSame(context, tls13);
+        assertSame(tls13, TLSContextCache.getServerContext(KEYSTORE, PASSWORD, new String[]{"TLSv1.3"}, null));
+    }
+
+    @Test
+    void reload(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("keystore.jks");
+        Files.copy(Paths.get(KEYSTORE), path);
+
+        SSLContext context = TLSContextCache.getServerContext(path.toString(), PASSWORD, null, null);
+        handshake(context);
+
+        // Renewed keystore with a new alias and later timestamp.
+        try (OutputStream stream = new FileOutputStream(path.toFile())) {
+            ReloadableKeyManagerTest.keyStore("renewed.example.com").store(stream, PASSWORD);
+        }
+        assertTrue(path.toFile().setLastModified(System.currentTimeMillis() + 5000));
+        TLSContextCache.checkForChanges();
+
+        // Same context serving the renewed keystore.
+        assertSame(context, TLSContextCache.getServerContext(path.toString(), PASSWORD, null, null));
+        handshake(context);
+    }
+
+    /**
+     * Completes a handshake between a server socket of given context and a permissive client.
+     */
+    private void handshake(SSLContext context) throws Exception {
+        try (SSLServerSocket server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<Void> accepted = CompletableFuture.runAsync(() -> {
+                try (SSLSocket socket = (SSLSocket) server.accept()) {
+                    socket.startHandshake();
+                    socket.getOutputStream().write(1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            SSLContext clientContext = SSLContext.getInstance("TLS");
+            clientContext.init(null, new TrustManager[]{new PermissiveTrustManager()}, null);
+            try (SSLSocket client = (SSLSocket) clientContext.getSocketFactory().createSocket(server.getInetAddress(), server.getLocalPort())) {
+                client.setSoTimeout(5000);
+                client.startHandshake();
+                assertEquals(1, client.getInputStream().read());
+                assertNotNull(client.getSession().getPeerCertificates());
+            }
+
+            accepted.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
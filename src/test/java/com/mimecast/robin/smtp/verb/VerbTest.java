@@ -130,4 +130,36 @@ class VerbTest {
         verb = new BdatVerb(new Verb("NOTS"));
         assertFalse(verb.isError());
     }
+
+    @Test
+    void split() {
+        String regex = "(\\s+)?(\\s+|:|=)(\\s+)?";
+        String[] commands = {
+                "", "QUIT", "EHLO example.com", "MAIL FROM:<>", "MAIL FROM: <tony@example.com>  SIZE=123 BODY=8BITMIME",
+                "RCPT TO:<tony@example.com> NOTIFY=SUCCESS,FAILURE ORCPT=rfc822;happy@example.com",
+                "AUTH PLAIN dGVzdAB0ZXN0ADEyMzQ=", "AUTH LOGIN dGVzdA==", "MAIL\tFROM\t:\t<a@b>", "a::b", "a : = b",
+                ":leading", "=", "::", " ", "trailing:", "trailing :  ", "XCLIENT NAME=[UNAVAILABLE] ADDR=IPV6:2001:db8::1"
+        };
+
+        for (String command : commands) {
+            assertArrayEquals(command.split(regex), Verb.split(command), command);
+        }
+    }
+
+    @Test
+    void keyword() {
+        for (Keyword keyword : Keyword.values()) {
+            assertEquals(keyword, Keyword.of(keyword.name()));
+            assertEquals(keyword, Keyword.of(keyword.getKey()));
+            assertEquals(keyword, new Verb(keyword.getKey() + " param").getKeyword());
+        }
+
+        assertEquals(Keyword.MAIL, new Verb("mAiL FROM:<>").getKeyword());
+        assertEquals("mail", new Verb("mAiL FROM:<>").getKey());
+        assertNull(new Verb("XCLIENT NAME=example.com").getKeyword());
+        assertEquals("xclient", new Verb("XCLIENT NAME=example.com").getKey());
+        assertNull(Keyword.of("MAI1"));
+        assertNull(Keyword.of("STARTTLZ"));
+        assertNull(Keyword.of(""));
+    }
 }
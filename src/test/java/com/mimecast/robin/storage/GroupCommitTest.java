@@ -0,0 +1,99 @@
+package com.mimecast.robin.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitTest {
+
+    @Test
+    void batch(@TempDir Path dir) throws Exception {
+        GroupCommit commit = new GroupCommit(10000L, 4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Path file = Files.writeString(dir.resolve(i + ".eml"), "Subject: " + i + "\r\n");
+            futures.add(executor.submit(() -> {
+                commit.commit(file);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Size reached well before the interval.
+        assertEquals(1, commit.getBatches());
+        assertEquals(4, commit.getCommitted());
+        assertTrue(commit.shutdown(5000));
+    }
+
+    @Test
+    void interval(@TempDir Path dir) throws Exception {
+        GroupCommit commit = new GroupCommit(1L, 64);
+
+        commit.commit(Files.writeString(dir.resolve("first.eml"), "Subject: first\r\n"));
+        commit.commit(Files.writeString(dir.resolve("second.eml"), "Subject: second\r\n"));
+
+        assertEquals(2, commit.getBatches());
+        assertEquals(2, commit.getCommitted());
+        assertTrue(commit.shutdown(5000));
+    }
+
+    @Test
+    void stopped(@TempDir Path dir) throws Exception {
+        GroupCommit commit = new GroupCommit(1L, 64);
+        assertTrue(commit.shutdown(5000));
+
+        // Forced inline once stopped.
+        commit.commit(Files.writeString(dir.resolve("late.eml"), "Subject: late\r\n"));
+        assertEquals(0, commit.getBatches());
+    }
+
+    @Test
+    void missing(@TempDir Path dir) throws InterruptedException {
+        GroupCommit commit = new GroupCommit(1L, 64);
+
+        assertThrows(IOException.class, () -> commit.commit(dir.resolve("missing.eml")));
+        assertEquals(0, commit.getCommitted());
+        assertTrue(commit.shutdown(5000));
+    }
+
+    @Test
+    void partial(@TempDir Path dir) throws Exception {
+        GroupCommit commit = new GroupCommit(10000L, 2);
+        Path file = Files.writeString(dir.resolve("good.eml"), "Subject: good\r\n");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> good = executor.submit(() -> {
+            commit.commit(file);
+            return null;
+        });
+        Future<?> bad = executor.submit(() -> {
+            commit.commit(dir.resolve("missing.eml"));
+            return null;
+        });
+        executor.shutdown();
+
+        // Only the missing file fails, its batch mate still commits.
+        assertDoesNotThrow(() -> good.get());
+        ExecutionException e = assertThrows(ExecutionException.class, bad::get);
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(1, commit.getBatches());
+        assertEquals(1, commit.getCommitted());
+        assertTrue(commit.shutdown(5000));
+    }
+}
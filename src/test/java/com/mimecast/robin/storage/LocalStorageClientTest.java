@@ -1,5 +1,6 @@
 package com.mimecast.robin.storage;
 
+import com.mimecast.robin.config.server.ServerConfig;
 import com.mimecast.robin.main.Config;
 import com.mimecast.robin.main.Factories;
 import com.mimecast.robin.main.Foundation;
@@ -12,6 +13,7 @@ import com.mimecast.robin.util.PathUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
@@ -23,8 +25,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LocalStorageClientTest {
@@ -99,6 +104,84 @@ class LocalStorageClientTest {
         assertTrue(new File(localStorageClient.getFile()).delete());
     }
 
+    @Test
+    void spool(@TempDir Path dir) throws IOException {
+        Map<String, Object> storage = new HashMap<>();
+        storage.put("enabled", true);
+        storage.put("path", dir.toString());
+        storage.put("keep", false);
+        Map<String, Object> map = new HashMap<>();
+        map.put("storage", storage);
+
+        Connection connection = new Connection(new Session());
+        MessageEnvelope envelope = new MessageEnvelope().addRcpt("tony@example.com");
+        connection.getSession().addEnvelope(envelope);
+        LocalStorageClient localStorageClient = new LocalStorageClientMock(new ServerConfig(map), Pair.of(0, ""))
+                .setConnection(connection)
+                .setExtension("eml");
+
+        String content = "Mime-Version: 1.0\r\n" +
+                "X-Robin-Filename: spool.eml\r\n" +
+                "\r\n";
+        localStorageClient.getStream().write(content.getBytes());
+        localStorageClient.save();
+        localStorageClient.deliver(connection);
+
+        // Nothing needed it on disk.
+        assertTrue(localStorageClient.getFile().endsWith("spool.eml"));
+        assertEquals(localStorageClient.getFile(), envelope.getFile());
+        assertFalse(new File(localStorageClient.getFile()).exists());
+        assertEquals(content, new String(localStorageClient.getBytes()));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"none", "message", "group"})
+    void durability(String mode, @TempDir Path dir) throws IOException {
+        Map<String, Object> storage = new HashMap<>();
+        storage.put("enabled", true);
+        storage.put("path", dir.toString());
+        storage.put("durability", mode);
+        Map<String, Object> map = new HashMap<>();
+        map.put("storage", storage);
+
+        Connection connection = new Connection(new Session());
+        connection.getSession().addEnvelope(new MessageEnvelope().addRcpt("tony@example.com"));
+        LocalStorageClient localStorageClient = new LocalStorageClientMock(new ServerConfig(map), Pair.of(0, ""))
+                .setConnection(connection)
+                .setExtension("eml");
+
+        String content = "Mime-Version: 1.0\r\n";
+        localStorageClient.getStream().write(content.getBytes());
+        localStorageClient.save();
+
+        assertEquals(content, PathUtils.readFile(localStorageClient.getFile(), Charset.defaultCharset()));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"message", "group"})
+    void durabilityNotKept(String mode, @TempDir Path dir) throws IOException {
+        Map<String, Object> storage = new HashMap<>();
+        storage.put("enabled", true);
+        storage.put("path", dir.toString());
+        storage.put("keep", false);
+        storage.put("durability", mode);
+        Map<String, Object> map = new HashMap<>();
+        map.put("storage", storage);
+
+        Connection connection = new Connection(new Session());
+        connection.getSession().addEnvelope(new MessageEnvelope().addRcpt("tony@example.com"));
+        LocalStorageClient localStorageClient = new LocalStorageClientMock(new ServerConfig(map), Pair.of(0, ""))
+                .setConnection(connection)
+                .setExtension("eml");
+
+        // Small enough to stay in memory but durability needs it on disk before the reply.
+        String content = "Mime-Version: 1.0\r\n";
+        localStorageClient.getStream().write(content.getBytes());
+        assertTrue(localStorageClient.save());
+
+        assertEquals(content, PathUtils.readFile(localStorageClient.getFile(), Charset.defaultCharset()));
+    }
+
     @ParameterizedTest
     @CsvSource({"0", "1"})
     void saveToDovecotLda(int param) throws IOException {
@@ -123,6 +206,7 @@ class LocalStorageClientTest {
         assertTrue(localStorageClient.getFile().endsWith(".dat"));
 
         localStorageClient.save();
+        localStorageClient.deliver(connection);
 
         try { new File(localStorageClient.getFile()).delete(); } catch (Exception ignored) {}
 
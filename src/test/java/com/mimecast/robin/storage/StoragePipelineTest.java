@@ -0,0 +1,172 @@
+package com.mimecast.robin.storage;
+
+import com.mimecast.robin.config.server.PipelineConfig;
+import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.smtp.MessageEnvelope;
+import com.mimecast.robin.smtp.connection.Connection;
+import com.mimecast.robin.smtp.session.Session;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.naming.ConfigurationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoragePipelineTest {
+
+    @BeforeAll
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+    }
+
+    /**
+     * Storage client recording deliveries.
+     */
+    static class RecordingStorageClient implements StorageClient {
+        final List<Connection> delivered = new CopyOnWriteArrayList<>();
+
+        @Override
+        public StorageClient setConnection(Connection connection) {
+            return this;
+        }
+
+        @Override
+        public StorageClient setExtension(String extension) {
+            return this;
+        }
+
+        @Override
+        public OutputStream getStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public String getFile() {
+            return null;
+        }
+
+        @Override
+        public boolean save() {
+            return true;
+        }
+
+        @Override
+        public void deliver(Connection connection) {
+            delivered.add(connection);
+        }
+    }
+
+    private static Connection getConnection() {
+        Connection connection = new Connection(new Session());
+        connection.getSession().addEnvelope(new MessageEnvelope().setMail("tony@example.com").addRcpt("pepper@example.com"));
+        return connection;
+    }
+
+    private static PipelineConfig getConfig(String mode, Path journal) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("mode", mode);
+        map.put("threads", 1L);
+        map.put("journal", journal.toString());
+        return new PipelineConfig(map);
+    }
+
+    @Test
+    void sync(@TempDir Path dir) throws InterruptedException {
+        StoragePipeline pipeline = new StoragePipeline(getConfig("sync", dir.resolve("journal.db")));
+        assertFalse(pipeline.isAsync());
+
+        Connection connection = getConnection();
+        RecordingStorageClient client = new RecordingStorageClient();
+        pipeline.process(connection, client);
+
+        assertEquals(1, client.delivered.size());
+        assertSame(connection, client.delivered.getFirst());
+        assertEquals(2, pipeline.getCompleted());
+        assertEquals(0, pipeline.recover());
+        assertTrue(pipeline.shutdown(1000));
+    }
+
+    @Test
+    void async(@TempDir Path dir) throws InterruptedException {
+        StoragePipeline pipeline = new StoragePipeline(getConfig("async", dir.resolve("journal.db")));
+        assertTrue(pipeline.isAsync());
+
+        Connection connection = getConnection();
+        RecordingStorageClient client = new RecordingStorageClient();
+        pipeline.process(connection, client);
+
+        // Next transaction on the same connection.
+        connection.getSession().getEnvelopes().getLast().getRcpts().clear();
+        connection.getSession().addEnvelope(new MessageEnvelope().setMail("happy@example.com"));
+
+        assertTrue(pipeline.shutdown(5000));
+        assertEquals(1, client.delivered.size());
+        assertEquals(0, pipeline.getFailed());
+
+        // Stages ran on a snapshot.
+        Session snapshot = client.delivered.getFirst().getSession();
+        assertNotSame(connection.getSession(), snapshot);
+        assertEquals(connection.getSession().getUID(), snapshot.getUID());
+        assertEquals(1, snapshot.getEnvelopes().size());
+        assertEquals(List.of("pepper@example.com"), snapshot.getEnvelopes().getLast().getRcpts());
+        assertEquals(0, pipeline.getPending());
+    }
+
+    @Test
+    void recover(@TempDir Path dir) throws InterruptedException {
+        Path path = dir.resolve("journal.db");
+
+        // Left over from a crash.
+        PipelineJournal journal = new PipelineJournal(path.toFile());
+        Session session = getConnection().getSession();
+        journal.append(session);
+        journal.append(getConnection().getSession());
+        journal.close();
+
+        StoragePipeline pipeline = new StoragePipeline(getConfig("async", path));
+        assertEquals(2, pipeline.recover());
+        assertTrue(pipeline.shutdown(5000));
+        assertEquals(4, pipeline.getCompleted());
+
+        journal = new PipelineJournal(path.toFile());
+        assertEquals(0, journal.size());
+        journal.close();
+    }
+
+    @Test
+    void journal(@TempDir Path dir) {
+        PipelineJournal journal = new PipelineJournal(dir.resolve("journal.db").toFile());
+        Session session = getConnection().getSession();
+
+        long first = journal.append(session);
+        long second = journal.append(session);
+        assertTrue(second > first);
+        assertEquals(2, journal.size());
+
+        journal.remove(first);
+        assertEquals(List.of(second), List.copyOf(journal.pending().keySet()));
+        assertEquals(session.getUID(), journal.pending().get(second).getUID());
+        journal.close();
+    }
+
+    @Test
+    void registerMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StoragePipeline.registerMetrics(registry);
+        assertDoesNotThrow(() -> StoragePipeline.registerMetrics(null));
+
+        // Gauges read the shared instance when scraped.
+        assertNotNull(registry.find("storage.pipeline.queue").gauge());
+        assertNotNull(registry.find("storage.pipeline.journal").gauge());
+        assertTrue(registry.find("storage.pipeline.journal").gauge().value() >= 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mimecast.robin.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CidrTrieTest {
+
+    @Test
+    void longestPrefix() {
+        CidrTrie<String> trie = new CidrTrie<String>()
+                .put("10.0.0.0/8", "wide")
+                .put("10.1.0.0/16", "narrow")
+                .put("10.1.2.3", "host");
+
+        assertEquals(3, trie.size());
+        assertEquals("wide", trie.get("10.200.0.1"));
+        assertEquals("narrow", trie.get("10.1.200.1"));
+        assertEquals("host", trie.get("10.1.2.3"));
+        assertNull(trie.get("11.0.0.1"));
+    }
+
+    @Test
+    void ipv6() {
+        CidrTrie<String> trie = new CidrTrie<String>()
+                .put("2001:db8::/32", "doc")
+                .put("::ffff:192.0.2.0/120", "never")
+                .put("192.0.2.0/24", "v4");
+
+        assertEquals("doc", trie.get("2001:db8:1::25"));
+        assertEquals("doc", trie.get("[2001:db8::1]"));
+        assertNull(trie.get("2001:db9::1"));
+
+        // Mapped addresses match as IPv4.
+        assertEquals(2, trie.size());
+        assertEquals("v4", trie.get("::ffff:192.0.2.1"));
+        assertNull(new CidrTrie<String>().put("::/0", "all").get("192.0.2.1"));
+    }
+
+    @Test
+    void defaultRoute() {
+        CidrTrie<String> trie = new CidrTrie<String>().put("0.0.0.0/0", "all");
+
+        assertEquals("all", trie.get("203.0.113.1"));
+        assertNull(trie.get("2001:db8::1"));
+    }
+
+    @Test
+    void replace() {
+        CidrTrie<String> trie = new CidrTrie<String>()
+                .put("192.0.2.0/24", "first")
+                .put("192.0.2.0/24", "second");
+
+        assertEquals(1, trie.size());
+        assertEquals("second", trie.get("192.0.2.9"));
+    }
+
+    @Test
+    void invalid() {
+        CidrTrie<String> trie = new CidrTrie<>();
+
+        assertThrows(IllegalArgumentException.class, () -> trie.put("192.0.2.0/33", "x"));
+        assertThrows(IllegalArgumentException.class, () -> trie.put("192.0.2.0/x", "x"));
+        assertThrows(IllegalArgumentException.class, () -> trie.put("example.com/24", "x"));
+        assertThrows(IllegalArgumentException.class, () -> trie.put("2001:db8::/129", "x"));
+        assertTrue(trie.isEmpty());
+        assertNull(trie.get("example.com"));
+    }
+
+    @Test
+    void parseIpv4() {
+        assertArrayEquals(new byte[]{(byte) 192, (byte) 168, 1, 1}, CidrTrie.parseIpv4("192.168.1.1"));
+        assertNull(CidrTrie.parseIpv4("256.0.0.1"));
+        assertNull(CidrTrie.parseIpv4("1.2.3"));
+        assertNull(CidrTrie.parseIpv4("1.2.3.4."));
+        assertNull(CidrTrie.parseIpv4("1..3.4"));
+        assertNull(CidrTrie.parseIpv4("1.2.3.4.5"));
+        assertNull(CidrTrie.parseIpv4("1.2.3.1000"));
+        assertNull(CidrTrie.parseIpv4(""));
+    }
+
+    @Test
+    void parseAddress() {
+        assertEquals(4, CidrTrie.parseAddress("192.0.2.1").length);
+        assertEquals(16, CidrTrie.parseAddress("2001:db8::1").length);
+        assertNull(CidrTrie.parseAddress("2001:db8::g"));
+        assertNull(CidrTrie.parseAddress("abc:def"));
+        assertNull(CidrTrie.parseAddress(null));
+    }
+}
@@ -0,0 +1,90 @@
+package com.mimecast.robin.util;
+
+import com.mimecast.robin.main.Foundation;
+import com.mimecast.robin.smtp.session.Session;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.naming.ConfigurationException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MagicTemplateTest {
+
+    @BeforeAll
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
+    }
+
+    @Test
+    void render() {
+        Session session = new Session();
+        session.putMagic("user", "tony");
+        session.putMagic("domain", "example.com");
+
+        assertEquals("tony@example.com", Magic.magicReplace("{$user}@{$domain}", session));
+        assertEquals("<TONY@example.com>", Magic.magicReplace("<{toUpperCase$user}@{$domain}>", session));
+        assertEquals("tony tony", Magic.magicReplace("{$user} {$user}", session));
+        assertEquals("Bearer tony", Magic.magicReplace("Bearer {$user}", session));
+    }
+
+    @Test
+    void unresolved() {
+        Session session = new Session();
+        session.putMagic("user", "tony");
+
+        assertEquals("tony {$missing}", Magic.magicReplace("{$user} {$missing}", session, false));
+        assertEquals("tony null", Magic.magicReplace("{$user} {$missing}", session, true));
+        assertEquals("{ $user} $", Magic.magicReplace("{ $user} $", session));
+    }
+
+    @Test
+    void duplicates() {
+        Session session = new Session();
+        session.putMagic("pick", List.of("a", "b", "c", "d", "e", "f", "g", "h"));
+
+        // Same variable text resolves once per render.
+        for (int i = 0; i < 20; i++) {
+            String[] parts = Magic.magicReplace("{$pick[?]}-{$pick[?]}", session).split("-");
+            assertEquals(parts[0], parts[1]);
+        }
+    }
+
+    @Test
+    void cache() {
+        String template = "{$user}:" + getClass().getName() + ".cache";
+
+        MagicTemplate compiled = MagicTemplate.compile(template);
+        assertTrue(compiled.hasReferences());
+        assertSame(compiled, MagicTemplate.compile(template));
+
+        // Strings without variables are not cached.
+        String plain = getClass().getName() + ".plain {}";
+        assertFalse(MagicTemplate.compile(plain).hasReferences());
+        assertNotSame(MagicTemplate.compile(plain), MagicTemplate.compile(plain));
+
+        // Bounded.
+        for (int i = 0; i < 5000; i++) {
+            MagicTemplate.compile("{$user}:" + i);
+        }
+        assertTrue(MagicTemplate.size() <= 4096);
+        assertTrue(MagicTemplate.getHits() > 0);
+        assertTrue(MagicTemplate.getMisses() > 5000);
+    }
+
+    @Test
+    void registerMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MagicTemplate.registerMetrics(registry);
+        MagicTemplate.registerMetrics(null);
+
+        MagicTemplate.compile("{$user}:" + getClass().getName() + ".metrics");
+        MagicTemplate.compile("{$user}:" + getClass().getName() + ".metrics");
+
+        assertTrue(registry.get("magic.template.cache").tag("result", "hit").functionCounter().count() > 0);
+        assertTrue(registry.get("magic.template.cache").tag("result", "miss").functionCounter().count() > 0);
+        assertNotNull(registry.get("magic.template.cache.size").gauge());
+    }
+}
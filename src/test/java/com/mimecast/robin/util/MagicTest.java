@@ -1,20 +1,22 @@
 package com.mimecast.robin.util;
 
+import com.mimecast.robin.main.Foundation;
 import com.mimecast.robin.smtp.session.Session;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import javax.naming.ConfigurationException;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 class MagicTest {
 
     @BeforeAll
-    static void before() {
+    static void before() throws ConfigurationException {
+        Foundation.init("src/test/resources/cfg/");
         TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
     }
 
@@ -55,4 +57,44 @@ class MagicTest {
         session.putMagic("host", "example.com:8080");
         assertEquals("https://example.com", Magic.magicReplace("https://{replace(:8080|)$host}", session, false));
     }
-}
\ No newline at end of file
+
+    @Test
+    void defaultMagic() {
+        Session session = new Session();
+
+        // Session values.
+        assertTrue(session.hasMagic("robinUid"));
+        assertEquals(session.getUID(), Magic.magicReplace("{$robinUid}", session));
+        assertEquals(session.getDate(), session.getMagic("robinDate"));
+        assertTrue(((String) session.getMagic("robinYymd")).matches("[0-9]{8}"));
+
+        // Properties.
+        assertEquals("string", Magic.magicReplace("{$string}", session));
+        assertEquals("weasel", Magic.magicReplace("{$list[1]}", session));
+        assertFalse(session.hasMagic("long"));
+        assertFalse(session.hasMagic("missing"));
+
+        // Session values take precedence.
+        session.putMagic("string", "override");
+        assertEquals("override", Magic.magicReplace("{$string}", session));
+        assertEquals("string", Magic.magicReplace("{$string}", new Session()));
+
+        // Merged copy.
+        Map<String, Object> magic = session.getMagic();
+        assertEquals("override", magic.get("string"));
+        assertEquals(session.getUID(), magic.get("robinUid"));
+        assertEquals(List.of("monkey", "weasel", "dragon"), magic.get("list"));
+    }
+
+    @Test
+    void cloneKeepsUid() {
+        Session session = new Session();
+        Session clone = session.clone();
+
+        // Clones get a new UID but render the original one.
+        assertNotEquals(session.getUID(), clone.getUID());
+        assertEquals(session.getUID(), Magic.magicReplace("{$robinUid}", clone));
+        assertEquals(session.getUID(), Magic.magicReplace("{$robinUid}", clone.clone()));
+        assertEquals(session.getUID(), Magic.magicReplace("{$robinUid}", session));
+    }
+}